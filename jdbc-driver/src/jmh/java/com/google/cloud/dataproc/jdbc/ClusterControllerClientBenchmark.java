@@ -0,0 +1,92 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.cloud.dataproc.v1beta2.ClusterControllerClient;
+import com.google.common.base.Ticker;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the Dataproc API part of a connect, from parsed URL to translated Hive URL, with a
+ * ClusterControllerClient created per connect versus the driver's shared client registry.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClusterControllerClientBenchmark {
+    private static final String URL =
+            "jdbc:dataproc://hive/;projectId=pid;region=us-central1;clusterName=bench-cluster";
+
+    private FakeDataprocServer server;
+    private ClusterControllerClientRegistry registry;
+    private DataprocDriver driver;
+    private ConnectionSpec spec;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        server = new FakeDataprocServer("client-benchmark");
+        registry =
+                new ClusterControllerClientRegistry(
+                        server::createClient,
+                        ClusterControllerClientRegistry.DEFAULT_IDLE_TIMEOUT_MILLIS,
+                        Ticker.systemTicker());
+        // No lookup cache, so that every connect reaches the fake API
+        driver = new DataprocDriver(registry, ClusterResolutionCache.disabled());
+        spec = ConnectionSpec.create(HiveUrlUtils.parseHiveUrl(URL));
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        registry.close();
+        server.close();
+    }
+
+    /** The previous connect path: a new client, and so a new channel, for every connect. */
+    @Benchmark
+    public String clientPerConnect() throws IOException, SQLException {
+        ClusterControllerClient client =
+                server.createClient(
+                        ClusterControllerClientRegistry.endpointFor(spec.options().region()));
+        try {
+            return new DataprocInfo(spec.options(), client).toHiveJdbcUrl();
+        } finally {
+            client.close();
+        }
+    }
+
+    @Benchmark
+    public String sharedClient() throws SQLException {
+        return driver.resolveHiveUrl(spec, new Properties());
+    }
+}
\ No newline at end of file
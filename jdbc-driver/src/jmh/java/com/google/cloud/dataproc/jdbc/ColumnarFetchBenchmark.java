@@ -0,0 +1,162 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.cli.RowSetFactory;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TColumn;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TDoubleColumn;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TI32Column;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TI64Column;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TProtocolVersion;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TRowSet;
+import org.apache.hive.jdbc.shaded.org.apache.thrift.TException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads a million rows of (BIGINT, INT, DOUBLE) columns, a tenth of the INT values null, from
+ * synthetic column-based row sets of 10000 rows. Compares the rows Hive's result set rebuilds
+ * from each row set, whose getters unbox the value of each cell, with the primitive arrays a
+ * {@link ColumnarResultSet} decodes them into. The row sets are built once, the Thrift transport
+ * is left out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ColumnarFetchBenchmark {
+    private static final int ROWS = 1000000;
+    private static final int FETCH_SIZE = 10000;
+
+    private List<TRowSet> rowSets;
+    // What HiveServer2 returns once all rows are fetched
+    private TRowSet end;
+    private ResultSet physical;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        Random random = new Random(42);
+        rowSets = new ArrayList<>();
+        for (int first = 0; first < ROWS; first += FETCH_SIZE) {
+            List<Long> ids = new ArrayList<>(FETCH_SIZE);
+            List<Integer> quantities = new ArrayList<>(FETCH_SIZE);
+            List<Double> prices = new ArrayList<>(FETCH_SIZE);
+            byte[] nulls = new byte[FETCH_SIZE / 8];
+            for (int row = 0; row < FETCH_SIZE; row++) {
+                ids.add((long) first + row);
+                boolean isNull = random.nextInt(10) == 0;
+                quantities.add(isNull ? 0 : random.nextInt(100000));
+                if (isNull) {
+                    nulls[row >> 3] |= 1 << (row & 7);
+                }
+                prices.add(random.nextDouble() * 1000);
+            }
+            TRowSet rowSet = new TRowSet(first, new ArrayList<>());
+            rowSet.setColumns(
+                    Arrays.asList(
+                            TColumn.i64Val(new TI64Column(ids, ByteBuffer.wrap(new byte[0]))),
+                            TColumn.i32Val(new TI32Column(quantities, ByteBuffer.wrap(nulls))),
+                            TColumn.doubleVal(
+                                    new TDoubleColumn(prices, ByteBuffer.wrap(new byte[0])))));
+            rowSets.add(rowSet);
+        }
+        end = new TRowSet(ROWS, new ArrayList<>());
+        end.setColumns(new ArrayList<>());
+        physical = physical(Types.BIGINT, Types.INTEGER, Types.DOUBLE);
+    }
+
+    /** Stands in for Hive's result set, which only provides the metadata of the rows. */
+    private static ResultSet physical(int... columnTypes) {
+        ResultSetMetaData metaData =
+                (ResultSetMetaData)
+                        Proxy.newProxyInstance(
+                                ColumnarFetchBenchmark.class.getClassLoader(),
+                                new Class<?>[] {ResultSetMetaData.class},
+                                (proxy, method, args) ->
+                                        method.getName().equals("getColumnCount")
+                                                ? columnTypes.length
+                                                : columnTypes[(int) args[0] - 1]);
+        return (ResultSet)
+                Proxy.newProxyInstance(
+                        ColumnarFetchBenchmark.class.getClassLoader(),
+                        new Class<?>[] {ResultSet.class},
+                        (proxy, method, args) -> {
+                            switch (method.getName()) {
+                                case "getMetaData":
+                                    return metaData;
+                                case "getFetchSize":
+                                    return FETCH_SIZE;
+                                default:
+                                    return null;
+                            }
+                        });
+    }
+
+    /** The row objects of Hive's result set, read the way its getLong, getInt and getDouble do. */
+    @Benchmark
+    public double hiveRows() throws TException {
+        double sum = 0;
+        for (TRowSet rowSet : rowSets) {
+            for (Object[] row :
+                    RowSetFactory.create(rowSet, TProtocolVersion.HIVE_CLI_SERVICE_PROTOCOL_V10)) {
+                sum += row[0] == null ? 0 : ((Number) row[0]).longValue();
+                sum += row[1] == null ? 0 : ((Number) row[1]).intValue();
+                sum += row[2] == null ? 0 : ((Number) row[2]).doubleValue();
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double columnBatches() throws SQLException {
+        Iterator<TRowSet> fetched = rowSets.iterator();
+        ResultSet resultSet =
+                new ColumnarResultSet(
+                        physical,
+                        rows -> fetched.hasNext() ? fetched.next() : end,
+                        0);
+        double sum = 0;
+        while (resultSet.next()) {
+            sum += resultSet.getLong(1);
+            sum += resultSet.getInt(2);
+            sum += resultSet.getDouble(3);
+        }
+        return sum;
+    }
+}
\ No newline at end of file
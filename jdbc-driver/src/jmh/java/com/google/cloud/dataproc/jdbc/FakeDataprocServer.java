@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.api.gax.core.NoCredentialsProvider;
+import com.google.api.gax.grpc.InstantiatingGrpcChannelProvider;
+import com.google.cloud.dataproc.v1beta2.Cluster;
+import com.google.cloud.dataproc.v1beta2.ClusterConfig;
+import com.google.cloud.dataproc.v1beta2.ClusterControllerClient;
+import com.google.cloud.dataproc.v1beta2.ClusterControllerSettings;
+import com.google.cloud.dataproc.v1beta2.ClusterStatus;
+import com.google.cloud.dataproc.v1beta2.EndpointConfig;
+import com.google.cloud.dataproc.v1beta2.GetClusterRequest;
+import io.grpc.MethodDescriptor;
+import io.grpc.Server;
+import io.grpc.ServerServiceDefinition;
+import io.grpc.inprocess.InProcessChannelBuilder;
+import io.grpc.inprocess.InProcessServerBuilder;
+import io.grpc.protobuf.ProtoUtils;
+import io.grpc.stub.ServerCalls;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process stand-in for the Dataproc ClusterController API, so benchmarks exercise the real
+ * client and channel setup without network access.
+ */
+final class FakeDataprocServer implements AutoCloseable {
+    static final String HOST = "fakeclusterhost-dot-us-central1.dataproc.googleusercontent.com";
+
+    private static final String SERVICE_NAME = "google.cloud.dataproc.v1beta2.ClusterController";
+
+    private static final MethodDescriptor<GetClusterRequest, Cluster> GET_CLUSTER =
+            MethodDescriptor.<GetClusterRequest, Cluster>newBuilder()
+                    .setType(MethodDescriptor.MethodType.UNARY)
+                    .setFullMethodName(
+                            MethodDescriptor.generateFullMethodName(SERVICE_NAME, "GetCluster"))
+                    .setRequestMarshaller(
+                            ProtoUtils.marshaller(GetClusterRequest.getDefaultInstance()))
+                    .setResponseMarshaller(ProtoUtils.marshaller(Cluster.getDefaultInstance()))
+                    .build();
+
+    private final String serverName;
+    private final Server server;
+
+    FakeDataprocServer(String serverName) throws IOException {
+        this.serverName = serverName;
+        ServerServiceDefinition service =
+                ServerServiceDefinition.builder(SERVICE_NAME)
+                        .addMethod(
+                                GET_CLUSTER,
+                                ServerCalls.asyncUnaryCall(
+                                        (request, observer) -> {
+                                            observer.onNext(cluster(request.getClusterName()));
+                                            observer.onCompleted();
+                                        }))
+                        .build();
+        this.server =
+                InProcessServerBuilder.forName(serverName)
+                        .addService(service)
+                        .directExecutor()
+                        .build()
+                        .start();
+    }
+
+    /** A cluster in RUNNING state whose Component Gateway lives at {@link #HOST}. */
+    static Cluster cluster(String clusterName) {
+        EndpointConfig endpointConfig =
+                EndpointConfig.newBuilder()
+                        .putHttpPorts("HiveServer2", String.format("https://%s/hive/", HOST))
+                        .build();
+        return Cluster.newBuilder()
+                .setClusterName(clusterName)
+                .setConfig(ClusterConfig.newBuilder().setEndpointConfig(endpointConfig))
+                .setStatus(ClusterStatus.newBuilder().setState(ClusterStatus.State.RUNNING))
+                .build();
+    }
+
+    /**
+     * Creates a client the same way the driver does, with a fresh channel per client, but routed
+     * to this in-process server.
+     */
+    ClusterControllerClient createClient(String endpoint) throws IOException {
+        InstantiatingGrpcChannelProvider channelProvider =
+                InstantiatingGrpcChannelProvider.newBuilder()
+                        .setEndpoint(endpoint)
+                        .setChannelConfigurator(
+                                builder ->
+                                        InProcessChannelBuilder.forName(serverName).usePlaintext())
+                        .build();
+        ClusterControllerSettings settings =
+                ClusterControllerSettings.newBuilder()
+                        .setCredentialsProvider(NoCredentialsProvider.create())
+                        .setTransportChannelProvider(channelProvider)
+                        .build();
+        return ClusterControllerClient.create(settings);
+    }
+
+    @Override
+    public void close() throws InterruptedException {
+        server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+    }
+}
\ No newline at end of file
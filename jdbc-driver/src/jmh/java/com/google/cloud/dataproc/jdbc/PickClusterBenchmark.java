@@ -0,0 +1,82 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.cloud.dataproc.v1beta2.Cluster;
+import com.google.cloud.dataproc.v1beta2.ClusterMetrics;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures the weighted cluster pick of clusterPoolLabel routing for growing pool sizes. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@SuppressWarnings("deprecation") // Baseline for SelectionStrategyBenchmark
+public class PickClusterBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int poolSize;
+
+    private Map<Cluster, Long> clusterLoads;
+    private Random random;
+
+    /**
+     * A pool of clusters with available YARN memory between 0 and 64 GB, about 1 in 10 of them
+     * fully loaded.
+     */
+    static Map<Cluster, Long> clusterLoads(int poolSize, Random random) {
+        Map<Cluster, Long> clusterLoads = new HashMap<>();
+        for (int i = 0; i < poolSize; i++) {
+            long availableMemoryMb = random.nextInt(10) == 0 ? 0 : random.nextInt(64 * 1024) + 1;
+            Cluster cluster =
+                    FakeDataprocServer.cluster("pool-cluster-" + i).toBuilder()
+                            .setMetrics(
+                                    ClusterMetrics.newBuilder()
+                                            .putYarnMetrics(
+                                                    "yarn-memory-mb-available", availableMemoryMb))
+                            .build();
+            clusterLoads.put(cluster, availableMemoryMb);
+        }
+        return clusterLoads;
+    }
+
+    @Setup
+    public void setUp() {
+        // Fixed seed so runs of different releases pick from the same pools
+        random = new Random(42);
+        clusterLoads = clusterLoads(poolSize, random);
+    }
+
+    @Benchmark
+    public Cluster pickCluster() {
+        return DataprocInfo.pickCluster(clusterLoads, random);
+    }
+}
\ No newline at end of file
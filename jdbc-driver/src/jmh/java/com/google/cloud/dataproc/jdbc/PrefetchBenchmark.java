@@ -0,0 +1,90 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import java.io.IOException;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reads a result set with a slow client, that spends about as long on a batch of rows as the
+ * round trip that fetches it, with and without prefetching the next batches. Without prefetching
+ * the read takes the sum of the fetches and of the client's work, with it close to the larger of
+ * the two.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+// Without TCP_NODELAY, delayed ACKs on the loopback add about 40 ms to each fetch
+@Fork(value = 1, jvmArgsAppend = "-Dsun.net.httpserver.nodelay=true")
+public class PrefetchBenchmark {
+    private static final long ROWS = 10000;
+    private static final int FETCH_SIZE = 1000;
+    private static final long ROUND_TRIP_MILLIS = 20;
+    // About 20 µs of work per row, so 20 ms per batch
+    private static final long CLIENT_TOKENS_PER_ROW = 8000;
+
+    @Param({"0", "1", "2"})
+    public int prefetchBatches;
+
+    private StandInHiveServer2 server;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        server = new StandInHiveServer2(ROUND_TRIP_MILLIS);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        server.close();
+    }
+
+    @Benchmark
+    public long readAll() throws SQLException {
+        ResultSet physical = server.query(ROWS, FETCH_SIZE);
+        ResultSet resultSet =
+                prefetchBatches > 0
+                        ? PrefetchingResultSet.start(physical, prefetchBatches)
+                        : physical;
+        long sum = 0;
+        try {
+            while (resultSet.next()) {
+                sum += resultSet.getLong(1);
+                Blackhole.consumeCPU(CLIENT_TOKENS_PER_ROW);
+            }
+        } finally {
+            resultSet.close();
+        }
+        return sum;
+    }
+}
\ No newline at end of file
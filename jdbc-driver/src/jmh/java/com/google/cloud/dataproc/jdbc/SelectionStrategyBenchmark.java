@@ -0,0 +1,83 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.cloud.dataproc.v1beta2.Cluster;
+import com.google.common.collect.ImmutableList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures the pick of each built-in cluster selection strategy for growing pool sizes. */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SelectionStrategyBenchmark {
+    @Param({
+        "weighted-random",
+        "least-loaded",
+        "round-robin",
+        "power-of-two",
+        "power-of-two-in-flight",
+        "consistent-hash"
+    })
+    public String strategyName;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int poolSize;
+
+    private ClusterSelectionStrategy strategy;
+    private ClusterPool pool;
+    private SelectionContext context;
+
+    @Setup
+    public void setUp() throws InvalidURLException {
+        strategy = ClusterSelectionStrategies.get(strategyName);
+        // Same pools as PickClusterBenchmark so both can be compared, scored as connects do
+        pool =
+                ClusterPoolSnapshot.create(
+                                ImmutableList.copyOf(
+                                        PickClusterBenchmark.clusterLoads(poolSize, new Random(42))
+                                                .keySet()),
+                                0)
+                        .scored(ClusterScoring.DEFAULT);
+        context =
+                SelectionContext.create(
+                        "pid",
+                        "us-central1",
+                        "status.state = ACTIVE AND labels.com = google",
+                        "",
+                        "hive");
+    }
+
+    @Benchmark
+    public Cluster select() {
+        return pool.cluster(strategy.select(pool, context));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local stand-in for the FetchResults calls of HiveServer2 over HTTP: each batch of rows is one
+ * request to an in-process HTTP server that answers after the round-trip time of the Component
+ * Gateway. Result sets of (id, name) rows read a batch of fetchSize rows whenever they run out,
+ * like Hive's.
+ */
+final class StandInHiveServer2 implements AutoCloseable {
+    private final HttpServer server;
+
+    StandInHiveServer2(long roundTripMillis) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(
+                "/fetch",
+                exchange -> {
+                    String[] query = exchange.getRequestURI().getQuery().split("[=&]");
+                    long first = Long.parseLong(query[1]);
+                    long rows = Long.parseLong(query[3]);
+                    StringBuilder body = new StringBuilder();
+                    for (long id = first; id < first + rows; id++) {
+                        body.append(id).append('\t').append("row-").append(id).append('\n');
+                    }
+                    byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+                    try {
+                        TimeUnit.MILLISECONDS.sleep(roundTripMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    exchange.sendResponseHeaders(200, bytes.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(bytes);
+                    }
+                });
+        server.start();
+    }
+
+    /** The rows of a query, fetched fetchSize at a time. */
+    ResultSet query(long rows, int fetchSize) {
+        return (ResultSet)
+                Proxy.newProxyInstance(
+                        ResultSet.class.getClassLoader(),
+                        new Class<?>[] {ResultSet.class},
+                        new Rows(rows, fetchSize));
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private final class Rows implements InvocationHandler {
+        private final long rows;
+        private int fetchSize;
+        private long fetched;
+        private List<String[]> batch = new ArrayList<>();
+        private int position;
+        private String[] row;
+
+        Rows(long rows, int fetchSize) {
+            this.rows = rows;
+            this.fetchSize = fetchSize;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "next":
+                    return next();
+                case "getObject":
+                case "getString":
+                    return row[(int) args[0] - 1];
+                case "getLong":
+                    return Long.parseLong(row[(int) args[0] - 1]);
+                case "getFetchSize":
+                    return fetchSize;
+                case "setFetchSize":
+                    fetchSize = (int) args[0];
+                    return null;
+                case "getMetaData":
+                    return metaData();
+                case "close":
+                    return null;
+                default:
+                    throw new SQLException("Method not supported: " + method.getName());
+            }
+        }
+
+        private boolean next() {
+            if (position == batch.size()) {
+                if (fetched == rows) {
+                    return false;
+                }
+                fetchResults(Math.min(fetchSize, rows - fetched));
+            }
+            row = batch.get(position++);
+            return true;
+        }
+
+        private void fetchResults(long count) {
+            batch = new ArrayList<>();
+            position = 0;
+            try {
+                URL url =
+                        new URL(
+                                String.format(
+                                        "http://localhost:%d/fetch?first=%d&rows=%d",
+                                        server.getAddress().getPort(), fetched, count));
+                HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+                try (BufferedReader reader =
+                        new BufferedReader(
+                                new InputStreamReader(
+                                        connection.getInputStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        batch.add(line.split("\t"));
+                    }
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            fetched += batch.size();
+        }
+
+        private ResultSetMetaData metaData() {
+            return (ResultSetMetaData)
+                    Proxy.newProxyInstance(
+                            ResultSetMetaData.class.getClassLoader(),
+                            new Class<?>[] {ResultSetMetaData.class},
+                            (proxy, method, args) -> {
+                                if (method.getName().equals("getColumnCount")) {
+                                    return 2;
+                                }
+                                throw new SQLException("Method not supported: " + method.getName());
+                            });
+        }
+    }
+}
\ No newline at end of file
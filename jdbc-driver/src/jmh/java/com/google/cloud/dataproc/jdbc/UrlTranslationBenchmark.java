@@ -0,0 +1,108 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.cloud.dataproc.v1beta2.ClusterControllerClient;
+import com.google.common.base.Ticker;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the URL handling of a connect: parsing the client URL, building the cluster pool filter
+ * and translating the URL to the Hive JDBC URL against the in-process fake of the Dataproc API.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UrlTranslationBenchmark {
+    private static final String CLUSTER_URL =
+            "jdbc:dataproc://hive/default;projectId=pid;region=us-central1;"
+                    + "clusterName=bench-cluster;user=bench;password=secret"
+                    + "?hive.exec.parallel=true#var1=value1";
+    private static final String POOL_URL =
+            "jdbc:dataproc://hive/;projectId=pid;region=us-central1;"
+                    + "clusterPoolLabel=com=google:team=dataproc:env=staging";
+
+    private FakeDataprocServer server;
+    private ClusterControllerClient client;
+    private HiveJdbcConnectionOptions clusterOptions;
+    private DataprocInfo poolInfo;
+    private ConnectionSpecCache connectionSpecs;
+    private ClusterResolutionCache clusterCache;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException, SQLException {
+        server = new FakeDataprocServer("url-benchmark");
+        client =
+                server.createClient(ClusterControllerClientRegistry.endpointFor("us-central1"));
+        clusterOptions = HiveUrlUtils.parseHiveUrl(CLUSTER_URL);
+        // formatClusterFilterString does not use the client
+        poolInfo = new DataprocInfo(HiveUrlUtils.parseHiveUrl(POOL_URL), null);
+        connectionSpecs = new ConnectionSpecCache();
+        clusterCache =
+                new ClusterResolutionCache(
+                        ClusterResolutionCache.DEFAULT_MAXIMUM_SIZE, Ticker.systemTicker());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws InterruptedException {
+        client.close();
+        server.close();
+    }
+
+    @Benchmark
+    public HiveJdbcConnectionOptions parseHiveUrl() throws InvalidURLException {
+        return HiveUrlUtils.parseHiveUrl(CLUSTER_URL);
+    }
+
+    @Benchmark
+    public ConnectionSpec parseHiveUrlMemoized() throws SQLException {
+        return connectionSpecs.get(CLUSTER_URL);
+    }
+
+    @Benchmark
+    public String formatClusterFilterString() throws InvalidURLException {
+        return poolInfo.formatClusterFilterString();
+    }
+
+    /** Includes the GetCluster round trip to the in-process fake. */
+    @Benchmark
+    public String toHiveJdbcUrl() throws SQLException {
+        return new DataprocInfo(clusterOptions, client).toHiveJdbcUrl();
+    }
+
+    /** Served from the cluster lookup cache after the first call. */
+    @Benchmark
+    public String toHiveJdbcUrlCached() throws SQLException {
+        return new DataprocInfo(clusterOptions, client, clusterCache).toHiveJdbcUrl();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.cloud.dataproc.v1beta2.Cluster;
+import com.google.common.collect.ImmutableList;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the ways of drawing a pool cluster proportionally to its available YARN memory: the
+ * map-based pickCluster, a scan of the cumulative weights, and the alias table of the
+ * weighted-random strategy along with the cost of building it on each pool refresh.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@SuppressWarnings("deprecation") // pickCluster is the baseline
+public class WeightedPickBenchmark {
+    @Param({"10", "100", "1000", "10000"})
+    public int poolSize;
+
+    private Map<Cluster, Long> clusterLoads;
+    private ClusterPool pool;
+    private AliasTable table;
+    private Random random;
+
+    @Setup
+    public void setUp() {
+        // Same pools as PickClusterBenchmark
+        random = new Random(42);
+        clusterLoads = PickClusterBenchmark.clusterLoads(poolSize, random);
+        pool = ClusterPoolSnapshot.create(ImmutableList.copyOf(clusterLoads.keySet()), 0);
+        table = AliasTable.build(pool);
+    }
+
+    @Benchmark
+    public Cluster pickCluster() {
+        return DataprocInfo.pickCluster(clusterLoads, random);
+    }
+
+    @Benchmark
+    public int cumulativeScan() {
+        double totalWeight = 0;
+        for (int i = 0; i < pool.size(); i++) {
+            totalWeight += pool.score(i);
+        }
+        double target = random.nextDouble() * totalWeight;
+        for (int i = 0; i < pool.size(); i++) {
+            target -= pool.score(i);
+            if (target < 0) {
+                return i;
+            }
+        }
+        return pool.size() - 1;
+    }
+
+    @Benchmark
+    public int aliasTableSample() {
+        return table.sample(random);
+    }
+
+    @Benchmark
+    public AliasTable aliasTableBuild() {
+        return AliasTable.build(pool);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Sizes the FetchResults batches of a result set from the size of its rows and the round-trip
+ * time to the cluster, so that large extracts spend their time transferring rows rather than
+ * waiting on round trips through the Component Gateway.
+ *
+ * <p>After each batch, the next one is sized so that transferring it takes {@link
+ * #TARGET_TRANSFER_ROUND_TRIPS} round trips: the round trip is then at most a fifth of the fetch
+ * time. The transfer time per row is the time of the fetch minus the round trip. The round trip is
+ * the one the {@link GatewayLatencyEstimator} already measured, if any, or else the one two
+ * batches of different sizes imply, the fetch time being a round trip plus a transfer
+ * proportional to the rows; until it is known, batches grow by {@link #MAX_GROWTH} each time.
+ * Batches never hold more than the byte cap, estimated from the first row of each batch, nor more
+ * rows than HiveServer2 returns per fetch.
+ *
+ * <p>HiveServer2 may return fewer rows than the fetch size, so a batch ends either once it holds
+ * the fetch size or at the next call of ResultSet.next() that waits on a fetch.
+ */
+final class AdaptiveFetchSize {
+    static final int MIN_ROWS = 100;
+    static final int TARGET_TRANSFER_ROUND_TRIPS = 4;
+    // Largest change of the fetch size from one batch to the next
+    static final int MAX_GROWTH = 4;
+    // Bytes on the wire of a null mask and of the length of a variable width value
+    private static final int VALUE_OVERHEAD = 4;
+    private static final double SMOOTHING = 0.3;
+    // A call of ResultSet.next() this long waited on a fetch, fetched rows take microseconds
+    static final long MIN_FETCH_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final ResultSet resultSet;
+    private final long maxBatchBytes;
+    private final int maxRows;
+    private final LongSupplier rttNanos;
+    // Wire size of each column, 0 for the variable width ones
+    private int[] widths;
+    private int fetchSize;
+    private int batchRows;
+    private long batchFetchNanos;
+    private double bytesPerRow = Double.NaN;
+    private int previousRows;
+    private long previousFetchNanos;
+    private double fetchRttNanos = Double.NaN;
+
+    /**
+     * @param resultSet the physical result set, whose fetch size is changed between batches
+     * @param fetchSize the fetch size of the first batch
+     * @param maxBatchBytes the largest estimated size of a batch
+     * @param maxRows the largest fetch size
+     * @param rttNanos the round-trip time to the cluster, -1 while unknown; it must not start
+     *     measuring it
+     */
+    AdaptiveFetchSize(
+            ResultSet resultSet,
+            int fetchSize,
+            long maxBatchBytes,
+            int maxRows,
+            LongSupplier rttNanos) {
+        this.resultSet = resultSet;
+        this.fetchSize = fetchSize > 0 ? fetchSize : QueryTimer.DEFAULT_FETCH_SIZE;
+        this.maxBatchBytes = maxBatchBytes;
+        this.maxRows = maxRows;
+        this.rttNanos = rttNanos;
+    }
+
+    /**
+     * Records a row returned by ResultSet.next() and resizes the next batch once this one is
+     * consumed. The client must not have read the row yet.
+     *
+     * @param callNanos the time of the call, which includes the fetch of the first row of a batch
+     * @return the new fetch size, or 0 if it did not change
+     */
+    int rowFetched(long callNanos) throws SQLException {
+        int resized = 0;
+        if (batchRows > 0 && callNanos >= MIN_FETCH_NANOS) {
+            // The call fetched a new batch: the last one held fewer rows than the fetch size
+            resized = endBatch();
+        }
+        if (batchRows == 0) {
+            batchFetchNanos = callNanos;
+            sampleRow();
+        }
+        if (++batchRows >= fetchSize) {
+            // Resize before the call that fetches the next batch
+            resized = endBatch();
+        }
+        return resized;
+    }
+
+    private int endBatch() throws SQLException {
+        sampleRoundTrip(batchRows, batchFetchNanos);
+        long rtt = rttNanos.getAsLong();
+        if (rtt <= 0 && !Double.isNaN(fetchRttNanos)) {
+            rtt = (long) fetchRttNanos;
+        }
+        int next =
+                nextFetchSize(batchRows, batchFetchNanos, rtt, bytesPerRow, maxBatchBytes, maxRows);
+        batchRows = 0;
+        if (next == fetchSize) {
+            return 0;
+        }
+        fetchSize = next;
+        resultSet.setFetchSize(next);
+        return next;
+    }
+
+    private void sampleRoundTrip(int rows, long fetchNanos) {
+        if (previousRows > 0 && previousRows != rows) {
+            double nanosPerRow = (double) (fetchNanos - previousFetchNanos) / (rows - previousRows);
+            double rtt = fetchNanos - nanosPerRow * rows;
+            if (nanosPerRow > 0 && rtt > 0) {
+                fetchRttNanos =
+                        Double.isNaN(fetchRttNanos)
+                                ? rtt
+                                : fetchRttNanos + SMOOTHING * (rtt - fetchRttNanos);
+            }
+        }
+        previousRows = rows;
+        previousFetchNanos = fetchNanos;
+    }
+
+    private void sampleRow() throws SQLException {
+        if (widths == null) {
+            widths = widths(resultSet.getMetaData());
+        }
+        long bytes = 0;
+        for (int i = 0; i < widths.length; i++) {
+            if (widths[i] > 0) {
+                bytes += widths[i];
+            } else {
+                String value = resultSet.getString(i + 1);
+                bytes += VALUE_OVERHEAD + (value == null ? 0 : value.length());
+            }
+        }
+        bytesPerRow =
+                Double.isNaN(bytesPerRow) ? bytes : bytesPerRow + SMOOTHING * (bytes - bytesPerRow);
+    }
+
+    private static int[] widths(ResultSetMetaData metaData) throws SQLException {
+        int[] widths = new int[metaData.getColumnCount()];
+        for (int i = 0; i < widths.length; i++) {
+            switch (metaData.getColumnType(i + 1)) {
+                case Types.BOOLEAN:
+                case Types.BIT:
+                case Types.TINYINT:
+                    widths[i] = 1;
+                    break;
+                case Types.SMALLINT:
+                    widths[i] = 2;
+                    break;
+                case Types.INTEGER:
+                    widths[i] = 4;
+                    break;
+                case Types.BIGINT:
+                case Types.REAL:
+                case Types.FLOAT:
+                case Types.DOUBLE:
+                    widths[i] = 8;
+                    break;
+                default:
+                    // Strings, decimals, dates, timestamps and complex types are sent as strings
+                    widths[i] = 0;
+            }
+        }
+        return widths;
+    }
+
+    /**
+     * @param rows rows in the batch just consumed
+     * @param fetchNanos time of the call that fetched the batch
+     * @param rttNanos round-trip time to the cluster, -1 if unknown
+     * @param bytesPerRow estimated size of a row, NaN if unknown
+     * @param maxBatchBytes the largest estimated size of a batch
+     * @param maxRows the largest fetch size
+     * @return the fetch size of the next batch
+     */
+    @VisibleForTesting
+    static int nextFetchSize(
+            int rows,
+            long fetchNanos,
+            long rttNanos,
+            double bytesPerRow,
+            long maxBatchBytes,
+            int maxRows) {
+        long transferNanos = fetchNanos - rttNanos;
+        long target;
+        if (rttNanos > 0 && transferNanos > 0) {
+            double transferNanosPerRow = (double) transferNanos / rows;
+            target = (long) (TARGET_TRANSFER_ROUND_TRIPS * rttNanos / transferNanosPerRow);
+        } else {
+            // The round trip is unknown, or dwarfs the transfer
+            target = (long) rows * MAX_GROWTH;
+        }
+        target = Math.max(Math.min(target, (long) rows * MAX_GROWTH), rows / MAX_GROWTH);
+        if (bytesPerRow > 0) {
+            target = Math.min(target, (long) (maxBatchBytes / bytesPerRow));
+        }
+        return (int) Math.max(Math.min(target, maxRows), MIN_ROWS);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.cloud.dataproc.v1beta2.Cluster;
+import javax.annotation.Nullable;
+
+/**
+ * Some of the candidates of a pool view: those not ejected by the {@link ClusterHealthTracker}, or
+ * those a failing over connect did not try yet.
+ */
+final class AdmittedClusterPool implements ClusterPool {
+    private final ClusterPool pool;
+    // Index in the underlying view of each member
+    private final int[] members;
+    private final int size;
+
+    AdmittedClusterPool(ClusterPool pool, int[] members, int size) {
+        this.pool = pool;
+        this.members = members;
+        this.size = size;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Cluster cluster(int index) {
+        return pool.cluster(members[index]);
+    }
+
+    @Override
+    public long availableYarnMemoryMb(int index) {
+        return pool.availableYarnMemoryMb(members[index]);
+    }
+
+    @Override
+    @Nullable
+    public String endpointHost(int index) {
+        return pool.endpointHost(members[index]);
+    }
+
+    @Override
+    public double score(int index) {
+        return pool.score(members[index]);
+    }
+}
\ No newline at end of file
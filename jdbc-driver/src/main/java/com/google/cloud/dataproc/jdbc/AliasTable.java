@@ -0,0 +1,100 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import java.util.Random;
+
+/**
+ * Walker's alias table over the scores of a {@link ClusterPool}, draws a candidate with a
+ * probability proportional to its score in constant time and without allocating.
+ *
+ * <p>Building the table is linear in the pool size, so it is built once per pool view and reused
+ * by every pick until the next refresh of the pool.
+ */
+final class AliasTable {
+    // Probability of keeping column i rather than taking its alias, indexed like the pool
+    private final double[] keep;
+    private final int[] alias;
+
+    private AliasTable(double[] keep, int[] alias) {
+        this.keep = keep;
+        this.alias = alias;
+    }
+
+    /**
+     * Builds the table with Vose's method. Candidates scoring 0 are never drawn, unless every
+     * candidate scores 0 in which case they are drawn uniformly.
+     */
+    static AliasTable build(ClusterPool pool) {
+        int size = pool.size();
+        double[] keep = new double[size];
+        int[] alias = new int[size];
+        double totalScore = 0;
+        for (int i = 0; i < size; i++) {
+            keep[i] = pool.score(i);
+            totalScore += keep[i];
+        }
+        if (totalScore <= 0) {
+            for (int i = 0; i < size; i++) {
+                keep[i] = 1;
+                alias[i] = i;
+            }
+            return new AliasTable(keep, alias);
+        }
+
+        // Both work lists share one array, small columns from the start and large from the end
+        int[] work = new int[size];
+        int small = 0;
+        int large = size;
+        for (int i = 0; i < size; i++) {
+            keep[i] = keep[i] * size / totalScore;
+            if (keep[i] < 1) {
+                work[small++] = i;
+            } else {
+                work[--large] = i;
+            }
+        }
+        while (small > 0 && large < size) {
+            int less = work[--small];
+            int more = work[large++];
+            alias[less] = more;
+            keep[more] -= 1 - keep[less];
+            if (keep[more] < 1) {
+                work[small++] = more;
+            } else {
+                work[--large] = more;
+            }
+        }
+        // Whatever is left is 1 up to rounding
+        while (large < size) {
+            int more = work[large++];
+            keep[more] = 1;
+            alias[more] = more;
+        }
+        while (small > 0) {
+            int less = work[--small];
+            keep[less] = 1;
+            alias[less] = less;
+        }
+        return new AliasTable(keep, alias);
+    }
+
+    /** @return the index in the pool of the drawn candidate */
+    int sample(Random random) {
+        int column = random.nextInt(keep.length);
+        return random.nextDouble() < keep[column] ? column : alias[column];
+    }
+}
\ No newline at end of file
@@ -0,0 +1,39 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.auto.value.AutoValue;
+
+/** Snapshot of the driver's cluster lookup cache counters, used to tune the cache TTLs. */
+@AutoValue
+public abstract class ClusterCacheStats {
+
+    /** Lookups answered from a cached successful lookup, without calling the Dataproc API. */
+    public abstract long hitCount();
+
+    /** Lookups answered from a cached lookup that found no cluster. */
+    public abstract long negativeHitCount();
+
+    /** Lookups that had to call the Dataproc API. */
+    public abstract long missCount();
+
+    /** Number of lookups currently cached. */
+    public abstract long size();
+
+    static ClusterCacheStats create(long hitCount, long negativeHitCount, long missCount, long size) {
+        return new AutoValue_ClusterCacheStats(hitCount, negativeHitCount, missCount, size);
+    }
+}
\ No newline at end of file
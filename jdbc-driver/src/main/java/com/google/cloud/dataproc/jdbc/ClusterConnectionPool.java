@@ -0,0 +1,312 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Pool of physical Hive connections to a single cluster.
+ *
+ * <p>Idle connections are reused most recently returned first, and validated with isValid when
+ * they have been idle for a while. Connections past their maximum lifetime are closed instead of
+ * being reused. {@link #maintain()} is expected to be called periodically to retire expired
+ * connections, report leaked ones and keep the minimum number of idle connections open.
+ */
+class ClusterConnectionPool implements AutoCloseable {
+    private static final Logger LOG = Logger.getLogger(ClusterConnectionPool.class.getName());
+
+    // Connections returned more recently than this are handed out without an isValid round trip
+    private static final long VALIDATION_BYPASS_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    // Waiters on a full pool wake up this often to check whether a slot was freed
+    private static final long POLL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /** Opens a new physical connection to the cluster. */
+    interface ConnectionFactory {
+        Connection create() throws SQLException;
+    }
+
+    /** A physical connection with its pool bookkeeping. */
+    private static final class PooledEntry {
+        private final Connection connection;
+        private final long createdNanos;
+        private volatile long lastReturnedNanos;
+        private volatile long borrowedNanos;
+        @Nullable private volatile Throwable borrowSite;
+        private volatile boolean leakReported;
+
+        PooledEntry(Connection connection, long createdNanos) {
+            this.connection = connection;
+            this.createdNanos = createdNanos;
+            this.lastReturnedNanos = createdNanos;
+        }
+    }
+
+    private final String name;
+    private final ConnectionFactory connectionFactory;
+    private final PoolSettings settings;
+    private final SessionDefaults defaults;
+    private final Ticker ticker;
+
+    // One permit per open physical connection, idle or borrowed
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<PooledEntry> idle = new LinkedBlockingDeque<>();
+    private final Set<PooledEntry> borrowed = ConcurrentHashMap.newKeySet();
+    private volatile long lastUsedNanos;
+    private volatile boolean closed;
+
+    /**
+     * @param name identifies the pool in error messages, usually the cluster host
+     * @param connectionFactory opens the physical connections
+     * @param settings the sizing and lifetime settings
+     * @param defaults the session state restored when a client returns a connection
+     * @param ticker time source
+     */
+    ClusterConnectionPool(
+            String name,
+            ConnectionFactory connectionFactory,
+            PoolSettings settings,
+            SessionDefaults defaults,
+            Ticker ticker) {
+        this.name = name;
+        this.connectionFactory = connectionFactory;
+        this.settings = settings;
+        this.defaults = defaults;
+        this.ticker = ticker;
+        this.permits = new Semaphore(settings.maxPoolSize());
+        this.lastUsedNanos = ticker.read();
+    }
+
+    /**
+     * Borrows a connection, opening a new one if no idle connection is usable and the pool is not
+     * full. Closing the returned connection hands it back to the pool.
+     *
+     * @return a logical connection backed by a pooled physical connection
+     * @throws SQLTransientConnectionException if the pool stayed full for the connection timeout
+     */
+    Connection borrow() throws SQLException {
+        long deadline =
+                ticker.read() + TimeUnit.MILLISECONDS.toNanos(settings.connectionTimeoutMillis());
+        while (true) {
+            checkOpen();
+            PooledEntry entry = idle.pollFirst();
+            if (entry == null && permits.tryAcquire()) {
+                return lend(open());
+            }
+            if (entry == null) {
+                long remaining = deadline - ticker.read();
+                if (remaining <= 0) {
+                    throw new SQLTransientConnectionException(
+                            String.format(
+                                    "Timed out after %d ms waiting for a connection to %s, "
+                                            + "all %d are in use.",
+                                    settings.connectionTimeoutMillis(),
+                                    name,
+                                    settings.maxPoolSize()));
+                }
+                try {
+                    entry =
+                            idle.pollFirst(
+                                    Math.min(remaining, POLL_INTERVAL_NANOS), TimeUnit.NANOSECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SQLException("Interrupted while waiting for a connection.", e);
+                }
+                if (entry == null) {
+                    continue;
+                }
+            }
+            if (isExpired(entry, ticker.read()) || !isUsable(entry)) {
+                discard(entry);
+                continue;
+            }
+            return lend(entry);
+        }
+    }
+
+    /**
+     * Closes expired idle connections, reports connections borrowed for longer than the leak
+     * detection threshold and opens connections up to the minimum idle count.
+     */
+    void maintain() {
+        long now = ticker.read();
+        for (PooledEntry entry : idle) {
+            if (isExpired(entry, now) && idle.remove(entry)) {
+                discard(entry);
+            }
+        }
+
+        long leakThresholdNanos =
+                TimeUnit.MILLISECONDS.toNanos(settings.leakDetectionThresholdMillis());
+        if (leakThresholdNanos > 0) {
+            for (PooledEntry entry : borrowed) {
+                if (!entry.leakReported && now - entry.borrowedNanos > leakThresholdNanos) {
+                    entry.leakReported = true;
+                    LOG.log(
+                            Level.WARNING,
+                            String.format(
+                                    "Connection to %s has been borrowed for more than %d ms "
+                                            + "without being closed and may have leaked.",
+                                    name, settings.leakDetectionThresholdMillis()),
+                            entry.borrowSite);
+                }
+            }
+        }
+
+        while (!closed && idle.size() < settings.minIdle() && permits.tryAcquire()) {
+            try {
+                idle.offerLast(open());
+            } catch (SQLException e) {
+                LOG.log(Level.FINE, "Unable to open idle connection to " + name, e);
+                break;
+            }
+        }
+        if (closed) {
+            drainIdle();
+        }
+    }
+
+    /**
+     * @param unusedNanos how long the pool must have gone without borrows and returns
+     * @return whether no connection is borrowed and none was borrowed or returned for unusedNanos
+     */
+    boolean isUnused(long unusedNanos) {
+        return borrowed.isEmpty() && ticker.read() - lastUsedNanos >= unusedNanos;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    /** Closes the idle connections, borrowed connections are closed once they are returned. */
+    @Override
+    public void close() {
+        closed = true;
+        drainIdle();
+    }
+
+    @VisibleForTesting
+    int idleCount() {
+        return idle.size();
+    }
+
+    @VisibleForTesting
+    int borrowedCount() {
+        return borrowed.size();
+    }
+
+    private void checkOpen() throws SQLException {
+        if (closed) {
+            throw new SQLNonTransientConnectionException(
+                    String.format("Connection pool of %s has been closed.", name));
+        }
+    }
+
+    /** Opens a physical connection for an already acquired permit. */
+    private PooledEntry open() throws SQLException {
+        try {
+            return new PooledEntry(connectionFactory.create(), ticker.read());
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private Connection lend(PooledEntry entry) {
+        entry.borrowedNanos = ticker.read();
+        lastUsedNanos = entry.borrowedNanos;
+        entry.leakReported = false;
+        entry.borrowSite =
+                settings.leakDetectionThresholdMillis() > 0
+                        ? new Throwable("Connection borrowed here")
+                        : null;
+        borrowed.add(entry);
+        return new PooledConnectionHandle(
+                entry.connection, defaults, (handle, failure) -> giveBack(entry, failure));
+    }
+
+    private void giveBack(PooledEntry entry, @Nullable SQLException failure) {
+        borrowed.remove(entry);
+        long now = ticker.read();
+        lastUsedNanos = now;
+        if (failure != null) {
+            LOG.log(Level.FINE, "Unable to reset connection to " + name + ", closing it", failure);
+        }
+        if (closed || failure != null || isExpired(entry, now) || isClosed(entry)) {
+            discard(entry);
+            return;
+        }
+        entry.lastReturnedNanos = now;
+        idle.offerFirst(entry);
+        if (closed && idle.remove(entry)) {
+            // Raced with close(), which may have drained the idle connections already
+            discard(entry);
+        }
+    }
+
+    private boolean isExpired(PooledEntry entry, long now) {
+        long maxLifetimeNanos = TimeUnit.MILLISECONDS.toNanos(settings.maxLifetimeMillis());
+        return maxLifetimeNanos > 0 && now - entry.createdNanos >= maxLifetimeNanos;
+    }
+
+    private boolean isUsable(PooledEntry entry) {
+        if (ticker.read() - entry.lastReturnedNanos < VALIDATION_BYPASS_NANOS) {
+            return true;
+        }
+        try {
+            return entry.connection.isValid(settings.validationTimeoutSeconds());
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+
+    private static boolean isClosed(PooledEntry entry) {
+        try {
+            return entry.connection.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    private void drainIdle() {
+        PooledEntry entry;
+        while ((entry = idle.pollFirst()) != null) {
+            discard(entry);
+        }
+    }
+
+    private void discard(PooledEntry entry) {
+        try {
+            entry.connection.close();
+        } catch (SQLException e) {
+            LOG.log(Level.FINE, "Unable to close connection to " + name, e);
+        } finally {
+            permits.release();
+        }
+    }
+}
\ No newline at end of file
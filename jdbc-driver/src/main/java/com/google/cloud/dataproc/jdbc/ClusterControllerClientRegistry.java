@@ -0,0 +1,238 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.cloud.dataproc.v1beta2.ClusterControllerClient;
+import com.google.cloud.dataproc.v1beta2.ClusterControllerSettings;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread-safe registry of long-lived ClusterControllerClients keyed by regional endpoint.
+ *
+ * <p>Creating a ClusterControllerClient sets up a gRPC channel and loads credentials, which is
+ * most of the cost of a connect. Clients are therefore shared by all connections to the same
+ * region, and only closed once they have not been leased for the idle timeout or when the
+ * registry is closed.
+ */
+class ClusterControllerClientRegistry implements AutoCloseable {
+    static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    /** Creates the ClusterControllerClient for a regional endpoint. */
+    interface ClientFactory {
+        ClusterControllerClient create(String endpoint) throws IOException;
+    }
+
+    private final ConcurrentMap<String, Entry> clients = new ConcurrentHashMap<>();
+    private final ClientFactory clientFactory;
+    private final long idleTimeoutNanos;
+    private final Ticker ticker;
+
+    private ScheduledExecutorService evictionExecutor;
+    private volatile boolean closed;
+
+    ClusterControllerClientRegistry() {
+        this(
+                ClusterControllerClientRegistry::createClient,
+                DEFAULT_IDLE_TIMEOUT_MILLIS,
+                Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    ClusterControllerClientRegistry(
+            ClientFactory clientFactory, long idleTimeoutMillis, Ticker ticker) {
+        this.clientFactory = clientFactory;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.ticker = ticker;
+    }
+
+    /**
+     * Formats the Dataproc API endpoint serving the given region.
+     *
+     * @param region the region passed in by the client
+     * @return the regional endpoint, e.g. us-central1-dataproc.googleapis.com:443
+     */
+    static String endpointFor(String region) {
+        return String.format("%s-dataproc.googleapis.com:443", region);
+    }
+
+    private static ClusterControllerClient createClient(String endpoint) throws IOException {
+        ClusterControllerSettings clusterControllerSettings =
+                ClusterControllerSettings.newBuilder().setEndpoint(endpoint).build();
+        return ClusterControllerClient.create(clusterControllerSettings);
+    }
+
+    /**
+     * Leases the shared client of the region, creating it on first use. The client must not be
+     * closed by the caller; closing the returned lease hands it back to the registry.
+     *
+     * @param region the region of the Dataproc API to talk to
+     * @return the lease holding the shared client
+     * @throws IOException if the client cannot be created
+     */
+    Lease acquire(String region) throws IOException {
+        String endpoint = endpointFor(region);
+        while (true) {
+            if (closed) {
+                throw new IOException("ClusterControllerClient registry has been shut down.");
+            }
+            Entry entry = clients.get(endpoint);
+            if (entry == null) {
+                Entry created = new Entry(clientFactory.create(endpoint));
+                entry = clients.putIfAbsent(endpoint, created);
+                if (entry == null) {
+                    entry = created;
+                    startEviction();
+                    if (closed) {
+                        // Raced with close(), which may have missed the new entry
+                        created.forceClose();
+                        clients.remove(endpoint, created);
+                        continue;
+                    }
+                } else {
+                    // Lost the race against another connect to the same region
+                    created.client.close();
+                }
+            }
+            if (entry.retain()) {
+                return new Lease(entry);
+            }
+            // The entry was evicted between lookup and retain, drop it and try again
+            clients.remove(endpoint, entry);
+        }
+    }
+
+    /** Closes every client that has not been leased for longer than the idle timeout. */
+    @VisibleForTesting
+    void evictIdleClients() {
+        long now = ticker.read();
+        for (Map.Entry<String, Entry> mapEntry : clients.entrySet()) {
+            Entry entry = mapEntry.getValue();
+            if (now - entry.lastReleasedNanos >= idleTimeoutNanos && entry.tryClose()) {
+                clients.remove(mapEntry.getKey(), entry);
+            }
+        }
+    }
+
+    @VisibleForTesting
+    int size() {
+        return clients.size();
+    }
+
+    private synchronized void startEviction() {
+        if (evictionExecutor != null || closed) {
+            return;
+        }
+        evictionExecutor =
+                Executors.newSingleThreadScheduledExecutor(
+                        new ThreadFactoryBuilder()
+                                .setDaemon(true)
+                                .setNameFormat("dataproc-client-eviction-%d")
+                                .build());
+        long period = Math.max(idleTimeoutNanos / 2, TimeUnit.SECONDS.toNanos(1));
+        evictionExecutor.scheduleWithFixedDelay(
+                this::evictIdleClients, period, period, TimeUnit.NANOSECONDS);
+    }
+
+    /** Stops the eviction task and closes all clients, including the ones still leased. */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (evictionExecutor != null) {
+            evictionExecutor.shutdownNow();
+        }
+        for (Entry entry : clients.values()) {
+            entry.forceClose();
+        }
+        clients.clear();
+    }
+
+    /** A shared client of one regional endpoint with its lease count. */
+    private final class Entry {
+        private static final int CLOSED = -1;
+
+        private final ClusterControllerClient client;
+        // Number of active leases, or CLOSED once the client has been shut down
+        private final AtomicInteger leases = new AtomicInteger();
+        private volatile long lastReleasedNanos = ticker.read();
+
+        Entry(ClusterControllerClient client) {
+            this.client = client;
+        }
+
+        boolean retain() {
+            while (true) {
+                int current = leases.get();
+                if (current == CLOSED) {
+                    return false;
+                }
+                if (leases.compareAndSet(current, current + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            lastReleasedNanos = ticker.read();
+            leases.updateAndGet(current -> current == CLOSED ? CLOSED : current - 1);
+        }
+
+        boolean tryClose() {
+            if (leases.compareAndSet(0, CLOSED)) {
+                client.close();
+                return true;
+            }
+            return false;
+        }
+
+        void forceClose() {
+            if (leases.getAndSet(CLOSED) != CLOSED) {
+                client.close();
+            }
+        }
+    }
+
+    /** A lease on a shared client, to be closed once the caller is done with the client. */
+    final class Lease implements AutoCloseable {
+        private final Entry entry;
+        private boolean released;
+
+        private Lease(Entry entry) {
+            this.entry = entry;
+        }
+
+        ClusterControllerClient client() {
+            return entry.client;
+        }
+
+        @Override
+        public void close() {
+            if (!released) {
+                released = true;
+                entry.release();
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.auto.value.AutoValue;
+
+/**
+ * Counters of the driver's cluster circuit breakers, to monitor clusters taken out of their pools
+ * after failed connects.
+ */
+@AutoValue
+public abstract class ClusterHealthStats {
+
+    /** Times a cluster was ejected from its pools, including failed half-open probes. */
+    public abstract long ejectionCount();
+
+    /** Times an ejected cluster was let back in after a successful half-open probe. */
+    public abstract long readmissionCount();
+
+    /** Candidates left out of picks because they were ejected. */
+    public abstract long skipCount();
+
+    /** Connects that moved on to another cluster of the pool after a failed attempt. */
+    public abstract long failoverCount();
+
+    /** Number of clusters currently ejected or being probed. */
+    public abstract int ejectedClusterCount();
+
+    static ClusterHealthStats create(
+            long ejectionCount,
+            long readmissionCount,
+            long skipCount,
+            long failoverCount,
+            int ejectedClusterCount) {
+        return new AutoValue_ClusterHealthStats(
+                ejectionCount, readmissionCount, skipCount, failoverCount, ejectedClusterCount);
+    }
+}
\ No newline at end of file
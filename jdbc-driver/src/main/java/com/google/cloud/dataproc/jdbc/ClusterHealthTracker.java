@@ -0,0 +1,357 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Pattern;
+import javax.annotation.Nullable;
+
+/**
+ * Circuit breaker per cluster endpoint host: clusters whose connects keep failing are ejected from
+ * the pools they belong to, whatever their YARN metrics say.
+ *
+ * <p>A cluster is ejected after {@link #CONSECUTIVE_FAILURES} failed connects in a row, or when at
+ * least half of its last {@link #WINDOW} connects failed. It stays out for a backoff that starts
+ * at 30 seconds and doubles with every ejection that follows shortly after the previous one, up to
+ * 10 minutes. Once the backoff is over, a single connect is routed to the cluster as a half-open
+ * probe: if it succeeds the cluster is readmitted, otherwise it is ejected again.
+ *
+ * <p>Only connection failures count, e.g. a HiveServer2 or Component Gateway that does not answer.
+ * Failures the cluster is not to blame for, like rejected credentials, are ignored.
+ */
+final class ClusterHealthTracker {
+    private static final Logger LOG = Logger.getLogger(ClusterHealthTracker.class.getName());
+    // HTTP status of the Component Gateway for a missing, expired or rejected access token, as
+    // reported by Hive's HTTP transport
+    private static final Pattern REJECTED_CREDENTIALS =
+            Pattern.compile("HTTP Response code: 40[137]\\b");
+
+    static final int CONSECUTIVE_FAILURES = 5;
+    static final int WINDOW = 20;
+    // Connects in the window before the failure rate counts
+    static final int MIN_WINDOW_CONNECTS = 10;
+    static final double FAILURE_RATE = 0.5;
+    static final long BASE_EJECTION_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    static final long MAX_EJECTION_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    // A probe that reported nothing in that time, e.g. because its connect was abandoned, is
+    // given to another connect
+    static final long PROBE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+    private static final ClusterHealthTracker SHARED =
+            new ClusterHealthTracker(Ticker.systemTicker());
+
+    private enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /** The breaker of one cluster, guarded by itself. */
+    private static final class Breaker {
+        // Outcomes of the last connects, true for failures
+        final boolean[] window = new boolean[WINDOW];
+        int windowSize;
+        int windowNext;
+        int windowFailures;
+        int consecutiveFailures;
+        // Ejections that followed each other closely, sets the backoff
+        int ejections;
+        State state = State.CLOSED;
+        long ejectedUntilNanos;
+        long probeStartedNanos;
+        long readmittedAtNanos;
+
+        void record(boolean failed) {
+            if (windowSize == WINDOW) {
+                windowFailures -= window[windowNext] ? 1 : 0;
+            } else {
+                windowSize++;
+            }
+            window[windowNext] = failed;
+            windowFailures += failed ? 1 : 0;
+            windowNext = (windowNext + 1) % WINDOW;
+            consecutiveFailures = failed ? consecutiveFailures + 1 : 0;
+        }
+
+        boolean tripped() {
+            return consecutiveFailures >= CONSECUTIVE_FAILURES
+                    || (windowSize >= MIN_WINDOW_CONNECTS
+                            && windowFailures >= FAILURE_RATE * windowSize);
+        }
+
+        void clearWindow() {
+            windowSize = 0;
+            windowNext = 0;
+            windowFailures = 0;
+            consecutiveFailures = 0;
+        }
+    }
+
+    private final ConcurrentMap<String, Breaker> breakers = new ConcurrentHashMap<>();
+    private final Ticker ticker;
+    private final AtomicInteger ejected = new AtomicInteger();
+    // Bumped whenever a cluster is ejected or readmitted, invalidates the admitted views
+    private final AtomicLong generation = new AtomicLong();
+    private final Cache<ClusterPool, Admitted> admitted =
+            CacheBuilder.newBuilder().weakKeys().build();
+    private final LongAdder ejections = new LongAdder();
+    private final LongAdder readmissions = new LongAdder();
+    private final LongAdder skips = new LongAdder();
+    private final LongAdder failovers = new LongAdder();
+
+    /** The admitted view of a pool view, as of a generation. */
+    private static final class Admitted {
+        final long generation;
+        final ClusterPool pool;
+        final int skipped;
+
+        Admitted(long generation, ClusterPool pool, int skipped) {
+            this.generation = generation;
+            this.pool = pool;
+            this.skipped = skipped;
+        }
+    }
+
+    @VisibleForTesting
+    ClusterHealthTracker(Ticker ticker) {
+        this.ticker = ticker;
+    }
+
+    /** @return the tracker shared by all connections of the driver */
+    static ClusterHealthTracker shared() {
+        return SHARED;
+    }
+
+    /**
+     * Claims the half-open probe of an ejected candidate whose backoff is over. The caller must
+     * connect to it and report the outcome.
+     *
+     * @param pool the candidates of a pick
+     * @return the index of the candidate to probe, or -1 if none is due
+     */
+    int claimProbe(ClusterPool pool) {
+        if (ejected.get() == 0) {
+            return -1;
+        }
+        long now = ticker.read();
+        for (int i = 0; i < pool.size(); i++) {
+            Breaker breaker = breaker(pool.endpointHost(i));
+            if (breaker == null) {
+                continue;
+            }
+            synchronized (breaker) {
+                boolean due =
+                        (breaker.state == State.OPEN && now - breaker.ejectedUntilNanos >= 0)
+                                || (breaker.state == State.HALF_OPEN
+                                        && now - breaker.probeStartedNanos
+                                                >= TimeUnit.MILLISECONDS.toNanos(
+                                                        PROBE_TIMEOUT_MILLIS));
+                if (due) {
+                    breaker.state = State.HALF_OPEN;
+                    breaker.probeStartedNanos = now;
+                    return i;
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @param pool the candidates of a pick
+     * @return the candidates that are not ejected, or all of them if every one is
+     */
+    ClusterPool admitted(ClusterPool pool) {
+        if (ejected.get() == 0) {
+            return pool;
+        }
+        long currentGeneration = generation.get();
+        Admitted view = admitted.getIfPresent(pool);
+        if (view == null || view.generation != currentGeneration) {
+            view = admit(pool, currentGeneration);
+            admitted.put(pool, view);
+        }
+        skips.add(view.skipped);
+        return view.pool;
+    }
+
+    private Admitted admit(ClusterPool pool, long currentGeneration) {
+        int[] members = new int[pool.size()];
+        int size = 0;
+        for (int i = 0; i < pool.size(); i++) {
+            Breaker breaker = breaker(pool.endpointHost(i));
+            boolean closed;
+            if (breaker == null) {
+                closed = true;
+            } else {
+                synchronized (breaker) {
+                    closed = breaker.state == State.CLOSED;
+                }
+            }
+            if (closed) {
+                members[size++] = i;
+            }
+        }
+        if (size == 0) {
+            LOG.log(Level.FINE, "Every candidate of the pool is ejected, picking among all");
+            return new Admitted(currentGeneration, pool, 0);
+        }
+        if (size == pool.size()) {
+            return new Admitted(currentGeneration, pool, 0);
+        }
+        return new Admitted(
+                currentGeneration,
+                new AdmittedClusterPool(pool, members, size),
+                pool.size() - size);
+    }
+
+    /** Records a successful connect to the cluster. */
+    void connectSucceeded(@Nullable String host) {
+        if (host == null) {
+            return;
+        }
+        Breaker breaker = breakers.computeIfAbsent(host, ignored -> new Breaker());
+        synchronized (breaker) {
+            breaker.record(false);
+            if (breaker.state == State.HALF_OPEN) {
+                breaker.state = State.CLOSED;
+                breaker.readmittedAtNanos = ticker.read();
+                breaker.clearWindow();
+                readmissions.increment();
+                ejected.decrementAndGet();
+                generation.incrementAndGet();
+                LOG.info(String.format("Readmitting cluster %s to its pools.", host));
+            }
+        }
+    }
+
+    /**
+     * Records a failed connect to the cluster, if the failure is one of the cluster.
+     *
+     * @param host the endpoint host of the cluster, or null if unknown
+     * @param failure why the connect failed
+     */
+    void connectFailed(@Nullable String host, SQLException failure) {
+        if (host == null || !isClusterFailure(failure)) {
+            return;
+        }
+        Breaker breaker = breakers.computeIfAbsent(host, ignored -> new Breaker());
+        synchronized (breaker) {
+            if (breaker.state == State.OPEN) {
+                // A connect started before the ejection
+                return;
+            }
+            breaker.record(true);
+            if (breaker.state == State.HALF_OPEN || breaker.tripped()) {
+                eject(host, breaker);
+            }
+        }
+    }
+
+    // Called with the breaker held
+    private void eject(String host, Breaker breaker) {
+        long now = ticker.read();
+        if (breaker.state == State.CLOSED) {
+            if (breaker.ejections > 0
+                    && now - breaker.readmittedAtNanos
+                            > TimeUnit.MILLISECONDS.toNanos(MAX_EJECTION_MILLIS)) {
+                // Healthy for long enough since the last ejection, start over
+                breaker.ejections = 0;
+            }
+            ejected.incrementAndGet();
+        }
+        long backoffMillis =
+                Math.min(
+                        BASE_EJECTION_MILLIS << Math.min(breaker.ejections, 20),
+                        MAX_EJECTION_MILLIS);
+        breaker.ejections++;
+        breaker.state = State.OPEN;
+        breaker.ejectedUntilNanos = now + TimeUnit.MILLISECONDS.toNanos(backoffMillis);
+        breaker.clearWindow();
+        ejections.increment();
+        generation.incrementAndGet();
+        LOG.warning(
+                String.format(
+                        "Ejecting cluster %s from its pools for %d s after failed connects.",
+                        host, TimeUnit.MILLISECONDS.toSeconds(backoffMillis)));
+    }
+
+    @Nullable
+    private Breaker breaker(@Nullable String host) {
+        return host == null ? null : breakers.get(host);
+    }
+
+    /** Records a connect that moved on to another cluster of the pool after a failed attempt. */
+    void failedOver() {
+        failovers.increment();
+    }
+
+    /**
+     * @param failure why a connect failed
+     * @return whether the failure is one of the cluster rather than of the client
+     */
+    static boolean isClusterFailure(SQLException failure) {
+        if (isCredentialsFailure(failure)) {
+            return false;
+        }
+        if (failure instanceof SQLTransientConnectionException
+                || failure instanceof SQLNonTransientConnectionException) {
+            return true;
+        }
+        // Hive reports transport failures with SQLState 08S01, sometimes with a leading space
+        String state = failure.getSQLState();
+        return state != null && state.trim().startsWith("08");
+    }
+
+    /**
+     * Hive reports the Component Gateway rejecting the credentials of the client, and the client
+     * failing to get a token, as transport failures with SQLState 08S01.
+     *
+     * @param failure why a connect failed
+     * @return whether the failure is one of the credentials of the client
+     */
+    static boolean isCredentialsFailure(SQLException failure) {
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DataprocCGAuthInterceptor.TokenUnavailableException) {
+                return true;
+            }
+            String message = cause.getMessage();
+            if (message != null && REJECTED_CREDENTIALS.matcher(message).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** @return a snapshot of the ejection counters */
+    ClusterHealthStats stats() {
+        return ClusterHealthStats.create(
+                ejections.sum(), readmissions.sum(), skips.sum(), failovers.sum(), ejected.get());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.sql.Connection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+
+/**
+ * Counts the connections this driver has open and the statements open on them, per cluster
+ * endpoint host.
+ *
+ * <p>Unlike the YARN metrics of the Dataproc API, which lag by minutes, the counts change as soon
+ * as a connection is opened, so routing on them spreads a burst of connects over the pool. The
+ * statement counters are striped, statements on different threads don't contend on them. The
+ * counters of a cluster are dropped once its last connection is closed.
+ */
+final class ClusterLoadTracker {
+    private static final ClusterLoadTracker SHARED = new ClusterLoadTracker();
+
+    /** The counters of one cluster. */
+    static final class Load {
+        // Only changed within a compute of the entry, so that it is dropped at 0 without a race
+        private final LongAdder connections = new LongAdder();
+        private final LongAdder statements = new LongAdder();
+
+        void statementOpened() {
+            statements.increment();
+        }
+
+        void statementClosed() {
+            statements.decrement();
+        }
+
+        long connections() {
+            return connections.sum();
+        }
+
+        long statements() {
+            return statements.sum();
+        }
+    }
+
+    private final ConcurrentMap<String, Load> loads = new ConcurrentHashMap<>();
+
+    @VisibleForTesting
+    ClusterLoadTracker() {}
+
+    /** @return the tracker shared by all connections of the driver */
+    static ClusterLoadTracker shared() {
+        return SHARED;
+    }
+
+    /**
+     * Wraps a newly opened connection so that it and its statements are counted against the
+     * cluster until they are closed.
+     *
+     * @param host the endpoint host of the cluster, or null if unknown
+     * @param connection the physical connection to the cluster
+     * @return the counted connection, or the connection itself if the host is unknown
+     */
+    Connection track(@Nullable String host, Connection connection) {
+        if (host == null) {
+            return connection;
+        }
+        Load load =
+                loads.compute(
+                        host,
+                        (ignored, current) -> {
+                            Load opened = current == null ? new Load() : current;
+                            opened.connections.increment();
+                            return opened;
+                        });
+        return new LoadTrackingConnection(connection, load, () -> connectionClosed(host));
+    }
+
+    private void connectionClosed(String host) {
+        loads.computeIfPresent(
+                host,
+                (ignored, load) -> {
+                    load.connections.decrement();
+                    return load.connections.sum() > 0 ? load : null;
+                });
+    }
+
+    /**
+     * @param host the endpoint host of the cluster
+     * @return the connections plus the statements open on the cluster, 0 if none was ever opened
+     */
+    long inFlight(@Nullable String host) {
+        Load load = host == null ? null : loads.get(host);
+        return load == null ? 0 : load.connections() + load.statements();
+    }
+
+    @VisibleForTesting
+    @Nullable
+    Load load(String host) {
+        return loads.get(host);
+    }
+}
\ No newline at end of file
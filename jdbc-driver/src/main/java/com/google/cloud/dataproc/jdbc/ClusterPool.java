@@ -0,0 +1,48 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.cloud.dataproc.v1beta2.Cluster;
+import javax.annotation.Nullable;
+
+/**
+ * Read-only, index-based view of the candidate clusters of a cluster pool, handed to a {@link
+ * ClusterSelectionStrategy}. A view never changes while a strategy reads it.
+ */
+public interface ClusterPool {
+
+    /** Number of candidate clusters, always at least 1. */
+    int size();
+
+    /** The candidate cluster at the index, from 0 to size() - 1. */
+    Cluster cluster(int index);
+
+    /** The yarn-memory-mb-available metric of the candidate at the index, 0 when not reported. */
+    long availableYarnMemoryMb(int index);
+
+    /**
+     * The Component Gateway host the driver connects to for the candidate at the index, null when
+     * the cluster has no endpoint.
+     */
+    @Nullable
+    String endpointHost(int index);
+
+    /**
+     * How much room the candidate at the index has for new sessions, 0 or more, higher is better.
+     * Scores are only comparable between candidates of the same view.
+     */
+    double score(int index);
+}
\ No newline at end of file
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.auto.value.AutoValue;
+import com.google.cloud.dataproc.v1beta2.Cluster;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Lists the clusters of a cluster pool that spans several projects or regions, with one listing
+ * per project and region running in parallel.
+ *
+ * <p>Each listing gets the region timeout of the pool. A listing that fails or times out is
+ * logged and left out, the pool is made of the clusters the other listings found, so one slow
+ * region does not hold up connects to the others. Such a listing is marked partial, for the
+ * caches to keep it only briefly. The listing only fails when none of them found a cluster.
+ */
+final class ClusterPoolFanOut {
+    private static final Logger LOG = Logger.getLogger(ClusterPoolFanOut.class.getName());
+
+    private static final ClusterPoolFanOut SHARED =
+            new ClusterPoolFanOut(
+                    Executors.newCachedThreadPool(
+                            new ThreadFactoryBuilder()
+                                    .setNameFormat("dataproc-pool-list-%d")
+                                    .setDaemon(true)
+                                    .build()));
+
+    /** Lists the candidate clusters of the pool in one project and region. */
+    interface LocationLister {
+        /**
+         * @return the candidate clusters, never empty
+         * @throws InvalidURLException if no cluster matches in the project and region
+         * @throws SQLException if the listing failed
+         */
+        ImmutableList<Cluster> list(String projectId, String region) throws SQLException;
+    }
+
+    /** The candidate clusters of a pool, as found by the listings of its projects and regions. */
+    @AutoValue
+    abstract static class Listing {
+        abstract ImmutableList<Cluster> clusters();
+
+        // Some project or region failed or timed out and was left out
+        abstract boolean partial();
+
+        static Listing create(ImmutableList<Cluster> clusters, boolean partial) {
+            return new AutoValue_ClusterPoolFanOut_Listing(clusters, partial);
+        }
+    }
+
+    private final ExecutorService executor;
+
+    @VisibleForTesting
+    ClusterPoolFanOut(ExecutorService executor) {
+        this.executor = executor;
+    }
+
+    /** The fan-out shared by all connections, its threads are daemons. */
+    static ClusterPoolFanOut shared() {
+        return SHARED;
+    }
+
+    /**
+     * Lists the pool in each of its projects and regions. A pool with a single project and region
+     * is listed on the calling thread, without timeout.
+     *
+     * @param key the pool to list
+     * @param lister lists the pool in one project and region
+     * @return the candidate clusters of all projects and regions, never empty
+     * @throws InvalidURLException if no listing found a cluster and none failed
+     * @throws SQLException the first failure if no listing found a cluster
+     */
+    Listing list(ClusterResolutionCache.Key key, LocationLister lister) throws SQLException {
+        ImmutableList<String> projectIds = key.projectIds();
+        ImmutableList<String> regions = key.regions();
+        if (projectIds.size() == 1 && regions.size() == 1) {
+            return Listing.create(lister.list(projectIds.get(0), regions.get(0)), false);
+        }
+
+        List<String> locations = new ArrayList<>();
+        List<Future<ImmutableList<Cluster>>> listings = new ArrayList<>();
+        for (String projectId : projectIds) {
+            for (String region : regions) {
+                locations.add(projectId + "/" + region);
+                listings.add(executor.submit(() -> lister.list(projectId, region)));
+            }
+        }
+
+        // Listings run in parallel, so they all share the deadline of the first one
+        long deadlineNanos =
+                System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(key.regionTimeoutMillis());
+        ImmutableList.Builder<Cluster> clusters = ImmutableList.builder();
+        SQLException failure = null;
+        for (int i = 0; i < listings.size(); i++) {
+            Future<ImmutableList<Cluster>> listing = listings.get(i);
+            try {
+                clusters.addAll(
+                        listing.get(deadlineNanos - System.nanoTime(), TimeUnit.NANOSECONDS));
+            } catch (ExecutionException e) {
+                if (!(e.getCause() instanceof InvalidURLException)) {
+                    LOG.log(Level.WARNING, "Unable to list clusters in " + locations.get(i), e);
+                    failure = firstFailure(failure, e.getCause());
+                }
+            } catch (TimeoutException e) {
+                listing.cancel(true);
+                LOG.log(
+                        Level.WARNING,
+                        String.format(
+                                "Listing clusters in %s took more than %d ms, leaving them out",
+                                locations.get(i), key.regionTimeoutMillis()));
+                failure = firstFailure(failure, e);
+            } catch (InterruptedException e) {
+                listings.forEach(pending -> pending.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new SQLException(e);
+            }
+        }
+
+        ImmutableList<Cluster> found = clusters.build();
+        if (found.isEmpty()) {
+            if (failure != null) {
+                throw failure;
+            }
+            throw new InvalidURLException(
+                    String.format(
+                            "Unable to find active clusters matching label %s in %s.\n",
+                            key.poolFilter(), String.join(", ", locations)));
+        }
+        return Listing.create(found, failure != null);
+    }
+
+    private static SQLException firstFailure(@Nullable SQLException first, Throwable failure) {
+        if (first != null) {
+            return first;
+        }
+        return failure instanceof SQLException
+                ? (SQLException) failure
+                : new SQLException(failure);
+    }
+}
\ No newline at end of file
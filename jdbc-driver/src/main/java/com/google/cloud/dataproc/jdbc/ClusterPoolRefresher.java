@@ -0,0 +1,274 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.sql.SQLException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Keeps a snapshot of the candidate clusters of each cluster pool in use, refreshed in the
+ * background, so that connects with clusterPoolLabel pick a cluster without calling the Dataproc
+ * API.
+ *
+ * <p>The first connect to a pool lists its clusters synchronously, later connects are served from
+ * the snapshot. A failed refresh keeps the previous snapshot and is reported through {@link
+ * #stats()}, for at most {@link #MAX_STALE_REFRESHES} refresh intervals: an older snapshot is
+ * dropped and the next connect lists the clusters itself. A refresh that finds no cluster drops
+ * the snapshot at once, so connects report it instead of targeting deleted clusters. A partial
+ * listing, which left out a project or region, counts as a failed refresh, and is not kept as the
+ * snapshot of a pool used for the first time: the clusters left out would be missing from the
+ * pick until the next refresh. Pools that
+ * have not been used for the idle timeout stop being refreshed and are dropped, the next connect
+ * to them lists the clusters again.
+ */
+class ClusterPoolRefresher implements AutoCloseable {
+    private static final Logger LOG = Logger.getLogger(ClusterPoolRefresher.class.getName());
+
+    static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    // Refresh intervals after which a snapshot the refreshes failed to replace is dropped
+    static final int MAX_STALE_REFRESHES = 3;
+
+    private static final ClusterPoolRefresher DISABLED =
+            new ClusterPoolRefresher(
+                    key -> ClusterPoolFanOut.Listing.create(ImmutableList.of(), false),
+                    0,
+                    Ticker.systemTicker(),
+                    null);
+
+    /** Lists the candidate clusters of a pool, on a background thread. */
+    interface Lister {
+        /**
+         * @param key the pool to list, with its project, region and filter
+         * @return the candidate clusters, never empty, and whether the listing left some out
+         * @throws SQLException if the listing failed or found no cluster
+         */
+        ClusterPoolFanOut.Listing list(ClusterResolutionCache.Key key) throws SQLException;
+    }
+
+    /** A pool in use and its latest snapshot. */
+    private static final class Pool {
+        private final ClusterResolutionCache.Key key;
+        private final long maxAgeNanos;
+        private final LongAdder refreshFailures = new LongAdder();
+        private volatile ClusterPoolSnapshot snapshot;
+        private volatile long lastUsedNanos;
+        @Nullable private volatile String lastRefreshFailure;
+        @Nullable private volatile ScheduledFuture<?> refreshTask;
+
+        Pool(
+                ClusterResolutionCache.Key key,
+                long maxAgeNanos,
+                ClusterPoolSnapshot snapshot,
+                long lastUsedNanos) {
+            this.key = key;
+            this.maxAgeNanos = maxAgeNanos;
+            this.snapshot = snapshot;
+            this.lastUsedNanos = lastUsedNanos;
+        }
+    }
+
+    private final ConcurrentMap<ClusterResolutionCache.Key, Pool> pools = new ConcurrentHashMap<>();
+    private final Lister lister;
+    private final long idleTimeoutNanos;
+    private final Ticker ticker;
+
+    @Nullable private ScheduledExecutorService scheduler;
+    private volatile boolean closed;
+
+    ClusterPoolRefresher(Lister lister) {
+        this(lister, DEFAULT_IDLE_TIMEOUT_MILLIS, Ticker.systemTicker(), null);
+    }
+
+    /**
+     * @param scheduler runs the refreshes, null to create a daemon scheduler on first use
+     */
+    @VisibleForTesting
+    ClusterPoolRefresher(
+            Lister lister,
+            long idleTimeoutMillis,
+            Ticker ticker,
+            @Nullable ScheduledExecutorService scheduler) {
+        this.lister = lister;
+        this.idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        this.ticker = ticker;
+        this.scheduler = scheduler;
+    }
+
+    /** A refresher that keeps nothing, every call lists the clusters through the loader. */
+    static ClusterPoolRefresher disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Returns the current snapshot of the pool. On the first use of the pool the clusters are
+     * loaded synchronously and refreshed in the background from then on.
+     *
+     * @param key the pool, see {@link ClusterResolutionCache.Key#forPool}
+     * @param refreshSeconds interval of the background refresh, 0 disables it
+     * @param initialLoader loads the clusters when the pool has no snapshot yet
+     * @return the candidate clusters of the pool
+     */
+    ClusterPoolSnapshot snapshot(
+            ClusterResolutionCache.Key key,
+            long refreshSeconds,
+            ClusterResolutionCache.PoolLoader initialLoader)
+            throws SQLException {
+        Pool pool = pools.get(key);
+        if (pool != null) {
+            long now = ticker.read();
+            ClusterPoolSnapshot snapshot = pool.snapshot;
+            if (now - snapshot.listedAtNanos() < pool.maxAgeNanos) {
+                pool.lastUsedNanos = now;
+                return snapshot;
+            }
+            // The refreshes kept failing, the clusters may be gone
+            stop(pool);
+        }
+
+        ClusterPoolFanOut.Listing listing = initialLoader.load();
+        ClusterPoolSnapshot snapshot =
+                ClusterPoolSnapshot.create(listing.clusters(), ticker.read());
+        if (this == DISABLED || refreshSeconds <= 0 || closed || listing.partial()) {
+            return snapshot;
+        }
+        Pool created =
+                new Pool(
+                        key,
+                        TimeUnit.SECONDS.toNanos(refreshSeconds * MAX_STALE_REFRESHES),
+                        snapshot,
+                        ticker.read());
+        Pool existing = pools.putIfAbsent(key, created);
+        if (existing != null) {
+            // Another connect started refreshing the pool meanwhile
+            existing.lastUsedNanos = ticker.read();
+            return existing.snapshot;
+        }
+        created.refreshTask =
+                scheduler()
+                        .scheduleWithFixedDelay(
+                                () -> refresh(created),
+                                refreshSeconds,
+                                refreshSeconds,
+                                TimeUnit.SECONDS);
+        return snapshot;
+    }
+
+    @VisibleForTesting
+    void refresh(ClusterResolutionCache.Key key) {
+        Pool pool = pools.get(key);
+        if (pool != null) {
+            refresh(pool);
+        }
+    }
+
+    private void refresh(Pool pool) {
+        if (ticker.read() - pool.lastUsedNanos >= idleTimeoutNanos) {
+            stop(pool);
+            return;
+        }
+        try {
+            ClusterPoolFanOut.Listing listing = lister.list(pool.key);
+            if (listing.partial()) {
+                refreshFailed(pool, "Listing left out some projects or regions of the pool", null);
+                return;
+            }
+            pool.snapshot = ClusterPoolSnapshot.create(listing.clusters(), ticker.read());
+        } catch (InvalidURLException e) {
+            // No cluster matches the pool anymore, the next connect lists them and reports it
+            LOG.log(
+                    Level.INFO,
+                    String.format(
+                            "Cluster pool %s in %s/%s has no cluster left, dropping its snapshot.",
+                            pool.key.poolFilter(), pool.key.projectId(), pool.key.region()),
+                    e);
+            stop(pool);
+        } catch (SQLException | RuntimeException e) {
+            refreshFailed(pool, e.getMessage(), e);
+        }
+    }
+
+    private static void refreshFailed(Pool pool, String reason, @Nullable Exception failure) {
+        pool.refreshFailures.increment();
+        pool.lastRefreshFailure = reason;
+        LOG.log(
+                Level.WARNING,
+                String.format(
+                        "Unable to refresh cluster pool %s in %s/%s, keeping the previous "
+                                + "snapshot.",
+                        pool.key.poolFilter(), pool.key.projectId(), pool.key.region()),
+                failure);
+    }
+
+    private void stop(Pool pool) {
+        pools.remove(pool.key, pool);
+        ScheduledFuture<?> refreshTask = pool.refreshTask;
+        if (refreshTask != null) {
+            refreshTask.cancel(false);
+        }
+    }
+
+    /** @return the refresh state of every pool in use */
+    ImmutableList<ClusterPoolStats> stats() {
+        long now = ticker.read();
+        ImmutableList.Builder<ClusterPoolStats> stats = ImmutableList.builder();
+        for (Pool pool : pools.values()) {
+            ClusterPoolSnapshot snapshot = pool.snapshot;
+            stats.add(
+                    ClusterPoolStats.create(
+                            pool.key.projectId(),
+                            pool.key.region(),
+                            pool.key.poolFilter(),
+                            snapshot.clusters().size(),
+                            TimeUnit.NANOSECONDS.toMillis(now - snapshot.listedAtNanos()),
+                            pool.refreshFailures.sum(),
+                            pool.lastRefreshFailure));
+        }
+        return stats.build();
+    }
+
+    private synchronized ScheduledExecutorService scheduler() {
+        if (scheduler == null) {
+            scheduler =
+                    Executors.newScheduledThreadPool(
+                            2,
+                            new ThreadFactoryBuilder()
+                                    .setNameFormat("dataproc-pool-refresh-%d")
+                                    .setDaemon(true)
+                                    .build());
+        }
+        return scheduler;
+    }
+
+    /** Stops refreshing all pools. */
+    @Override
+    public void close() {
+        closed = true;
+        pools.values().forEach(this::stop);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.cloud.dataproc.v1beta2.Cluster;
+import com.google.common.collect.ImmutableList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.annotation.Nullable;
+
+/**
+ * Immutable view of the candidate clusters of a cluster pool and their available YARN memory, as
+ * of one listing of the Dataproc API.
+ */
+final class ClusterPoolSnapshot implements ClusterPool {
+    private final ImmutableList<Cluster> clusters;
+    // Indexed like clusters, read on every pick so kept unboxed
+    private final long[] availableYarnMemoryMb;
+    private final String[] endpointHosts;
+    private final long listedAtNanos;
+    // Views of the snapshot under the scorings of the URLs using it
+    private final ConcurrentMap<ClusterScoring, ClusterPool> scored = new ConcurrentHashMap<>();
+
+    private ClusterPoolSnapshot(
+            ImmutableList<Cluster> clusters,
+            long[] availableYarnMemoryMb,
+            String[] endpointHosts,
+            long listedAtNanos) {
+        this.clusters = clusters;
+        this.availableYarnMemoryMb = availableYarnMemoryMb;
+        this.endpointHosts = endpointHosts;
+        this.listedAtNanos = listedAtNanos;
+    }
+
+    /**
+     * @param clusters the candidate clusters, never empty
+     * @param listedAtNanos ticker time of the listing
+     */
+    static ClusterPoolSnapshot create(ImmutableList<Cluster> clusters, long listedAtNanos) {
+        long[] availableYarnMemoryMb = new long[clusters.size()];
+        String[] endpointHosts = new String[clusters.size()];
+        for (int i = 0; i < availableYarnMemoryMb.length; i++) {
+            Cluster cluster = clusters.get(i);
+            availableYarnMemoryMb[i] =
+                    cluster.hasMetrics()
+                            ? cluster.getMetrics().getYarnMetricsOrDefault(ClusterScoring.YARN_MEMORY, 0)
+                            : 0;
+            endpointHosts[i] = DataprocInfo.endpointHost(cluster);
+        }
+        return new ClusterPoolSnapshot(
+                clusters, availableYarnMemoryMb, endpointHosts, listedAtNanos);
+    }
+
+    @Override
+    public int size() {
+        return availableYarnMemoryMb.length;
+    }
+
+    @Override
+    public Cluster cluster(int index) {
+        return clusters.get(index);
+    }
+
+    @Override
+    public long availableYarnMemoryMb(int index) {
+        return availableYarnMemoryMb[index];
+    }
+
+    @Override
+    @Nullable
+    public String endpointHost(int index) {
+        return endpointHosts[index];
+    }
+
+    /** The snapshot itself scores candidates on their available YARN memory alone. */
+    @Override
+    public double score(int index) {
+        return Math.max(availableYarnMemoryMb[index], 0);
+    }
+
+    /**
+     * @param scoring how to score the candidates
+     * @return the candidates that pass the thresholds of the scoring, with their scores
+     */
+    ClusterPool scored(ClusterScoring scoring) {
+        return scored.computeIfAbsent(scoring, ignored -> scoring.score(this));
+    }
+
+    ImmutableList<Cluster> clusters() {
+        return clusters;
+    }
+
+    // Ticker time of the listing the snapshot was built from
+    long listedAtNanos() {
+        return listedAtNanos;
+    }
+}
\ No newline at end of file
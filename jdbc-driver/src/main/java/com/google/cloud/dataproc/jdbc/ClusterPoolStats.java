@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.auto.value.AutoValue;
+import javax.annotation.Nullable;
+
+/** State of the background refresh of one cluster pool, to monitor how fresh routing data is. */
+@AutoValue
+public abstract class ClusterPoolStats {
+
+    public abstract String projectId();
+
+    public abstract String region();
+
+    /** The Dataproc API filter of the pool, built from clusterPoolLabel. */
+    public abstract String filter();
+
+    /** Number of candidate clusters in the current snapshot. */
+    public abstract int clusterCount();
+
+    /** Time since the current snapshot was listed. */
+    public abstract long snapshotAgeMillis();
+
+    /** Background refreshes that failed since the pool was first used. */
+    public abstract long refreshFailureCount();
+
+    /** Message of the most recent failed refresh, null if none failed. */
+    @Nullable
+    public abstract String lastRefreshFailure();
+
+    static ClusterPoolStats create(
+            String projectId,
+            String region,
+            String filter,
+            int clusterCount,
+            long snapshotAgeMillis,
+            long refreshFailureCount,
+            @Nullable String lastRefreshFailure) {
+        return new AutoValue_ClusterPoolStats(
+                projectId,
+                region,
+                filter,
+                clusterCount,
+                snapshotAgeMillis,
+                refreshFailureCount,
+                lastRefreshFailure);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.auto.value.AutoValue;
+import com.google.cloud.dataproc.v1beta2.Cluster;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableList;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.annotation.Nullable;
+
+/**
+ * Bounded cache of cluster lookups against the Dataproc API, shared by all connections of the
+ * driver.
+ *
+ * <p>Entries are keyed by project, region and either the cluster name or the normalized pool
+ * filter, and hold the clusters the lookup returned. Lookups that found no cluster are cached as
+ * well, usually for a shorter time, so a misconfigured URL does not hit the API on every retry.
+ * Each lookup carries its own TTLs, taken from the URL that triggered it. Pool listings that left
+ * out a project or region are kept for at most {@link #PARTIAL_TTL_SECONDS}, so the clusters left
+ * out come back as soon as their region answers again.
+ */
+class ClusterResolutionCache {
+    static final long DEFAULT_MAXIMUM_SIZE = 1000;
+    static final long PARTIAL_TTL_SECONDS = 5;
+
+    private static final ClusterResolutionCache DISABLED =
+            new ClusterResolutionCache(0, Ticker.systemTicker());
+
+    /** Performs the actual lookup on a cache miss. */
+    interface Loader {
+        /**
+         * @return the clusters found by the lookup
+         * @throws InvalidURLException if no cluster matches, which is cached as a negative entry
+         * @throws SQLException on any other failure, which is not cached
+         */
+        ImmutableList<Cluster> load() throws SQLException;
+    }
+
+    /** Performs the listing of a cluster pool on a cache miss. */
+    interface PoolLoader {
+        /**
+         * @return the clusters found by the listing, and whether it left some out
+         * @throws InvalidURLException if no cluster matches, which is cached as a negative entry
+         * @throws SQLException on any other failure, which is not cached
+         */
+        ClusterPoolFanOut.Listing load() throws SQLException;
+    }
+
+    /**
+     * Identifies a lookup by cluster name, or by cluster pool filter along with the projects,
+     * regions and limits of the listing.
+     */
+    @AutoValue
+    abstract static class Key {
+        // The project, or the comma-separated projects of a pool spanning several
+        abstract String projectId();
+
+        // The region, or the comma-separated regions of a pool spanning several
+        abstract String region();
+
+        @Nullable
+        abstract String clusterName();
+
+        @Nullable
+        abstract String poolFilter();
+
+        // Clusters per page of the pool listing, 0 for the API default
+        abstract int pageSize();
+
+        // Candidates after which the pool listing stops, 0 lists them all
+        abstract int maxCandidates();
+
+        // Tells candidates from clusters over a metric limit, set when maxCandidates is
+        @Nullable
+        abstract ClusterScoring candidateScoring();
+
+        // How long the listing of a pool spanning several projects or regions waits for each
+        abstract long regionTimeoutMillis();
+
+        ImmutableList<String> projectIds() {
+            return ImmutableList.copyOf(projectId().split(","));
+        }
+
+        ImmutableList<String> regions() {
+            return ImmutableList.copyOf(region().split(","));
+        }
+
+        static Key forCluster(String projectId, String region, String clusterName) {
+            return new AutoValue_ClusterResolutionCache_Key(
+                    projectId, region, clusterName, null, 0, 0, null, 0);
+        }
+
+        static Key forPool(String projectId, String region, String filter) {
+            return forPool(
+                    ImmutableList.of(projectId),
+                    ImmutableList.of(region),
+                    filter,
+                    0,
+                    0,
+                    ClusterScoring.DEFAULT,
+                    0);
+        }
+
+        /**
+         * The filter terms are sorted so that the same labels in a different order share an entry.
+         * The scoring is only kept with a limit on candidates, the full listing does not depend on
+         * it.
+         */
+        static Key forPool(
+                List<String> projectIds,
+                List<String> regions,
+                String filter,
+                int pageSize,
+                int maxCandidates,
+                ClusterScoring candidateScoring,
+                long regionTimeoutMillis) {
+            String[] terms = filter.split(" AND ");
+            Arrays.sort(terms);
+            return new AutoValue_ClusterResolutionCache_Key(
+                    String.join(",", projectIds),
+                    String.join(",", regions),
+                    null,
+                    String.join(" AND ", terms),
+                    pageSize,
+                    maxCandidates,
+                    maxCandidates > 0 ? candidateScoring : null,
+                    regionTimeoutMillis);
+        }
+    }
+
+    /** A cached lookup result, either the clusters found or the failure of a negative lookup. */
+    private static final class Entry {
+        @Nullable private final ClusterPoolFanOut.Listing listing;
+        @Nullable private final InvalidURLException failure;
+        private final long expiresAtNanos;
+
+        Entry(
+                @Nullable ClusterPoolFanOut.Listing listing,
+                @Nullable InvalidURLException failure,
+                long expiresAtNanos) {
+            this.listing = listing;
+            this.failure = failure;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+
+    private final Cache<Key, Entry> entries;
+    private final Ticker ticker;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder negativeHits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    ClusterResolutionCache() {
+        this(DEFAULT_MAXIMUM_SIZE, Ticker.systemTicker());
+    }
+
+    @VisibleForTesting
+    ClusterResolutionCache(long maximumSize, Ticker ticker) {
+        this.entries = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+        this.ticker = ticker;
+    }
+
+    /** A cache that stores nothing, every lookup goes to the loader. */
+    static ClusterResolutionCache disabled() {
+        return DISABLED;
+    }
+
+    /**
+     * Returns the clusters cached for the key, or loads and caches them.
+     *
+     * @param key the lookup to perform
+     * @param ttlSeconds how long a successful lookup stays cached, 0 disables caching
+     * @param negativeTtlSeconds how long a lookup that found no cluster stays cached
+     * @param loader performs the lookup on a miss
+     * @return the clusters found by the lookup
+     * @throws InvalidURLException if no cluster matches, either cached or freshly looked up
+     */
+    ImmutableList<Cluster> get(Key key, long ttlSeconds, long negativeTtlSeconds, Loader loader)
+            throws SQLException {
+        return getPool(
+                        key,
+                        ttlSeconds,
+                        negativeTtlSeconds,
+                        () -> ClusterPoolFanOut.Listing.create(loader.load(), false))
+                .clusters();
+    }
+
+    /**
+     * Returns the pool listing cached for the key, or lists the pool and caches the listing. A
+     * partial listing is cached for at most {@link #PARTIAL_TTL_SECONDS}.
+     *
+     * @param key the pool to list
+     * @param ttlSeconds how long a complete listing stays cached, 0 disables caching
+     * @param negativeTtlSeconds how long a listing that found no cluster stays cached
+     * @param loader lists the pool on a miss
+     * @return the listing of the pool
+     * @throws InvalidURLException if no cluster matches, either cached or freshly listed
+     */
+    ClusterPoolFanOut.Listing getPool(
+            Key key, long ttlSeconds, long negativeTtlSeconds, PoolLoader loader)
+            throws SQLException {
+        if (this == DISABLED || (ttlSeconds <= 0 && negativeTtlSeconds <= 0)) {
+            return loader.load();
+        }
+
+        Entry entry = entries.getIfPresent(key);
+        if (entry != null && entry.expiresAtNanos - ticker.read() > 0) {
+            return unwrap(entry, /* fromCache= */ true);
+        }
+        if (entry != null) {
+            entries.asMap().remove(key, entry);
+        }
+
+        misses.increment();
+        try {
+            // Concurrent misses on the same key wait for a single lookup
+            entry = entries.get(key, () -> load(loader, ttlSeconds, negativeTtlSeconds));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof SQLException) {
+                throw (SQLException) e.getCause();
+            }
+            throw new SQLException(e.getCause());
+        }
+        if (entry.expiresAtNanos - ticker.read() <= 0) {
+            // TTL of 0 for this kind of result, don't keep it around
+            entries.asMap().remove(key, entry);
+        }
+        return unwrap(entry, /* fromCache= */ false);
+    }
+
+    private Entry load(PoolLoader loader, long ttlSeconds, long negativeTtlSeconds)
+            throws SQLException {
+        try {
+            ClusterPoolFanOut.Listing listing = loader.load();
+            return new Entry(
+                    listing,
+                    null,
+                    expiresAt(
+                            listing.partial()
+                                    ? Math.min(ttlSeconds, PARTIAL_TTL_SECONDS)
+                                    : ttlSeconds));
+        } catch (InvalidURLException e) {
+            return new Entry(null, e, expiresAt(negativeTtlSeconds));
+        }
+    }
+
+    private long expiresAt(long ttlSeconds) {
+        return ticker.read() + TimeUnit.SECONDS.toNanos(Math.max(ttlSeconds, 0));
+    }
+
+    private ClusterPoolFanOut.Listing unwrap(Entry entry, boolean fromCache)
+            throws InvalidURLException {
+        if (entry.failure != null) {
+            if (fromCache) {
+                negativeHits.increment();
+                // Fresh exception so callers get their own stack trace
+                throw new InvalidURLException(entry.failure.getMessage(), entry.failure);
+            }
+            throw entry.failure;
+        }
+        if (fromCache) {
+            hits.increment();
+        }
+        return entry.listing;
+    }
+
+    /** Drops the cached lookup of the key, if any. */
+    void invalidate(Key key) {
+        entries.invalidate(key);
+    }
+
+    /** Drops all cached lookups. */
+    void invalidateAll() {
+        entries.invalidateAll();
+    }
+
+    /** @return a snapshot of the hit and miss counters */
+    ClusterCacheStats stats() {
+        return ClusterCacheStats.create(
+                hits.sum(), negativeHits.sum(), misses.sum(), entries.size());
+    }
+}
\ No newline at end of file
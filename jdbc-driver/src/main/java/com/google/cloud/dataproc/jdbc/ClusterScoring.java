@@ -0,0 +1,190 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.auto.value.AutoValue;
+import com.google.cloud.dataproc.v1beta2.Cluster;
+import com.google.cloud.dataproc.v1beta2.ClusterMetrics;
+import com.google.common.collect.ImmutableMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * How the candidates of a cluster pool are scored from their YARN and HDFS metrics before a
+ * {@link ClusterSelectionStrategy} picks one.
+ *
+ * <p>Each metric with a weight is divided by its largest value in the pool so that metrics of
+ * different units can be combined, the score of a cluster is the weighted sum of its normalized
+ * metrics, or 0 if that sum is negative. Negative weights penalize metrics such as pending
+ * containers. Clusters reporting a metric under its minimum or over its maximum are excluded from
+ * the pick, unless that would exclude every cluster. Metrics a cluster does not report neither
+ * score nor exclude it.
+ */
+@AutoValue
+abstract class ClusterScoring {
+    private static final Logger LOG = Logger.getLogger(ClusterScoring.class.getName());
+
+    static final String YARN_MEMORY = "yarn-memory-mb-available";
+    static final String YARN_VCORES = "yarn-vcores-available";
+
+    /** Scores on available YARN memory, skipping clusters without a free vcore. */
+    static final ClusterScoring DEFAULT =
+            create(
+                    ImmutableMap.of(YARN_MEMORY, 1.0),
+                    ImmutableMap.of(YARN_VCORES, 1L),
+                    ImmutableMap.of());
+
+    abstract ImmutableMap<String, Double> weights();
+
+    abstract ImmutableMap<String, Long> minimums();
+
+    abstract ImmutableMap<String, Long> maximums();
+
+    static ClusterScoring create(
+            ImmutableMap<String, Double> weights,
+            ImmutableMap<String, Long> minimums,
+            ImmutableMap<String, Long> maximums) {
+        return new AutoValue_ClusterScoring(weights, minimums, maximums);
+    }
+
+    /**
+     * Parses the scoring URL properties, each a comma separated list of metric:value pairs.
+     *
+     * @param weights value of clusterScoreWeights, null for the default weights
+     * @param minimums value of clusterMetricMinimums, null for the default minimums
+     * @param maximums value of clusterMetricMaximums, null for none
+     * @return the scoring
+     * @throws InvalidURLException if a list is malformed
+     */
+    static ClusterScoring parse(
+            @Nullable String weights, @Nullable String minimums, @Nullable String maximums)
+            throws InvalidURLException {
+        return create(
+                weights == null
+                        ? DEFAULT.weights()
+                        : parseList("clusterScoreWeights", weights, Double::valueOf),
+                minimums == null
+                        ? DEFAULT.minimums()
+                        : parseList("clusterMetricMinimums", minimums, Long::valueOf),
+                maximums == null
+                        ? ImmutableMap.of()
+                        : parseList("clusterMetricMaximums", maximums, Long::valueOf));
+    }
+
+    private static <T> ImmutableMap<String, T> parseList(
+            String field, String value, Function<String, T> parser) throws InvalidURLException {
+        ImmutableMap.Builder<String, T> parsed = ImmutableMap.builder();
+        if (value.isEmpty()) {
+            return parsed.build();
+        }
+        for (String pair : value.split(",")) {
+            int separator = pair.lastIndexOf(':');
+            T number = null;
+            if (separator > 0) {
+                try {
+                    number = parser.apply(pair.substring(separator + 1));
+                } catch (NumberFormatException e) {
+                    // Reported below
+                }
+            }
+            HiveUrlUtils.checkUrl(
+                    number != null,
+                    "'%s=%s' Please provide a comma separated list of metric:number, e.g. %s.",
+                    field,
+                    value,
+                    "yarn-memory-mb-available:1,yarn-containers-pending:-0.5");
+            parsed.put(pair.substring(0, separator), number);
+        }
+        try {
+            return parsed.build();
+        } catch (IllegalArgumentException e) {
+            throw new InvalidURLException(
+                    String.format("'%s=%s' Each metric may only be listed once.", field, value), e);
+        }
+    }
+
+    /**
+     * Scores the candidates of a snapshot.
+     *
+     * @param snapshot the candidates
+     * @return the candidates that pass the thresholds, with their scores
+     */
+    ClusterPool score(ClusterPoolSnapshot snapshot) {
+        int size = snapshot.size();
+        int[] members = new int[size];
+        int memberCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (withinLimits(snapshot.cluster(i))) {
+                members[memberCount++] = i;
+            }
+        }
+        if (memberCount == 0) {
+            LOG.fine("Every cluster of the pool is over a metric limit, picking from all of them.");
+            for (int i = 0; i < size; i++) {
+                members[i] = i;
+            }
+            memberCount = size;
+        }
+
+        double[] scores = new double[memberCount];
+        for (Map.Entry<String, Double> weight : weights().entrySet()) {
+            long max = 0;
+            for (int i = 0; i < memberCount; i++) {
+                max = Math.max(max, metric(snapshot.cluster(members[i]), weight.getKey(), 0));
+            }
+            if (max == 0) {
+                continue;
+            }
+            for (int i = 0; i < memberCount; i++) {
+                long value = metric(snapshot.cluster(members[i]), weight.getKey(), 0);
+                scores[i] += weight.getValue() * value / max;
+            }
+        }
+        for (int i = 0; i < memberCount; i++) {
+            scores[i] = Math.max(scores[i], 0);
+        }
+        return new ScoredClusterPool(snapshot, members, memberCount, scores);
+    }
+
+    /** @return whether the cluster reports no metric under its minimum or over its maximum */
+    boolean withinLimits(Cluster cluster) {
+        for (Map.Entry<String, Long> minimum : minimums().entrySet()) {
+            if (metric(cluster, minimum.getKey(), Long.MAX_VALUE) < minimum.getValue()) {
+                return false;
+            }
+        }
+        for (Map.Entry<String, Long> maximum : maximums().entrySet()) {
+            if (metric(cluster, maximum.getKey(), Long.MIN_VALUE) > maximum.getValue()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return the YARN or HDFS metric of the cluster, or the default if it doesn't report it */
+    private static long metric(Cluster cluster, String name, long defaultValue) {
+        if (!cluster.hasMetrics()) {
+            return defaultValue;
+        }
+        ClusterMetrics metrics = cluster.getMetrics();
+        if (metrics.containsYarnMetrics(name)) {
+            return metrics.getYarnMetricsOrThrow(name);
+        }
+        return metrics.getHdfsMetricsOrDefault(name, defaultValue);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,118 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The cluster selection strategies known to the driver: the built-in ones and those found with
+ * ServiceLoader when the class is loaded. A strategy with the name of one already registered is
+ * ignored.
+ */
+final class ClusterSelectionStrategies {
+    private static final Logger LOG = Logger.getLogger(ClusterSelectionStrategies.class.getName());
+
+    static final String DEFAULT = WeightedRandomSelection.NAME;
+
+    private static final ImmutableMap<String, ClusterSelectionStrategy> STRATEGIES = load();
+
+    private ClusterSelectionStrategies() {}
+
+    /** @return whether a strategy of the name is known */
+    static boolean exists(String name) {
+        return STRATEGIES.containsKey(name);
+    }
+
+    /**
+     * @param name the value of the clusterSelection URL property
+     * @return whether the strategy picks on the connections counted by {@link ClusterLoadTracker},
+     *     which are only counted for the pools using such a strategy
+     */
+    static boolean readsLoad(String name) {
+        ClusterSelectionStrategy strategy = STRATEGIES.get(name);
+        return strategy != null && strategy.readsLoad();
+    }
+
+    /** @return the names of the known strategies, for error messages */
+    static String names() {
+        return String.join(", ", STRATEGIES.keySet());
+    }
+
+    /**
+     * @param name the value of the clusterSelection URL property
+     * @return the strategy of the name
+     * @throws InvalidURLException if no strategy has the name
+     */
+    static ClusterSelectionStrategy get(String name) throws InvalidURLException {
+        ClusterSelectionStrategy strategy = STRATEGIES.get(name);
+        if (strategy == null) {
+            throw new InvalidURLException(
+                    String.format(
+                            "'%s' Unknown clusterSelection, available strategies are: %s",
+                            name, names()));
+        }
+        return strategy;
+    }
+
+    private static ImmutableMap<String, ClusterSelectionStrategy> load() {
+        Map<String, ClusterSelectionStrategy> strategies = new LinkedHashMap<>();
+        register(strategies, new WeightedRandomSelection());
+        register(strategies, new LeastLoadedSelection());
+        register(strategies, new RoundRobinSelection());
+        register(strategies, new PowerOfTwoSelection());
+        register(strategies, new InFlightPowerOfTwoSelection());
+        register(strategies, new ConsistentHashSelection());
+        register(strategies, new LatencyAwareSelection());
+
+        Iterator<ClusterSelectionStrategy> providers =
+                ServiceLoader.load(
+                                ClusterSelectionStrategy.class,
+                                ClusterSelectionStrategies.class.getClassLoader())
+                        .iterator();
+        while (true) {
+            try {
+                if (!providers.hasNext()) {
+                    break;
+                }
+                register(strategies, providers.next());
+            } catch (ServiceConfigurationError e) {
+                // A broken provider should not take the built-in strategies down with it
+                LOG.log(Level.WARNING, "Unable to load cluster selection strategy", e);
+            }
+        }
+        return ImmutableMap.copyOf(strategies);
+    }
+
+    private static void register(
+            Map<String, ClusterSelectionStrategy> strategies, ClusterSelectionStrategy strategy) {
+        ClusterSelectionStrategy existing = strategies.putIfAbsent(strategy.name(), strategy);
+        if (existing != null && existing != strategy) {
+            LOG.warning(
+                    String.format(
+                            "Ignoring cluster selection strategy %s, the name %s is taken by %s.",
+                            strategy.getClass().getName(),
+                            strategy.name(),
+                            existing.getClass().getName()));
+        }
+    }
+}
\ No newline at end of file
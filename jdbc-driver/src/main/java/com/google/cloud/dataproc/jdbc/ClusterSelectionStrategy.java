@@ -0,0 +1,50 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+/**
+ * Picks the cluster of a cluster pool a connection goes to.
+ *
+ * <p>The strategy is chosen with the clusterSelection URL property. Besides the built-in
+ * strategies, implementations are discovered with {@link java.util.ServiceLoader}: list the class
+ * name in META-INF/services/com.google.cloud.dataproc.jdbc.ClusterSelectionStrategy and give it a
+ * public no-argument constructor. A single instance serves all connections, so implementations
+ * must be thread-safe.
+ */
+public interface ClusterSelectionStrategy {
+
+    /** The value of the clusterSelection URL property that selects this strategy. */
+    String name();
+
+    /**
+     * Picks one of the candidate clusters.
+     *
+     * @param pool the candidate clusters, never empty
+     * @param context the connection the cluster is picked for
+     * @return the index of the picked cluster in the pool
+     */
+    int select(ClusterPool pool, SelectionContext context);
+
+    /**
+     * Whether the strategy picks on the connections and statements this driver has open on each
+     * cluster. The driver only counts them for the pools whose strategy reads them.
+     *
+     * @return false unless overridden
+     */
+    default boolean readsLoad() {
+        return false;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,506 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.util.List;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TBinaryColumn;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TBoolColumn;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TByteColumn;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TColumn;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TDoubleColumn;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TI16Column;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TI32Column;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TI64Column;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TRowSet;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TStringColumn;
+
+/**
+ * A batch of rows of a column-based {@link TRowSet}, decoded once into one primitive array per
+ * column along with its null bitmap, so that the typed getters read them without boxing.
+ *
+ * <p>The getters of a column convert its values the way Hive's result set converts the objects of
+ * its rows. A getter that has no conversion from the type of the column throws {@link
+ * ClassCastException}, and one that fails to parse a string column {@link NumberFormatException}.
+ * The value arrays hold 0 or empty values on the rows the null bitmap marks as null.
+ */
+final class ColumnBatch {
+    static final ColumnBatch EMPTY = new ColumnBatch(new Column[0], 0);
+
+    /** The values of one column of the batch. */
+    abstract static class Column {
+        private final byte[] nulls;
+
+        Column(byte[] nulls) {
+            this.nulls = nulls;
+        }
+
+        /** Bit i of the bitmap, least significant bit first, is set if row i is null. */
+        final boolean isNull(int row) {
+            int index = row >> 3;
+            return index < nulls.length && (nulls[index] & (1 << (row & 7))) != 0;
+        }
+
+        abstract int size();
+
+        /** @return the value of the row as Hive's result set returns it from getObject */
+        abstract Object get(int row);
+
+        abstract boolean getBoolean(int row);
+
+        abstract int getInt(int row);
+
+        abstract long getLong(int row);
+
+        abstract double getDouble(int row);
+
+        abstract String getString(int row);
+    }
+
+    private final Column[] columns;
+    private final int rowCount;
+
+    private ColumnBatch(Column[] columns, int rowCount) {
+        this.columns = columns;
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * @param rowSet the rows of a FetchResults call, in the column-based format of the protocol
+     *     versions from V6 on
+     */
+    static ColumnBatch decode(TRowSet rowSet) throws SQLException {
+        if (!rowSet.isSetColumns()) {
+            throw new SQLException("HiveServer2 returned a row-based row set, expected columns");
+        }
+        List<TColumn> values = rowSet.getColumns();
+        Column[] columns = new Column[values.size()];
+        for (int i = 0; i < columns.length; i++) {
+            columns[i] = decode(values.get(i));
+        }
+        return new ColumnBatch(columns, columns.length == 0 ? 0 : columns[0].size());
+    }
+
+    private static Column decode(TColumn column) throws SQLException {
+        switch (column.getSetField()) {
+            case BOOL_VAL:
+                {
+                    TBoolColumn bools = column.getBoolVal();
+                    List<Boolean> values = bools.getValues();
+                    boolean[] decoded = new boolean[values.size()];
+                    for (int i = 0; i < decoded.length; i++) {
+                        decoded[i] = values.get(i);
+                    }
+                    return new BoolColumn(decoded, nulls(bools.getNulls()));
+                }
+            case BYTE_VAL:
+                {
+                    TByteColumn bytes = column.getByteVal();
+                    List<Byte> values = bytes.getValues();
+                    byte[] decoded = new byte[values.size()];
+                    for (int i = 0; i < decoded.length; i++) {
+                        decoded[i] = values.get(i);
+                    }
+                    return new ByteColumn(decoded, nulls(bytes.getNulls()));
+                }
+            case I16_VAL:
+                {
+                    TI16Column shorts = column.getI16Val();
+                    List<Short> values = shorts.getValues();
+                    short[] decoded = new short[values.size()];
+                    for (int i = 0; i < decoded.length; i++) {
+                        decoded[i] = values.get(i);
+                    }
+                    return new ShortColumn(decoded, nulls(shorts.getNulls()));
+                }
+            case I32_VAL:
+                {
+                    TI32Column ints = column.getI32Val();
+                    List<Integer> values = ints.getValues();
+                    int[] decoded = new int[values.size()];
+                    for (int i = 0; i < decoded.length; i++) {
+                        decoded[i] = values.get(i);
+                    }
+                    return new IntColumn(decoded, nulls(ints.getNulls()));
+                }
+            case I64_VAL:
+                {
+                    TI64Column longs = column.getI64Val();
+                    List<Long> values = longs.getValues();
+                    long[] decoded = new long[values.size()];
+                    for (int i = 0; i < decoded.length; i++) {
+                        decoded[i] = values.get(i);
+                    }
+                    return new LongColumn(decoded, nulls(longs.getNulls()));
+                }
+            case DOUBLE_VAL:
+                {
+                    TDoubleColumn doubles = column.getDoubleVal();
+                    List<Double> values = doubles.getValues();
+                    double[] decoded = new double[values.size()];
+                    for (int i = 0; i < decoded.length; i++) {
+                        decoded[i] = values.get(i);
+                    }
+                    return new DoubleColumn(decoded, nulls(doubles.getNulls()));
+                }
+            case STRING_VAL:
+                {
+                    TStringColumn strings = column.getStringVal();
+                    return new StringColumn(
+                            strings.getValues().toArray(new String[0]),
+                            nulls(strings.getNulls()));
+                }
+            case BINARY_VAL:
+                {
+                    TBinaryColumn binaries = column.getBinaryVal();
+                    List<ByteBuffer> values = binaries.getValues();
+                    byte[][] decoded = new byte[values.size()][];
+                    for (int i = 0; i < decoded.length; i++) {
+                        ByteBuffer value = values.get(i).duplicate();
+                        decoded[i] = new byte[value.remaining()];
+                        value.get(decoded[i]);
+                    }
+                    return new BinaryColumn(decoded, nulls(binaries.getNulls()));
+                }
+            default:
+                throw new SQLException("Unsupported column in row set: " + column.getSetField());
+        }
+    }
+
+    private static byte[] nulls(byte[] nulls) {
+        return nulls == null ? new byte[0] : nulls;
+    }
+
+    int rowCount() {
+        return rowCount;
+    }
+
+    int columnCount() {
+        return columns.length;
+    }
+
+    /** @param index the index of the column, from 0 */
+    Column column(int index) {
+        return columns[index];
+    }
+
+    private static final class BoolColumn extends Column {
+        private final boolean[] values;
+
+        BoolColumn(boolean[] values, byte[] nulls) {
+            super(nulls);
+            this.values = values;
+        }
+
+        @Override
+        int size() {
+            return values.length;
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        boolean getBoolean(int row) {
+            return values[row];
+        }
+
+        @Override
+        int getInt(int row) {
+            throw new ClassCastException("boolean");
+        }
+
+        @Override
+        long getLong(int row) {
+            throw new ClassCastException("boolean");
+        }
+
+        @Override
+        double getDouble(int row) {
+            throw new ClassCastException("boolean");
+        }
+
+        @Override
+        String getString(int row) {
+            return Boolean.toString(values[row]);
+        }
+    }
+
+    /** A column of integers, converted from their long value. */
+    private abstract static class IntegralColumn extends Column {
+        IntegralColumn(byte[] nulls) {
+            super(nulls);
+        }
+
+        @Override
+        boolean getBoolean(int row) {
+            return getInt(row) != 0;
+        }
+
+        @Override
+        int getInt(int row) {
+            return (int) getLong(row);
+        }
+
+        @Override
+        double getDouble(int row) {
+            return getLong(row);
+        }
+
+        @Override
+        String getString(int row) {
+            return Long.toString(getLong(row));
+        }
+    }
+
+    private static final class ByteColumn extends IntegralColumn {
+        private final byte[] values;
+
+        ByteColumn(byte[] values, byte[] nulls) {
+            super(nulls);
+            this.values = values;
+        }
+
+        @Override
+        int size() {
+            return values.length;
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        long getLong(int row) {
+            return values[row];
+        }
+    }
+
+    private static final class ShortColumn extends IntegralColumn {
+        private final short[] values;
+
+        ShortColumn(short[] values, byte[] nulls) {
+            super(nulls);
+            this.values = values;
+        }
+
+        @Override
+        int size() {
+            return values.length;
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        long getLong(int row) {
+            return values[row];
+        }
+    }
+
+    private static final class IntColumn extends IntegralColumn {
+        private final int[] values;
+
+        IntColumn(int[] values, byte[] nulls) {
+            super(nulls);
+            this.values = values;
+        }
+
+        @Override
+        int size() {
+            return values.length;
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        int getInt(int row) {
+            return values[row];
+        }
+
+        @Override
+        long getLong(int row) {
+            return values[row];
+        }
+    }
+
+    private static final class LongColumn extends IntegralColumn {
+        private final long[] values;
+
+        LongColumn(long[] values, byte[] nulls) {
+            super(nulls);
+            this.values = values;
+        }
+
+        @Override
+        int size() {
+            return values.length;
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        long getLong(int row) {
+            return values[row];
+        }
+    }
+
+    private static final class DoubleColumn extends Column {
+        private final double[] values;
+
+        DoubleColumn(double[] values, byte[] nulls) {
+            super(nulls);
+            this.values = values;
+        }
+
+        @Override
+        int size() {
+            return values.length;
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        boolean getBoolean(int row) {
+            return (int) values[row] != 0;
+        }
+
+        @Override
+        int getInt(int row) {
+            return (int) values[row];
+        }
+
+        @Override
+        long getLong(int row) {
+            return (long) values[row];
+        }
+
+        @Override
+        double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        String getString(int row) {
+            return Double.toString(values[row]);
+        }
+    }
+
+    /** Strings, as well as the decimals, dates, timestamps and complex types sent as strings. */
+    private static final class StringColumn extends Column {
+        private final String[] values;
+
+        StringColumn(String[] values, byte[] nulls) {
+            super(nulls);
+            this.values = values;
+        }
+
+        @Override
+        int size() {
+            return values.length;
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        boolean getBoolean(int row) {
+            return !values[row].equals("0");
+        }
+
+        @Override
+        int getInt(int row) {
+            return Integer.parseInt(values[row].trim());
+        }
+
+        @Override
+        long getLong(int row) {
+            return Long.parseLong(values[row].trim());
+        }
+
+        @Override
+        double getDouble(int row) {
+            return Double.parseDouble(values[row].trim());
+        }
+
+        @Override
+        String getString(int row) {
+            return values[row];
+        }
+    }
+
+    private static final class BinaryColumn extends Column {
+        private final byte[][] values;
+
+        BinaryColumn(byte[][] values, byte[] nulls) {
+            super(nulls);
+            this.values = values;
+        }
+
+        @Override
+        int size() {
+            return values.length;
+        }
+
+        @Override
+        Object get(int row) {
+            return values[row];
+        }
+
+        @Override
+        boolean getBoolean(int row) {
+            throw new ClassCastException("binary");
+        }
+
+        @Override
+        int getInt(int row) {
+            throw new ClassCastException("binary");
+        }
+
+        @Override
+        long getLong(int row) {
+            throw new ClassCastException("binary");
+        }
+
+        @Override
+        double getDouble(int row) {
+            throw new ClassCastException("binary");
+        }
+
+        @Override
+        String getString(int row) {
+            return new String(values[row], StandardCharsets.UTF_8);
+        }
+    }
+}
\ No newline at end of file
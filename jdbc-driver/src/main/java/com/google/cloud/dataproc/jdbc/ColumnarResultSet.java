@@ -0,0 +1,659 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Calendar;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+import org.apache.hive.jdbc.shaded.org.apache.hive.jdbc.HiveQueryResultSet;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TCLIService;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TFetchOrientation;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TFetchResultsReq;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TFetchResultsResp;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TOperationHandle;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TRowSet;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TStatus;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TStatusCode;
+import org.apache.hive.jdbc.shaded.org.apache.thrift.TException;
+
+/**
+ * Result set that reads the column-based row sets of HiveServer2 as they arrive, instead of the
+ * rows Hive's result set rebuilds from them.
+ *
+ * <p>Each FetchResults call returns a batch of fetchSize rows, which is decoded once into a {@link
+ * ColumnBatch} of primitive arrays. getInt, getLong, getDouble and the other typed getters read
+ * them directly, without the boxed value of each cell that Hive's getters go through. The getters
+ * convert the values the way Hive's result set does, getters Hive does not support are forwarded
+ * and fail the same way.
+ *
+ * <p>Hive's result set still provides the metadata of the rows, and closes the operation when
+ * this result set is closed. Only the rows are read from the operation here: the physical result
+ * set must not be read by anyone else.
+ */
+final class ColumnarResultSet extends ForwardingResultSet {
+    private static final Logger LOG = Logger.getLogger(ColumnarResultSet.class.getName());
+
+    /** Fetches the next rows of the operation of a result set. */
+    interface RowSetSource {
+        /**
+         * @param maxRows the most rows to fetch
+         * @return the next rows, none once the operation has returned all of them
+         */
+        TRowSet fetch(int maxRows) throws SQLException;
+    }
+
+    /** Receives the rows read by {@link #nextRows}. */
+    interface RowRunConsumer {
+        /**
+         * @param batch the batch holding the rows
+         * @param from the index of the first row in the batch
+         * @param to the index after the last row
+         */
+        void accept(ColumnBatch batch, int from, int to) throws SQLException;
+    }
+
+    private final ResultSet resultSet;
+    private final RowSetSource source;
+    private final int maxRows;
+    // JDBC types of the columns, for the values HiveServer2 sends as strings
+    private final int[] columnTypes;
+    private int fetchSize;
+    private boolean closed;
+
+    private ColumnBatch batch = ColumnBatch.EMPTY;
+    // Index of the current row in the batch, the batch has no row at this index if there is none
+    private int row;
+    private int rowNumber;
+    private boolean exhausted;
+    private boolean afterLast;
+    private boolean wasNull;
+
+    /**
+     * @param resultSet the physical result set, which provides the metadata of the rows
+     * @param source fetches the rows of its operation
+     * @param maxRows the most rows the result set returns, 0 for no limit
+     */
+    @VisibleForTesting
+    ColumnarResultSet(ResultSet resultSet, RowSetSource source, int maxRows) throws SQLException {
+        this.resultSet = resultSet;
+        this.source = source;
+        this.maxRows = maxRows;
+        ResultSetMetaData metaData = resultSet.getMetaData();
+        this.columnTypes = new int[metaData.getColumnCount()];
+        for (int i = 0; i < columnTypes.length; i++) {
+            columnTypes[i] = metaData.getColumnType(i + 1);
+        }
+        int size = resultSet.getFetchSize();
+        this.fetchSize = size > 0 ? size : QueryTimer.DEFAULT_FETCH_SIZE;
+    }
+
+    /**
+     * @param resultSet the physical result set, only read by the returned result set from now on
+     * @return the result set reading the row sets of its operation, or null if it is not one of
+     *     Hive's result sets
+     */
+    @Nullable
+    static ColumnarResultSet of(ResultSet resultSet) throws SQLException {
+        RowSetSource source = HiveRowSetSource.of(resultSet);
+        if (source == null) {
+            return null;
+        }
+        Statement statement = resultSet.getStatement();
+        return new ColumnarResultSet(
+                resultSet, source, statement == null ? 0 : statement.getMaxRows());
+    }
+
+    @Override
+    protected ResultSet delegate() {
+        return resultSet;
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+        if (closed) {
+            throw new SQLException("Resultset is closed");
+        }
+        if (maxRows > 0 && rowNumber >= maxRows) {
+            exhausted = true;
+        } else if (row + 1 < batch.rowCount()) {
+            row++;
+            rowNumber++;
+            return true;
+        } else if (!exhausted) {
+            int size = maxRows > 0 ? Math.min(fetchSize, maxRows - rowNumber) : fetchSize;
+            batch = ColumnBatch.decode(source.fetch(size));
+            row = 0;
+            if (batch.rowCount() > 0) {
+                rowNumber++;
+                return true;
+            }
+            exhausted = true;
+        }
+        batch = ColumnBatch.EMPTY;
+        row = 0;
+        afterLast = rowNumber > 0;
+        return false;
+    }
+
+    /**
+     * Moves over up to maxRows rows at once, for readers that copy whole columns. The rows are
+     * handed to the consumer as a run of rows of the batch they are in, so fewer rows than asked
+     * for are read at the end of a batch. The cursor is left on the last of them.
+     *
+     * @param maxRows the most rows to read, positive
+     * @param consumer receives the rows
+     * @return the number of rows read, 0 once there is no row left
+     */
+    int nextRows(int maxRows, RowRunConsumer consumer) throws SQLException {
+        if (!next()) {
+            return 0;
+        }
+        int from = row;
+        int count = Math.min(batch.rowCount() - from, maxRows);
+        row += count - 1;
+        rowNumber += count - 1;
+        consumer.accept(batch, from, from + count);
+        return count;
+    }
+
+    /** Applies to the next FetchResults call. */
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        if (rows < 0) {
+            throw new SQLException("Fetch size must be greater or equal to 0");
+        }
+        fetchSize = rows > 0 ? rows : QueryTimer.DEFAULT_FETCH_SIZE;
+    }
+
+    @Override
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (!closed) {
+            closed = true;
+            batch = ColumnBatch.EMPTY;
+            resultSet.close();
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public int getRow() {
+        return row < batch.rowCount() ? rowNumber : 0;
+    }
+
+    @Override
+    public boolean isBeforeFirst() {
+        return rowNumber == 0 && !exhausted;
+    }
+
+    @Override
+    public boolean isAfterLast() {
+        return afterLast;
+    }
+
+    @Override
+    public boolean wasNull() {
+        return wasNull;
+    }
+
+    private ColumnBatch.Column column(int columnIndex) throws SQLException {
+        if (row >= batch.rowCount()) {
+            throw new SQLException(closed ? "Resultset is closed" : "No row found");
+        }
+        if (columnIndex < 1 || columnIndex > batch.columnCount()) {
+            throw new SQLException("Invalid columnIndex: " + columnIndex);
+        }
+        ColumnBatch.Column column = batch.column(columnIndex - 1);
+        wasNull = column.isNull(row);
+        return column;
+    }
+
+    private static SQLException cannotConvert(int columnIndex, String type, Exception cause) {
+        return new SQLException(
+                String.format("Cannot convert column %d to %s", columnIndex, type), cause);
+    }
+
+    @Override
+    public Object getObject(int columnIndex) throws SQLException {
+        ColumnBatch.Column column = column(columnIndex);
+        if (wasNull) {
+            return null;
+        }
+        Object value = column.get(row);
+        if (!(value instanceof String) || columnIndex > columnTypes.length) {
+            return value;
+        }
+        String text = (String) value;
+        try {
+            switch (columnTypes[columnIndex - 1]) {
+                case Types.DECIMAL:
+                    return new BigDecimal(text.trim());
+                case Types.DATE:
+                    return Date.valueOf(text);
+                case Types.TIMESTAMP:
+                    return Timestamp.valueOf(text);
+                default:
+                    return text;
+            }
+        } catch (IllegalArgumentException e) {
+            throw cannotConvert(columnIndex, "object", e);
+        }
+    }
+
+    @Override
+    public <T> T getObject(int columnIndex, Class<T> type) throws SQLException {
+        Object value = getObject(columnIndex);
+        if (value == null || type.isInstance(value)) {
+            return type.cast(value);
+        } else if (type == String.class) {
+            return type.cast(getString(columnIndex));
+        }
+        throw cannotConvert(columnIndex, type.getName(), null);
+    }
+
+    @Override
+    public String getString(int columnIndex) throws SQLException {
+        ColumnBatch.Column column = column(columnIndex);
+        return wasNull ? null : column.getString(row);
+    }
+
+    @Override
+    public boolean getBoolean(int columnIndex) throws SQLException {
+        ColumnBatch.Column column = column(columnIndex);
+        try {
+            return !wasNull && column.getBoolean(row);
+        } catch (ClassCastException e) {
+            throw cannotConvert(columnIndex, "boolean", e);
+        }
+    }
+
+    @Override
+    public byte getByte(int columnIndex) throws SQLException {
+        ColumnBatch.Column column = column(columnIndex);
+        try {
+            return wasNull ? 0 : (byte) column.getInt(row);
+        } catch (NumberFormatException | ClassCastException e) {
+            throw cannotConvert(columnIndex, "byte", e);
+        }
+    }
+
+    @Override
+    public short getShort(int columnIndex) throws SQLException {
+        ColumnBatch.Column column = column(columnIndex);
+        try {
+            return wasNull ? 0 : (short) column.getInt(row);
+        } catch (NumberFormatException | ClassCastException e) {
+            throw cannotConvert(columnIndex, "short", e);
+        }
+    }
+
+    @Override
+    public int getInt(int columnIndex) throws SQLException {
+        ColumnBatch.Column column = column(columnIndex);
+        try {
+            return wasNull ? 0 : column.getInt(row);
+        } catch (NumberFormatException | ClassCastException e) {
+            throw cannotConvert(columnIndex, "integer", e);
+        }
+    }
+
+    @Override
+    public long getLong(int columnIndex) throws SQLException {
+        ColumnBatch.Column column = column(columnIndex);
+        try {
+            return wasNull ? 0 : column.getLong(row);
+        } catch (NumberFormatException | ClassCastException e) {
+            throw cannotConvert(columnIndex, "long", e);
+        }
+    }
+
+    @Override
+    public float getFloat(int columnIndex) throws SQLException {
+        ColumnBatch.Column column = column(columnIndex);
+        try {
+            return wasNull ? 0 : (float) column.getDouble(row);
+        } catch (NumberFormatException | ClassCastException e) {
+            throw cannotConvert(columnIndex, "float", e);
+        }
+    }
+
+    @Override
+    public double getDouble(int columnIndex) throws SQLException {
+        ColumnBatch.Column column = column(columnIndex);
+        try {
+            return wasNull ? 0 : column.getDouble(row);
+        } catch (NumberFormatException | ClassCastException e) {
+            throw cannotConvert(columnIndex, "double", e);
+        }
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
+        Object value = getObject(columnIndex);
+        if (value == null || value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        }
+        try {
+            return new BigDecimal(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw cannotConvert(columnIndex, "BigDecimal", e);
+        }
+    }
+
+    @Override
+    @Deprecated
+    public BigDecimal getBigDecimal(int columnIndex, int scale) throws SQLException {
+        BigDecimal value = getBigDecimal(columnIndex);
+        return value == null ? null : value.setScale(scale, RoundingMode.HALF_EVEN);
+    }
+
+    @Override
+    public byte[] getBytes(int columnIndex) throws SQLException {
+        Object value = getObject(columnIndex);
+        if (value == null || value instanceof byte[]) {
+            return (byte[]) value;
+        } else if (value instanceof String) {
+            return ((String) value).getBytes(StandardCharsets.UTF_8);
+        }
+        throw cannotConvert(columnIndex, "bytes", null);
+    }
+
+    @Override
+    public Date getDate(int columnIndex) throws SQLException {
+        Object value = getObject(columnIndex);
+        try {
+            if (value == null || value instanceof Date) {
+                return (Date) value;
+            } else if (value instanceof String) {
+                return Date.valueOf((String) value);
+            }
+        } catch (IllegalArgumentException e) {
+            throw cannotConvert(columnIndex, "date", e);
+        }
+        throw cannotConvert(columnIndex, "date", null);
+    }
+
+    @Override
+    public Date getDate(int columnIndex, Calendar cal) throws SQLException {
+        return getDate(columnIndex);
+    }
+
+    @Override
+    public Time getTime(int columnIndex) throws SQLException {
+        Object value = getObject(columnIndex);
+        try {
+            if (value == null || value instanceof Time) {
+                return (Time) value;
+            } else if (value instanceof Timestamp) {
+                return new Time(((Timestamp) value).getTime());
+            } else if (value instanceof String) {
+                return Time.valueOf((String) value);
+            }
+        } catch (IllegalArgumentException e) {
+            throw cannotConvert(columnIndex, "time", e);
+        }
+        throw cannotConvert(columnIndex, "time", null);
+    }
+
+    @Override
+    public Time getTime(int columnIndex, Calendar cal) throws SQLException {
+        return getTime(columnIndex);
+    }
+
+    @Override
+    public Timestamp getTimestamp(int columnIndex) throws SQLException {
+        Object value = getObject(columnIndex);
+        try {
+            if (value == null || value instanceof Timestamp) {
+                return (Timestamp) value;
+            } else if (value instanceof String) {
+                return Timestamp.valueOf((String) value);
+            }
+        } catch (IllegalArgumentException e) {
+            throw cannotConvert(columnIndex, "timestamp", e);
+        }
+        throw cannotConvert(columnIndex, "timestamp", null);
+    }
+
+    @Override
+    public Timestamp getTimestamp(int columnIndex, Calendar cal) throws SQLException {
+        return getTimestamp(columnIndex);
+    }
+
+    @Override
+    public InputStream getAsciiStream(int columnIndex) throws SQLException {
+        String value = getString(columnIndex);
+        return value == null
+                ? null
+                : new ByteArrayInputStream(value.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public InputStream getBinaryStream(int columnIndex) throws SQLException {
+        byte[] value = getBytes(columnIndex);
+        return value == null ? null : new ByteArrayInputStream(value);
+    }
+
+    @Override
+    public Reader getCharacterStream(int columnIndex) throws SQLException {
+        String value = getString(columnIndex);
+        return value == null ? null : new StringReader(value);
+    }
+
+    @Override
+    public Object getObject(String columnLabel) throws SQLException {
+        return getObject(findColumn(columnLabel));
+    }
+
+    @Override
+    public <T> T getObject(String columnLabel, Class<T> type) throws SQLException {
+        return getObject(findColumn(columnLabel), type);
+    }
+
+    @Override
+    public String getString(String columnLabel) throws SQLException {
+        return getString(findColumn(columnLabel));
+    }
+
+    @Override
+    public boolean getBoolean(String columnLabel) throws SQLException {
+        return getBoolean(findColumn(columnLabel));
+    }
+
+    @Override
+    public byte getByte(String columnLabel) throws SQLException {
+        return getByte(findColumn(columnLabel));
+    }
+
+    @Override
+    public short getShort(String columnLabel) throws SQLException {
+        return getShort(findColumn(columnLabel));
+    }
+
+    @Override
+    public int getInt(String columnLabel) throws SQLException {
+        return getInt(findColumn(columnLabel));
+    }
+
+    @Override
+    public long getLong(String columnLabel) throws SQLException {
+        return getLong(findColumn(columnLabel));
+    }
+
+    @Override
+    public float getFloat(String columnLabel) throws SQLException {
+        return getFloat(findColumn(columnLabel));
+    }
+
+    @Override
+    public double getDouble(String columnLabel) throws SQLException {
+        return getDouble(findColumn(columnLabel));
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(String columnLabel) throws SQLException {
+        return getBigDecimal(findColumn(columnLabel));
+    }
+
+    @Override
+    @Deprecated
+    public BigDecimal getBigDecimal(String columnLabel, int scale) throws SQLException {
+        return getBigDecimal(findColumn(columnLabel), scale);
+    }
+
+    @Override
+    public byte[] getBytes(String columnLabel) throws SQLException {
+        return getBytes(findColumn(columnLabel));
+    }
+
+    @Override
+    public Date getDate(String columnLabel) throws SQLException {
+        return getDate(findColumn(columnLabel));
+    }
+
+    @Override
+    public Date getDate(String columnLabel, Calendar cal) throws SQLException {
+        return getDate(findColumn(columnLabel));
+    }
+
+    @Override
+    public Time getTime(String columnLabel) throws SQLException {
+        return getTime(findColumn(columnLabel));
+    }
+
+    @Override
+    public Time getTime(String columnLabel, Calendar cal) throws SQLException {
+        return getTime(findColumn(columnLabel));
+    }
+
+    @Override
+    public Timestamp getTimestamp(String columnLabel) throws SQLException {
+        return getTimestamp(findColumn(columnLabel));
+    }
+
+    @Override
+    public Timestamp getTimestamp(String columnLabel, Calendar cal) throws SQLException {
+        return getTimestamp(findColumn(columnLabel));
+    }
+
+    @Override
+    public InputStream getAsciiStream(String columnLabel) throws SQLException {
+        return getAsciiStream(findColumn(columnLabel));
+    }
+
+    @Override
+    public InputStream getBinaryStream(String columnLabel) throws SQLException {
+        return getBinaryStream(findColumn(columnLabel));
+    }
+
+    @Override
+    public Reader getCharacterStream(String columnLabel) throws SQLException {
+        return getCharacterStream(findColumn(columnLabel));
+    }
+
+    /**
+     * Fetches the row sets of the operation of one of Hive's result sets. Hive keeps the client and
+     * the operation handle of its result sets to itself, they are read by reflection.
+     */
+    private static final class HiveRowSetSource implements RowSetSource {
+        @Nullable private static final Field CLIENT = field("client");
+        @Nullable private static final Field OPERATION = field("stmtHandle");
+
+        private final TCLIService.Iface client;
+        private final TOperationHandle operation;
+
+        private HiveRowSetSource(TCLIService.Iface client, TOperationHandle operation) {
+            this.client = client;
+            this.operation = operation;
+        }
+
+        @Nullable
+        private static Field field(String name) {
+            try {
+                Field field = HiveQueryResultSet.class.getDeclaredField(name);
+                field.setAccessible(true);
+                return field;
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                LOG.log(Level.WARNING, "Unable to read row sets of Hive's result sets", e);
+                return null;
+            }
+        }
+
+        @Nullable
+        static HiveRowSetSource of(ResultSet resultSet) {
+            if (!(resultSet instanceof HiveQueryResultSet) || CLIENT == null || OPERATION == null) {
+                return null;
+            }
+            try {
+                Object client = CLIENT.get(resultSet);
+                Object operation = OPERATION.get(resultSet);
+                if (client == null || operation == null) {
+                    return null;
+                }
+                return new HiveRowSetSource(
+                        (TCLIService.Iface) client, (TOperationHandle) operation);
+            } catch (IllegalAccessException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public TRowSet fetch(int maxRows) throws SQLException {
+            TFetchResultsResp response;
+            try {
+                response =
+                        client.FetchResults(
+                                new TFetchResultsReq(
+                                        operation, TFetchOrientation.FETCH_NEXT, maxRows));
+            } catch (TException e) {
+                throw new SQLException("Error retrieving next row", e);
+            }
+            TStatus status = response.getStatus();
+            if (status.getStatusCode() != TStatusCode.SUCCESS_STATUS
+                    && status.getStatusCode() != TStatusCode.SUCCESS_WITH_INFO_STATUS) {
+                throw new SQLException(
+                        status.getErrorMessage(), status.getSqlState(), status.getErrorCode());
+            }
+            return response.getResults();
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,70 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+/** Why a connect to a cluster failed, and whether another cluster of the pool may do better. */
+enum ConnectFailureReason {
+    /** The connect or the HiveServer2 session setup timed out. */
+    TIMEOUT(true),
+    /** The endpoint host could not be resolved, or refused the connection. */
+    UNREACHABLE(true),
+    /** Any other transport failure, e.g. a 5xx HTTP error of the Component Gateway. */
+    TRANSPORT(true),
+    /**
+     * A failure of the client rather than of the cluster, e.g. credentials the Component Gateway
+     * rejects, which would be rejected by every other cluster as well.
+     */
+    CLIENT(false);
+
+    private final boolean failsOver;
+
+    ConnectFailureReason(boolean failsOver) {
+        this.failsOver = failsOver;
+    }
+
+    /** @return whether the connect should move on to another cluster of the pool */
+    boolean failsOver() {
+        return failsOver;
+    }
+
+    /**
+     * @param failure why the connect failed
+     * @return the reason of the failure
+     */
+    static ConnectFailureReason of(SQLException failure) {
+        if (!ClusterHealthTracker.isClusterFailure(failure)) {
+            return CLIENT;
+        }
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SocketTimeoutException || cause instanceof SQLTimeoutException) {
+                return TIMEOUT;
+            }
+            if (cause instanceof ConnectException
+                    || cause instanceof NoRouteToHostException
+                    || cause instanceof UnknownHostException) {
+                return UNREACHABLE;
+            }
+        }
+        return TRANSPORT;
+    }
+}
\ No newline at end of file
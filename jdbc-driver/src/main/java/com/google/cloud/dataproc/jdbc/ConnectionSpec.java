@@ -0,0 +1,131 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import static com.google.cloud.dataproc.jdbc.DataprocInfo.DATAPROC_INTERCEPTOR;
+import static com.google.cloud.dataproc.jdbc.DataprocInfo.HTTP_INTERCEPTOR;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Joiner;
+import com.google.common.collect.ImmutableMap;
+import java.util.Properties;
+import javax.annotation.Nullable;
+
+/**
+ * Immutable, precompiled form of a client URL: the parsed options plus the translated Hive JDBC
+ * URL with everything but the cluster host already filled in.
+ */
+@AutoValue
+abstract class ConnectionSpec {
+    private static final String HIVE_URL_PREFIX = "jdbc:hive2://";
+
+    abstract HiveJdbcConnectionOptions options();
+
+    // Everything after <host> in jdbc:hive2://<host>:<port>/<dbName>;...
+    abstract String hiveUrlSuffix();
+
+    // Value of the clusterAffinityKey found in the URL itself, if any
+    @Nullable
+    abstract String urlAffinityKey();
+
+    /**
+     * Precompiles the Hive JDBC URL template of the options.
+     *
+     * @param params the parsed client options
+     * @return the spec holding the options and the URL template
+     */
+    static ConnectionSpec create(HiveJdbcConnectionOptions params) {
+        StringBuilder suffix = new StringBuilder();
+        suffix.append(':').append(params.port()).append('/').append(params.dbName());
+
+        ImmutableMap<String, String> urlMap =
+                ImmutableMap.<String, String>builder()
+                        .put("transportMode", params.transportMode())
+                        .put("httpPath", params.httpPath())
+                        .put("ssl", "true")
+                        .put(HTTP_INTERCEPTOR, DATAPROC_INTERCEPTOR)
+                        .build();
+        suffix.append(';');
+        Joiner.on(";").withKeyValueSeparator("=").appendTo(suffix, urlMap);
+
+        if (params.otherSessionConfs() != null) {
+            suffix.append(';').append(params.otherSessionConfs());
+        }
+        if (params.hiveConfs() != null) {
+            suffix.append('?').append(params.hiveConfs());
+        }
+        if (params.hiveVars() != null) {
+            suffix.append('#').append(params.hiveVars());
+        }
+        return new AutoValue_ConnectionSpec(params, suffix.toString(), urlAffinityKey(params));
+    }
+
+    @Nullable
+    private static String urlAffinityKey(HiveJdbcConnectionOptions params) {
+        String name = params.clusterAffinityKey();
+        if (name.equals("dbName")) {
+            return params.dbName().isEmpty() ? "default" : params.dbName();
+        }
+        if (params.otherSessionConfs() != null) {
+            for (String conf : params.otherSessionConfs().split(";")) {
+                int separator = conf.indexOf('=');
+                if (separator > 0 && name.equals(conf.substring(0, separator))) {
+                    return conf.substring(separator + 1);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the value of the clusterAffinityKey for a connection. A user passed in the
+     * connection properties takes precedence over one in the URL.
+     *
+     * @param info client passed in connection properties
+     * @return the value keeping the connection on the same cluster, or null if it has none
+     */
+    @Nullable
+    String affinityKey(Properties info) {
+        if (options().clusterAffinityKey().equals("user") && info.getProperty("user") != null) {
+            return info.getProperty("user");
+        }
+        return urlAffinityKey();
+    }
+
+    /**
+     * Fills the cluster host into the URL template. Translated URL format:
+     * jdbc:hive2://<host>:<port>/<dbName>;transportMode=http;httpPath=<http_endpoint>;<otherSessionConfs>?<hiveConfs>#<hiveVars>
+     *
+     * @param host the endpoint host of the cluster to connect to
+     * @return the JDBC URL accepted by Hive
+     */
+    String toHiveJdbcUrl(String host) {
+        return HIVE_URL_PREFIX + host + hiveUrlSuffix();
+    }
+
+    /**
+     * @param hiveUrl a JDBC URL accepted by Hive
+     * @return the host of the URL, or null if it is not a jdbc:hive2:// URL with a port
+     */
+    @Nullable
+    static String hostOf(String hiveUrl) {
+        if (!hiveUrl.startsWith(HIVE_URL_PREFIX)) {
+            return null;
+        }
+        int portStart = hiveUrl.indexOf(':', HIVE_URL_PREFIX.length());
+        return portStart < 0 ? null : hiveUrl.substring(HIVE_URL_PREFIX.length(), portStart);
+    }
+}
\ No newline at end of file
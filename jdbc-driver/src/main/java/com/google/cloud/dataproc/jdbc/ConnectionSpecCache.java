@@ -0,0 +1,62 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Bounded, concurrent cache from raw jdbc:dataproc:// URL to its {@link ConnectionSpec}, so that
+ * applications reconnecting with a handful of fixed URLs parse and translate each of them once.
+ * URLs that fail to parse are not cached.
+ */
+class ConnectionSpecCache {
+    static final long DEFAULT_MAXIMUM_SIZE = 256;
+
+    private final Cache<String, ConnectionSpec> specs;
+
+    ConnectionSpecCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    @VisibleForTesting
+    ConnectionSpecCache(long maximumSize) {
+        this.specs = CacheBuilder.newBuilder().maximumSize(maximumSize).build();
+    }
+
+    /**
+     * Returns the spec of the URL, parsing it on first use.
+     *
+     * @param url the client passed in JDBC URL
+     * @return the parsed and precompiled URL
+     * @throws InvalidURLException if the URL is malformed
+     */
+    ConnectionSpec get(String url) throws InvalidURLException {
+        ConnectionSpec spec = specs.getIfPresent(url);
+        if (spec == null) {
+            // Concurrent first connects may both parse, they produce equal specs
+            spec = ConnectionSpec.create(HiveUrlUtils.parseHiveUrl(url));
+            specs.put(url, spec);
+        }
+        return spec;
+    }
+
+    @VisibleForTesting
+    long size() {
+        return specs.size();
+    }
+}
\ No newline at end of file
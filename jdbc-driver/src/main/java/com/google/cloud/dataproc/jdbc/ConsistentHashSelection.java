@@ -0,0 +1,210 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.cloud.dataproc.v1beta2.Cluster;
+import com.google.cloud.dataproc.v1beta2.ClusterConfig;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Maps the affinity key of a connection, such as its user or database, to a cluster of the pool
+ * with a weighted consistent-hash ring, so that the same key keeps landing on the cluster whose
+ * metastore, query results and HDFS caches are already warm.
+ *
+ * <p>Each cluster owns a number of points on the ring proportional to its worker count. When a
+ * cluster joins or leaves the pool only the keys of the points it gains or loses move. The ring
+ * has bounded load: a cluster holding more than {@link #LOAD_FACTOR} times its share of this
+ * driver's in-flight connections and statements is skipped for the next one on the ring, so a hot
+ * key spills over instead of overloading its cluster. Connections without an affinity key are
+ * placed by weighted-random.
+ */
+final class ConsistentHashSelection implements ClusterSelectionStrategy {
+    static final String NAME = "consistent-hash";
+
+    // A cluster may hold this many times its weighted share of the in-flight work
+    static final double LOAD_FACTOR = 1.25;
+    private static final int POINTS_PER_WORKER = 32;
+    // Bounds the ring of very large pools, the points are then scaled down
+    private static final int MAX_POINTS = 1 << 18;
+
+    private static final HashFunction HASH = Hashing.murmur3_128();
+
+    /** Points of the ring sorted by position, each with the index of the cluster owning it. */
+    private static final class Ring {
+        private final long[] positions;
+        private final int[] owners;
+        private final long[] weights;
+        private final long totalWeight;
+
+        private Ring(long[] positions, int[] owners, long[] weights, long totalWeight) {
+            this.positions = positions;
+            this.owners = owners;
+            this.weights = weights;
+            this.totalWeight = totalWeight;
+        }
+
+        static Ring build(ClusterPool pool) {
+            int size = pool.size();
+            long[] weights = new long[size];
+            long totalWeight = 0;
+            for (int i = 0; i < size; i++) {
+                weights[i] = weight(pool.cluster(i));
+                totalWeight += weights[i];
+            }
+            double scale = Math.min(1, (double) MAX_POINTS / (totalWeight * POINTS_PER_WORKER));
+
+            int[] counts = new int[size];
+            int pointCount = 0;
+            for (int i = 0; i < size; i++) {
+                counts[i] = (int) Math.max(1, weights[i] * POINTS_PER_WORKER * scale);
+                pointCount += counts[i];
+            }
+            long[] unsorted = new long[pointCount];
+            int[] unsortedOwners = new int[pointCount];
+            int point = 0;
+            for (int i = 0; i < size; i++) {
+                String identity = identity(pool, i);
+                for (int replica = 0; replica < counts[i]; replica++) {
+                    unsorted[point] =
+                            HASH.newHasher()
+                                    .putString(identity, StandardCharsets.UTF_8)
+                                    .putInt(replica)
+                                    .hash()
+                                    .asLong();
+                    unsortedOwners[point] = i;
+                    point++;
+                }
+            }
+
+            Integer[] order = new Integer[pointCount];
+            for (int i = 0; i < pointCount; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingLong(i -> unsorted[i]));
+            long[] positions = new long[pointCount];
+            int[] owners = new int[pointCount];
+            for (int i = 0; i < pointCount; i++) {
+                positions[i] = unsorted[order[i]];
+                owners[i] = unsortedOwners[order[i]];
+            }
+            return new Ring(positions, owners, weights, totalWeight);
+        }
+
+        // Cluster names are only unique within a project and region, their endpoint host is not
+        private static String identity(ClusterPool pool, int index) {
+            String host = pool.endpointHost(index);
+            return host != null ? host : pool.cluster(index).getClusterName();
+        }
+
+        // The worker count stays put as clusters come and go, unlike their free memory
+        private static long weight(Cluster cluster) {
+            ClusterConfig config = cluster.getConfig();
+            return Math.max(
+                    1,
+                    (long) config.getWorkerConfig().getNumInstances()
+                            + config.getSecondaryWorkerConfig().getNumInstances());
+        }
+
+        /** @return the index of the first point at or after the position, wrapping around */
+        int firstPoint(long position) {
+            int point = Arrays.binarySearch(positions, position);
+            if (point < 0) {
+                point = -point - 1;
+            }
+            return point == positions.length ? 0 : point;
+        }
+    }
+
+    private final ClusterLoadTracker loadTracker;
+    private final ClusterSelectionStrategy fallback;
+    // Rings of the pool snapshots in use, dropped along with their snapshot
+    private final Cache<ClusterPool, Ring> rings = CacheBuilder.newBuilder().weakKeys().build();
+
+    ConsistentHashSelection() {
+        this(ClusterLoadTracker.shared(), new WeightedRandomSelection());
+    }
+
+    @VisibleForTesting
+    ConsistentHashSelection(ClusterLoadTracker loadTracker, ClusterSelectionStrategy fallback) {
+        this.loadTracker = loadTracker;
+        this.fallback = fallback;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean readsLoad() {
+        return true;
+    }
+
+    @Override
+    public int select(ClusterPool pool, SelectionContext context) {
+        String affinityKey = context.affinityKey();
+        if (affinityKey == null || affinityKey.isEmpty()) {
+            return fallback.select(pool, context);
+        }
+        Ring ring = rings.getIfPresent(pool);
+        if (ring == null) {
+            // Concurrent first picks may both build it, they build the same ring
+            ring = Ring.build(pool);
+            rings.put(pool, ring);
+        }
+
+        long position = HASH.hashString(affinityKey, StandardCharsets.UTF_8).asLong();
+        int first = ring.firstPoint(position);
+        int primary = ring.owners[first];
+        if (pool.size() == 1 || loadTracker.inFlight(pool.endpointHost(primary)) == 0) {
+            return primary;
+        }
+
+        long totalInFlight = 0;
+        for (int i = 0; i < pool.size(); i++) {
+            totalInFlight += loadTracker.inFlight(pool.endpointHost(i));
+        }
+        // Walk the ring from the key's point to the first cluster under its bound
+        boolean[] visited = new boolean[pool.size()];
+        int visitedCount = 0;
+        for (int step = 0; step < ring.positions.length && visitedCount < visited.length; step++) {
+            int owner = ring.owners[(first + step) % ring.positions.length];
+            if (visited[owner]) {
+                continue;
+            }
+            visited[owner] = true;
+            visitedCount++;
+            double bound =
+                    Math.ceil(
+                            LOAD_FACTOR
+                                    * (totalInFlight + 1)
+                                    * ring.weights[owner]
+                                    / ring.totalWeight);
+            if (loadTracker.inFlight(pool.endpointHost(owner)) < bound) {
+                return owner;
+            }
+        }
+        // The bounds add up to more than the total, unless the counts moved during the walk
+        return primary;
+    }
+}
\ No newline at end of file
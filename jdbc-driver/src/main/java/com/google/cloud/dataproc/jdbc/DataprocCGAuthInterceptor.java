@@ -17,10 +17,14 @@ package com.google.cloud.dataproc.jdbc;
 
 import com.google.auth.oauth2.AccessToken;
 import com.google.auth.oauth2.GoogleCredentials;
+import com.google.common.annotations.VisibleForTesting;
 import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.hive.jdbc.shaded.org.apache.hive.org.apache.http.Header;
 import org.apache.hive.jdbc.shaded.org.apache.hive.org.apache.http.HttpException;
 import org.apache.hive.jdbc.shaded.org.apache.hive.org.apache.http.HttpRequest;
 import org.apache.hive.jdbc.shaded.org.apache.hive.org.apache.http.HttpRequestInterceptor;
+import org.apache.hive.jdbc.shaded.org.apache.hive.org.apache.http.message.BasicHeader;
 import org.apache.hive.jdbc.shaded.org.apache.hive.org.apache.http.protocol.HttpContext;
 
 /** HttpRequestInterceptor used to add header for Dataproc Component Gateway Authorization. */
@@ -29,38 +33,83 @@ public class DataprocCGAuthInterceptor implements HttpRequestInterceptor {
     public static final String CG_AUTH_HEADER = "Proxy-Authorization";
     public static final String BEARER_PREFIX = "Bearer ";
 
-    private GoogleCredentials credentials;
+    /**
+     * No access token could be obtained for the client. Hive reports it as a transport failure of
+     * the cluster, this type tells it apart.
+     */
+    static final class TokenUnavailableException extends IOException {
+        TokenUnavailableException(IOException cause) {
+            super("Unable to get an access token for the Component Gateway", cause);
+        }
+    }
+
+    /** The header of a token, built once per token. */
+    private static final class BearerHeader {
+        private final AccessToken token;
+        private final Header header;
+
+        BearerHeader(AccessToken token) {
+            this.token = token;
+            this.header = new BasicHeader(CG_AUTH_HEADER, BEARER_PREFIX + token.getTokenValue());
+        }
+    }
+
+    private final TokenRefresher tokens;
+    private final AtomicReference<BearerHeader> currentHeader = new AtomicReference<>();
 
-    // Default constructor used by HiveConnection
+    // Default constructor used by HiveConnection, once per connection. The credentials are shared
+    // by all connections, so only the first one fetches a token.
     public DataprocCGAuthInterceptor() throws IOException {
-        this.credentials = GoogleCredentials.getApplicationDefault();
-        this.credentials = credentials.createScoped("https://www.googleapis.com/auth/cloud-platform");
-        credentials.refresh();
+        this(SharedCredentials.applicationDefault());
     }
 
     // Constructor dependency injection for testing
     public DataprocCGAuthInterceptor(GoogleCredentials credentials) throws IOException {
-        this.credentials = credentials;
-        credentials.refresh();
+        this(new TokenRefresher(credentials));
+    }
+
+    @VisibleForTesting
+    DataprocCGAuthInterceptor(TokenRefresher tokens) throws IOException {
+        this.tokens = tokens;
+        // Fails the connection early if no token can be obtained
+        token();
     }
 
     @Override
     public void process(HttpRequest httpRequest, HttpContext httpContext)
             throws HttpException, IOException {
-        if (httpRequest.containsHeader(CG_AUTH_HEADER)) {
-            httpRequest.removeHeaders(CG_AUTH_HEADER);
-        }
-        httpRequest.addHeader(CG_AUTH_HEADER, getAccessToken());
+        // Replaces the header set on a previous attempt of the request
+        httpRequest.setHeader(authHeader());
     }
 
     /**
-     * Gets the application default access token from client environment.
+     * Gets the application default access token from client environment. The token is refreshed
+     * in the background ahead of its expiry, this only waits for the token endpoint when the
+     * background refresh has fallen behind.
      *
-     * @return the refreshed Bearer token
+     * @return the current Bearer token
      */
     public String getAccessToken() throws IOException {
-        credentials.refreshIfExpired();
-        AccessToken accessToken = credentials.getAccessToken();
-        return BEARER_PREFIX + accessToken.getTokenValue();
+        return authHeader().getValue();
+    }
+
+    /** @return the header of the current token, only allocated when the token changed */
+    private Header authHeader() throws IOException {
+        AccessToken token = token();
+        BearerHeader current = currentHeader.get();
+        if (current == null || current.token != token) {
+            // Racing threads may each build the header of a new token, either one will do
+            current = new BearerHeader(token);
+            currentHeader.set(current);
+        }
+        return current.header;
+    }
+
+    private AccessToken token() throws IOException {
+        try {
+            return tokens.token();
+        } catch (IOException e) {
+            throw new TokenUnavailableException(e);
+        }
     }
 }
\ No newline at end of file
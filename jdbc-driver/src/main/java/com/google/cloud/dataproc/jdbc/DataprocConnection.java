@@ -0,0 +1,232 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.function.LongSupplier;
+import javax.annotation.Nullable;
+
+/**
+ * Connection handed out when the URL sets a queryMetricsSink, adaptiveFetchSize, prefetchBatches
+ * or columnarFetch. Its statements time each execution: the execute call, the time to the first
+ * row and the fetch of each batch of rows, and report them to the sink. Their result sets size
+ * each batch from the previous ones, and either fetch the next batches while the client reads one
+ * or read each batch into primitive column arrays.
+ */
+class DataprocConnection extends ForwardingConnection {
+    private final Connection connection;
+    @Nullable private final String clusterHost;
+    @Nullable private final QueryMetricsSink sink;
+    private final long adaptiveFetchMaxBytes;
+    private final int adaptiveFetchMaxRows;
+    private final int prefetchBatches;
+    private final boolean columnarFetch;
+    private final Ticker ticker;
+    private final LongSupplier rttNanos;
+
+    /**
+     * @param connection the connection to the cluster
+     * @param clusterHost the endpoint host of the cluster, or null if unknown
+     * @param sink receives the timings of the statements, null to not time them
+     * @param adaptiveFetchMaxBytes the largest estimated size of a batch of rows, 0 to keep the
+     *     fetch size of the statements
+     * @param adaptiveFetchMaxRows the largest adapted fetch size
+     * @param prefetchBatches the batches of rows fetched ahead of the client, 0 to fetch them when
+     *     the client reads past the current one
+     * @param columnarFetch whether result sets read the row sets of HiveServer2 into column arrays
+     */
+    DataprocConnection(
+            Connection connection,
+            @Nullable String clusterHost,
+            @Nullable QueryMetricsSink sink,
+            long adaptiveFetchMaxBytes,
+            int adaptiveFetchMaxRows,
+            int prefetchBatches,
+            boolean columnarFetch) {
+        this(
+                connection,
+                clusterHost,
+                sink,
+                adaptiveFetchMaxBytes,
+                adaptiveFetchMaxRows,
+                prefetchBatches,
+                columnarFetch,
+                Ticker.systemTicker(),
+                () -> GatewayLatencyEstimator.shared().knownRttNanos(clusterHost));
+    }
+
+    @VisibleForTesting
+    DataprocConnection(
+            Connection connection,
+            @Nullable String clusterHost,
+            @Nullable QueryMetricsSink sink,
+            long adaptiveFetchMaxBytes,
+            int adaptiveFetchMaxRows,
+            int prefetchBatches,
+            boolean columnarFetch,
+            Ticker ticker,
+            LongSupplier rttNanos) {
+        this.connection = connection;
+        this.clusterHost = clusterHost;
+        this.sink = sink;
+        this.adaptiveFetchMaxBytes = adaptiveFetchMaxBytes;
+        this.adaptiveFetchMaxRows = adaptiveFetchMaxRows;
+        this.prefetchBatches = prefetchBatches;
+        this.columnarFetch = columnarFetch;
+        this.ticker = ticker;
+        this.rttNanos = rttNanos;
+    }
+
+    @Override
+    protected Connection delegate() {
+        return connection;
+    }
+
+    Ticker ticker() {
+        return ticker;
+    }
+
+    /**
+     * Starts timing an execution of one of the statements of the connection.
+     *
+     * @return the timer of the execution, or null without queryMetricsSink
+     */
+    @Nullable
+    QueryTimer startQuery(String sql, int fetchSize) {
+        return sink == null ? null : new QueryTimer(sink, sql, clusterHost, ticker, fetchSize);
+    }
+
+    /**
+     * @param resultSet a result set of one of the physical statements of the connection
+     * @param fetchSize the fetch size of the statement when it was executed
+     * @return the sizer of its batches, or null without adaptiveFetchSize
+     */
+    @Nullable
+    AdaptiveFetchSize adaptiveFetchSize(ResultSet resultSet, int fetchSize) {
+        if (adaptiveFetchMaxBytes <= 0) {
+            return null;
+        }
+        return new AdaptiveFetchSize(
+                resultSet, fetchSize, adaptiveFetchMaxBytes, adaptiveFetchMaxRows, rttNanos);
+    }
+
+    /**
+     * @param resultSet a result set of one of the physical statements of the connection
+     * @param fetchSize the fetch size of the statement when it was executed
+     * @return the result set fetching its rows in the background, or null without prefetchBatches
+     */
+    @Nullable
+    PrefetchingResultSet prefetch(ResultSet resultSet, int fetchSize) throws SQLException {
+        if (prefetchBatches <= 0) {
+            return null;
+        }
+        AdaptiveFetchSize sizer = null;
+        if (adaptiveFetchMaxBytes > 0) {
+            // The queued batches, the one the client reads and the one being fetched share the cap
+            sizer =
+                    new AdaptiveFetchSize(
+                            resultSet,
+                            fetchSize,
+                            Math.max(adaptiveFetchMaxBytes / (prefetchBatches + 2), 1),
+                            adaptiveFetchMaxRows,
+                            rttNanos);
+        }
+        return PrefetchingResultSet.start(resultSet, prefetchBatches, sizer, ticker);
+    }
+
+    /**
+     * @param resultSet a result set of one of the physical statements of the connection
+     * @return the result set reading its row sets into column arrays, or null without
+     *     columnarFetch or if it is not one of Hive's result sets
+     */
+    @Nullable
+    ColumnarResultSet columnar(ResultSet resultSet) throws SQLException {
+        return columnarFetch ? ColumnarResultSet.of(resultSet) : null;
+    }
+
+    @Override
+    public Statement createStatement() throws SQLException {
+        return new DataprocStatement(this, connection.createStatement());
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency)
+            throws SQLException {
+        return new DataprocStatement(
+                this, connection.createStatement(resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public Statement createStatement(
+            int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+            throws SQLException {
+        return new DataprocStatement(
+                this,
+                connection.createStatement(
+                        resultSetType, resultSetConcurrency, resultSetHoldability));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return new DataprocPreparedStatement(this, connection.prepareStatement(sql), sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(
+            String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        return new DataprocPreparedStatement(
+                this, connection.prepareStatement(sql, resultSetType, resultSetConcurrency), sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(
+            String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+            throws SQLException {
+        return new DataprocPreparedStatement(
+                this,
+                connection.prepareStatement(
+                        sql, resultSetType, resultSetConcurrency, resultSetHoldability),
+                sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys)
+            throws SQLException {
+        return new DataprocPreparedStatement(
+                this, connection.prepareStatement(sql, autoGeneratedKeys), sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+        return new DataprocPreparedStatement(
+                this, connection.prepareStatement(sql, columnIndexes), sql);
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, String[] columnNames)
+            throws SQLException {
+        return new DataprocPreparedStatement(
+                this, connection.prepareStatement(sql, columnNames), sql);
+    }
+
+    // prepareCall is left untimed, HiveServer2 does not support stored procedures
+}
\ No newline at end of file
@@ -0,0 +1,415 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLNonTransientConnectionException;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+import javax.sql.ConnectionPoolDataSource;
+import javax.sql.DataSource;
+import javax.sql.PooledConnection;
+
+/**
+ * DataSource for Dataproc clusters that keeps a pool of validated HiveConnections per cluster, so
+ * applications don't pay for the cluster lookup and the HiveServer2 session setup on every
+ * getConnection.
+ *
+ * <p>Connections are pooled per resolved cluster and user: a URL with a cluster pool filter
+ * borrows from the pool of whichever cluster the lookup picked. Closing a connection returns it to
+ * its pool after closing its open statements and restoring its schema, instead of closing it.
+ * A cluster pool nothing was borrowed from for 10 minutes, e.g. because its cluster left the pool
+ * label, is closed.
+ *
+ * <p>It also implements ConnectionPoolDataSource for application servers that bring their own
+ * pool; those PooledConnections are not pooled by this DataSource.
+ */
+public class DataprocDataSource implements DataSource, ConnectionPoolDataSource, AutoCloseable {
+    private static final Logger LOG = Logger.getLogger(DataprocDataSource.class.getName());
+
+    private static final long HOUSEKEEPING_PERIOD_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    // Pools without borrows or returns for this long are closed and forgotten
+    private static final long POOL_RETIREMENT_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    /** Identifies the pool of a resolved cluster and user. */
+    @AutoValue
+    abstract static class PoolKey {
+        abstract String hiveUrl();
+
+        @Nullable
+        abstract String user();
+
+        static PoolKey create(String hiveUrl, @Nullable String user) {
+            return new AutoValue_DataprocDataSource_PoolKey(hiveUrl, user);
+        }
+    }
+
+    private final DataprocDriver driver;
+    private final Ticker ticker;
+    private final ConcurrentMap<PoolKey, ClusterConnectionPool> pools = new ConcurrentHashMap<>();
+    private final Properties properties = new Properties();
+
+    private volatile String url;
+    private volatile PoolSettings settings = PoolSettings.builder().build();
+    private volatile PrintWriter logWriter;
+    private volatile int loginTimeout;
+    private volatile boolean closed;
+    private ScheduledExecutorService housekeeper;
+
+    public DataprocDataSource() {
+        this(new DataprocDriver(), Ticker.systemTicker());
+    }
+
+    // Constructor dependency injection for testing
+    @VisibleForTesting
+    DataprocDataSource(DataprocDriver driver, Ticker ticker) {
+        this.driver = driver;
+        this.ticker = ticker;
+    }
+
+    /** @param url the JDBC URL, in the jdbc:dataproc://hive/ format accepted by the driver */
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUser(String user) {
+        setProperty("user", user);
+    }
+
+    public void setPassword(String password) {
+        setProperty("password", password);
+    }
+
+    /** @param properties connection properties passed to every new HiveConnection */
+    public void setProperties(Properties properties) {
+        synchronized (this.properties) {
+            this.properties.clear();
+            this.properties.putAll(properties);
+        }
+    }
+
+    /** @param minIdle idle connections kept open in each cluster pool, defaults to 0 */
+    public void setMinIdle(int minIdle) {
+        checkArgument(minIdle >= 0, "minIdle must not be negative");
+        settings = settings.toBuilder().setMinIdle(minIdle).build();
+    }
+
+    public int getMinIdle() {
+        return settings.minIdle();
+    }
+
+    /** @param maxPoolSize open connections per cluster pool, defaults to 10 */
+    public void setMaxPoolSize(int maxPoolSize) {
+        checkArgument(maxPoolSize > 0, "maxPoolSize must be positive");
+        settings = settings.toBuilder().setMaxPoolSize(maxPoolSize).build();
+    }
+
+    public int getMaxPoolSize() {
+        return settings.maxPoolSize();
+    }
+
+    /**
+     * @param maxLifetimeMillis connections older than this are closed instead of being reused,
+     *     defaults to 30 minutes, 0 for no limit
+     */
+    public void setMaxLifetimeMillis(long maxLifetimeMillis) {
+        checkArgument(maxLifetimeMillis >= 0, "maxLifetimeMillis must not be negative");
+        settings = settings.toBuilder().setMaxLifetimeMillis(maxLifetimeMillis).build();
+    }
+
+    public long getMaxLifetimeMillis() {
+        return settings.maxLifetimeMillis();
+    }
+
+    /**
+     * @param leakDetectionThresholdMillis connections borrowed for longer than this are logged
+     *     with the stack trace that borrowed them, defaults to 0 which disables leak detection
+     */
+    public void setLeakDetectionThresholdMillis(long leakDetectionThresholdMillis) {
+        checkArgument(
+                leakDetectionThresholdMillis >= 0,
+                "leakDetectionThresholdMillis must not be negative");
+        settings =
+                settings.toBuilder()
+                        .setLeakDetectionThresholdMillis(leakDetectionThresholdMillis)
+                        .build();
+    }
+
+    public long getLeakDetectionThresholdMillis() {
+        return settings.leakDetectionThresholdMillis();
+    }
+
+    /** @param connectionTimeoutMillis how long getConnection waits on a full pool */
+    public void setConnectionTimeoutMillis(long connectionTimeoutMillis) {
+        checkArgument(connectionTimeoutMillis >= 0, "connectionTimeoutMillis must not be negative");
+        settings = settings.toBuilder().setConnectionTimeoutMillis(connectionTimeoutMillis).build();
+    }
+
+    public long getConnectionTimeoutMillis() {
+        return settings.connectionTimeoutMillis();
+    }
+
+    /** @param validationTimeoutSeconds timeout of the check of connections that have been idle */
+    public void setValidationTimeoutSeconds(int validationTimeoutSeconds) {
+        checkArgument(
+                validationTimeoutSeconds >= 0, "validationTimeoutSeconds must not be negative");
+        settings =
+                settings.toBuilder().setValidationTimeoutSeconds(validationTimeoutSeconds).build();
+    }
+
+    public int getValidationTimeoutSeconds() {
+        return settings.validationTimeoutSeconds();
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return borrow(connectionProperties(null, null));
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return borrow(connectionProperties(username, password));
+    }
+
+    @Override
+    public PooledConnection getPooledConnection() throws SQLException {
+        return openPooledConnection(connectionProperties(null, null));
+    }
+
+    @Override
+    public PooledConnection getPooledConnection(String user, String password)
+            throws SQLException {
+        return openPooledConnection(connectionProperties(user, password));
+    }
+
+    /**
+     * Closes the idle connections of all pools and stops the housekeeping. Borrowed connections
+     * are closed once they are returned.
+     */
+    @Override
+    public void close() {
+        ScheduledExecutorService executor;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            executor = housekeeper;
+        }
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        // Removes the pools one by one, a pool created concurrently is closed by its borrower
+        for (PoolKey key : pools.keySet()) {
+            ClusterConnectionPool pool = pools.remove(key);
+            if (pool != null) {
+                pool.close();
+            }
+        }
+    }
+
+    /**
+     * Closes the pools that have not been used for a while and maintains the others. A failing
+     * pool is logged and skipped, so that it does not stop the housekeeping of the others.
+     */
+    @VisibleForTesting
+    void maintainPools() {
+        for (Map.Entry<PoolKey, ClusterConnectionPool> entry : pools.entrySet()) {
+            ClusterConnectionPool pool = entry.getValue();
+            try {
+                if (!pool.isUnused(POOL_RETIREMENT_NANOS)) {
+                    pool.maintain();
+                } else if (pools.remove(entry.getKey(), pool)) {
+                    pool.close();
+                }
+            } catch (RuntimeException e) {
+                LOG.log(
+                        Level.WARNING,
+                        "Unable to maintain the connection pool of " + entry.getKey().hiveUrl(),
+                        e);
+            }
+        }
+    }
+
+    @VisibleForTesting
+    int poolCount() {
+        return pools.size();
+    }
+
+    private Connection borrow(Properties info) throws SQLException {
+        checkOpen();
+        ConnectionSpec spec = driver.connectionSpec(checkUrl());
+        // Goes through the driver's cluster cache, so this is usually an in-memory lookup
+        String hiveUrl = driver.resolveHiveUrl(spec, info);
+        PoolKey key = PoolKey.create(hiveUrl, info.getProperty("user"));
+        while (true) {
+            ClusterConnectionPool pool = pools.get(key);
+            if (pool == null) {
+                ClusterConnectionPool created =
+                        new ClusterConnectionPool(
+                                hiveUrl,
+                                () -> {
+                                    Connection physical = driver.openHiveConnection(hiveUrl, info);
+                                    return driver.instrument(spec, hiveUrl, physical);
+                                },
+                                settings,
+                                SessionDefaults.of(spec),
+                                ticker);
+                pool = pools.putIfAbsent(key, created);
+                if (pool == null) {
+                    pool = created;
+                    startHousekeeping();
+                }
+                if (closed) {
+                    // Raced with close(), which may have missed the new pool
+                    pools.remove(key, pool);
+                    pool.close();
+                    checkOpen();
+                }
+            }
+            try {
+                return pool.borrow();
+            } catch (SQLNonTransientConnectionException e) {
+                if (closed || !pool.isClosed()) {
+                    throw e;
+                }
+                // Retired by the housekeeping in the meantime, borrow from a new pool
+                pools.remove(key, pool);
+            }
+        }
+    }
+
+    private PooledConnection openPooledConnection(Properties info) throws SQLException {
+        checkOpen();
+        ConnectionSpec spec = driver.connectionSpec(checkUrl());
+        Connection physical =
+                driver.openWithFailover(spec, info, driver.resolveHiveUrl(spec, info));
+        return new DataprocPooledConnection(physical, SessionDefaults.of(spec));
+    }
+
+    private Properties connectionProperties(@Nullable String user, @Nullable String password) {
+        Properties info = new Properties();
+        synchronized (properties) {
+            info.putAll(properties);
+        }
+        if (user != null) {
+            info.setProperty("user", user);
+        }
+        if (password != null) {
+            info.setProperty("password", password);
+        }
+        return info;
+    }
+
+    private void setProperty(String key, String value) {
+        synchronized (properties) {
+            properties.setProperty(key, value);
+        }
+    }
+
+    private synchronized void startHousekeeping() {
+        if (housekeeper != null || closed) {
+            return;
+        }
+        housekeeper =
+                Executors.newSingleThreadScheduledExecutor(
+                        new ThreadFactoryBuilder()
+                                .setNameFormat("dataproc-pool-housekeeping-%d")
+                                .setDaemon(true)
+                                .build());
+        housekeeper.scheduleWithFixedDelay(
+                this::maintainPools,
+                HOUSEKEEPING_PERIOD_MILLIS,
+                HOUSEKEEPING_PERIOD_MILLIS,
+                TimeUnit.MILLISECONDS);
+    }
+
+    private String checkUrl() throws SQLException {
+        String current = url;
+        if (current == null || !driver.acceptsURL(current)) {
+            throw new InvalidURLException(
+                    String.format(
+                            "DataSource URL must start with %s, got %s.",
+                            DataprocDriver.DATAPROC_JDBC_HIVE_URL_SCHEMA, current));
+        }
+        return current;
+    }
+
+    private void checkOpen() throws SQLException {
+        if (closed) {
+            throw new SQLNonTransientConnectionException("DataSource has been closed.");
+        }
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return logWriter;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) {
+        this.logWriter = out;
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) {
+        this.loginTimeout = seconds;
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return loginTimeout;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return Logger.getLogger(DataprocDataSource.class.getPackage().getName());
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("DataSource is not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+}
\ No newline at end of file
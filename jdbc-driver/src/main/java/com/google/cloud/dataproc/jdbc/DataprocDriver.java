@@ -15,11 +15,9 @@
  */
 package com.google.cloud.dataproc.jdbc;
 
-import static com.google.cloud.dataproc.jdbc.HiveUrlUtils.parseHiveUrl;
-
-import com.google.cloud.dataproc.v1beta2.ClusterControllerClient;
-import com.google.cloud.dataproc.v1beta2.ClusterControllerSettings;
 import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import java.io.IOException;
 import java.sql.Connection;
 import java.sql.Driver;
@@ -27,13 +25,60 @@ import java.sql.DriverManager;
 import java.sql.DriverPropertyInfo;
 import java.sql.SQLException;
 import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import org.apache.hive.jdbc.shaded.org.apache.hive.jdbc.HiveConnection;
 
 /** DataprocDriver class to create connection with Hive. */
 public class DataprocDriver implements Driver {
+    private static final Logger LOG = Logger.getLogger(DataprocDriver.class.getName());
+
+    // ClusterControllerClients shared by all driver instances, closed when the JVM exits.
+    // Declared ahead of the driver registration below, which already needs it.
+    private static final ClusterControllerClientRegistry CLIENT_REGISTRY =
+            new ClusterControllerClientRegistry();
+
+    // Cluster lookups shared by all driver instances
+    private static final ClusterResolutionCache CLUSTER_CACHE = new ClusterResolutionCache();
+
+    // Parsed and precompiled client URLs shared by all driver instances
+    private static final ConnectionSpecCache CONNECTION_SPECS = new ConnectionSpecCache();
+
+    // Background-refreshed candidates of the cluster pools in use, listed with the shared clients
+    private static final ClusterPoolRefresher POOL_REFRESHER =
+            new ClusterPoolRefresher(key -> listPoolClusters(CLIENT_REGISTRY, key));
+
+    // Runs the token prefetch of connect() and the connect stages of connectAsync() without an
+    // explicit executor. The stages block on network I/O, so they get their own threads rather
+    // than the common pool.
+    private static final ExecutorService CONNECT_EXECUTOR =
+            Executors.newCachedThreadPool(
+                    new ThreadFactoryBuilder()
+                            .setNameFormat("dataproc-connect-%d")
+                            .setDaemon(true)
+                            .build());
+
     static {
+        Runtime.getRuntime()
+                .addShutdownHook(
+                        new Thread(
+                                () -> {
+                                    POOL_REFRESHER.close();
+                                    CLIENT_REGISTRY.close();
+                                }));
         try {
             DriverManager.registerDriver(new DataprocDriver());
         } catch (Exception e) {
@@ -44,9 +89,128 @@ public class DataprocDriver implements Driver {
     // Expected JDBC URL prefix format
     public static final String DATAPROC_JDBC_HIVE_URL_SCHEMA = "jdbc:dataproc://hive/";
 
+    private final ClusterControllerClientRegistry clientRegistry;
+    private final ClusterResolutionCache clusterCache;
+    private final ClusterPoolRefresher poolRefresher;
+    private final ClusterLoadTracker loadTracker = ClusterLoadTracker.shared();
+    private final ClusterHealthTracker clusterHealth = ClusterHealthTracker.shared();
+
+    public DataprocDriver() {
+        this(CLIENT_REGISTRY, CLUSTER_CACHE, POOL_REFRESHER);
+    }
+
+    // Constructor dependency injection for testing
+    @VisibleForTesting
+    DataprocDriver(
+            ClusterControllerClientRegistry clientRegistry, ClusterResolutionCache clusterCache) {
+        this(clientRegistry, clusterCache, ClusterPoolRefresher.disabled());
+    }
+
+    @VisibleForTesting
+    DataprocDriver(
+            ClusterControllerClientRegistry clientRegistry,
+            ClusterResolutionCache clusterCache,
+            ClusterPoolRefresher poolRefresher) {
+        this.clientRegistry = clientRegistry;
+        this.clusterCache = clusterCache;
+        this.poolRefresher = poolRefresher;
+    }
+
+    /**
+     * Returns the counters of the cluster lookup cache shared by all connections, to help tune
+     * clusterCacheTtlSeconds and clusterCacheNegativeTtlSeconds.
+     *
+     * @return a snapshot of the cache counters
+     */
+    public static ClusterCacheStats getClusterCacheStats() {
+        return CLUSTER_CACHE.stats();
+    }
+
+    /**
+     * Returns the counters of the circuit breakers that eject pool clusters after failed connects.
+     *
+     * @return a snapshot of the ejection counters
+     */
+    public static ClusterHealthStats getClusterHealthStats() {
+        return ClusterHealthTracker.shared().stats();
+    }
+
+    /**
+     * Returns the state of the background refresh of every cluster pool in use, with the age of
+     * its snapshot and its refresh failures.
+     *
+     * @return one entry per clusterPoolLabel filter in use
+     */
+    public static List<ClusterPoolStats> getClusterPoolStats() {
+        return POOL_REFRESHER.stats();
+    }
+
+    /**
+     * Connects on the calling thread. The access token is fetched on a connect thread meanwhile,
+     * while the cluster is looked up.
+     */
     @Override
     public Connection connect(String url, Properties info) throws SQLException {
-        return acceptsURL(url) ? createConnection(url, info) : null;
+        if (!acceptsURL(url)) {
+            return null;
+        }
+        ConnectionSpec spec = connectionSpec(url);
+        try {
+            CONNECT_EXECUTOR.execute(this::warmToken);
+        } catch (RejectedExecutionException e) {
+            // Shutting down, the auth interceptor fetches the token itself
+        }
+        return openWithFailover(spec, info, resolveHiveUrl(spec, info));
+    }
+
+    /**
+     * Connects without blocking the calling thread, running the connect stages on the driver's
+     * connect threads.
+     *
+     * @param url client passed in JDBC URL
+     * @param info client passed in connection properties
+     * @return the future Hive Connection, or a future of null if the URL is not a Dataproc URL
+     */
+    public CompletableFuture<Connection> connectAsync(String url, Properties info) {
+        return connectAsync(url, info, CONNECT_EXECUTOR);
+    }
+
+    /**
+     * Connects without blocking the calling thread. Translated URL format:
+     * jdbc:hive2://<host>:<port>/<dbName>;transportMode=http;httpPath=<http_endpoint>;
+     * <otherSessionConfs>?<hiveConfs>#<hiveVars>
+     *
+     * <p>The cluster lookup and the access token fetch run concurrently, the HiveConnection is
+     * opened once both are done. Failures of the lookup or the connect complete the future
+     * exceptionally with their SQLException. The token fetch is best-effort: if it fails, the
+     * HiveConnection fetches the token itself. With a cluster pool, a connect that fails because
+     * of the cluster moves on to another cluster of the pool, see {@link #openWithFailover}.
+     *
+     * @param url client passed in JDBC URL
+     * @param info client passed in connection properties
+     * @param executor runs the connect stages, which block on network I/O
+     * @return the future Hive Connection, or a future of null if the URL is not a Dataproc URL
+     */
+    public CompletableFuture<Connection> connectAsync(
+            String url, Properties info, Executor executor) {
+        // Valid url format:
+        // jdbc:dataproc://<protocol>/<db>;clusterName=<>;other_sess_var_list?hive_conf_list#hive_var_list
+        if (!acceptsURL(url)) {
+            // TODO: support other protocol
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<String> hiveURL =
+                CompletableFuture.supplyAsync(
+                        unchecked(() -> resolveHiveUrl(connectionSpec(url), info)), executor);
+        CompletableFuture<Void> token = CompletableFuture.runAsync(this::warmToken, executor);
+        return hiveURL.thenCombine(token, (resolved, ignored) -> resolved)
+                .thenApplyAsync(
+                        resolved -> {
+                            Stage<Connection> open =
+                                    () -> openWithFailover(connectionSpec(url), info, resolved);
+                            return unchecked(open).get();
+                        },
+                        executor);
     }
 
     @Override
@@ -81,41 +245,280 @@ public class DataprocDriver implements Driver {
     }
 
     /**
-     * Establishes the connection using translated URL. Translated URL format:
-     * jdbc:hive2://<host>:<port>/<dbName>;transportMode=http;httpPath=<http_endpoint>;
-     * <otherSessionConfs>?<hiveConfs>#<hiveVars>
+     * Parses the client URL, or returns its precompiled form if it was seen before.
      *
      * @param url client passed in JDBC URL
+     * @return the parsed client URL
+     */
+    ConnectionSpec connectionSpec(String url) throws SQLException {
+        return CONNECTION_SPECS.get(url);
+    }
+
+    /**
+     * Opens a physical connection to HiveServer2 for an already translated URL. The outcome of the
+     * connect feeds the circuit breaker of the cluster.
+     *
+     * @param hiveURL the translated Hive JDBC URL
      * @param info client passed in connection properties
      * @return the created Hive Connection
      */
-    @VisibleForTesting
-    Connection createConnection(String url, Properties info) throws SQLException {
-        // Valid url format:
-        // jdbc:dataproc://<protocol>/<db>;clusterName=<>;other_sess_var_list?hive_conf_list#hive_var_list
+    Connection openHiveConnection(String hiveURL, Properties info) throws SQLException {
+        String host = ConnectionSpec.hostOf(hiveURL);
+        HiveConnection connection;
+        try {
+            connection = new HiveConnection(hiveURL, info);
+        } catch (SQLException e) {
+            clusterHealth.connectFailed(host, e);
+            throw e;
+        }
+        clusterHealth.connectSucceeded(host);
+        return connection;
+    }
 
-        if (url.startsWith(DATAPROC_JDBC_HIVE_URL_SCHEMA)) {
-            HiveJdbcConnectionOptions params = parseHiveUrl(url);
-            String myEndpoint = String.format("%s-dataproc.googleapis.com:443", params.region());
+    /**
+     * Opens a physical connection to HiveServer2, moving on to other clusters of the pool while
+     * the connect fails because of the cluster. Up to clusterPoolFailoverAttempts other clusters
+     * are tried, each picked among the clusters not tried yet, and no attempt starts after
+     * clusterPoolFailoverBudgetMillis. A connect to a named cluster is not retried, but a failure
+     * caused by the cluster drops its cached lookup: the cluster may have been recreated with
+     * another endpoint.
+     *
+     * <p>If every attempt fails, the SQLException of the last one is thrown, with one suppressed
+     * exception per attempt giving the cluster and the {@link ConnectFailureReason} of its
+     * failure.
+     *
+     * @param spec the parsed client URL
+     * @param info client passed in connection properties
+     * @param hiveURL the translated Hive JDBC URL of the first attempt
+     * @return the created Hive Connection
+     */
+    Connection openWithFailover(ConnectionSpec spec, Properties info, String hiveURL)
+            throws SQLException {
+        HiveJdbcConnectionOptions params = spec.options();
+        if (params.clusterName() != null || params.clusterPoolFailoverAttempts() == 0) {
+            Connection connection;
+            try {
+                connection = openHiveConnection(hiveURL, info);
+            } catch (SQLException e) {
+                if (params.clusterName() != null && ConnectFailureReason.of(e).failsOver()) {
+                    clusterCache.invalidate(
+                            ClusterResolutionCache.Key.forCluster(
+                                    params.projectId(), params.region(), params.clusterName()));
+                }
+                throw e;
+            }
+            return instrument(spec, hiveURL, connection);
+        }
+        long startNanos = System.nanoTime();
+        long budgetNanos = TimeUnit.MILLISECONDS.toNanos(params.clusterPoolFailoverBudgetMillis());
+        Set<String> tried = new LinkedHashSet<>();
+        List<SQLException> attempts = new ArrayList<>();
+        String attemptURL = hiveURL;
+        while (true) {
+            String host = ConnectionSpec.hostOf(attemptURL);
+            Connection connection = null;
+            SQLException failure = null;
             try {
-                // Configure the settings for the cluster controller client.
-                ClusterControllerSettings clusterControllerSettings =
-                        ClusterControllerSettings.newBuilder().setEndpoint(myEndpoint).build();
+                connection = openHiveConnection(attemptURL, info);
+            } catch (SQLException e) {
+                failure = e;
+            }
+            if (failure == null) {
+                return instrument(spec, attemptURL, connection);
+            }
+            ConnectFailureReason reason = ConnectFailureReason.of(failure);
+            attempts.add(
+                    new SQLException(
+                            String.format(
+                                    "Attempt %d on cluster %s failed: %s",
+                                    attempts.size() + 1, host, reason),
+                            failure.getSQLState(),
+                            failure));
+            if (attempts.size() == 1 && !reason.failsOver()) {
+                throw failure;
+            }
+            String stop = null;
+            if (!reason.failsOver()) {
+                stop = "failure not caused by the cluster";
+            } else if (attempts.size() > params.clusterPoolFailoverAttempts()) {
+                stop = "no failover attempt left";
+            } else if (System.nanoTime() - startNanos >= budgetNanos) {
+                stop = "failover time budget spent";
+            } else if (host == null || !tried.add(host)) {
+                stop = "cluster picked again";
+            }
+            if (stop == null) {
+                try {
+                    attemptURL = resolveHiveUrl(spec, info, ImmutableSet.copyOf(tried));
+                } catch (SQLException e) {
+                    attempts.get(attempts.size() - 1).addSuppressed(e);
+                    stop = "no other cluster available";
+                }
+            }
+            if (stop != null) {
+                throw failedOver(failure, attempts, stop);
+            }
+            clusterHealth.failedOver();
+            LOG.warning(
+                    String.format(
+                            "Connect to cluster %s failed (%s), failing over to %s.",
+                            host, reason, ConnectionSpec.hostOf(attemptURL)));
+        }
+    }
 
-                ClusterControllerClient clusterControllerClient =
-                        ClusterControllerClient.create(clusterControllerSettings);
+    /**
+     * Wraps a connection so that its statements report their timings, if the URL sets a
+     * queryMetricsSink, adapt their fetch size, if it sets adaptiveFetchSize, prefetch their rows,
+     * if it sets prefetchBatches, and read them into columns, if it sets columnarFetch.
+     *
+     * <p>For cluster pools whose clusterSelection picks on the connections open on each cluster,
+     * the connection and its statements also count against the load of the cluster until they are
+     * closed.
+     *
+     * @param spec the parsed client URL
+     * @param hiveURL the translated Hive JDBC URL the connection was opened with
+     * @param connection the connection to the cluster
+     * @return the wrapped connection, or the connection itself without any of these options
+     */
+    Connection instrument(ConnectionSpec spec, String hiveURL, Connection connection)
+            throws SQLException {
+        HiveJdbcConnectionOptions options = spec.options();
+        if (options.clusterName() == null
+                && ClusterSelectionStrategies.readsLoad(options.clusterSelection())) {
+            connection = loadTracker.track(ConnectionSpec.hostOf(hiveURL), connection);
+        }
+        String sinkName = options.queryMetricsSink();
+        if (sinkName == null
+                && !options.adaptiveFetchSize()
+                && options.prefetchBatches() == 0
+                && !options.columnarFetch()) {
+            return connection;
+        }
+        QueryMetricsSink sink = null;
+        try {
+            if (sinkName != null) {
+                sink = QueryMetricsSinks.get(sinkName);
+            }
+        } catch (InvalidURLException e) {
+            connection.close();
+            throw e;
+        }
+        return new DataprocConnection(
+                connection,
+                ConnectionSpec.hostOf(hiveURL),
+                sink,
+                options.adaptiveFetchSize() ? options.adaptiveFetchMaxBytes() : 0,
+                options.adaptiveFetchMaxRows(),
+                options.prefetchBatches(),
+                options.columnarFetch());
+    }
 
-                DataprocInfo clusterInfo = new DataprocInfo(params, clusterControllerClient);
+    private static SQLException failedOver(
+            SQLException last, List<SQLException> attempts, String stop) {
+        SQLException failure =
+                new SQLException(
+                        String.format(
+                                "Unable to connect to the cluster pool after %d attempts, %s: %s",
+                                attempts.size(), stop, last.getMessage()),
+                        last.getSQLState(),
+                        last);
+        attempts.forEach(failure::addSuppressed);
+        return failure;
+    }
 
-                String hiveURL = clusterInfo.toHiveJdbcUrl();
-                clusterInfo.closeClusterControllerClient();
-                return new HiveConnection(hiveURL, info);
-            } catch (IOException e) {
-                throw new SQLException(e);
-            }
-        } else {
-            // TODO: support other protocol
-            return null;
+    /**
+     * Fetches the access token of the shared credentials, unless it is still fresh.
+     *
+     * @return true once the token is available
+     */
+    @VisibleForTesting
+    boolean prefetchToken() throws IOException {
+        SharedCredentials.applicationDefault().token();
+        return true;
+    }
+
+    // Warms the shared token, so the auth interceptor HiveConnection creates doesn't wait on it.
+    // On failure the interceptor fetches the token itself and reports what went wrong.
+    private void warmToken() {
+        try {
+            prefetchToken();
+        } catch (IOException | RuntimeException e) {
+            LOG.log(Level.FINE, "Unable to prefetch the access token", e);
+        }
+    }
+
+    /**
+     * Looks up the target cluster through the cluster cache and the shared ClusterControllerClient
+     * of the region, and fills its host into the precompiled Hive JDBC URL.
+     *
+     * @param spec the parsed client URL
+     * @param info client passed in connection properties, which may hold the clusterAffinityKey
+     * @return the translated Hive JDBC URL
+     */
+    @VisibleForTesting
+    String resolveHiveUrl(ConnectionSpec spec, Properties info) throws SQLException {
+        return resolveHiveUrl(spec, info, ImmutableSet.of());
+    }
+
+    /**
+     * Like {@link #resolveHiveUrl(ConnectionSpec, Properties)}, leaving out clusters of the pool
+     * that a failing over connect already tried.
+     *
+     * @param excludedHosts endpoint hosts of the pool clusters not to pick
+     * @throws InvalidURLException if every cluster of the pool is excluded
+     */
+    @VisibleForTesting
+    String resolveHiveUrl(ConnectionSpec spec, Properties info, Set<String> excludedHosts)
+            throws SQLException {
+        HiveJdbcConnectionOptions params = spec.options();
+        try (ClusterControllerClientRegistry.Lease lease =
+                clientRegistry.acquire(params.region())) {
+            DataprocInfo clusterInfo =
+                    new DataprocInfo(
+                            params, lease.client(), clusterCache, poolRefresher, clientRegistry);
+            return spec.toHiveJdbcUrl(
+                    clusterInfo.getHost(spec.affinityKey(info), excludedHosts));
+        } catch (IOException e) {
+            throw new SQLException(e);
         }
     }
+
+    /** Lists the candidate clusters of a pool for its background refresh. */
+    private static ClusterPoolFanOut.Listing listPoolClusters(
+            ClusterControllerClientRegistry clientRegistry, ClusterResolutionCache.Key key)
+            throws SQLException {
+        return ClusterPoolFanOut.shared()
+                .list(
+                        key,
+                        (projectId, region) -> {
+                            try (ClusterControllerClientRegistry.Lease lease =
+                                    clientRegistry.acquire(region)) {
+                                return DataprocInfo.listActiveClusters(
+                                        lease.client(),
+                                        projectId,
+                                        region,
+                                        key.poolFilter(),
+                                        key.pageSize(),
+                                        key.maxCandidates(),
+                                        key.candidateScoring());
+                            } catch (IOException e) {
+                                throw new SQLException(e);
+                            }
+                        });
+    }
+
+    /** A connect stage, which may fail with a checked exception. */
+    private interface Stage<T> {
+        T run() throws SQLException, IOException;
+    }
+
+    private static <T> Supplier<T> unchecked(Stage<T> stage) {
+        return () -> {
+            try {
+                return stage.run();
+            } catch (SQLException | IOException e) {
+                throw new CompletionException(e);
+            }
+        };
+    }
 }
\ No newline at end of file
@@ -20,20 +20,26 @@ import static com.google.cloud.dataproc.jdbc.HiveUrlUtils.checkUrl;
 import com.google.api.gax.rpc.ApiException;
 import com.google.api.gax.rpc.StatusCode;
 import com.google.cloud.dataproc.v1beta2.Cluster;
+import com.google.cloud.dataproc.v1beta2.ClusterConfig;
 import com.google.cloud.dataproc.v1beta2.ClusterControllerClient;
-import com.google.common.base.Joiner;
-import com.google.common.collect.ImmutableMap;
+import com.google.cloud.dataproc.v1beta2.InstanceGroupConfig;
+import com.google.cloud.dataproc.v1beta2.ListClustersRequest;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
 import java.io.IOException;
 import java.net.URI;
 import java.sql.SQLException;
-import java.util.AbstractMap;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Comparator;
-import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.Collectors;
+import javax.annotation.Nullable;
 
 /** Helper class to get cluster info through Dataproc API. */
 public class DataprocInfo {
@@ -41,17 +47,48 @@ public class DataprocInfo {
     public static final String DATAPROC_INTERCEPTOR =
             "com.google.cloud.dataproc.jdbc.DataprocCGAuthInterceptor";
 
-    private static final String HIVE_PROTOCOL = "jdbc:hive2";
-
-    private static final String YARN_MEMORY = "yarn-memory-mb-available";
-
     private final ClusterControllerClient clusterControllerClient;
     private final HiveJdbcConnectionOptions params;
+    private final ClusterResolutionCache clusterCache;
+    private final ClusterPoolRefresher poolRefresher;
+    @Nullable private final ClusterControllerClientRegistry clientRegistry;
 
     // Constructor dependency injection
     public DataprocInfo(HiveJdbcConnectionOptions params, ClusterControllerClient controller) {
+        this(params, controller, ClusterResolutionCache.disabled());
+    }
+
+    DataprocInfo(
+            HiveJdbcConnectionOptions params,
+            ClusterControllerClient controller,
+            ClusterResolutionCache clusterCache) {
+        this(params, controller, clusterCache, ClusterPoolRefresher.disabled());
+    }
+
+    DataprocInfo(
+            HiveJdbcConnectionOptions params,
+            ClusterControllerClient controller,
+            ClusterResolutionCache clusterCache,
+            ClusterPoolRefresher poolRefresher) {
+        this(params, controller, clusterCache, poolRefresher, null);
+    }
+
+    /**
+     * @param controller the client of the region of the URL
+     * @param clientRegistry provides the clients of the other regions of a cluster pool spanning
+     *     several, null when only the region of the URL can be listed
+     */
+    DataprocInfo(
+            HiveJdbcConnectionOptions params,
+            ClusterControllerClient controller,
+            ClusterResolutionCache clusterCache,
+            ClusterPoolRefresher poolRefresher,
+            @Nullable ClusterControllerClientRegistry clientRegistry) {
         this.params = params;
         this.clusterControllerClient = controller;
+        this.clusterCache = clusterCache;
+        this.poolRefresher = poolRefresher;
+        this.clientRegistry = clientRegistry;
     }
 
     /**
@@ -62,30 +99,7 @@ public class DataprocInfo {
      * @throws InvalidURLException
      */
     public String toHiveJdbcUrl() throws SQLException {
-        String hiveJdbcURL =
-                String.format("%s://%s:%d/%s", HIVE_PROTOCOL, getHost(), params.port(), params.dbName());
-
-        ImmutableMap<String, String> urlMap =
-                ImmutableMap.<String, String>builder()
-                        .put("transportMode", params.transportMode())
-                        .put("httpPath", params.httpPath())
-                        .put("ssl", "true")
-                        .put(HTTP_INTERCEPTOR, DATAPROC_INTERCEPTOR)
-                        .build();
-
-        hiveJdbcURL =
-                String.format("%s;%s", hiveJdbcURL, Joiner.on(";").withKeyValueSeparator("=").join(urlMap));
-
-        if (params.otherSessionConfs() != null) {
-            hiveJdbcURL = String.format("%s;%s", hiveJdbcURL, params.otherSessionConfs());
-        }
-        if (params.hiveConfs() != null) {
-            hiveJdbcURL = String.format("%s?%s", hiveJdbcURL, params.hiveConfs());
-        }
-        if (params.hiveVars() != null) {
-            hiveJdbcURL = String.format("%s#%s", hiveJdbcURL, params.hiveVars());
-        }
-        return hiveJdbcURL;
+        return ConnectionSpec.create(params).toHiveJdbcUrl(getHost());
     }
 
     /**
@@ -95,9 +109,33 @@ public class DataprocInfo {
      * @throws InvalidURLException
      */
     public String getHost() throws SQLException {
+        return getHost(null);
+    }
+
+    /**
+     * Uses Dataproc client libraries to get cluster.
+     *
+     * @param affinityKey the value of the clusterAffinityKey of the connection, or null
+     * @return Endpoint url of the cluster's master node
+     * @throws InvalidURLException
+     */
+    String getHost(@Nullable String affinityKey) throws SQLException {
+        return getHost(affinityKey, ImmutableSet.of());
+    }
+
+    /**
+     * Uses Dataproc client libraries to get cluster, leaving out clusters of the pool that a
+     * failing over connect already tried.
+     *
+     * @param affinityKey the value of the clusterAffinityKey of the connection, or null
+     * @param excludedHosts endpoint hosts of the pool clusters not to pick
+     * @return Endpoint url of the cluster's master node
+     * @throws InvalidURLException if every cluster of the pool is excluded
+     */
+    String getHost(@Nullable String affinityKey, Set<String> excludedHosts) throws SQLException {
         Cluster host =
                 params.clusterName() == null
-                        ? findClusterInPool(formatClusterFilterString())
+                        ? findClusterInPool(formatClusterFilterString(), affinityKey, excludedHosts)
                         : getClusterByName();
         return getHostEndPoint(host);
     }
@@ -110,27 +148,53 @@ public class DataprocInfo {
      * @throws InvalidURLException
      */
     public String getHostEndPoint(Cluster host) throws InvalidURLException {
-        Collection<String> httpPorts = host.getConfig().getEndpointConfig().getHttpPortsMap().values();
-        if (httpPorts.isEmpty()) {
+        String endpointHost = endpointHost(host);
+        if (endpointHost == null) {
             throw new InvalidURLException("Unable to find cluster endpoint for Hive.");
         }
+        return endpointHost;
+    }
+
+    /**
+     * @param cluster the cluster
+     * @return the endpoint host of the cluster, or null if it has no Component Gateway endpoint
+     */
+    @Nullable
+    static String endpointHost(Cluster cluster) {
+        Collection<String> httpPorts =
+                cluster.getConfig().getEndpointConfig().getHttpPortsMap().values();
+        if (httpPorts.isEmpty()) {
+            return null;
+        }
         // Example uri:
         // https://uklx3owiy5bjlgps5cr72oppla-dot-us-central1.dataproc.googleusercontent.com/yarn/
-        URI uri =
-                URI.create(
-                        host.getConfig().getEndpointConfig().getHttpPortsMap().values().iterator().next());
+        URI uri = URI.create(httpPorts.iterator().next());
         // getHost() will return
         // "uklx3owiy5bjlgps5cr72oppla-dot-us-central1.dataproc.googleusercontent.com"
         return uri.getHost();
     }
 
     /**
-     * Supports finding & verifying the cluster indicated by name.
+     * Supports finding & verifying the cluster indicated by name. The lookup is served from the
+     * cluster cache while it is fresh.
      *
      * @return the cluster of the given name
      * @throws InvalidURLException
      */
     public Cluster getClusterByName() throws SQLException {
+        ClusterResolutionCache.Key key =
+                ClusterResolutionCache.Key.forCluster(
+                        params.projectId(), params.region(), params.clusterName());
+        return clusterCache
+                .get(
+                        key,
+                        params.clusterCacheTtlSeconds(),
+                        params.clusterCacheNegativeTtlSeconds(),
+                        () -> ImmutableList.of(fetchClusterByName()))
+                .get(0);
+    }
+
+    private Cluster fetchClusterByName() throws SQLException {
         try {
             Cluster cluster =
                     clusterControllerClient.getCluster(
@@ -197,88 +261,334 @@ public class DataprocInfo {
     }
 
     /**
-     * Supports picking a cluster from cluster pool.
+     * Supports picking a cluster from cluster pool. The candidate clusters are served from the
+     * snapshot the pool refresher keeps in the background, or from the cluster cache while it is
+     * fresh when the background refresh is disabled. The pick itself happens on every call, with
+     * the ClusterSelectionStrategy named by the clusterSelection URL property, among the clusters
+     * that pass the metric limits of the URL. A pool spanning several projects or regions is
+     * listed in all of them in parallel.
      *
      * @param filter formatted filter that matches the conditions client passed in
      * @return the suitable cluster with cluster pool
      * @throws IOException
      */
     public Cluster findClusterInPool(String filter) throws SQLException {
-        try {
-            Map<Cluster, Long> clusterLoads = new HashMap<>();
-            for (Cluster response :
-                    clusterControllerClient
-                            .listClusters(params.projectId(), params.region(), filter)
-                            .iterateAll()) {
-
-                // Only connect to cluster with status state `RUNNING` or `UPDATING`
-                if (response.getStatus().getState().toString().equals("CREATING")) {
-                    continue;
-                }
+        return findClusterInPool(filter, null, ImmutableSet.of());
+    }
+
+    private Cluster findClusterInPool(
+            String filter, @Nullable String affinityKey, Set<String> excludedHosts)
+            throws SQLException {
+        ClusterResolutionCache.Key key =
+                ClusterResolutionCache.Key.forPool(
+                        params.projectIds(),
+                        params.regions(),
+                        filter,
+                        params.clusterPoolPageSize(),
+                        params.clusterPoolMaxCandidates(),
+                        params.clusterScoring(),
+                        params.clusterPoolRegionTimeoutMillis());
+        ClusterResolutionCache.PoolLoader listing =
+                () ->
+                        ClusterPoolFanOut.shared()
+                                .list(
+                                        key,
+                                        (projectId, region) ->
+                                                listPoolClusters(key, filter, projectId, region));
+        ClusterPoolSnapshot snapshot =
+                poolRefresher.snapshot(
+                        key,
+                        params.clusterPoolRefreshSeconds(),
+                        () ->
+                                clusterCache.getPool(
+                                        key,
+                                        params.clusterCacheTtlSeconds(),
+                                        params.clusterCacheNegativeTtlSeconds(),
+                                        listing));
+        ClusterPool pool = excluding(snapshot.scored(params.clusterScoring()), excludedHosts);
+        ClusterHealthTracker health = ClusterHealthTracker.shared();
+        int probe = health.claimProbe(pool);
+        if (probe >= 0) {
+            // This connect is the half-open probe of an ejected cluster
+            return pool.cluster(probe);
+        }
+        pool = health.admitted(pool);
+        ClusterSelectionStrategy strategy =
+                ClusterSelectionStrategies.get(params.clusterSelection());
+        int index =
+                strategy.select(
+                        pool,
+                        SelectionContext.create(
+                                params.projectId(),
+                                params.region(),
+                                filter,
+                                params.dbName(),
+                                affinityKey));
+        if (index < 0 || index >= pool.size()) {
+            throw new SQLException(
+                    String.format(
+                            "Cluster selection strategy %s picked cluster %d of %d.",
+                            strategy.name(), index, pool.size()));
+        }
+        return pool.cluster(index);
+    }
 
-                clusterLoads.put(
-                        response,
-                        response.hasMetrics()
-                                ? response.getMetrics().getYarnMetricsOrDefault(YARN_MEMORY, 0)
-                                : 0);
+    private static ClusterPool excluding(ClusterPool pool, Set<String> excludedHosts)
+            throws InvalidURLException {
+        if (excludedHosts.isEmpty()) {
+            return pool;
+        }
+        int[] members = new int[pool.size()];
+        int size = 0;
+        for (int i = 0; i < pool.size(); i++) {
+            if (!excludedHosts.contains(pool.endpointHost(i))) {
+                members[size++] = i;
             }
+        }
+        if (size == 0) {
+            throw new InvalidURLException("No other cluster of the pool to fail over to.");
+        }
+        return new AdmittedClusterPool(pool, members, size);
+    }
+
+    // Lists the pool in one of its projects and regions, with the client of that region
+    private ImmutableList<Cluster> listPoolClusters(
+            ClusterResolutionCache.Key key, String filter, String projectId, String region)
+            throws SQLException {
+        if (region.equals(params.region())) {
+            return listActiveClusters(
+                    clusterControllerClient,
+                    projectId,
+                    region,
+                    filter,
+                    key.pageSize(),
+                    key.maxCandidates(),
+                    key.candidateScoring());
+        }
+        if (clientRegistry == null) {
+            throw new SQLException(
+                    String.format("No Dataproc API client available for region %s.", region));
+        }
+        try (ClusterControllerClientRegistry.Lease lease = clientRegistry.acquire(region)) {
+            return listActiveClusters(
+                    lease.client(),
+                    projectId,
+                    region,
+                    filter,
+                    key.pageSize(),
+                    key.maxCandidates(),
+                    key.candidateScoring());
+        } catch (IOException e) {
+            throw new SQLException(e);
+        }
+    }
+
+    /**
+     * Lists the clusters matching the filter that can accept connections.
+     *
+     * @param client the client of the region
+     * @param projectId the project of the clusters
+     * @param region the region of the clusters
+     * @param filter formatted filter that matches the conditions client passed in
+     * @return the matching clusters, never empty
+     * @throws InvalidURLException if no cluster matches
+     */
+    static ImmutableList<Cluster> listActiveClusters(
+            ClusterControllerClient client, String projectId, String region, String filter)
+            throws SQLException {
+        return listActiveClusters(client, projectId, region, filter, 0, 0, null);
+    }
 
-            if (clusterLoads.size() == 0) {
+    /**
+     * Lists the clusters matching the filter that can accept connections, keeping only the fields
+     * needed to pick one of them and connect to it.
+     *
+     * <p>With a limit on candidates, the listing stops at the end of the page on which that many
+     * clusters within the metric limits of the scoring were found, without fetching the remaining
+     * pages. The candidates returned are a random sample of those on the fetched pages, so that
+     * the clusters listed first don't take all the connections. Clusters over a limit are only
+     * returned when the listing ends before that.
+     *
+     * @param client the client of the region
+     * @param projectId the project of the clusters
+     * @param region the region of the clusters
+     * @param filter formatted filter that matches the conditions client passed in
+     * @param pageSize clusters per page of the listing, 0 for the API default
+     * @param maxCandidates clusters within the metric limits after which the listing stops, 0
+     *     lists all clusters
+     * @param candidateScoring the limits candidates must be within, unused when listing all
+     * @return the matching clusters, never empty
+     * @throws InvalidURLException if no cluster matches
+     */
+    static ImmutableList<Cluster> listActiveClusters(
+            ClusterControllerClient client,
+            String projectId,
+            String region,
+            String filter,
+            int pageSize,
+            int maxCandidates,
+            @Nullable ClusterScoring candidateScoring)
+            throws SQLException {
+        try {
+            ClusterControllerClient.ListClustersPagedResponse listing =
+                    pageSize > 0
+                            ? client.listClusters(
+                                    ListClustersRequest.newBuilder()
+                                            .setProjectId(projectId)
+                                            .setRegion(region)
+                                            .setFilter(filter)
+                                            .setPageSize(pageSize)
+                                            .build())
+                            : client.listClusters(projectId, region, filter);
+            ImmutableList<Cluster> activeClusters;
+            if (maxCandidates <= 0) {
+                ImmutableList.Builder<Cluster> clusters = ImmutableList.builder();
+                for (Cluster response : listing.iterateAll()) {
+                    if (!isCreating(response)) {
+                        clusters.add(trimmed(response));
+                    }
+                }
+                activeClusters = clusters.build();
+            } else {
+                activeClusters =
+                        sampleCandidates(
+                                listing,
+                                maxCandidates,
+                                candidateScoring == null
+                                        ? ClusterScoring.DEFAULT
+                                        : candidateScoring);
+            }
+            if (activeClusters.isEmpty()) {
                 throw new InvalidURLException(
                         String.format(
                                 "Unable to find active clusters matching label %s in %s/%s.\n",
-                                filter, params.projectId(), params.region()));
+                                filter, projectId, region));
             }
-
-            Random random = new Random();
-            // pickCluster does not take clusters with 0 memory available memory into the map to avoid
-            // divided by 0
-            Cluster suitableCluster = pickCluster(clusterLoads, random);
-
-            if (suitableCluster == null) {
-                // no cluster has yarn memory available, randomly pick a cluster
-                suitableCluster =
-                        clusterLoads.keySet().stream()
-                                .collect(Collectors.toList())
-                                .get(random.nextInt(clusterLoads.size()));
-            }
-
-            return suitableCluster;
+            return activeClusters;
         } catch (ApiException e) {
             if (e.getStatusCode().getCode().equals(StatusCode.Code.NOT_FOUND)) {
                 throw new InvalidURLException(
                         String.format(
                                 "Unable to find active clusters matching label %s in %s/%s.\n",
-                                filter, params.projectId(), params.region()),
+                                filter, projectId, region),
                         e);
             }
             throw new SQLException(e);
         }
     }
 
+    /**
+     * Lists pages until one ends with at least maxCandidates clusters within the limits of the
+     * scoring seen, and keeps a uniform random sample of maxCandidates of them. Clusters over a
+     * limit are only kept when the listing ends before that.
+     */
+    private static ImmutableList<Cluster> sampleCandidates(
+            ClusterControllerClient.ListClustersPagedResponse listing,
+            int maxCandidates,
+            ClusterScoring scoring) {
+        List<Cluster> candidates = new ArrayList<>();
+        List<Cluster> overLimits = new ArrayList<>();
+        int candidatesSeen = 0;
+        Random random = ThreadLocalRandom.current();
+        // Pages are fetched lazily, leaving the loop skips the remaining ones
+        for (ClusterControllerClient.ListClustersPage page : listing.iteratePages()) {
+            for (Cluster response : page.getValues()) {
+                if (isCreating(response)) {
+                    continue;
+                }
+                Cluster cluster = trimmed(response);
+                if (!scoring.withinLimits(cluster)) {
+                    if (overLimits.size() < maxCandidates) {
+                        overLimits.add(cluster);
+                    }
+                    continue;
+                }
+                // Reservoir sampling, every candidate seen is kept with the same chance
+                candidatesSeen++;
+                if (candidates.size() < maxCandidates) {
+                    candidates.add(cluster);
+                } else {
+                    int slot = random.nextInt(candidatesSeen);
+                    if (slot < maxCandidates) {
+                        candidates.set(slot, cluster);
+                    }
+                }
+            }
+            if (candidatesSeen >= maxCandidates) {
+                return ImmutableList.copyOf(candidates);
+            }
+        }
+        return ImmutableList.<Cluster>builder().addAll(candidates).addAll(overLimits).build();
+    }
+
+    // Only connect to cluster with status state `RUNNING` or `UPDATING`
+    private static boolean isCreating(Cluster cluster) {
+        return cluster.getStatus().getState().toString().equals("CREATING");
+    }
+
+    /**
+     * Trims the memory a listed cluster holds while cached: copies the fields that the pick of a
+     * pool cluster and the connection to it read, i.e. name, state, endpoints, worker counts and
+     * metrics, and drops the rest of the config, software properties and labels. The listing itself
+     * still transfers and parses whole clusters, ListClusters of v1beta2 takes no field mask.
+     *
+     * @param cluster a cluster as listed by the Dataproc API
+     * @return the trimmed copy, for cached listings and pool snapshots
+     */
+    @VisibleForTesting
+    static Cluster trimmed(Cluster cluster) {
+        ClusterConfig config = cluster.getConfig();
+        Cluster.Builder trimmed =
+                Cluster.newBuilder()
+                        .setProjectId(cluster.getProjectId())
+                        .setClusterName(cluster.getClusterName())
+                        .setClusterUuid(cluster.getClusterUuid())
+                        .setStatus(cluster.getStatus())
+                        .setConfig(
+                                ClusterConfig.newBuilder()
+                                        .setEndpointConfig(config.getEndpointConfig())
+                                        .setWorkerConfig(
+                                                InstanceGroupConfig.newBuilder()
+                                                        .setNumInstances(
+                                                                config.getWorkerConfig()
+                                                                        .getNumInstances()))
+                                        .setSecondaryWorkerConfig(
+                                                InstanceGroupConfig.newBuilder()
+                                                        .setNumInstances(
+                                                                config.getSecondaryWorkerConfig()
+                                                                        .getNumInstances())));
+        if (cluster.hasMetrics()) {
+            trimmed.setMetrics(cluster.getMetrics());
+        }
+        return trimmed.build();
+    }
+
     /**
      * Random weighted selection of a cluster based on clusters' available yarn memory.
      *
      * @param clusters map from cluster to the available yarn memory of that cluster
      * @return the selected cluster
+     * @deprecated connections pick clusters with the weighted-random {@link
+     *     ClusterSelectionStrategy}, which draws the same distribution in constant time
      */
+    @Deprecated
     public static Cluster pickCluster(Map<Cluster, Long> clusters, Random random) {
-        Map<Cluster, Long> clusterLoads =
-                clusters.entrySet().stream()
-                        .filter(entry -> entry.getValue() != 0)
-                        .collect(Collectors.toMap(map -> map.getKey(), map -> map.getValue()));
-        if (clusterLoads.size() == 0) {
-            // empty if no cluster has yarn memory available
-            return null;
+        // Exponential race in a single pass, the candidate with the lowest key wins
+        Cluster picked = null;
+        double pickedKey = Double.POSITIVE_INFINITY;
+        for (Map.Entry<Cluster, Long> entry : clusters.entrySet()) {
+            long load = entry.getValue();
+            if (load == 0) {
+                continue;
+            }
+            double key = -Math.log(random.nextDouble()) / load;
+            if (picked == null || key < pickedKey) {
+                picked = entry.getKey();
+                pickedKey = key;
+            }
         }
-        return clusterLoads.entrySet().stream()
-                .map(
-                        e ->
-                                new AbstractMap.SimpleEntry<>(
-                                        e.getKey(), -Math.log(random.nextDouble()) / e.getValue()))
-                .min(Comparator.comparing(AbstractMap.SimpleEntry::getValue))
-                .orElseThrow(IllegalArgumentException::new)
-                .getKey();
+        // null if no cluster has yarn memory available
+        return picked;
     }
 
     /** Allows class that initializes the ClusterControllerClient to close it. */
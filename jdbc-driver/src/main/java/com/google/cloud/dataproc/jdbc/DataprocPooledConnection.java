@@ -0,0 +1,106 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import javax.annotation.Nullable;
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+import javax.sql.PooledConnection;
+import javax.sql.StatementEventListener;
+
+/**
+ * PooledConnection over a single HiveConnection, for application servers that run their own
+ * pool on top of {@link DataprocDataSource}.
+ *
+ * <p>Closing a logical connection resets its session state and notifies the listeners instead of
+ * closing the HiveConnection. Statement pooling is not supported, so no statement events are
+ * fired.
+ */
+class DataprocPooledConnection implements PooledConnection {
+    private final Connection physical;
+    private final SessionDefaults defaults;
+    private final List<ConnectionEventListener> connectionListeners = new CopyOnWriteArrayList<>();
+    private final List<StatementEventListener> statementListeners = new CopyOnWriteArrayList<>();
+
+    @Nullable private PooledConnectionHandle currentHandle;
+    private boolean closed;
+
+    DataprocPooledConnection(Connection physical, SessionDefaults defaults) {
+        this.physical = physical;
+        this.defaults = defaults;
+    }
+
+    @Override
+    public synchronized Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLNonTransientConnectionException(
+                    "Pooled connection has been closed.", "08003");
+        }
+        // Only one logical connection may be open at a time, the previous one is closed
+        if (currentHandle != null) {
+            currentHandle.close();
+        }
+        currentHandle = new PooledConnectionHandle(physical, defaults, this::logicalClosed);
+        return currentHandle;
+    }
+
+    @Override
+    public synchronized void close() throws SQLException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        currentHandle = null;
+        physical.close();
+    }
+
+    private void logicalClosed(PooledConnectionHandle handle, @Nullable SQLException failure) {
+        ConnectionEvent event =
+                failure == null ? new ConnectionEvent(this) : new ConnectionEvent(this, failure);
+        for (ConnectionEventListener listener : connectionListeners) {
+            if (failure == null) {
+                listener.connectionClosed(event);
+            } else {
+                listener.connectionErrorOccurred(event);
+            }
+        }
+    }
+
+    @Override
+    public void addConnectionEventListener(ConnectionEventListener listener) {
+        connectionListeners.add(listener);
+    }
+
+    @Override
+    public void removeConnectionEventListener(ConnectionEventListener listener) {
+        connectionListeners.remove(listener);
+    }
+
+    @Override
+    public void addStatementEventListener(StatementEventListener listener) {
+        statementListeners.add(listener);
+    }
+
+    @Override
+    public void removeStatementEventListener(StatementEventListener listener) {
+        statementListeners.remove(listener);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * Prepared statement of a {@link DataprocConnection}, times its executions and the fetch of their
+ * rows.
+ */
+class DataprocPreparedStatement extends ForwardingPreparedStatement {
+    private final DataprocConnection connection;
+    private final PreparedStatement statement;
+    private final String sql;
+    private final StatementTimings timings;
+
+    DataprocPreparedStatement(
+            DataprocConnection connection, PreparedStatement statement, String sql) {
+        this.connection = connection;
+        this.statement = statement;
+        this.sql = sql;
+        this.timings = new StatementTimings(connection, this, statement);
+    }
+
+    @Override
+    protected PreparedStatement delegate() {
+        return statement;
+    }
+
+    @Override
+    public ResultSet executeQuery() throws SQLException {
+        return timings.executeQuery(sql, statement::executeQuery);
+    }
+
+    @Override
+    public int executeUpdate() throws SQLException {
+        return timings.executeUpdate(sql, statement::executeUpdate);
+    }
+
+    @Override
+    public boolean execute() throws SQLException {
+        return timings.execute(sql, statement::execute);
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        return timings.wrap(statement.getResultSet());
+    }
+
+    @Override
+    public void close() throws SQLException {
+        // Stops the fetcher of a prefetching result set before its statement goes away
+        timings.complete();
+        statement.close();
+    }
+
+    @Override
+    public Connection getConnection() {
+        return connection;
+    }
+}
\ No newline at end of file
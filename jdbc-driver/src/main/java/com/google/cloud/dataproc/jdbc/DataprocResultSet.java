@@ -0,0 +1,130 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.common.base.Ticker;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import javax.annotation.Nullable;
+
+/**
+ * Result set of a statement of a {@link DataprocConnection}. Times each call to next() until it is
+ * exhausted or closed, and adapts the fetch size between batches.
+ */
+class DataprocResultSet extends ForwardingResultSet {
+    private final ResultSet resultSet;
+    private final Statement statement;
+    @Nullable private final QueryTimer timer;
+    @Nullable private AdaptiveFetchSize adaptiveFetchSize;
+    private final Ticker ticker;
+
+    /**
+     * @param resultSet the result set of the physical statement
+     * @param statement the statement that returned it, as seen by the client
+     * @param timer the timer of the execution that returned it, null if not timed
+     * @param adaptiveFetchSize sizes its batches, null to keep the fetch size
+     */
+    DataprocResultSet(
+            ResultSet resultSet,
+            Statement statement,
+            @Nullable QueryTimer timer,
+            @Nullable AdaptiveFetchSize adaptiveFetchSize,
+            Ticker ticker) {
+        this.resultSet = resultSet;
+        this.statement = statement;
+        this.timer = timer;
+        this.adaptiveFetchSize = adaptiveFetchSize;
+        this.ticker = ticker;
+    }
+
+    @Override
+    protected ResultSet delegate() {
+        return resultSet;
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+        long startedNanos = ticker.read();
+        boolean hasRow = resultSet.next();
+        long endNanos = ticker.read();
+        fetched(startedNanos, endNanos, hasRow);
+        return hasRow;
+    }
+
+    /** @return whether the physical result set reads column batches, see {@link #nextRows} */
+    boolean isColumnar() {
+        return resultSet instanceof ColumnarResultSet;
+    }
+
+    /**
+     * Reads up to maxRows rows of the columnar physical result set at once, see {@link
+     * ColumnarResultSet#nextRows}. They are timed as that many calls to next(), the first one
+     * taking the time of the call.
+     */
+    int nextRows(int maxRows, ColumnarResultSet.RowRunConsumer consumer) throws SQLException {
+        long startedNanos = ticker.read();
+        int rows = ((ColumnarResultSet) resultSet).nextRows(maxRows, consumer);
+        long endNanos = ticker.read();
+        fetched(startedNanos, endNanos, rows > 0);
+        for (int i = 1; i < rows; i++) {
+            fetched(endNanos, endNanos, true);
+        }
+        return rows;
+    }
+
+    private void fetched(long startedNanos, long endNanos, boolean hasRow) throws SQLException {
+        int fetchSize =
+                hasRow && adaptiveFetchSize != null
+                        ? adaptiveFetchSize.rowFetched(endNanos - startedNanos)
+                        : 0;
+        if (timer != null) {
+            timer.fetched(startedNanos, endNanos, hasRow);
+            if (fetchSize > 0) {
+                timer.setBatchSize(fetchSize);
+            }
+            if (!hasRow) {
+                timer.complete();
+            }
+        }
+    }
+
+    /** A fetch size set by the client is kept as is. */
+    @Override
+    public void setFetchSize(int rows) throws SQLException {
+        resultSet.setFetchSize(rows);
+        adaptiveFetchSize = null;
+        if (timer != null) {
+            timer.setBatchSize(rows);
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            resultSet.close();
+        } finally {
+            if (timer != null) {
+                timer.complete();
+            }
+        }
+    }
+
+    @Override
+    public Statement getStatement() {
+        return statement;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import java.sql.ResultSet;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.memory.RootAllocator;
+
+/**
+ * Columnar exports of the results of the driver's queries.
+ *
+ * <p>Arrow is not bundled with the driver, add {@code org.apache.arrow:arrow-vector} and an
+ * allocator such as {@code org.apache.arrow:arrow-memory-netty} to the classpath to use {@link
+ * #toArrow}.
+ */
+public final class DataprocResultSets {
+
+    private DataprocResultSets() {}
+
+    /**
+     * Reads the rows of a result set into Arrow batches, with an allocator of its own released
+     * when the reader is closed.
+     *
+     * @param resultSet the result set to read, positioned before the rows to export
+     * @param batchRows the most rows of each batch
+     * @return the reader of the batches, which closes the result set when closed
+     */
+    public static ResultSetArrowReader toArrow(ResultSet resultSet, int batchRows) {
+        return new ResultSetArrowReader(resultSet, batchRows, new RootAllocator(), true);
+    }
+
+    /**
+     * Reads the rows of a result set into Arrow batches.
+     *
+     * @param resultSet the result set to read, positioned before the rows to export
+     * @param batchRows the most rows of each batch
+     * @param allocator allocates the vectors of the batches
+     * @return the reader of the batches, which closes the result set when closed
+     */
+    public static ResultSetArrowReader toArrow(
+            ResultSet resultSet, int batchRows, BufferAllocator allocator) {
+        return new ResultSetArrowReader(resultSet, batchRows, allocator, false);
+    }
+}
\ No newline at end of file
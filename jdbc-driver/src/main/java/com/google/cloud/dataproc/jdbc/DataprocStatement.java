@@ -0,0 +1,101 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/** Statement of a {@link DataprocConnection}, times its executions and the fetch of their rows. */
+class DataprocStatement extends ForwardingStatement {
+    private final DataprocConnection connection;
+    private final Statement statement;
+    private final StatementTimings timings;
+
+    DataprocStatement(DataprocConnection connection, Statement statement) {
+        this.connection = connection;
+        this.statement = statement;
+        this.timings = new StatementTimings(connection, this, statement);
+    }
+
+    @Override
+    protected Statement delegate() {
+        return statement;
+    }
+
+    @Override
+    public ResultSet executeQuery(String sql) throws SQLException {
+        return timings.executeQuery(sql, () -> statement.executeQuery(sql));
+    }
+
+    @Override
+    public int executeUpdate(String sql) throws SQLException {
+        return timings.executeUpdate(sql, () -> statement.executeUpdate(sql));
+    }
+
+    @Override
+    public int executeUpdate(String sql, int autoGeneratedKeys) throws SQLException {
+        return timings.executeUpdate(sql, () -> statement.executeUpdate(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public int executeUpdate(String sql, int[] columnIndexes) throws SQLException {
+        return timings.executeUpdate(sql, () -> statement.executeUpdate(sql, columnIndexes));
+    }
+
+    @Override
+    public int executeUpdate(String sql, String[] columnNames) throws SQLException {
+        return timings.executeUpdate(sql, () -> statement.executeUpdate(sql, columnNames));
+    }
+
+    @Override
+    public boolean execute(String sql) throws SQLException {
+        return timings.execute(sql, () -> statement.execute(sql));
+    }
+
+    @Override
+    public boolean execute(String sql, int autoGeneratedKeys) throws SQLException {
+        return timings.execute(sql, () -> statement.execute(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public boolean execute(String sql, int[] columnIndexes) throws SQLException {
+        return timings.execute(sql, () -> statement.execute(sql, columnIndexes));
+    }
+
+    @Override
+    public boolean execute(String sql, String[] columnNames) throws SQLException {
+        return timings.execute(sql, () -> statement.execute(sql, columnNames));
+    }
+
+    @Override
+    public ResultSet getResultSet() throws SQLException {
+        return timings.wrap(statement.getResultSet());
+    }
+
+    @Override
+    public void close() throws SQLException {
+        // Stops the fetcher of a prefetching result set before its statement goes away
+        timings.complete();
+        statement.close();
+    }
+
+    @Override
+    public Connection getConnection() {
+        return connection;
+    }
+}
\ No newline at end of file
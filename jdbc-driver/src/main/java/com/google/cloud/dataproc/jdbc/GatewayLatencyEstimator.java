@@ -0,0 +1,216 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Estimates the round-trip time from the driver to the Component Gateway host of each cluster, as
+ * an exponentially weighted moving average of probe times.
+ *
+ * <p>Reads never block: a host that has not been probed yet, or whose estimate is older than the
+ * probe interval, is probed in the background and the current estimate is returned meanwhile. A
+ * host whose last probe failed is reported as unhealthy until a probe succeeds again. Hosts not
+ * read for {@link #EVICT_AFTER_PROBE_INTERVALS} probe intervals, such as deleted clusters, are
+ * forgotten.
+ */
+final class GatewayLatencyEstimator {
+    private static final Logger LOG = Logger.getLogger(GatewayLatencyEstimator.class.getName());
+
+    static final long DEFAULT_PROBE_INTERVAL_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    // Weight of the latest probe in the moving average
+    static final double SMOOTHING = 0.3;
+    private static final int PROBE_TIMEOUT_MILLIS = 2000;
+    static final int EVICT_AFTER_PROBE_INTERVALS = 4;
+
+    private static final GatewayLatencyEstimator SHARED =
+            new GatewayLatencyEstimator(
+                    httpHead(host -> "https://" + host + "/"),
+                    Executors.newCachedThreadPool(
+                            new ThreadFactoryBuilder()
+                                    .setNameFormat("dataproc-gateway-probe-%d")
+                                    .setDaemon(true)
+                                    .build()),
+                    Ticker.systemTicker(),
+                    DEFAULT_PROBE_INTERVAL_MILLIS);
+
+    /** Sends one request to a host, the estimator times it. */
+    interface Prober {
+        /** @throws IOException if the host could not be reached */
+        void probe(String host) throws IOException;
+    }
+
+    /** The estimate of one host. */
+    private static final class HostLatency {
+        // NaN until the first successful probe
+        volatile double rttNanos = Double.NaN;
+        volatile boolean healthy = true;
+        volatile boolean probed;
+        volatile long probedAtNanos;
+        volatile long readAtNanos;
+        final AtomicBoolean probing = new AtomicBoolean();
+    }
+
+    private final ConcurrentMap<String, HostLatency> hosts = new ConcurrentHashMap<>();
+    private final Prober prober;
+    private final Executor executor;
+    private final Ticker ticker;
+    private final long probeIntervalNanos;
+    private final AtomicLong evictedAtNanos = new AtomicLong();
+
+    @VisibleForTesting
+    GatewayLatencyEstimator(
+            Prober prober, Executor executor, Ticker ticker, long probeIntervalMillis) {
+        this.prober = prober;
+        this.executor = executor;
+        this.ticker = ticker;
+        this.probeIntervalNanos = TimeUnit.MILLISECONDS.toNanos(probeIntervalMillis);
+    }
+
+    /** @return the estimator shared by all connections of the driver */
+    static GatewayLatencyEstimator shared() {
+        return SHARED;
+    }
+
+    /**
+     * Probes hosts with an HTTP HEAD request. Any response counts as success, the gateway answers
+     * unauthenticated requests with a redirect or an error.
+     *
+     * @param urlForHost the URL to request for a host
+     */
+    static Prober httpHead(Function<String, String> urlForHost) {
+        return host -> {
+            HttpURLConnection connection =
+                    (HttpURLConnection) new URL(urlForHost.apply(host)).openConnection();
+            try {
+                connection.setRequestMethod("HEAD");
+                connection.setInstanceFollowRedirects(false);
+                connection.setConnectTimeout(PROBE_TIMEOUT_MILLIS);
+                connection.setReadTimeout(PROBE_TIMEOUT_MILLIS);
+                connection.getResponseCode();
+            } finally {
+                connection.disconnect();
+            }
+        };
+    }
+
+    /**
+     * @param host the endpoint host of a cluster, or null if unknown
+     * @return the smoothed round-trip time to the host in nanoseconds, or -1 if not measured yet
+     */
+    long rttNanos(@Nullable String host) {
+        HostLatency latency = latency(host);
+        if (latency == null || Double.isNaN(latency.rttNanos)) {
+            return -1;
+        }
+        return Math.round(latency.rttNanos);
+    }
+
+    /**
+     * Reads the round-trip time to a host already probed for another caller, without probing it.
+     *
+     * @param host the endpoint host of a cluster, or null if unknown
+     * @return the smoothed round-trip time to the host in nanoseconds, or -1 if not measured
+     */
+    long knownRttNanos(@Nullable String host) {
+        HostLatency latency = host == null ? null : hosts.get(host);
+        if (latency == null || Double.isNaN(latency.rttNanos)) {
+            return -1;
+        }
+        return Math.round(latency.rttNanos);
+    }
+
+    /**
+     * @param host the endpoint host of a cluster, or null if unknown
+     * @return false if the last probe of the host failed
+     */
+    boolean isHealthy(@Nullable String host) {
+        HostLatency latency = latency(host);
+        return latency == null || latency.healthy;
+    }
+
+    // Returns the estimate of the host, probing it in the background if stale
+    @Nullable
+    private HostLatency latency(@Nullable String host) {
+        if (host == null) {
+            return null;
+        }
+        long now = ticker.read();
+        HostLatency latency = hosts.computeIfAbsent(host, ignored -> new HostLatency());
+        latency.readAtNanos = now;
+        long evictedAt = evictedAtNanos.get();
+        if (now - evictedAt >= probeIntervalNanos && evictedAtNanos.compareAndSet(evictedAt, now)) {
+            long idleNanos = EVICT_AFTER_PROBE_INTERVALS * probeIntervalNanos;
+            hosts.values().removeIf(idle -> now - idle.readAtNanos >= idleNanos);
+        }
+        boolean stale = !latency.probed || now - latency.probedAtNanos >= probeIntervalNanos;
+        if (stale && latency.probing.compareAndSet(false, true)) {
+            try {
+                executor.execute(() -> probe(host, latency));
+            } catch (RejectedExecutionException e) {
+                latency.probing.set(false);
+            }
+        }
+        return latency;
+    }
+
+    /** Probes the host on the calling thread. */
+    @VisibleForTesting
+    void probeNow(String host) {
+        HostLatency latency = hosts.computeIfAbsent(host, ignored -> new HostLatency());
+        latency.readAtNanos = ticker.read();
+        latency.probing.set(true);
+        probe(host, latency);
+    }
+
+    private void probe(String host, HostLatency latency) {
+        try {
+            long startNanos = ticker.read();
+            prober.probe(host);
+            long sampleNanos = ticker.read() - startNanos;
+            double previous = latency.rttNanos;
+            latency.rttNanos =
+                    Double.isNaN(previous)
+                            ? sampleNanos
+                            : SMOOTHING * sampleNanos + (1 - SMOOTHING) * previous;
+            latency.healthy = true;
+        } catch (IOException | RuntimeException e) {
+            LOG.log(Level.FINE, "Unable to probe Component Gateway host " + host, e);
+            latency.healthy = false;
+        } finally {
+            latency.probedAtNanos = ticker.read();
+            latency.probed = true;
+            latency.probing.set(false);
+        }
+    }
+}
\ No newline at end of file
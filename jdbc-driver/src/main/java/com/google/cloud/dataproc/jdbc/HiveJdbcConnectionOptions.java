@@ -19,6 +19,7 @@ import static com.google.cloud.dataproc.jdbc.HiveUrlUtils.HIVE_DEFAULT_DATABASE;
 import static com.google.cloud.dataproc.jdbc.HiveUrlUtils.HIVE_DEFAULT_PORT;
 
 import com.google.auto.value.AutoValue;
+import com.google.common.collect.ImmutableList;
 import javax.annotation.Nullable;
 
 /** Helper class to extract Hive connection parameters */
@@ -27,12 +28,29 @@ abstract class HiveJdbcConnectionOptions {
 
     private static final String TRANSPORT_MODE = "http";
     private static final String HTTP_PATH = "hive";
+    private static final long CLUSTER_CACHE_TTL_SECONDS = 60;
+    private static final long CLUSTER_CACHE_NEGATIVE_TTL_SECONDS = 10;
+    // Background refreshes call the Dataproc API, so they are opt-in
+    private static final long CLUSTER_POOL_REFRESH_SECONDS = 0;
+    private static final long CLUSTER_POOL_REGION_TIMEOUT_MILLIS = 5000;
+    private static final int CLUSTER_POOL_FAILOVER_ATTEMPTS = 2;
+    private static final long CLUSTER_POOL_FAILOVER_BUDGET_MILLIS = 30000;
+    private static final long ADAPTIVE_FETCH_MAX_BYTES = 16L << 20;
+    // Default hive.server2.thrift.resultset.max.fetch.size, HiveServer2 returns no more per fetch
+    private static final int ADAPTIVE_FETCH_MAX_ROWS = 10000;
+    static final String CLUSTER_AFFINITY_KEY = "user";
 
     // These client side params are required by DataprocDriver
     abstract String projectId();
 
     abstract String region();
 
+    // All projects and regions of a cluster pool spanning several, the first ones are projectId
+    // and region. Empty when the pool only spans projectId and region.
+    abstract ImmutableList<String> poolProjectIds();
+
+    abstract ImmutableList<String> poolRegions();
+
     abstract String httpPath();
 
     abstract String transportMode();
@@ -47,6 +65,58 @@ abstract class HiveJdbcConnectionOptions {
     @Nullable
     abstract String clusterPoolLabel();
 
+    // How long cluster lookups stay cached by the driver, 0 disables caching
+    abstract long clusterCacheTtlSeconds();
+
+    abstract long clusterCacheNegativeTtlSeconds();
+
+    // How often the candidates of a cluster pool are refreshed in the background, 0 disables it
+    abstract long clusterPoolRefreshSeconds();
+
+    // How long the listing of a pool spanning several projects or regions waits for each of them
+    abstract long clusterPoolRegionTimeoutMillis();
+
+    // Clusters per page when listing the pool, 0 for the Dataproc API default
+    abstract int clusterPoolPageSize();
+
+    // Candidates with available YARN memory after which the pool listing stops, 0 lists them all
+    abstract int clusterPoolMaxCandidates();
+
+    // Other clusters of the pool a connect moves on to when the picked one fails, 0 disables it
+    abstract int clusterPoolFailoverAttempts();
+
+    // Time after the first connect attempt past which no other cluster of the pool is tried
+    abstract long clusterPoolFailoverBudgetMillis();
+
+    // Name of the ClusterSelectionStrategy that picks a cluster of the pool
+    abstract String clusterSelection();
+
+    // What keeps a connection on the same cluster of the pool with the consistent-hash strategy:
+    // user, dbName or the name of another session variable of the URL
+    abstract String clusterAffinityKey();
+
+    // How clusters of the pool are scored and filtered on their metrics before the pick
+    abstract ClusterScoring clusterScoring();
+
+    // Name of the QueryMetricsSink that receives the timings of the statements, null for none
+    @Nullable
+    abstract String queryMetricsSink();
+
+    // Whether result sets size each batch from the row size and the round-trip time
+    abstract boolean adaptiveFetchSize();
+
+    // Largest estimated size of a batch of rows with adaptiveFetchSize
+    abstract long adaptiveFetchMaxBytes();
+
+    // Largest fetch size with adaptiveFetchSize
+    abstract int adaptiveFetchMaxRows();
+
+    // Batches of rows result sets fetch in the background ahead of the client, 0 disables it
+    abstract int prefetchBatches();
+
+    // Whether result sets read the column-based row sets of HiveServer2 into primitive arrays
+    abstract boolean columnarFetch();
+
     //  Do not parse these other parameters and pass them directly to HiveConnection
     @Nullable
     abstract String otherSessionConfs();
@@ -57,6 +127,16 @@ abstract class HiveJdbcConnectionOptions {
     @Nullable
     abstract String hiveVars();
 
+    /** The projects the cluster pool spans, at least projectId. */
+    ImmutableList<String> projectIds() {
+        return poolProjectIds().isEmpty() ? ImmutableList.of(projectId()) : poolProjectIds();
+    }
+
+    /** The regions the cluster pool spans, at least region. */
+    ImmutableList<String> regions() {
+        return poolRegions().isEmpty() ? ImmutableList.of(region()) : poolRegions();
+    }
+
     static HiveJdbcConnectionOptions.Builder builder() {
         // Set default values
         return new AutoValue_HiveJdbcConnectionOptions.Builder()
@@ -64,6 +144,25 @@ abstract class HiveJdbcConnectionOptions {
                 .setTransportMode(TRANSPORT_MODE)
                 .setPort(HIVE_DEFAULT_PORT)
                 .setDbName(HIVE_DEFAULT_DATABASE)
+                .setClusterCacheTtlSeconds(CLUSTER_CACHE_TTL_SECONDS)
+                .setClusterCacheNegativeTtlSeconds(CLUSTER_CACHE_NEGATIVE_TTL_SECONDS)
+                .setClusterPoolRefreshSeconds(CLUSTER_POOL_REFRESH_SECONDS)
+                .setPoolProjectIds(ImmutableList.of())
+                .setPoolRegions(ImmutableList.of())
+                .setClusterPoolRegionTimeoutMillis(CLUSTER_POOL_REGION_TIMEOUT_MILLIS)
+                .setClusterPoolPageSize(0)
+                .setClusterPoolMaxCandidates(0)
+                .setClusterPoolFailoverAttempts(CLUSTER_POOL_FAILOVER_ATTEMPTS)
+                .setClusterPoolFailoverBudgetMillis(CLUSTER_POOL_FAILOVER_BUDGET_MILLIS)
+                .setClusterSelection(ClusterSelectionStrategies.DEFAULT)
+                .setClusterAffinityKey(CLUSTER_AFFINITY_KEY)
+                .setClusterScoring(ClusterScoring.DEFAULT)
+                .setQueryMetricsSink(null)
+                .setAdaptiveFetchSize(false)
+                .setAdaptiveFetchMaxBytes(ADAPTIVE_FETCH_MAX_BYTES)
+                .setAdaptiveFetchMaxRows(ADAPTIVE_FETCH_MAX_ROWS)
+                .setPrefetchBatches(0)
+                .setColumnarFetch(false)
                 .setOtherSessionConfs(null)
                 .setHiveVars(null)
                 .setHiveConfs(null);
@@ -93,6 +192,44 @@ abstract class HiveJdbcConnectionOptions {
 
         abstract HiveJdbcConnectionOptions.Builder setRegion(String value);
 
+        abstract HiveJdbcConnectionOptions.Builder setClusterCacheTtlSeconds(long value);
+
+        abstract HiveJdbcConnectionOptions.Builder setClusterCacheNegativeTtlSeconds(long value);
+
+        abstract HiveJdbcConnectionOptions.Builder setClusterPoolRefreshSeconds(long value);
+
+        abstract HiveJdbcConnectionOptions.Builder setPoolProjectIds(ImmutableList<String> value);
+
+        abstract HiveJdbcConnectionOptions.Builder setPoolRegions(ImmutableList<String> value);
+
+        abstract HiveJdbcConnectionOptions.Builder setClusterPoolRegionTimeoutMillis(long value);
+
+        abstract HiveJdbcConnectionOptions.Builder setClusterPoolPageSize(int value);
+
+        abstract HiveJdbcConnectionOptions.Builder setClusterPoolMaxCandidates(int value);
+
+        abstract HiveJdbcConnectionOptions.Builder setClusterPoolFailoverAttempts(int value);
+
+        abstract HiveJdbcConnectionOptions.Builder setClusterPoolFailoverBudgetMillis(long value);
+
+        abstract HiveJdbcConnectionOptions.Builder setClusterSelection(String value);
+
+        abstract HiveJdbcConnectionOptions.Builder setClusterAffinityKey(String value);
+
+        abstract HiveJdbcConnectionOptions.Builder setClusterScoring(ClusterScoring value);
+
+        abstract HiveJdbcConnectionOptions.Builder setQueryMetricsSink(String value);
+
+        abstract HiveJdbcConnectionOptions.Builder setAdaptiveFetchSize(boolean value);
+
+        abstract HiveJdbcConnectionOptions.Builder setAdaptiveFetchMaxBytes(long value);
+
+        abstract HiveJdbcConnectionOptions.Builder setAdaptiveFetchMaxRows(int value);
+
+        abstract HiveJdbcConnectionOptions.Builder setPrefetchBatches(int value);
+
+        abstract HiveJdbcConnectionOptions.Builder setColumnarFetch(boolean value);
+
         abstract HiveJdbcConnectionOptions build();
     }
 }
\ No newline at end of file
@@ -15,9 +15,11 @@
  */
 package com.google.cloud.dataproc.jdbc;
 
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableSet;
 import java.io.IOException;
 import java.net.URI;
+import java.util.HashSet;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
@@ -37,7 +39,26 @@ public class HiveUrlUtils {
                     "clusterName",
                     "port",
                     "httpPath",
-                    "transportMode");
+                    "transportMode",
+                    "clusterCacheTtlSeconds",
+                    "clusterCacheNegativeTtlSeconds",
+                    "clusterPoolRefreshSeconds",
+                    "clusterPoolRegionTimeoutMillis",
+                    "clusterPoolPageSize",
+                    "clusterPoolMaxCandidates",
+                    "clusterPoolFailoverAttempts",
+                    "clusterPoolFailoverBudgetMillis",
+                    "clusterSelection",
+                    "clusterAffinityKey",
+                    "clusterScoreWeights",
+                    "clusterMetricMinimums",
+                    "clusterMetricMaximums",
+                    "queryMetricsSink",
+                    "adaptiveFetchSize",
+                    "adaptiveFetchMaxBytes",
+                    "adaptiveFetchMaxRows",
+                    "prefetchBatches",
+                    "columnarFetch");
 
     /**
      * Parses client url and extracts Hive connection parameters.
@@ -104,12 +125,111 @@ public class HiveUrlUtils {
         // Client must specify projectId and region
         checkUrl(paramsMap.containsKey("projectId"), "Please provide projectId.");
         checkUrl(paramsMap.containsKey("region"), "Please provide region.");
+        // A cluster pool may span several projects and regions, given as comma-separated lists
+        ImmutableList<String> projectIds = parseList(paramsMap, "projectId");
+        ImmutableList<String> regions = parseList(paramsMap, "region");
+        if (projectIds.size() > 1 || regions.size() > 1) {
+            checkUrl(
+                    !paramsMap.containsKey("clusterName"),
+                    "Please provide a single projectId and region with clusterName.");
+            paramBuilder.setPoolProjectIds(projectIds).setPoolRegions(regions);
+        }
         paramBuilder
-                .setRegion(paramsMap.get("region"))
-                .setProjectId(paramsMap.get("projectId"))
+                .setRegion(regions.get(0))
+                .setProjectId(projectIds.get(0))
                 .setClusterName(paramsMap.get("clusterName"))
                 .setClusterPoolLabel(paramsMap.get("clusterPoolLabel"));
 
+        if (paramsMap.containsKey("clusterCacheTtlSeconds")) {
+            paramBuilder.setClusterCacheTtlSeconds(
+                    parseNonNegativeLong(paramsMap, "clusterCacheTtlSeconds"));
+        }
+        if (paramsMap.containsKey("clusterCacheNegativeTtlSeconds")) {
+            paramBuilder.setClusterCacheNegativeTtlSeconds(
+                    parseNonNegativeLong(paramsMap, "clusterCacheNegativeTtlSeconds"));
+        }
+        if (paramsMap.containsKey("clusterPoolRefreshSeconds")) {
+            paramBuilder.setClusterPoolRefreshSeconds(
+                    parseNonNegativeLong(paramsMap, "clusterPoolRefreshSeconds"));
+        }
+        if (paramsMap.containsKey("clusterPoolRegionTimeoutMillis")) {
+            paramBuilder.setClusterPoolRegionTimeoutMillis(
+                    parsePositiveLong(paramsMap, "clusterPoolRegionTimeoutMillis"));
+        }
+        if (paramsMap.containsKey("clusterPoolPageSize")) {
+            paramBuilder.setClusterPoolPageSize(
+                    parseNonNegativeInt(paramsMap, "clusterPoolPageSize"));
+        }
+        if (paramsMap.containsKey("clusterPoolMaxCandidates")) {
+            paramBuilder.setClusterPoolMaxCandidates(
+                    parseNonNegativeInt(paramsMap, "clusterPoolMaxCandidates"));
+        }
+        if (paramsMap.containsKey("clusterPoolFailoverAttempts")) {
+            paramBuilder.setClusterPoolFailoverAttempts(
+                    parseNonNegativeInt(paramsMap, "clusterPoolFailoverAttempts"));
+        }
+        if (paramsMap.containsKey("clusterPoolFailoverBudgetMillis")) {
+            paramBuilder.setClusterPoolFailoverBudgetMillis(
+                    parseNonNegativeLong(paramsMap, "clusterPoolFailoverBudgetMillis"));
+        }
+        if (paramsMap.containsKey("clusterSelection")) {
+            String clusterSelection = paramsMap.get("clusterSelection");
+            checkUrl(
+                    ClusterSelectionStrategies.exists(clusterSelection),
+                    "'clusterSelection=%s' Unknown strategy, available strategies are: %s",
+                    clusterSelection,
+                    ClusterSelectionStrategies.names());
+            paramBuilder.setClusterSelection(clusterSelection);
+        }
+        if (paramsMap.containsKey("clusterAffinityKey")) {
+            String clusterAffinityKey = paramsMap.get("clusterAffinityKey");
+            checkUrl(
+                    !clusterAffinityKey.isEmpty(),
+                    "Please provide clusterAffinityKey: user, dbName or the name of a session "
+                            + "variable.");
+            paramBuilder.setClusterAffinityKey(clusterAffinityKey);
+        }
+        if (paramsMap.containsKey("clusterScoreWeights")
+                || paramsMap.containsKey("clusterMetricMinimums")
+                || paramsMap.containsKey("clusterMetricMaximums")) {
+            paramBuilder.setClusterScoring(
+                    ClusterScoring.parse(
+                            paramsMap.get("clusterScoreWeights"),
+                            paramsMap.get("clusterMetricMinimums"),
+                            paramsMap.get("clusterMetricMaximums")));
+        }
+        if (paramsMap.containsKey("queryMetricsSink")) {
+            String queryMetricsSink = paramsMap.get("queryMetricsSink");
+            checkUrl(
+                    QueryMetricsSinks.exists(queryMetricsSink),
+                    "'queryMetricsSink=%s' Unknown sink, available sinks are: %s",
+                    queryMetricsSink,
+                    QueryMetricsSinks.names());
+            paramBuilder.setQueryMetricsSink(queryMetricsSink);
+        }
+        if (paramsMap.containsKey("adaptiveFetchSize")) {
+            paramBuilder.setAdaptiveFetchSize(parseBoolean(paramsMap, "adaptiveFetchSize"));
+        }
+        if (paramsMap.containsKey("adaptiveFetchMaxBytes")) {
+            paramBuilder.setAdaptiveFetchMaxBytes(
+                    parseNonNegativeLong(paramsMap, "adaptiveFetchMaxBytes"));
+        }
+        if (paramsMap.containsKey("adaptiveFetchMaxRows")) {
+            int adaptiveFetchMaxRows = parseNonNegativeInt(paramsMap, "adaptiveFetchMaxRows");
+            checkUrl(
+                    adaptiveFetchMaxRows >= AdaptiveFetchSize.MIN_ROWS,
+                    "'adaptiveFetchMaxRows=%s' Please provide at least %s rows.",
+                    paramsMap.get("adaptiveFetchMaxRows"),
+                    String.valueOf(AdaptiveFetchSize.MIN_ROWS));
+            paramBuilder.setAdaptiveFetchMaxRows(adaptiveFetchMaxRows);
+        }
+        if (paramsMap.containsKey("prefetchBatches")) {
+            paramBuilder.setPrefetchBatches(parseNonNegativeInt(paramsMap, "prefetchBatches"));
+        }
+        if (paramsMap.containsKey("columnarFetch")) {
+            paramBuilder.setColumnarFetch(parseBoolean(paramsMap, "columnarFetch"));
+        }
+
         return paramBuilder.build();
     }
 
@@ -128,6 +248,113 @@ public class HiveUrlUtils {
         }
     }
 
+    /**
+     * Helper method to parse a numeric driver parameter.
+     *
+     * @param paramsMap parameters given by the client
+     * @param field name of the parameter to parse
+     * @return the value of the parameter
+     * @throws InvalidURLException if the value is not a non-negative number
+     */
+    private static long parseNonNegativeLong(Map<String, String> paramsMap, String field)
+            throws InvalidURLException {
+        String value = paramsMap.get(field);
+        long parsed;
+        try {
+            parsed = Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            parsed = -1;
+        }
+        checkUrl(parsed >= 0, "'%s=%s' Please provide a non-negative number.", field, value);
+        return parsed;
+    }
+
+    /**
+     * Helper method to parse a numeric driver parameter that must not be 0.
+     *
+     * @param paramsMap parameters given by the client
+     * @param field name of the parameter to parse
+     * @return the value of the parameter
+     * @throws InvalidURLException if the value is not a positive number
+     */
+    private static long parsePositiveLong(Map<String, String> paramsMap, String field)
+            throws InvalidURLException {
+        long parsed = parseNonNegativeLong(paramsMap, field);
+        checkUrl(
+                parsed > 0,
+                "'%s=%s' Please provide a positive number.",
+                field,
+                paramsMap.get(field));
+        return parsed;
+    }
+
+    /**
+     * Helper method to parse a comma-separated driver parameter.
+     *
+     * @param paramsMap parameters given by the client
+     * @param field name of the parameter to parse
+     * @return the distinct values of the parameter, in order
+     * @throws InvalidURLException if a value is empty
+     */
+    private static ImmutableList<String> parseList(Map<String, String> paramsMap, String field)
+            throws InvalidURLException {
+        String value = paramsMap.get(field);
+        ImmutableList.Builder<String> values = ImmutableList.builder();
+        Set<String> seen = new HashSet<>();
+        for (String item : value.split(",", -1)) {
+            String trimmed = item.trim();
+            checkUrl(
+                    !trimmed.isEmpty(),
+                    "'%s=%s' Please provide a non-empty %s.",
+                    field,
+                    value,
+                    field);
+            if (seen.add(trimmed)) {
+                values.add(trimmed);
+            }
+        }
+        return values.build();
+    }
+
+    /**
+     * Helper method to parse a numeric driver parameter that must fit in an int.
+     *
+     * @param paramsMap parameters given by the client
+     * @param field name of the parameter to parse
+     * @return the value of the parameter
+     * @throws InvalidURLException if the value is not a non-negative int
+     */
+    private static int parseNonNegativeInt(Map<String, String> paramsMap, String field)
+            throws InvalidURLException {
+        long parsed = parseNonNegativeLong(paramsMap, field);
+        checkUrl(
+                parsed <= Integer.MAX_VALUE,
+                "'%s=%s' Please provide a number up to %s.",
+                field,
+                paramsMap.get(field),
+                String.valueOf(Integer.MAX_VALUE));
+        return (int) parsed;
+    }
+
+    /**
+     * Helper method to parse a boolean driver parameter.
+     *
+     * @param paramsMap parameters given by the client
+     * @param field name of the parameter to parse
+     * @return the value of the parameter
+     * @throws InvalidURLException if the value is neither true nor false
+     */
+    private static boolean parseBoolean(Map<String, String> paramsMap, String field)
+            throws InvalidURLException {
+        String value = paramsMap.get(field);
+        checkUrl(
+                "true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value),
+                "'%s=%s' Please provide true or false.",
+                field,
+                value);
+        return Boolean.parseBoolean(value);
+    }
+
     /**
      * Helper method that turns the field=value pair into map.
      *
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Samples two distinct clusters at random and picks the one with fewer connections and statements
+ * of this driver open on it, relative to its score.
+ *
+ * <p>The YARN metrics lag real load by minutes, so during a burst of connects they keep pointing
+ * at the same clusters. The in-flight counts of the {@link ClusterLoadTracker} move with every
+ * connect, and the score only scales them: a cluster with twice the score is picked until it holds
+ * about twice the connections. When every cluster scores 0 the counts alone decide.
+ */
+final class InFlightPowerOfTwoSelection implements ClusterSelectionStrategy {
+    static final String NAME = "power-of-two-in-flight";
+    private static final double MIN_SCORE = 1e-6;
+
+    private final ClusterLoadTracker loadTracker;
+    private final Supplier<Random> random;
+
+    InFlightPowerOfTwoSelection() {
+        this(ClusterLoadTracker.shared(), ThreadLocalRandom::current);
+    }
+
+    @VisibleForTesting
+    InFlightPowerOfTwoSelection(ClusterLoadTracker loadTracker, Supplier<Random> random) {
+        this.loadTracker = loadTracker;
+        this.random = random;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean readsLoad() {
+        return true;
+    }
+
+    @Override
+    public int select(ClusterPool pool, SelectionContext context) {
+        int size = pool.size();
+        if (size == 1) {
+            return 0;
+        }
+        Random random = this.random.get();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        return load(pool, second) < load(pool, first) ? second : first;
+    }
+
+    // In-flight work per unit of score, both offset so that clusters scoring 0 still compare
+    private double load(ClusterPool pool, int index) {
+        long inFlight = loadTracker.inFlight(pool.endpointHost(index));
+        return (inFlight + 1) / (pool.score(index) + MIN_SCORE);
+    }
+}
\ No newline at end of file
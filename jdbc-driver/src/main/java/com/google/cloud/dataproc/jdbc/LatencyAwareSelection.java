@@ -0,0 +1,122 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Prefers the clusters nearest to the driver: picks at random, weighted by score, among the
+ * healthy clusters whose Component Gateway round-trip time is within 1.5 times, plus 2 ms, of the
+ * nearest one.
+ *
+ * <p>Round-trip times come from the {@link GatewayLatencyEstimator}, which probes hosts in the
+ * background. Clusters not probed yet are kept with the near ones, so a new pool is spread over
+ * all its clusters until their hosts have been probed. Clusters whose last probe failed are left
+ * out, unless every cluster failed.
+ */
+final class LatencyAwareSelection implements ClusterSelectionStrategy {
+    static final String NAME = "latency-aware";
+
+    static final double NEAR_FACTOR = 1.5;
+    static final long NEAR_SLACK_NANOS = 2_000_000;
+
+    private final GatewayLatencyEstimator estimator;
+    private final Supplier<Random> random;
+
+    LatencyAwareSelection() {
+        this(GatewayLatencyEstimator.shared(), ThreadLocalRandom::current);
+    }
+
+    @VisibleForTesting
+    LatencyAwareSelection(GatewayLatencyEstimator estimator, Supplier<Random> random) {
+        this.estimator = estimator;
+        this.random = random;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public int select(ClusterPool pool, SelectionContext context) {
+        int size = pool.size();
+        if (size == 1) {
+            return 0;
+        }
+
+        long[] rttNanos = new long[size];
+        boolean anyHealthy = false;
+        long nearestNanos = Long.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            String host = pool.endpointHost(i);
+            if (!estimator.isHealthy(host)) {
+                rttNanos[i] = Long.MAX_VALUE;
+                continue;
+            }
+            anyHealthy = true;
+            rttNanos[i] = estimator.rttNanos(host);
+            if (rttNanos[i] >= 0) {
+                nearestNanos = Math.min(nearestNanos, rttNanos[i]);
+            }
+        }
+        long nearNanos =
+                nearestNanos == Long.MAX_VALUE
+                        ? Long.MAX_VALUE
+                        : (long) (nearestNanos * NEAR_FACTOR) + NEAR_SLACK_NANOS;
+
+        // Weighted pick among the near candidates, or all of them if every probe failed
+        double totalScore = 0;
+        int nearCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (isNear(rttNanos[i], nearNanos, anyHealthy)) {
+                totalScore += pool.score(i);
+                nearCount++;
+            }
+        }
+        Random random = this.random.get();
+        if (totalScore <= 0) {
+            int target = random.nextInt(nearCount);
+            for (int i = 0; i < size; i++) {
+                if (isNear(rttNanos[i], nearNanos, anyHealthy) && target-- == 0) {
+                    return i;
+                }
+            }
+        }
+        double target = random.nextDouble() * totalScore;
+        int lastWeighted = 0;
+        for (int i = 0; i < size; i++) {
+            if (!isNear(rttNanos[i], nearNanos, anyHealthy) || pool.score(i) <= 0) {
+                continue;
+            }
+            if (target < pool.score(i)) {
+                return i;
+            }
+            target -= pool.score(i);
+            lastWeighted = i;
+        }
+        // Only reached through rounding of the target
+        return lastWeighted;
+    }
+
+    // Unprobed hosts, with an RTT of -1, count as near
+    private static boolean isNear(long rttNanos, long nearNanos, boolean anyHealthy) {
+        return !anyHealthy || (rttNanos != Long.MAX_VALUE && rttNanos <= nearNanos);
+    }
+}
\ No newline at end of file
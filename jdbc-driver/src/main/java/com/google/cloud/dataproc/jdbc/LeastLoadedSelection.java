@@ -0,0 +1,63 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Picks the cluster with the highest score, by default the most available YARN memory. Ties are
+ * broken at random, so that a pool of idle clusters is still spread evenly.
+ */
+final class LeastLoadedSelection implements ClusterSelectionStrategy {
+    static final String NAME = "least-loaded";
+
+    private final Supplier<Random> random;
+
+    LeastLoadedSelection() {
+        this(ThreadLocalRandom::current);
+    }
+
+    @VisibleForTesting
+    LeastLoadedSelection(Supplier<Random> random) {
+        this.random = random;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public int select(ClusterPool pool, SelectionContext context) {
+        int best = 0;
+        int ties = 1;
+        for (int i = 1; i < pool.size(); i++) {
+            double score = pool.score(i);
+            double bestScore = pool.score(best);
+            if (score > bestScore) {
+                best = i;
+                ties = 1;
+            } else if (score == bestScore && random.get().nextInt(++ties) == 0) {
+                // Reservoir sampling keeps every tied cluster equally likely
+                best = i;
+            }
+        }
+        return best;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,201 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Physical connection counted against the load of its cluster, together with the statements open
+ * on it, until it is closed. Closing the connection releases the statements still open on it.
+ */
+class LoadTrackingConnection extends ForwardingConnection {
+    private final Connection physical;
+    private final ClusterLoadTracker.Load load;
+    private final Runnable onClose;
+    private final Set<StatementCount> openStatements =
+            Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final AtomicBoolean closed = new AtomicBoolean();
+
+    /**
+     * @param physical the physical connection
+     * @param load the counters of its cluster, which already count the connection
+     * @param onClose uncounts the connection, called once when it is closed
+     */
+    LoadTrackingConnection(Connection physical, ClusterLoadTracker.Load load, Runnable onClose) {
+        this.physical = physical;
+        this.load = load;
+        this.onClose = onClose;
+    }
+
+    @Override
+    protected Connection delegate() {
+        return physical;
+    }
+
+    @Override
+    public void close() throws SQLException {
+        try {
+            physical.close();
+        } finally {
+            if (closed.compareAndSet(false, true)) {
+                for (StatementCount statement : openStatements) {
+                    statement.release();
+                }
+                onClose.run();
+            }
+        }
+    }
+
+    @Override
+    public Statement createStatement() throws SQLException {
+        return new CountedStatement(physical.createStatement());
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency)
+            throws SQLException {
+        return new CountedStatement(physical.createStatement(resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public Statement createStatement(
+            int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+            throws SQLException {
+        return new CountedStatement(
+                physical.createStatement(
+                        resultSetType, resultSetConcurrency, resultSetHoldability));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return new CountedPreparedStatement(physical.prepareStatement(sql));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(
+            String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        return new CountedPreparedStatement(
+                physical.prepareStatement(sql, resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(
+            String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+            throws SQLException {
+        return new CountedPreparedStatement(
+                physical.prepareStatement(
+                        sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys)
+            throws SQLException {
+        return new CountedPreparedStatement(physical.prepareStatement(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+        return new CountedPreparedStatement(physical.prepareStatement(sql, columnIndexes));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, String[] columnNames)
+            throws SQLException {
+        return new CountedPreparedStatement(physical.prepareStatement(sql, columnNames));
+    }
+
+    // prepareCall is left uncounted, HiveServer2 does not support stored procedures
+
+    /** Counts one statement against the cluster until it or its connection is closed. */
+    private final class StatementCount {
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        StatementCount() {
+            load.statementOpened();
+            openStatements.add(this);
+        }
+
+        void release() {
+            if (released.compareAndSet(false, true)) {
+                openStatements.remove(this);
+                load.statementClosed();
+            }
+        }
+    }
+
+    private final class CountedStatement extends ForwardingStatement {
+        private final Statement statement;
+        private final StatementCount count = new StatementCount();
+
+        CountedStatement(Statement statement) {
+            this.statement = statement;
+        }
+
+        @Override
+        protected Statement delegate() {
+            return statement;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                statement.close();
+            } finally {
+                count.release();
+            }
+        }
+
+        @Override
+        public Connection getConnection() {
+            return LoadTrackingConnection.this;
+        }
+    }
+
+    private final class CountedPreparedStatement extends ForwardingPreparedStatement {
+        private final PreparedStatement statement;
+        private final StatementCount count = new StatementCount();
+
+        CountedPreparedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        @Override
+        protected PreparedStatement delegate() {
+            return statement;
+        }
+
+        @Override
+        public void close() throws SQLException {
+            try {
+                statement.close();
+            } finally {
+                count.release();
+            }
+        }
+
+        @Override
+        public Connection getConnection() {
+            return LoadTrackingConnection.this;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/** Logs the timings of every statement at INFO level. */
+final class LoggingQueryMetricsSink implements QueryMetricsSink {
+    private static final Logger LOG = Logger.getLogger(LoggingQueryMetricsSink.class.getName());
+
+    static final String NAME = "log";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public void queryCompleted(QueryMetrics metrics) {
+        if (!LOG.isLoggable(Level.INFO)) {
+            return;
+        }
+        LOG.info(
+                String.format(
+                        "Query on %s %s: execute %d ms, first row %d ms, %d rows in %d batches"
+                                + " fetched in %d ms (slowest batch %d ms, %.0f rows/s): %s",
+                        metrics.clusterHost(),
+                        metrics.failed() ? "failed" : "done",
+                        TimeUnit.NANOSECONDS.toMillis(metrics.executeNanos()),
+                        metrics.timeToFirstRowNanos() < 0
+                                ? -1
+                                : TimeUnit.NANOSECONDS.toMillis(metrics.timeToFirstRowNanos()),
+                        metrics.rowCount(),
+                        metrics.fetchBatchCount(),
+                        TimeUnit.NANOSECONDS.toMillis(metrics.fetchNanos()),
+                        TimeUnit.NANOSECONDS.toMillis(metrics.maxFetchBatchNanos()),
+                        metrics.rowsPerSecond(),
+                        metrics.sql()));
+    }
+}
\ No newline at end of file
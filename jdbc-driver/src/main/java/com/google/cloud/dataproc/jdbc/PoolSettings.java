@@ -0,0 +1,76 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.auto.value.AutoValue;
+import java.util.concurrent.TimeUnit;
+
+/** Sizing and lifetime settings of the per-cluster connection pools of DataprocDataSource. */
+@AutoValue
+abstract class PoolSettings {
+    static final int DEFAULT_MIN_IDLE = 0;
+    static final int DEFAULT_MAX_POOL_SIZE = 10;
+    static final long DEFAULT_MAX_LIFETIME_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    static final long DEFAULT_CONNECTION_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(30);
+    static final int DEFAULT_VALIDATION_TIMEOUT_SECONDS = 5;
+
+    // Idle connections in each cluster pool kept open ahead of demand
+    abstract int minIdle();
+
+    // Open connections, idle or borrowed, per cluster pool
+    abstract int maxPoolSize();
+
+    // Connections older than this are closed instead of being reused, 0 for no limit
+    abstract long maxLifetimeMillis();
+
+    // Borrowed connections not returned after this are reported as leaked, 0 disables it
+    abstract long leakDetectionThresholdMillis();
+
+    // How long getConnection waits for a connection of a full pool
+    abstract long connectionTimeoutMillis();
+
+    // Timeout of the isValid check on connections that have been idle
+    abstract int validationTimeoutSeconds();
+
+    static PoolSettings.Builder builder() {
+        return new AutoValue_PoolSettings.Builder()
+                .setMinIdle(DEFAULT_MIN_IDLE)
+                .setMaxPoolSize(DEFAULT_MAX_POOL_SIZE)
+                .setMaxLifetimeMillis(DEFAULT_MAX_LIFETIME_MILLIS)
+                .setLeakDetectionThresholdMillis(0)
+                .setConnectionTimeoutMillis(DEFAULT_CONNECTION_TIMEOUT_MILLIS)
+                .setValidationTimeoutSeconds(DEFAULT_VALIDATION_TIMEOUT_SECONDS);
+    }
+
+    abstract PoolSettings.Builder toBuilder();
+
+    @AutoValue.Builder
+    abstract static class Builder {
+        abstract PoolSettings.Builder setMinIdle(int value);
+
+        abstract PoolSettings.Builder setMaxPoolSize(int value);
+
+        abstract PoolSettings.Builder setMaxLifetimeMillis(long value);
+
+        abstract PoolSettings.Builder setLeakDetectionThresholdMillis(long value);
+
+        abstract PoolSettings.Builder setConnectionTimeoutMillis(long value);
+
+        abstract PoolSettings.Builder setValidationTimeoutSeconds(int value);
+
+        abstract PoolSettings build();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,379 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import java.sql.CallableStatement;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.Statement;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import javax.annotation.Nullable;
+
+/**
+ * Logical connection handed out for a pooled physical connection. Closing it resets the session
+ * state of the physical connection and hands it back to its owner instead of closing it: the
+ * database is restored, since the client may have run USE, and Hive's RESET drops the settings
+ * the client changed with SET before the Hive configuration variables of the URL are set again.
+ *
+ * <p>Statements, their result sets and the database metadata report the handle as their
+ * connection, and the handle does not unwrap to the physical connection, so the client cannot
+ * close it behind the back of its owner.
+ */
+class PooledConnectionHandle extends ForwardingConnection {
+    // SQLState for "connection does not exist"
+    private static final String CONNECTION_CLOSED_STATE = "08003";
+    // Closed statements are pruned from the tracked ones past this size
+    private static final int STATEMENT_PRUNE_THRESHOLD = 64;
+    // Restores the configuration of the Hive session to its defaults
+    private static final String RESET_COMMAND = "RESET";
+
+    /** Notified once the handle is closed, with the failure of the session reset if any. */
+    interface ReturnListener {
+        void connectionReturned(PooledConnectionHandle handle, @Nullable SQLException failure);
+    }
+
+    private final Connection physical;
+    private final SessionDefaults defaults;
+    private final ReturnListener listener;
+    private final Set<Statement> statements = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    private volatile boolean closed;
+
+    /**
+     * @param physical the pooled physical connection
+     * @param defaults the session state restored on return
+     * @param listener notified once the handle is closed
+     */
+    PooledConnectionHandle(
+            Connection physical, SessionDefaults defaults, ReturnListener listener) {
+        this.physical = physical;
+        this.defaults = defaults;
+        this.listener = listener;
+    }
+
+    @Override
+    protected Connection delegate() throws SQLException {
+        if (closed) {
+            throw new SQLNonTransientConnectionException(
+                    "Connection has already been closed.", CONNECTION_CLOSED_STATE);
+        }
+        return physical;
+    }
+
+    /** @return the physical connection, also once the handle is closed */
+    Connection physicalConnection() {
+        return physical;
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return closed || physical.isClosed();
+    }
+
+    /** Resets the session state and hands the physical connection back. */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        SQLException failure = null;
+        try {
+            resetSessionState();
+        } catch (SQLException e) {
+            failure = e;
+        }
+        listener.connectionReturned(this, failure);
+    }
+
+    @Override
+    public void abort(Executor executor) throws SQLException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        physical.abort(executor);
+        listener.connectionReturned(
+                this, new SQLNonTransientConnectionException("Connection has been aborted."));
+    }
+
+    @Override
+    public DatabaseMetaData getMetaData() throws SQLException {
+        return new HandleMetaData(delegate().getMetaData());
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("A pooled connection does not unwrap to " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+
+    /**
+     * Closes the statements left open by the client and undoes its session changes. The client
+     * may have changed the schema or settings through statements, so they are reset every time.
+     */
+    private void resetSessionState() throws SQLException {
+        SQLException failure = null;
+        for (Statement statement : statements) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                failure = e;
+            }
+        }
+        statements.clear();
+        if (failure != null) {
+            throw failure;
+        }
+        physical.setSchema(defaults.schema());
+        try (Statement statement = physical.createStatement()) {
+            statement.execute(RESET_COMMAND);
+            // RESET also drops the configuration the URL opened the session with
+            for (String conf : defaults.hiveConfs()) {
+                statement.execute("SET " + conf);
+            }
+        }
+        physical.clearWarnings();
+    }
+
+    private Statement track(Statement statement) throws SQLException {
+        return register(new HandleStatement(statement));
+    }
+
+    private PreparedStatement track(PreparedStatement statement) throws SQLException {
+        return register(new HandlePreparedStatement(statement));
+    }
+
+    private <T extends Statement> T register(T statement) throws SQLException {
+        if (statements.size() >= STATEMENT_PRUNE_THRESHOLD) {
+            for (Statement tracked : statements) {
+                if (tracked.isClosed()) {
+                    statements.remove(tracked);
+                }
+            }
+        }
+        statements.add(statement);
+        return statement;
+    }
+
+    @Override
+    public Statement createStatement() throws SQLException {
+        return track(delegate().createStatement());
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency)
+            throws SQLException {
+        return track(delegate().createStatement(resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public Statement createStatement(
+            int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+            throws SQLException {
+        return track(
+                delegate()
+                        .createStatement(resultSetType, resultSetConcurrency, resultSetHoldability));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return track(delegate().prepareStatement(sql));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(
+            String sql, int resultSetType, int resultSetConcurrency) throws SQLException {
+        return track(delegate().prepareStatement(sql, resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(
+            String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+            throws SQLException {
+        return track(
+                delegate()
+                        .prepareStatement(
+                                sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys)
+            throws SQLException {
+        return track(delegate().prepareStatement(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+        return track(delegate().prepareStatement(sql, columnIndexes));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, String[] columnNames)
+            throws SQLException {
+        return track(delegate().prepareStatement(sql, columnNames));
+    }
+
+    // Callable statements are tracked but not wrapped, HiveServer2 does not support stored
+    // procedures
+
+    @Override
+    public CallableStatement prepareCall(String sql) throws SQLException {
+        return register(delegate().prepareCall(sql));
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency)
+            throws SQLException {
+        return register(delegate().prepareCall(sql, resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public CallableStatement prepareCall(
+            String sql, int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+            throws SQLException {
+        return register(
+                delegate().prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+    }
+
+    /** Wraps a result set of a statement handed out by this handle. */
+    private static ResultSet wrap(@Nullable ResultSet resultSet, Statement owner) {
+        return resultSet == null ? null : new HandleResultSet(resultSet, owner);
+    }
+
+    private final class HandleStatement extends ForwardingStatement {
+        private final Statement statement;
+
+        HandleStatement(Statement statement) {
+            this.statement = statement;
+        }
+
+        @Override
+        protected Statement delegate() {
+            return statement;
+        }
+
+        @Override
+        public Connection getConnection() {
+            return PooledConnectionHandle.this;
+        }
+
+        @Override
+        public ResultSet executeQuery(String sql) throws SQLException {
+            return wrap(statement.executeQuery(sql), this);
+        }
+
+        @Override
+        public ResultSet getResultSet() throws SQLException {
+            return wrap(statement.getResultSet(), this);
+        }
+
+        @Override
+        public ResultSet getGeneratedKeys() throws SQLException {
+            return wrap(statement.getGeneratedKeys(), this);
+        }
+    }
+
+    private final class HandlePreparedStatement extends ForwardingPreparedStatement {
+        private final PreparedStatement statement;
+
+        HandlePreparedStatement(PreparedStatement statement) {
+            this.statement = statement;
+        }
+
+        @Override
+        protected PreparedStatement delegate() {
+            return statement;
+        }
+
+        @Override
+        public Connection getConnection() {
+            return PooledConnectionHandle.this;
+        }
+
+        @Override
+        public ResultSet executeQuery() throws SQLException {
+            return wrap(statement.executeQuery(), this);
+        }
+
+        @Override
+        public ResultSet executeQuery(String sql) throws SQLException {
+            return wrap(statement.executeQuery(sql), this);
+        }
+
+        @Override
+        public ResultSet getResultSet() throws SQLException {
+            return wrap(statement.getResultSet(), this);
+        }
+
+        @Override
+        public ResultSet getGeneratedKeys() throws SQLException {
+            return wrap(statement.getGeneratedKeys(), this);
+        }
+    }
+
+    private final class HandleMetaData extends ForwardingDatabaseMetaData {
+        private final DatabaseMetaData metaData;
+
+        HandleMetaData(DatabaseMetaData metaData) {
+            this.metaData = metaData;
+        }
+
+        @Override
+        protected DatabaseMetaData delegate() {
+            return metaData;
+        }
+
+        @Override
+        public Connection getConnection() {
+            return PooledConnectionHandle.this;
+        }
+    }
+
+    private static final class HandleResultSet extends ForwardingResultSet {
+        private final ResultSet resultSet;
+        private final Statement owner;
+
+        HandleResultSet(ResultSet resultSet, Statement owner) {
+            this.resultSet = resultSet;
+            this.owner = owner;
+        }
+
+        @Override
+        protected ResultSet delegate() {
+            return resultSet;
+        }
+
+        @Override
+        public Statement getStatement() {
+            return owner;
+        }
+    }
+}
\ No newline at end of file
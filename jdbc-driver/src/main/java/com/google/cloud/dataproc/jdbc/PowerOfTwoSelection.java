@@ -0,0 +1,61 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Samples two distinct clusters at random and picks the one with the higher score, by default the
+ * more available YARN memory. Unlike least-loaded, clients acting on the same metrics don't all
+ * herd onto the same cluster.
+ */
+final class PowerOfTwoSelection implements ClusterSelectionStrategy {
+    static final String NAME = "power-of-two";
+
+    private final Supplier<Random> random;
+
+    PowerOfTwoSelection() {
+        this(ThreadLocalRandom::current);
+    }
+
+    @VisibleForTesting
+    PowerOfTwoSelection(Supplier<Random> random) {
+        this.random = random;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public int select(ClusterPool pool, SelectionContext context) {
+        int size = pool.size();
+        if (size == 1) {
+            return 0;
+        }
+        Random random = this.random.get();
+        int first = random.nextInt(size);
+        int second = random.nextInt(size - 1);
+        if (second >= first) {
+            second++;
+        }
+        return pool.score(second) > pool.score(first) ? second : first;
+    }
+}
\ No newline at end of file
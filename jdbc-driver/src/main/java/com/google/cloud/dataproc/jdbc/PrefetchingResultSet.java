@@ -0,0 +1,690 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.common.base.Ticker;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Result set that fetches the next batches of rows in the background while the client reads the
+ * current one, so that neither the client nor the connection to the cluster sit idle waiting for
+ * the other.
+ *
+ * <p>A fetcher thread reads the physical result set a batch of fetchSize rows at a time, which is
+ * one FetchResults round trip, copies the values of each row and queues the batch. At most
+ * prefetchBatches batches wait in the queue, the fetcher blocks until the client takes one. A
+ * failure of the fetcher is thrown by next() once the client has read the rows fetched before it.
+ * Closing the result set stops the fetcher without waiting for it: a fetch in flight is cancelled
+ * through the physical statement, and fails unseen once the physical result set is closed.
+ *
+ * <p>With an {@link AdaptiveFetchSize}, the fetcher sizes each batch from the time of the
+ * FetchResults call that started the previous one. The client only takes batches from the queue,
+ * the time it waits says nothing of the round trips. A fetch size set by the client replaces the
+ * sizer.
+ *
+ * <p>The getters read the copied values with the conversions of Hive's result set, quirks
+ * included: getBoolean of a string is true unless the string is "0", and the Calendar overloads
+ * of getDate, getTime and getTimestamp ignore the calendar. They cannot be forwarded, the physical
+ * result set has moved past the row. Getters Hive does not support are forwarded and fail the same
+ * way. Result sets must be closed, or their statement, for the fetcher to stop before the end of
+ * the rows.
+ */
+final class PrefetchingResultSet extends ForwardingResultSet {
+    private static final Logger LOG = Logger.getLogger(PrefetchingResultSet.class.getName());
+    private static final ExecutorService FETCHERS =
+            Executors.newCachedThreadPool(
+                    new ThreadFactoryBuilder()
+                            .setNameFormat("dataproc-prefetch-%d")
+                            .setDaemon(true)
+                            .build());
+
+    /** Rows fetched in one round trip, the last batch may end with the failure of the fetch. */
+    private static final class Batch {
+        private final List<Object[]> rows;
+        private final boolean last;
+        @Nullable private final SQLException failure;
+
+        Batch(List<Object[]> rows, boolean last, @Nullable SQLException failure) {
+            this.rows = rows;
+            this.last = last;
+            this.failure = failure;
+        }
+    }
+
+    private final ResultSet resultSet;
+    private final int columnCount;
+    private final BlockingQueue<Batch> batches;
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final CountDownLatch stopped = new CountDownLatch(1);
+    private final Ticker ticker;
+    private volatile boolean closed;
+    // Set by the fetcher while it calls the physical result set
+    private volatile boolean fetching;
+    // Fetch size of the batches the fetcher has yet to start
+    private volatile int fetchSize;
+    // Cleared once the client sets its own fetch size
+    @Nullable private volatile AdaptiveFetchSize sizer;
+
+    // Read by the client only
+    private List<Object[]> rows = Collections.emptyList();
+    private int position;
+    private boolean lastBatch;
+    @Nullable private SQLException failure;
+    @Nullable private Object[] row;
+    private int rowNumber;
+    private boolean afterLast;
+    private boolean wasNull;
+
+    private PrefetchingResultSet(
+            ResultSet resultSet,
+            int prefetchBatches,
+            @Nullable AdaptiveFetchSize sizer,
+            Ticker ticker)
+            throws SQLException {
+        this.resultSet = resultSet;
+        this.columnCount = resultSet.getMetaData().getColumnCount();
+        this.batches = new ArrayBlockingQueue<>(prefetchBatches);
+        this.sizer = sizer;
+        this.ticker = ticker;
+        int size = resultSet.getFetchSize();
+        this.fetchSize = size > 0 ? size : QueryTimer.DEFAULT_FETCH_SIZE;
+    }
+
+    /**
+     * Starts fetching the rows of a result set in the background.
+     *
+     * @param resultSet the physical result set, only read by the fetcher from now on
+     * @param prefetchBatches the most batches fetched ahead of the client
+     */
+    static PrefetchingResultSet start(ResultSet resultSet, int prefetchBatches)
+            throws SQLException {
+        return start(resultSet, prefetchBatches, null, Ticker.systemTicker());
+    }
+
+    /**
+     * Starts fetching the rows of a result set in the background, in batches sized as they are
+     * fetched.
+     *
+     * @param resultSet the physical result set, only read by the fetcher from now on
+     * @param prefetchBatches the most batches fetched ahead of the client
+     * @param sizer sizes the batches of the physical result set, null to keep its fetch size
+     * @param ticker times the fetches for the sizer
+     */
+    static PrefetchingResultSet start(
+            ResultSet resultSet,
+            int prefetchBatches,
+            @Nullable AdaptiveFetchSize sizer,
+            Ticker ticker)
+            throws SQLException {
+        PrefetchingResultSet prefetching =
+                new PrefetchingResultSet(resultSet, prefetchBatches, sizer, ticker);
+        FETCHERS.execute(prefetching::fetch);
+        return prefetching;
+    }
+
+    @Override
+    protected ResultSet delegate() {
+        return resultSet;
+    }
+
+    private void fetch() {
+        if (!started.compareAndSet(false, true)) {
+            // Closed before the fetcher got a thread
+            return;
+        }
+        List<Object[]> fetched = Collections.emptyList();
+        try {
+            boolean last = false;
+            int applied = resultSet.getFetchSize();
+            while (!last) {
+                int size = fetchSize;
+                if (size != applied) {
+                    // Taken into account by the next FetchResults, which this batch starts with
+                    resultSet.setFetchSize(size);
+                    applied = size;
+                }
+                fetched = new ArrayList<>(size);
+                while (fetched.size() < size) {
+                    fetching = true;
+                    if (closed) {
+                        return;
+                    }
+                    AdaptiveFetchSize sizer = this.sizer;
+                    long startedNanos = sizer != null ? ticker.read() : 0;
+                    if (!resultSet.next()) {
+                        last = true;
+                        break;
+                    }
+                    if (sizer != null) {
+                        // Sets the fetch size of the physical result set itself
+                        int resized = sizer.rowFetched(ticker.read() - startedNanos);
+                        if (resized > 0) {
+                            applied = resized;
+                            resized(resized);
+                        }
+                    }
+                    Object[] values = new Object[columnCount];
+                    for (int i = 0; i < columnCount; i++) {
+                        values[i] = resultSet.getObject(i + 1);
+                    }
+                    fetched.add(values);
+                }
+                fetching = false;
+                batches.put(new Batch(fetched, last, null));
+                fetched = Collections.emptyList();
+            }
+        } catch (SQLException | RuntimeException e) {
+            if (!closed) {
+                SQLException failure =
+                        e instanceof SQLException ? (SQLException) e : new SQLException(e);
+                try {
+                    // The rows fetched before the failure are still read by the client
+                    batches.put(new Batch(fetched, true, failure));
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            fetching = false;
+            stopped.countDown();
+        }
+    }
+
+    @Override
+    public boolean next() throws SQLException {
+        if (closed) {
+            throw new SQLException("Resultset is closed");
+        }
+        row = null;
+        while (position == rows.size()) {
+            if (lastBatch) {
+                if (failure != null) {
+                    throw new SQLException(
+                            failure.getMessage(),
+                            failure.getSQLState(),
+                            failure.getErrorCode(),
+                            failure);
+                }
+                afterLast = rowNumber > 0;
+                return false;
+            }
+            Batch batch;
+            try {
+                batch = batches.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("Interrupted while waiting for the next rows", e);
+            }
+            rows = batch.rows;
+            position = 0;
+            lastBatch = batch.last;
+            failure = batch.failure;
+        }
+        row = rows.get(position++);
+        rowNumber++;
+        return true;
+    }
+
+    // Unless the client set its own fetch size since the sizer ran
+    private synchronized void resized(int rows) {
+        if (sizer != null) {
+            fetchSize = rows;
+        }
+    }
+
+    /** Applies to the batches the fetcher has yet to start, in place of the sizer if any. */
+    @Override
+    public synchronized void setFetchSize(int rows) throws SQLException {
+        if (rows < 0) {
+            throw new SQLException("Fetch size must be greater or equal to 0");
+        }
+        sizer = null;
+        fetchSize = rows > 0 ? rows : QueryTimer.DEFAULT_FETCH_SIZE;
+    }
+
+    @Override
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    /** Stops the fetcher, cancelling the fetch in flight if any, and drops the fetched rows. */
+    void stop() {
+        closed = true;
+        if (started.compareAndSet(false, true)) {
+            stopped.countDown();
+        }
+        // Makes room for a fetcher waiting on a full queue, it sees closed before fetching again.
+        // The fetcher is not interrupted, that could break the transport of the connection.
+        batches.clear();
+        if (fetching && stopped.getCount() > 0) {
+            cancelFetch();
+        }
+        rows = Collections.emptyList();
+        row = null;
+    }
+
+    private void cancelFetch() {
+        try {
+            Statement statement = resultSet.getStatement();
+            if (statement != null) {
+                statement.cancel();
+            }
+        } catch (SQLException e) {
+            // Closing the physical result set ends the fetch all the same
+            LOG.log(Level.FINE, "Unable to cancel the fetch of a closed result set", e);
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (!closed) {
+            stop();
+            resultSet.close();
+        }
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public int getRow() {
+        return row == null ? 0 : rowNumber;
+    }
+
+    @Override
+    public boolean isBeforeFirst() {
+        return rowNumber == 0 && !lastBatch;
+    }
+
+    @Override
+    public boolean isAfterLast() {
+        return afterLast;
+    }
+
+    @Override
+    public boolean wasNull() {
+        return wasNull;
+    }
+
+    @Nullable
+    private Object value(int columnIndex) throws SQLException {
+        if (row == null) {
+            throw new SQLException(closed ? "Resultset is closed" : "No row found");
+        }
+        if (columnIndex < 1 || columnIndex > columnCount) {
+            throw new SQLException("Invalid columnIndex: " + columnIndex);
+        }
+        Object value = row[columnIndex - 1];
+        wasNull = value == null;
+        return value;
+    }
+
+    private static SQLException cannotConvert(int columnIndex, String type, Exception cause) {
+        return new SQLException(
+                String.format("Cannot convert column %d to %s", columnIndex, type), cause);
+    }
+
+    @Nullable
+    private Number number(int columnIndex, String type, Function<String, Number> parser)
+            throws SQLException {
+        Object value = value(columnIndex);
+        try {
+            if (value == null || value instanceof Number) {
+                return (Number) value;
+            } else if (value instanceof String) {
+                return parser.apply(((String) value).trim());
+            }
+        } catch (NumberFormatException e) {
+            throw cannotConvert(columnIndex, type, e);
+        }
+        throw cannotConvert(columnIndex, type, null);
+    }
+
+    @Override
+    public Object getObject(int columnIndex) throws SQLException {
+        return value(columnIndex);
+    }
+
+    @Override
+    public <T> T getObject(int columnIndex, Class<T> type) throws SQLException {
+        Object value = value(columnIndex);
+        if (value == null || type.isInstance(value)) {
+            return type.cast(value);
+        } else if (type == String.class) {
+            return type.cast(getString(columnIndex));
+        }
+        throw cannotConvert(columnIndex, type.getName(), null);
+    }
+
+    @Override
+    public String getString(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        if (value == null) {
+            return null;
+        } else if (value instanceof byte[]) {
+            return new String((byte[]) value, StandardCharsets.UTF_8);
+        }
+        return value.toString();
+    }
+
+    @Override
+    public boolean getBoolean(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        if (value == null) {
+            return false;
+        } else if (value instanceof Boolean) {
+            return (Boolean) value;
+        } else if (value instanceof Number) {
+            return ((Number) value).intValue() != 0;
+        } else if (value instanceof String) {
+            // As Hive does, even for "false"
+            return !value.equals("0");
+        }
+        throw cannotConvert(columnIndex, "boolean", null);
+    }
+
+    @Override
+    public byte getByte(int columnIndex) throws SQLException {
+        Number value = number(columnIndex, "byte", Byte::valueOf);
+        return value == null ? 0 : value.byteValue();
+    }
+
+    @Override
+    public short getShort(int columnIndex) throws SQLException {
+        Number value = number(columnIndex, "short", Short::valueOf);
+        return value == null ? 0 : value.shortValue();
+    }
+
+    @Override
+    public int getInt(int columnIndex) throws SQLException {
+        Number value = number(columnIndex, "integer", Integer::valueOf);
+        return value == null ? 0 : value.intValue();
+    }
+
+    @Override
+    public long getLong(int columnIndex) throws SQLException {
+        Number value = number(columnIndex, "long", Long::valueOf);
+        return value == null ? 0 : value.longValue();
+    }
+
+    @Override
+    public float getFloat(int columnIndex) throws SQLException {
+        Number value = number(columnIndex, "float", Float::valueOf);
+        return value == null ? 0 : value.floatValue();
+    }
+
+    @Override
+    public double getDouble(int columnIndex) throws SQLException {
+        Number value = number(columnIndex, "double", Double::valueOf);
+        return value == null ? 0 : value.doubleValue();
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        if (value == null || value instanceof BigDecimal) {
+            return (BigDecimal) value;
+        }
+        try {
+            return new BigDecimal(value.toString().trim());
+        } catch (NumberFormatException e) {
+            throw cannotConvert(columnIndex, "BigDecimal", e);
+        }
+    }
+
+    @Override
+    @Deprecated
+    public BigDecimal getBigDecimal(int columnIndex, int scale) throws SQLException {
+        BigDecimal value = getBigDecimal(columnIndex);
+        return value == null ? null : value.setScale(scale, RoundingMode.HALF_EVEN);
+    }
+
+    @Override
+    public byte[] getBytes(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        if (value == null || value instanceof byte[]) {
+            return (byte[]) value;
+        } else if (value instanceof String) {
+            return ((String) value).getBytes(StandardCharsets.UTF_8);
+        }
+        throw cannotConvert(columnIndex, "bytes", null);
+    }
+
+    @Override
+    public Date getDate(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        try {
+            if (value == null || value instanceof Date) {
+                return (Date) value;
+            } else if (value instanceof String) {
+                return Date.valueOf((String) value);
+            }
+        } catch (IllegalArgumentException e) {
+            throw cannotConvert(columnIndex, "date", e);
+        }
+        throw cannotConvert(columnIndex, "date", null);
+    }
+
+    @Override
+    public Date getDate(int columnIndex, Calendar cal) throws SQLException {
+        // Hive ignores the calendar
+        return getDate(columnIndex);
+    }
+
+    @Override
+    public Time getTime(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        try {
+            if (value == null || value instanceof Time) {
+                return (Time) value;
+            } else if (value instanceof Timestamp) {
+                return new Time(((Timestamp) value).getTime());
+            } else if (value instanceof String) {
+                return Time.valueOf((String) value);
+            }
+        } catch (IllegalArgumentException e) {
+            throw cannotConvert(columnIndex, "time", e);
+        }
+        throw cannotConvert(columnIndex, "time", null);
+    }
+
+    @Override
+    public Time getTime(int columnIndex, Calendar cal) throws SQLException {
+        return getTime(columnIndex);
+    }
+
+    @Override
+    public Timestamp getTimestamp(int columnIndex) throws SQLException {
+        Object value = value(columnIndex);
+        try {
+            if (value == null || value instanceof Timestamp) {
+                return (Timestamp) value;
+            } else if (value instanceof String) {
+                return Timestamp.valueOf((String) value);
+            }
+        } catch (IllegalArgumentException e) {
+            throw cannotConvert(columnIndex, "timestamp", e);
+        }
+        throw cannotConvert(columnIndex, "timestamp", null);
+    }
+
+    @Override
+    public Timestamp getTimestamp(int columnIndex, Calendar cal) throws SQLException {
+        return getTimestamp(columnIndex);
+    }
+
+    @Override
+    public InputStream getAsciiStream(int columnIndex) throws SQLException {
+        String value = getString(columnIndex);
+        return value == null
+                ? null
+                : new ByteArrayInputStream(value.getBytes(StandardCharsets.US_ASCII));
+    }
+
+    @Override
+    public InputStream getBinaryStream(int columnIndex) throws SQLException {
+        byte[] value = getBytes(columnIndex);
+        return value == null ? null : new ByteArrayInputStream(value);
+    }
+
+    @Override
+    public Reader getCharacterStream(int columnIndex) throws SQLException {
+        String value = getString(columnIndex);
+        return value == null ? null : new StringReader(value);
+    }
+
+    @Override
+    public Object getObject(String columnLabel) throws SQLException {
+        return getObject(findColumn(columnLabel));
+    }
+
+    @Override
+    public <T> T getObject(String columnLabel, Class<T> type) throws SQLException {
+        return getObject(findColumn(columnLabel), type);
+    }
+
+    @Override
+    public String getString(String columnLabel) throws SQLException {
+        return getString(findColumn(columnLabel));
+    }
+
+    @Override
+    public boolean getBoolean(String columnLabel) throws SQLException {
+        return getBoolean(findColumn(columnLabel));
+    }
+
+    @Override
+    public byte getByte(String columnLabel) throws SQLException {
+        return getByte(findColumn(columnLabel));
+    }
+
+    @Override
+    public short getShort(String columnLabel) throws SQLException {
+        return getShort(findColumn(columnLabel));
+    }
+
+    @Override
+    public int getInt(String columnLabel) throws SQLException {
+        return getInt(findColumn(columnLabel));
+    }
+
+    @Override
+    public long getLong(String columnLabel) throws SQLException {
+        return getLong(findColumn(columnLabel));
+    }
+
+    @Override
+    public float getFloat(String columnLabel) throws SQLException {
+        return getFloat(findColumn(columnLabel));
+    }
+
+    @Override
+    public double getDouble(String columnLabel) throws SQLException {
+        return getDouble(findColumn(columnLabel));
+    }
+
+    @Override
+    public BigDecimal getBigDecimal(String columnLabel) throws SQLException {
+        return getBigDecimal(findColumn(columnLabel));
+    }
+
+    @Override
+    @Deprecated
+    public BigDecimal getBigDecimal(String columnLabel, int scale) throws SQLException {
+        return getBigDecimal(findColumn(columnLabel), scale);
+    }
+
+    @Override
+    public byte[] getBytes(String columnLabel) throws SQLException {
+        return getBytes(findColumn(columnLabel));
+    }
+
+    @Override
+    public Date getDate(String columnLabel) throws SQLException {
+        return getDate(findColumn(columnLabel));
+    }
+
+    @Override
+    public Date getDate(String columnLabel, Calendar cal) throws SQLException {
+        return getDate(findColumn(columnLabel));
+    }
+
+    @Override
+    public Time getTime(String columnLabel) throws SQLException {
+        return getTime(findColumn(columnLabel));
+    }
+
+    @Override
+    public Time getTime(String columnLabel, Calendar cal) throws SQLException {
+        return getTime(findColumn(columnLabel));
+    }
+
+    @Override
+    public Timestamp getTimestamp(String columnLabel) throws SQLException {
+        return getTimestamp(findColumn(columnLabel));
+    }
+
+    @Override
+    public Timestamp getTimestamp(String columnLabel, Calendar cal) throws SQLException {
+        return getTimestamp(findColumn(columnLabel));
+    }
+
+    @Override
+    public InputStream getAsciiStream(String columnLabel) throws SQLException {
+        return getAsciiStream(findColumn(columnLabel));
+    }
+
+    @Override
+    public InputStream getBinaryStream(String columnLabel) throws SQLException {
+        return getBinaryStream(findColumn(columnLabel));
+    }
+
+    @Override
+    public Reader getCharacterStream(String columnLabel) throws SQLException {
+        return getCharacterStream(findColumn(columnLabel));
+    }
+}
\ No newline at end of file
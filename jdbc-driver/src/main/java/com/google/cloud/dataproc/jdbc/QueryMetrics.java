@@ -0,0 +1,79 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.auto.value.AutoValue;
+import javax.annotation.Nullable;
+
+/** Timings of one statement execution and the fetch of its results, for a QueryMetricsSink. */
+@AutoValue
+public abstract class QueryMetrics {
+
+    /** The SQL of the statement. */
+    public abstract String sql();
+
+    /** The endpoint host of the cluster the statement ran on, null if unknown. */
+    @Nullable
+    public abstract String clusterHost();
+
+    /** Time spent in the execute call, until HiveServer2 returned the operation handle. */
+    public abstract long executeNanos();
+
+    /** Time from the start of the execute call to the first row, -1 if no row was fetched. */
+    public abstract long timeToFirstRowNanos();
+
+    /** Rows the client fetched. */
+    public abstract long rowCount();
+
+    /** Batches of fetchSize rows the client fetched, the last one possibly short. */
+    public abstract int fetchBatchCount();
+
+    /** Time spent in ResultSet.next(), including the fetch of every batch. */
+    public abstract long fetchNanos();
+
+    /** Time of the slowest batch. */
+    public abstract long maxFetchBatchNanos();
+
+    /** Whether the execute call failed. */
+    public abstract boolean failed();
+
+    /** Rows fetched per second of fetch time, 0 if no time was spent fetching. */
+    public double rowsPerSecond() {
+        return fetchNanos() == 0 ? 0 : rowCount() * 1e9 / fetchNanos();
+    }
+
+    static QueryMetrics create(
+            String sql,
+            @Nullable String clusterHost,
+            long executeNanos,
+            long timeToFirstRowNanos,
+            long rowCount,
+            int fetchBatchCount,
+            long fetchNanos,
+            long maxFetchBatchNanos,
+            boolean failed) {
+        return new AutoValue_QueryMetrics(
+                sql,
+                clusterHost,
+                executeNanos,
+                timeToFirstRowNanos,
+                rowCount,
+                fetchBatchCount,
+                fetchNanos,
+                maxFetchBatchNanos,
+                failed);
+    }
+}
\ No newline at end of file
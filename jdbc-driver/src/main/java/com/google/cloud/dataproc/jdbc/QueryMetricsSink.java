@@ -0,0 +1,52 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import javax.annotation.Nullable;
+
+/**
+ * Receives the timings of the statements executed on the driver's connections, e.g. to find slow
+ * queries and slow fetches.
+ *
+ * <p>The sink is chosen with the queryMetricsSink URL property. Besides the built-in log sink,
+ * implementations are discovered with {@link java.util.ServiceLoader}: list the class name in
+ * META-INF/services/com.google.cloud.dataproc.jdbc.QueryMetricsSink and give it a public
+ * no-argument constructor. A single instance serves all connections, so implementations must be
+ * thread-safe. They are called on the threads running the statements, so they should hand the
+ * metrics off rather than block.
+ */
+public interface QueryMetricsSink {
+
+    /** The value of the queryMetricsSink URL property that selects this sink. */
+    String name();
+
+    /**
+     * Called after each batch of fetchSize rows a client fetched.
+     *
+     * @param sql the SQL of the statement
+     * @param clusterHost the endpoint host of the cluster, null if unknown
+     * @param rows rows in the batch
+     * @param fetchNanos time spent in ResultSet.next() for the rows of the batch
+     */
+    default void batchFetched(
+            String sql, @Nullable String clusterHost, int rows, long fetchNanos) {}
+
+    /**
+     * Called once per statement execution: when its result set is exhausted or closed, when it
+     * returned no result set, or when it failed.
+     */
+    void queryCompleted(QueryMetrics metrics);
+}
\ No newline at end of file
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.common.collect.ImmutableMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.ServiceConfigurationError;
+import java.util.ServiceLoader;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * The query metrics sinks known to the driver: the built-in ones and those found with
+ * ServiceLoader when the class is loaded. A sink with the name of one already registered is
+ * ignored.
+ */
+final class QueryMetricsSinks {
+    private static final Logger LOG = Logger.getLogger(QueryMetricsSinks.class.getName());
+
+    private static final ImmutableMap<String, QueryMetricsSink> SINKS = load();
+
+    private QueryMetricsSinks() {}
+
+    /** @return whether a sink of the name is known */
+    static boolean exists(String name) {
+        return SINKS.containsKey(name);
+    }
+
+    /** @return the names of the known sinks, for error messages */
+    static String names() {
+        return String.join(", ", SINKS.keySet());
+    }
+
+    /**
+     * @param name the value of the queryMetricsSink URL property
+     * @return the sink of the name
+     * @throws InvalidURLException if no sink has the name
+     */
+    static QueryMetricsSink get(String name) throws InvalidURLException {
+        QueryMetricsSink sink = SINKS.get(name);
+        if (sink == null) {
+            throw new InvalidURLException(
+                    String.format(
+                            "'%s' Unknown queryMetricsSink, available sinks are: %s",
+                            name, names()));
+        }
+        return sink;
+    }
+
+    private static ImmutableMap<String, QueryMetricsSink> load() {
+        Map<String, QueryMetricsSink> sinks = new LinkedHashMap<>();
+        register(sinks, new LoggingQueryMetricsSink());
+
+        Iterator<QueryMetricsSink> providers =
+                ServiceLoader.load(QueryMetricsSink.class, QueryMetricsSinks.class.getClassLoader())
+                        .iterator();
+        while (true) {
+            try {
+                if (!providers.hasNext()) {
+                    break;
+                }
+                register(sinks, providers.next());
+            } catch (ServiceConfigurationError e) {
+                // A broken provider should not take the built-in sinks down with it
+                LOG.log(Level.WARNING, "Unable to load query metrics sink", e);
+            }
+        }
+        return ImmutableMap.copyOf(sinks);
+    }
+
+    private static void register(Map<String, QueryMetricsSink> sinks, QueryMetricsSink sink) {
+        QueryMetricsSink existing = sinks.putIfAbsent(sink.name(), sink);
+        if (existing != null && existing != sink) {
+            LOG.warning(
+                    String.format(
+                            "Ignoring query metrics sink %s, the name %s is taken by %s.",
+                            sink.getClass().getName(),
+                            sink.name(),
+                            existing.getClass().getName()));
+        }
+    }
+}
\ No newline at end of file
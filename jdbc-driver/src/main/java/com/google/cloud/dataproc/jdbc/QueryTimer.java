@@ -0,0 +1,147 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.common.base.Ticker;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Nullable;
+
+/**
+ * Times one statement execution and the fetch of its rows, and reports them to the sink once the
+ * execution is complete. Rows are fetched by a single thread, only the completion may race with
+ * a close from another thread.
+ */
+final class QueryTimer {
+    private static final Logger LOG = Logger.getLogger(QueryTimer.class.getName());
+
+    // Rows HiveServer2 returns per fetch when the statement does not set a fetch size
+    static final int DEFAULT_FETCH_SIZE = 1000;
+
+    private final QueryMetricsSink sink;
+    private final String sql;
+    @Nullable private final String clusterHost;
+    private final Ticker ticker;
+    private int batchSize;
+    private final long startNanos;
+    private final AtomicBoolean completed = new AtomicBoolean();
+
+    private long executeNanos = -1;
+    private long timeToFirstRowNanos = -1;
+    private long rows;
+    private int batches;
+    private long fetchNanos;
+    private long maxBatchNanos;
+    private int batchRows;
+    private long batchNanos;
+    private boolean failed;
+
+    /**
+     * Starts timing an execution.
+     *
+     * @param fetchSize the fetch size of the statement, 0 for the default
+     */
+    QueryTimer(
+            QueryMetricsSink sink,
+            String sql,
+            @Nullable String clusterHost,
+            Ticker ticker,
+            int fetchSize) {
+        this.sink = sink;
+        this.sql = sql;
+        this.clusterHost = clusterHost;
+        this.ticker = ticker;
+        this.batchSize = fetchSize > 0 ? fetchSize : DEFAULT_FETCH_SIZE;
+        this.startNanos = ticker.read();
+    }
+
+    /** Records the end of the execute call. */
+    void executed(boolean failed) {
+        this.executeNanos = ticker.read() - startNanos;
+        this.failed = failed;
+    }
+
+    /**
+     * Records a call to ResultSet.next().
+     *
+     * @param startedNanos when the call started, read from the ticker of the timer
+     * @param endNanos when the call returned
+     * @param hasRow what the call returned
+     */
+    void fetched(long startedNanos, long endNanos, boolean hasRow) {
+        long nanos = endNanos - startedNanos;
+        fetchNanos += nanos;
+        batchNanos += nanos;
+        if (hasRow) {
+            if (rows == 0) {
+                timeToFirstRowNanos = endNanos - startNanos;
+            }
+            rows++;
+            if (++batchRows == batchSize) {
+                endBatch();
+            }
+        } else if (batchRows > 0) {
+            endBatch();
+        }
+    }
+
+    /** Sets the rows of the batches that follow, at the end of a batch. */
+    void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    private void endBatch() {
+        batches++;
+        maxBatchNanos = Math.max(maxBatchNanos, batchNanos);
+        try {
+            sink.batchFetched(sql, clusterHost, batchRows, batchNanos);
+        } catch (RuntimeException e) {
+            LOG.log(Level.WARNING, "Query metrics sink " + sink.name() + " failed", e);
+        }
+        batchRows = 0;
+        batchNanos = 0;
+    }
+
+    /** Reports the execution to the sink, unless it already was. */
+    void complete() {
+        if (!completed.compareAndSet(false, true)) {
+            return;
+        }
+        if (executeNanos < 0) {
+            executed(false);
+        }
+        if (batchRows > 0) {
+            endBatch();
+        }
+        try {
+            sink.queryCompleted(
+                    QueryMetrics.create(
+                            sql,
+                            clusterHost,
+                            executeNanos,
+                            timeToFirstRowNanos,
+                            rows,
+                            batches,
+                            fetchNanos,
+                            maxBatchNanos,
+                            failed));
+        } catch (RuntimeException e) {
+            // A broken sink should not fail the client's queries
+            LOG.log(Level.WARNING, "Query metrics sink " + sink.name() + " failed", e);
+        }
+    }
+}
\ No newline at end of file
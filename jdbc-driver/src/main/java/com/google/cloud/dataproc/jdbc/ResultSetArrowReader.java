@@ -0,0 +1,578 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import static com.google.common.base.Preconditions.checkArgument;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.nio.charset.StandardCharsets;
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.Nullable;
+import org.apache.arrow.memory.BufferAllocator;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.BitVector;
+import org.apache.arrow.vector.DateDayVector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.FieldVector;
+import org.apache.arrow.vector.Float4Vector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.SmallIntVector;
+import org.apache.arrow.vector.TimeStampMicroVector;
+import org.apache.arrow.vector.TinyIntVector;
+import org.apache.arrow.vector.VarBinaryVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.ipc.ArrowReader;
+import org.apache.arrow.vector.types.DateUnit;
+import org.apache.arrow.vector.types.FloatingPointPrecision;
+import org.apache.arrow.vector.types.TimeUnit;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.arrow.vector.types.pojo.Field;
+import org.apache.arrow.vector.types.pojo.FieldType;
+import org.apache.arrow.vector.types.pojo.Schema;
+
+/**
+ * Reads the rows of a result set into batches of Arrow vectors, see {@link
+ * DataprocResultSets#toArrow}.
+ *
+ * <p>Each column goes to a vector of its type: BOOLEAN, TINYINT, SMALLINT, INT, BIGINT, FLOAT and
+ * DOUBLE columns are read with the primitive getters of the result set into fixed width vectors,
+ * without boxing the values. DECIMAL, DATE and TIMESTAMP columns go to decimal, day and
+ * microsecond vectors, Hive timestamps having no time zone. BINARY columns go to binary vectors
+ * and all other columns, complex types included, to UTF-8 vectors of their string form.
+ *
+ * <p>When the result set reads the column batches of HiveServer2, see the columnarFetch URL
+ * property, the vectors are filled a column at a time straight from the arrays and null bitmaps
+ * of the batches instead of through the getters.
+ */
+public final class ResultSetArrowReader extends ArrowReader {
+
+    /** Copies the value of a column in the current row to the vector of the column. */
+    private interface ColumnWriter {
+        void write(int index) throws SQLException;
+    }
+
+    /** Reads the next rows of a columnar result set, see {@link ColumnarResultSet#nextRows}. */
+    private interface RunReader {
+        int nextRows(int maxRows, ColumnarResultSet.RowRunConsumer consumer) throws SQLException;
+    }
+
+    /** Copies the values of a run of rows of a column batch to the vector of the column. */
+    private interface RunWriter {
+        /**
+         * @param column the column of the batch
+         * @param from the index of the first row of the run in the batch
+         * @param to the index after the last row of the run
+         * @param index the index of the first row of the run in the vector
+         */
+        void write(ColumnBatch.Column column, int from, int to, int index);
+    }
+
+    private final ResultSet resultSet;
+    private final int batchRows;
+    // Closed along with the reader
+    @Nullable private final BufferAllocator ownedAllocator;
+    // Set when the result set reads column batches
+    @Nullable private final RunReader runReader;
+    private List<ColumnWriter> writers;
+    private List<RunWriter> runWriters;
+    private boolean exhausted;
+    private long bytesRead;
+
+    ResultSetArrowReader(
+            ResultSet resultSet, int batchRows, BufferAllocator allocator, boolean ownsAllocator) {
+        super(allocator);
+        checkArgument(batchRows > 0, "batchRows must be positive: %s", batchRows);
+        this.resultSet = resultSet;
+        this.batchRows = batchRows;
+        this.ownedAllocator = ownsAllocator ? allocator : null;
+        this.runReader = runReader(resultSet);
+    }
+
+    /**
+     * Reads the rows of a columnar result set through the driver's result set around it if any,
+     * which times them.
+     */
+    @Nullable
+    private static RunReader runReader(ResultSet resultSet) {
+        DataprocResultSet timed = unwrap(resultSet, DataprocResultSet.class);
+        if (timed != null) {
+            return timed.isColumnar() ? timed::nextRows : null;
+        }
+        ColumnarResultSet columnar = unwrap(resultSet, ColumnarResultSet.class);
+        return columnar != null ? columnar::nextRows : null;
+    }
+
+    @Nullable
+    private static <T> T unwrap(ResultSet resultSet, Class<T> iface) {
+        try {
+            return resultSet.isWrapperFor(iface) ? resultSet.unwrap(iface) : null;
+        } catch (SQLException e) {
+            // Hive's result set implements neither isWrapperFor nor unwrap
+            return null;
+        }
+    }
+
+    /**
+     * Reads the next rows of the result set into the vectors of {@link #getVectorSchemaRoot()}.
+     *
+     * @return false once the result set has no row left
+     */
+    @Override
+    public boolean loadNextBatch() throws IOException {
+        VectorSchemaRoot root = getVectorSchemaRoot();
+        if (exhausted) {
+            root.setRowCount(0);
+            return false;
+        }
+        try {
+            root.allocateNew();
+            int rows = runReader != null ? loadRuns(root) : loadRows(root);
+            exhausted = rows < batchRows;
+            root.setRowCount(rows);
+            for (FieldVector vector : root.getFieldVectors()) {
+                bytesRead += vector.getBufferSize();
+            }
+            return rows > 0;
+        } catch (SQLException e) {
+            throw new IOException("Unable to read the rows of the result set", e);
+        }
+    }
+
+    private int loadRows(VectorSchemaRoot root) throws SQLException {
+        if (writers == null) {
+            writers = writers(root, resultSet.getMetaData());
+        }
+        int rows = 0;
+        while (rows < batchRows && resultSet.next()) {
+            for (ColumnWriter writer : writers) {
+                writer.write(rows);
+            }
+            rows++;
+        }
+        return rows;
+    }
+
+    private int loadRuns(VectorSchemaRoot root) throws SQLException {
+        if (runWriters == null) {
+            runWriters = new ArrayList<>(root.getFieldVectors().size());
+            for (FieldVector vector : root.getFieldVectors()) {
+                runWriters.add(runWriter(vector));
+            }
+        }
+        int rows = 0;
+        while (rows < batchRows) {
+            int index = rows;
+            int read =
+                    runReader.nextRows(
+                            batchRows - rows,
+                            (batch, from, to) -> writeRun(batch, from, to, index));
+            if (read == 0) {
+                break;
+            }
+            rows += read;
+        }
+        return rows;
+    }
+
+    private void writeRun(ColumnBatch batch, int from, int to, int index) throws SQLException {
+        for (int i = 0; i < runWriters.size(); i++) {
+            try {
+                runWriters.get(i).write(batch.column(i), from, to, index);
+            } catch (ClassCastException | IllegalArgumentException e) {
+                throw new SQLException(
+                        String.format("Cannot convert column %d to its Arrow vector", i + 1), e);
+            }
+        }
+    }
+
+    /** @return the size of the vectors loaded so far */
+    @Override
+    public long bytesRead() {
+        return bytesRead;
+    }
+
+    @Override
+    protected void closeReadSource() throws IOException {
+        try {
+            resultSet.close();
+        } catch (SQLException e) {
+            throw new IOException("Unable to close the result set", e);
+        } finally {
+            if (ownedAllocator != null) {
+                ownedAllocator.close();
+            }
+        }
+    }
+
+    @Override
+    protected Schema readSchema() throws IOException {
+        try {
+            ResultSetMetaData metaData = resultSet.getMetaData();
+            List<Field> fields = new ArrayList<>(metaData.getColumnCount());
+            for (int column = 1; column <= metaData.getColumnCount(); column++) {
+                fields.add(
+                        new Field(
+                                metaData.getColumnLabel(column),
+                                FieldType.nullable(arrowType(metaData, column)),
+                                null));
+            }
+            return new Schema(fields);
+        } catch (SQLException e) {
+            throw new IOException("Unable to read the columns of the result set", e);
+        }
+    }
+
+    private static ArrowType arrowType(ResultSetMetaData metaData, int column)
+            throws SQLException {
+        switch (metaData.getColumnType(column)) {
+            case Types.BOOLEAN:
+            case Types.BIT:
+                return ArrowType.Bool.INSTANCE;
+            case Types.TINYINT:
+                return new ArrowType.Int(8, true);
+            case Types.SMALLINT:
+                return new ArrowType.Int(16, true);
+            case Types.INTEGER:
+                return new ArrowType.Int(32, true);
+            case Types.BIGINT:
+                return new ArrowType.Int(64, true);
+            case Types.FLOAT:
+            case Types.REAL:
+                return new ArrowType.FloatingPoint(FloatingPointPrecision.SINGLE);
+            case Types.DOUBLE:
+                return new ArrowType.FloatingPoint(FloatingPointPrecision.DOUBLE);
+            case Types.DECIMAL:
+            case Types.NUMERIC:
+                return new ArrowType.Decimal(
+                        metaData.getPrecision(column), metaData.getScale(column));
+            case Types.DATE:
+                return new ArrowType.Date(DateUnit.DAY);
+            case Types.TIMESTAMP:
+                return new ArrowType.Timestamp(TimeUnit.MICROSECOND, null);
+            case Types.BINARY:
+            case Types.VARBINARY:
+            case Types.LONGVARBINARY:
+                return ArrowType.Binary.INSTANCE;
+            default:
+                return ArrowType.Utf8.INSTANCE;
+        }
+    }
+
+    /** Picks the writer of each column once, from the type of its vector. */
+    private List<ColumnWriter> writers(VectorSchemaRoot root, ResultSetMetaData metaData)
+            throws SQLException {
+        List<ColumnWriter> writers = new ArrayList<>(metaData.getColumnCount());
+        for (int i = 0; i < metaData.getColumnCount(); i++) {
+            writers.add(writer(root.getVector(i), i + 1));
+        }
+        return writers;
+    }
+
+    private ColumnWriter writer(FieldVector fieldVector, int column) {
+        if (fieldVector instanceof BitVector) {
+            BitVector vector = (BitVector) fieldVector;
+            return index -> {
+                boolean value = resultSet.getBoolean(column);
+                if (resultSet.wasNull()) {
+                    vector.setNull(index);
+                } else {
+                    vector.setSafe(index, value ? 1 : 0);
+                }
+            };
+        } else if (fieldVector instanceof TinyIntVector) {
+            TinyIntVector vector = (TinyIntVector) fieldVector;
+            return index -> {
+                byte value = resultSet.getByte(column);
+                if (resultSet.wasNull()) {
+                    vector.setNull(index);
+                } else {
+                    vector.setSafe(index, value);
+                }
+            };
+        } else if (fieldVector instanceof SmallIntVector) {
+            SmallIntVector vector = (SmallIntVector) fieldVector;
+            return index -> {
+                short value = resultSet.getShort(column);
+                if (resultSet.wasNull()) {
+                    vector.setNull(index);
+                } else {
+                    vector.setSafe(index, value);
+                }
+            };
+        } else if (fieldVector instanceof IntVector) {
+            IntVector vector = (IntVector) fieldVector;
+            return index -> {
+                int value = resultSet.getInt(column);
+                if (resultSet.wasNull()) {
+                    vector.setNull(index);
+                } else {
+                    vector.setSafe(index, value);
+                }
+            };
+        } else if (fieldVector instanceof BigIntVector) {
+            BigIntVector vector = (BigIntVector) fieldVector;
+            return index -> {
+                long value = resultSet.getLong(column);
+                if (resultSet.wasNull()) {
+                    vector.setNull(index);
+                } else {
+                    vector.setSafe(index, value);
+                }
+            };
+        } else if (fieldVector instanceof Float4Vector) {
+            Float4Vector vector = (Float4Vector) fieldVector;
+            return index -> {
+                float value = resultSet.getFloat(column);
+                if (resultSet.wasNull()) {
+                    vector.setNull(index);
+                } else {
+                    vector.setSafe(index, value);
+                }
+            };
+        } else if (fieldVector instanceof Float8Vector) {
+            Float8Vector vector = (Float8Vector) fieldVector;
+            return index -> {
+                double value = resultSet.getDouble(column);
+                if (resultSet.wasNull()) {
+                    vector.setNull(index);
+                } else {
+                    vector.setSafe(index, value);
+                }
+            };
+        } else if (fieldVector instanceof DecimalVector) {
+            DecimalVector vector = (DecimalVector) fieldVector;
+            int scale = vector.getScale();
+            return index -> {
+                BigDecimal value = resultSet.getBigDecimal(column);
+                if (value == null) {
+                    vector.setNull(index);
+                } else {
+                    // The vector only takes values of its own scale
+                    vector.setSafe(index, value.setScale(scale, RoundingMode.HALF_UP));
+                }
+            };
+        } else if (fieldVector instanceof DateDayVector) {
+            DateDayVector vector = (DateDayVector) fieldVector;
+            return index -> {
+                Date value = resultSet.getDate(column);
+                if (value == null) {
+                    vector.setNull(index);
+                } else {
+                    vector.setSafe(index, (int) value.toLocalDate().toEpochDay());
+                }
+            };
+        } else if (fieldVector instanceof TimeStampMicroVector) {
+            TimeStampMicroVector vector = (TimeStampMicroVector) fieldVector;
+            return index -> {
+                Timestamp value = resultSet.getTimestamp(column);
+                if (value == null) {
+                    vector.setNull(index);
+                } else {
+                    LocalDateTime local = value.toLocalDateTime();
+                    vector.setSafe(
+                            index,
+                            local.toEpochSecond(ZoneOffset.UTC) * 1_000_000
+                                    + local.getNano() / 1000);
+                }
+            };
+        } else if (fieldVector instanceof VarBinaryVector) {
+            VarBinaryVector vector = (VarBinaryVector) fieldVector;
+            return index -> {
+                byte[] value = resultSet.getBytes(column);
+                if (value == null) {
+                    vector.setNull(index);
+                } else {
+                    vector.setSafe(index, value);
+                }
+            };
+        }
+        VarCharVector vector = (VarCharVector) fieldVector;
+        return index -> {
+            String value = resultSet.getString(column);
+            if (value == null) {
+                vector.setNull(index);
+            } else {
+                vector.setSafe(index, value.getBytes(StandardCharsets.UTF_8));
+            }
+        };
+    }
+
+    /** Picks the writer of a column from the type of its vector, converting as the getters do. */
+    private static RunWriter runWriter(FieldVector fieldVector) {
+        if (fieldVector instanceof BitVector) {
+            BitVector vector = (BitVector) fieldVector;
+            return (column, from, to, index) -> {
+                for (int row = from; row < to; row++) {
+                    if (column.isNull(row)) {
+                        vector.setNull(index + row - from);
+                    } else {
+                        vector.setSafe(index + row - from, column.getBoolean(row) ? 1 : 0);
+                    }
+                }
+            };
+        } else if (fieldVector instanceof TinyIntVector) {
+            TinyIntVector vector = (TinyIntVector) fieldVector;
+            return (column, from, to, index) -> {
+                for (int row = from; row < to; row++) {
+                    if (column.isNull(row)) {
+                        vector.setNull(index + row - from);
+                    } else {
+                        vector.setSafe(index + row - from, (byte) column.getInt(row));
+                    }
+                }
+            };
+        } else if (fieldVector instanceof SmallIntVector) {
+            SmallIntVector vector = (SmallIntVector) fieldVector;
+            return (column, from, to, index) -> {
+                for (int row = from; row < to; row++) {
+                    if (column.isNull(row)) {
+                        vector.setNull(index + row - from);
+                    } else {
+                        vector.setSafe(index + row - from, (short) column.getInt(row));
+                    }
+                }
+            };
+        } else if (fieldVector instanceof IntVector) {
+            IntVector vector = (IntVector) fieldVector;
+            return (column, from, to, index) -> {
+                for (int row = from; row < to; row++) {
+                    if (column.isNull(row)) {
+                        vector.setNull(index + row - from);
+                    } else {
+                        vector.setSafe(index + row - from, column.getInt(row));
+                    }
+                }
+            };
+        } else if (fieldVector instanceof BigIntVector) {
+            BigIntVector vector = (BigIntVector) fieldVector;
+            return (column, from, to, index) -> {
+                for (int row = from; row < to; row++) {
+                    if (column.isNull(row)) {
+                        vector.setNull(index + row - from);
+                    } else {
+                        vector.setSafe(index + row - from, column.getLong(row));
+                    }
+                }
+            };
+        } else if (fieldVector instanceof Float4Vector) {
+            Float4Vector vector = (Float4Vector) fieldVector;
+            return (column, from, to, index) -> {
+                for (int row = from; row < to; row++) {
+                    if (column.isNull(row)) {
+                        vector.setNull(index + row - from);
+                    } else {
+                        vector.setSafe(index + row - from, (float) column.getDouble(row));
+                    }
+                }
+            };
+        } else if (fieldVector instanceof Float8Vector) {
+            Float8Vector vector = (Float8Vector) fieldVector;
+            return (column, from, to, index) -> {
+                for (int row = from; row < to; row++) {
+                    if (column.isNull(row)) {
+                        vector.setNull(index + row - from);
+                    } else {
+                        vector.setSafe(index + row - from, column.getDouble(row));
+                    }
+                }
+            };
+        } else if (fieldVector instanceof DecimalVector) {
+            DecimalVector vector = (DecimalVector) fieldVector;
+            int scale = vector.getScale();
+            return (column, from, to, index) -> {
+                for (int row = from; row < to; row++) {
+                    if (column.isNull(row)) {
+                        vector.setNull(index + row - from);
+                    } else {
+                        BigDecimal value =
+                                new BigDecimal(column.getString(row).trim())
+                                        .setScale(scale, RoundingMode.HALF_UP);
+                        vector.setSafe(index + row - from, value);
+                    }
+                }
+            };
+        } else if (fieldVector instanceof DateDayVector) {
+            DateDayVector vector = (DateDayVector) fieldVector;
+            return (column, from, to, index) -> {
+                for (int row = from; row < to; row++) {
+                    if (column.isNull(row)) {
+                        vector.setNull(index + row - from);
+                    } else {
+                        Date value = Date.valueOf(column.getString(row));
+                        vector.setSafe(index + row - from, (int) value.toLocalDate().toEpochDay());
+                    }
+                }
+            };
+        } else if (fieldVector instanceof TimeStampMicroVector) {
+            TimeStampMicroVector vector = (TimeStampMicroVector) fieldVector;
+            return (column, from, to, index) -> {
+                for (int row = from; row < to; row++) {
+                    if (column.isNull(row)) {
+                        vector.setNull(index + row - from);
+                    } else {
+                        LocalDateTime local =
+                                Timestamp.valueOf(column.getString(row)).toLocalDateTime();
+                        vector.setSafe(
+                                index + row - from,
+                                local.toEpochSecond(ZoneOffset.UTC) * 1_000_000
+                                        + local.getNano() / 1000);
+                    }
+                }
+            };
+        } else if (fieldVector instanceof VarBinaryVector) {
+            VarBinaryVector vector = (VarBinaryVector) fieldVector;
+            return (column, from, to, index) -> {
+                for (int row = from; row < to; row++) {
+                    if (column.isNull(row)) {
+                        vector.setNull(index + row - from);
+                    } else {
+                        Object value = column.get(row);
+                        vector.setSafe(
+                                index + row - from,
+                                value instanceof byte[]
+                                        ? (byte[]) value
+                                        : column.getString(row).getBytes(StandardCharsets.UTF_8));
+                    }
+                }
+            };
+        }
+        VarCharVector vector = (VarCharVector) fieldVector;
+        return (column, from, to, index) -> {
+            for (int row = from; row < to; row++) {
+                if (column.isNull(row)) {
+                    vector.setNull(index + row - from);
+                } else {
+                    vector.setSafe(
+                            index + row - from,
+                            column.getString(row).getBytes(StandardCharsets.UTF_8));
+                }
+            }
+        };
+    }
+}
\ No newline at end of file
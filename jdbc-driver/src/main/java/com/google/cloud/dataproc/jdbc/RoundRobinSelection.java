@@ -0,0 +1,48 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out the clusters of a pool in turn, ignoring their load. Each pool, identified by its
+ * project, region and filter, takes its own turns, so connections alternating between pools of
+ * the same size still spread evenly over each of them.
+ */
+final class RoundRobinSelection implements ClusterSelectionStrategy {
+    static final String NAME = "round-robin";
+
+    // One turn per pool, pools come from the URLs of the application so they are few
+    private final ConcurrentMap<List<String>, AtomicInteger> turns = new ConcurrentHashMap<>();
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public int select(ClusterPool pool, SelectionContext context) {
+        AtomicInteger next =
+                turns.computeIfAbsent(
+                        Arrays.asList(context.projectId(), context.region(), context.poolFilter()),
+                        ignored -> new AtomicInteger());
+        return Math.floorMod(next.getAndIncrement(), pool.size());
+    }
+}
\ No newline at end of file
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.cloud.dataproc.v1beta2.Cluster;
+import javax.annotation.Nullable;
+
+/** The candidates of a snapshot that pass the thresholds of a {@link ClusterScoring}. */
+final class ScoredClusterPool implements ClusterPool {
+    private final ClusterPoolSnapshot snapshot;
+    // Index in the snapshot of each member
+    private final int[] members;
+    private final int size;
+    private final double[] scores;
+
+    ScoredClusterPool(ClusterPoolSnapshot snapshot, int[] members, int size, double[] scores) {
+        this.snapshot = snapshot;
+        this.members = members;
+        this.size = size;
+        this.scores = scores;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Cluster cluster(int index) {
+        return snapshot.cluster(members[index]);
+    }
+
+    @Override
+    public long availableYarnMemoryMb(int index) {
+        return snapshot.availableYarnMemoryMb(members[index]);
+    }
+
+    @Override
+    @Nullable
+    public String endpointHost(int index) {
+        return snapshot.endpointHost(members[index]);
+    }
+
+    @Override
+    public double score(int index) {
+        return scores[index];
+    }
+}
\ No newline at end of file
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.auto.value.AutoValue;
+import javax.annotation.Nullable;
+
+/** The connection a {@link ClusterSelectionStrategy} picks a cluster for. */
+@AutoValue
+public abstract class SelectionContext {
+
+    public abstract String projectId();
+
+    public abstract String region();
+
+    /** The Dataproc API filter of the pool, built from clusterPoolLabel. */
+    public abstract String poolFilter();
+
+    /** The database of the connection, empty for the default database. */
+    public abstract String dbName();
+
+    /**
+     * The value of the clusterAffinityKey of the connection, such as its user. Connections with
+     * the same value should land on the same cluster. Null when the connection has none.
+     */
+    @Nullable
+    public abstract String affinityKey();
+
+    static SelectionContext create(
+            String projectId,
+            String region,
+            String poolFilter,
+            String dbName,
+            @Nullable String affinityKey) {
+        return new AutoValue_SelectionContext(projectId, region, poolFilter, dbName, affinityKey);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.auto.value.AutoValue;
+import com.google.common.base.Splitter;
+import com.google.common.collect.ImmutableList;
+import java.util.List;
+
+/** The session state a pooled connection is brought back to when the client returns it. */
+@AutoValue
+abstract class SessionDefaults {
+    static final String DEFAULT_SCHEMA = "default";
+
+    // Database of the session
+    abstract String schema();
+
+    // Hive configuration variables of the URL as key=value, set again after Hive's RESET
+    abstract ImmutableList<String> hiveConfs();
+
+    static SessionDefaults create(String schema, List<String> hiveConfs) {
+        return new AutoValue_SessionDefaults(schema, ImmutableList.copyOf(hiveConfs));
+    }
+
+    /**
+     * @param spec the spec of the URL the connections are opened with
+     * @return the database and Hive configuration variables the URL opens sessions with
+     */
+    static SessionDefaults of(ConnectionSpec spec) {
+        HiveJdbcConnectionOptions options = spec.options();
+        String dbName = options.dbName();
+        List<String> hiveConfs =
+                options.hiveConfs() == null
+                        ? ImmutableList.of()
+                        : Splitter.on(';')
+                                .trimResults()
+                                .omitEmptyStrings()
+                                .splitToList(options.hiveConfs());
+        return create(dbName.isEmpty() ? DEFAULT_SCHEMA : dbName, hiveConfs);
+    }
+}
\ No newline at end of file
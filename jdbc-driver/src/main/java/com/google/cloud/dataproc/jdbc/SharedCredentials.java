@@ -0,0 +1,71 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.common.annotations.VisibleForTesting;
+import java.io.IOException;
+
+/**
+ * Holds the scoped application default credentials shared by all DataprocCGAuthInterceptor
+ * instances of the process, together with the {@link TokenRefresher} that keeps their token
+ * fresh.
+ *
+ * <p>HiveConnection creates a new interceptor for every connection, sharing the credentials lets
+ * all of them reuse the same access token instead of fetching one per connection. A failed
+ * lookup is not remembered, the next connection tries again.
+ */
+class SharedCredentials {
+    static final String CLOUD_PLATFORM_SCOPE = "https://www.googleapis.com/auth/cloud-platform";
+
+    private static final SharedCredentials APPLICATION_DEFAULT =
+            new SharedCredentials(
+                    () ->
+                            GoogleCredentials.getApplicationDefault()
+                                    .createScoped(CLOUD_PLATFORM_SCOPE));
+
+    /** Looks up the credentials the first time they are needed. */
+    interface Loader {
+        GoogleCredentials load() throws IOException;
+    }
+
+    private final Loader loader;
+    private volatile TokenRefresher refresher;
+
+    @VisibleForTesting
+    SharedCredentials(Loader loader) {
+        this.loader = loader;
+    }
+
+    /** @return the token refresher of the scoped application default credentials */
+    static TokenRefresher applicationDefault() throws IOException {
+        return APPLICATION_DEFAULT.get();
+    }
+
+    TokenRefresher get() throws IOException {
+        TokenRefresher result = refresher;
+        if (result == null) {
+            synchronized (this) {
+                result = refresher;
+                if (result == null) {
+                    result = new TokenRefresher(loader.load());
+                    refresher = result;
+                }
+            }
+        }
+        return result;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import javax.annotation.Nullable;
+
+/**
+ * The timers of the executions of one statement. A statement has at most one execution in
+ * progress: the next execute call, or closing the statement, completes the previous one and stops
+ * the prefetching of its result set. Executions are tracked without a timer as well, so that
+ * their result sets adapt their fetch size, prefetch their rows or read them into columns.
+ */
+final class StatementTimings {
+
+    /** An execute call of the physical statement. */
+    interface Execution<T> {
+        T run() throws SQLException;
+    }
+
+    private final DataprocConnection connection;
+    private final Statement owner;
+    private final Statement statement;
+    private boolean executing;
+    @Nullable private QueryTimer current;
+    // Fetch size of the statement when the execution in progress started
+    private int fetchSize;
+    // The current result set of the physical statement, and what the client sees of it
+    @Nullable private ResultSet physicalResultSet;
+    @Nullable private PrefetchingResultSet prefetching;
+    @Nullable private DataprocResultSet resultSet;
+
+    /**
+     * @param connection the connection of the statement, as seen by the client
+     * @param owner the statement as seen by the client
+     * @param statement the physical statement
+     */
+    StatementTimings(DataprocConnection connection, Statement owner, Statement statement) {
+        this.connection = connection;
+        this.owner = owner;
+        this.statement = statement;
+    }
+
+    /** Times an execute call that returns a result set. */
+    ResultSet executeQuery(String sql, Execution<ResultSet> execution) throws SQLException {
+        return wrap(time(sql, execution));
+    }
+
+    /** Times an execute call that may return a result set, available from getResultSet(). */
+    boolean execute(String sql, Execution<Boolean> execution) throws SQLException {
+        boolean hasResultSet = time(sql, execution);
+        if (!hasResultSet) {
+            complete();
+        }
+        return hasResultSet;
+    }
+
+    /** Times an execute call that returns no result set. */
+    <T> T executeUpdate(String sql, Execution<T> execution) throws SQLException {
+        T count = time(sql, execution);
+        complete();
+        return count;
+    }
+
+    private <T> T time(String sql, Execution<T> execution) throws SQLException {
+        complete();
+        fetchSize = statement.getFetchSize();
+        QueryTimer timer = connection.startQuery(sql, fetchSize);
+        executing = true;
+        current = timer;
+        try {
+            T result = execution.run();
+            if (timer != null) {
+                timer.executed(false);
+            }
+            return result;
+        } catch (SQLException | RuntimeException e) {
+            if (timer != null) {
+                timer.executed(true);
+            }
+            complete();
+            throw e;
+        }
+    }
+
+    /**
+     * @param physical the current result set of the physical statement, or null
+     * @return the result set the client sees
+     */
+    @Nullable
+    ResultSet wrap(@Nullable ResultSet physical) throws SQLException {
+        if (physical == null || !executing) {
+            return physical;
+        }
+        if (physical != physicalResultSet) {
+            stopPrefetching();
+            physicalResultSet = physical;
+            prefetching = connection.prefetch(physical, fetchSize);
+            // The prefetcher copies the values as objects, columns only pay off without it
+            ResultSet rows = prefetching != null ? prefetching : connection.columnar(physical);
+            if (rows == null) {
+                rows = physical;
+            }
+            resultSet =
+                    new DataprocResultSet(
+                            rows,
+                            owner,
+                            current,
+                            // The fetcher sizes the batches it prefetches, the client only
+                            // waits on its queue
+                            prefetching != null
+                                    ? null
+                                    : connection.adaptiveFetchSize(rows, fetchSize),
+                            connection.ticker());
+        }
+        return resultSet;
+    }
+
+    /** Completes the execution in progress, if any. */
+    void complete() {
+        QueryTimer timer = current;
+        executing = false;
+        current = null;
+        stopPrefetching();
+        physicalResultSet = null;
+        resultSet = null;
+        if (timer != null) {
+            timer.complete();
+        }
+    }
+
+    private void stopPrefetching() {
+        if (prefetching != null) {
+            prefetching.stop();
+            prefetching = null;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,207 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps the access token of a GoogleCredentials fresh from a background thread, so requests only
+ * read the current token and never wait for the token endpoint.
+ *
+ * <p>The refresh is scheduled ahead of the token expiry, with jitter so that processes started
+ * together don't all hit the token endpoint at the same moment. A failed background refresh is
+ * retried until the token is about to expire; from then on {@link #token()} falls back to
+ * refreshing synchronously. The background refresh stops when the token has not been read since
+ * the previous refresh, the next read schedules it again ahead of the expiry of the current token.
+ */
+class TokenRefresher {
+    private static final Logger LOG = Logger.getLogger(TokenRefresher.class.getName());
+
+    // Background refresh starts this long before the token expires
+    static final long REFRESH_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+    // Upper bound of the random amount by which a background refresh is moved earlier
+    static final long MAX_JITTER_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    // Delay before retrying a failed background refresh
+    static final long RETRY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(10);
+    // Tokens this close to expiry are refreshed synchronously instead of being used
+    static final long EXPIRY_SKEW_MILLIS = TimeUnit.MINUTES.toMillis(1);
+
+    // Shared by all refreshers, refreshing is short and infrequent
+    private static final ScheduledExecutorService SCHEDULER =
+            Executors.newSingleThreadScheduledExecutor(
+                    new ThreadFactoryBuilder()
+                            .setNameFormat("dataproc-token-refresh-%d")
+                            .setDaemon(true)
+                            .build());
+
+    private final GoogleCredentials credentials;
+    private final ScheduledExecutorService scheduler;
+    private final LongSupplier currentTimeMillis;
+    private final AtomicReference<PublishedToken> current = new AtomicReference<>();
+
+    /** A token with its expiry, unboxed once so the freshness check does not allocate. */
+    private static final class PublishedToken {
+        private final AccessToken token;
+        private final long expiresAtMillis;
+
+        PublishedToken(AccessToken token) {
+            this.token = token;
+            Date expirationTime = token.getExpirationTime();
+            this.expiresAtMillis =
+                    expirationTime == null ? Long.MAX_VALUE : expirationTime.getTime();
+        }
+    }
+
+    // Set by readers, cleared by each background refresh
+    private volatile boolean used;
+    // Set when the background refresh stopped for lack of reads, cleared by scheduling a refresh
+    private volatile boolean idle;
+    private ScheduledFuture<?> pendingRefresh;
+
+    TokenRefresher(GoogleCredentials credentials) {
+        this(credentials, SCHEDULER, System::currentTimeMillis);
+    }
+
+    // Constructor dependency injection for testing
+    @VisibleForTesting
+    TokenRefresher(
+            GoogleCredentials credentials,
+            ScheduledExecutorService scheduler,
+            LongSupplier currentTimeMillis) {
+        this.credentials = credentials;
+        this.scheduler = scheduler;
+        this.currentTimeMillis = currentTimeMillis;
+    }
+
+    GoogleCredentials credentials() {
+        return credentials;
+    }
+
+    /**
+     * Returns the current access token. Only blocks on the token endpoint for the first token and
+     * when the background refresh could not keep the token fresh. The same instance is returned
+     * until the token changes.
+     *
+     * @return an access token that is not about to expire
+     */
+    AccessToken token() throws IOException {
+        if (!used) {
+            used = true;
+        }
+        PublishedToken published = current.get();
+        if (published != null && isFresh(published)) {
+            if (idle) {
+                resume();
+            }
+            return published.token;
+        }
+        return refreshNow();
+    }
+
+    private synchronized void resume() {
+        // Another reader may have resumed the refresh already
+        if (idle) {
+            scheduleAhead(current.get());
+        }
+    }
+
+    private synchronized AccessToken refreshNow() throws IOException {
+        // Another thread may have refreshed while this one waited for the lock
+        PublishedToken published = current.get();
+        if (published != null && isFresh(published)) {
+            return published.token;
+        }
+        credentials.refresh();
+        AccessToken token = credentials.getAccessToken();
+        publish(token);
+        return token;
+    }
+
+    private void refreshInBackground() {
+        synchronized (this) {
+            if (!used) {
+                // Nobody read the token since the last refresh, the next read schedules one
+                pendingRefresh = null;
+                idle = true;
+                return;
+            }
+        }
+        used = false;
+        try {
+            credentials.refresh();
+            synchronized (this) {
+                publish(credentials.getAccessToken());
+            }
+        } catch (IOException | RuntimeException e) {
+            PublishedToken published = current.get();
+            if (published != null && isFresh(published)) {
+                LOG.log(Level.FINE, "Background token refresh failed, retrying", e);
+                used = true;
+                schedule(RETRY_DELAY_MILLIS);
+            } else {
+                LOG.log(Level.WARNING, "Background token refresh failed", e);
+                synchronized (this) {
+                    pendingRefresh = null;
+                }
+            }
+        }
+    }
+
+    // Called with the lock held
+    private void publish(AccessToken token) {
+        PublishedToken published = new PublishedToken(token);
+        current.set(published);
+        scheduleAhead(published);
+    }
+
+    // Called with the lock held
+    private void scheduleAhead(PublishedToken published) {
+        if (published.expiresAtMillis == Long.MAX_VALUE) {
+            // Token that never expires, nothing to refresh
+            return;
+        }
+        long jitter = ThreadLocalRandom.current().nextLong(MAX_JITTER_MILLIS + 1);
+        long refreshAt = published.expiresAtMillis - REFRESH_MARGIN_MILLIS - jitter;
+        schedule(Math.max(refreshAt - currentTimeMillis.getAsLong(), 0));
+    }
+
+    private synchronized void schedule(long delayMillis) {
+        if (pendingRefresh != null) {
+            pendingRefresh.cancel(false);
+        }
+        idle = false;
+        pendingRefresh =
+                scheduler.schedule(this::refreshInBackground, delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private boolean isFresh(PublishedToken published) {
+        return published.expiresAtMillis - currentTimeMillis.getAsLong() > EXPIRY_SKEW_MILLIS;
+    }
+}
\ No newline at end of file
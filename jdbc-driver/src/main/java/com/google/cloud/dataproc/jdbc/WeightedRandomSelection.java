@@ -0,0 +1,65 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.common.annotations.VisibleForTesting;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Picks a cluster at random with a probability proportional to its score, by default its
+ * available YARN memory, or uniformly at random when every candidate scores 0. This is the
+ * default strategy.
+ *
+ * <p>Picks draw from an {@link AliasTable} built on the first pick from a pool view, so a pick
+ * takes constant time whatever the size of the pool.
+ */
+final class WeightedRandomSelection implements ClusterSelectionStrategy {
+    static final String NAME = "weighted-random";
+
+    private final Supplier<Random> random;
+    // Tables of the pool views in use, dropped along with their view
+    private final Cache<ClusterPool, AliasTable> tables =
+            CacheBuilder.newBuilder().weakKeys().build();
+
+    WeightedRandomSelection() {
+        this(ThreadLocalRandom::current);
+    }
+
+    @VisibleForTesting
+    WeightedRandomSelection(Supplier<Random> random) {
+        this.random = random;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public int select(ClusterPool pool, SelectionContext context) {
+        AliasTable table = tables.getIfPresent(pool);
+        if (table == null) {
+            // Concurrent first picks may both build it, they build the same table
+            table = AliasTable.build(pool);
+            tables.put(pool, table);
+        }
+        return table.sample(random.get());
+    }
+}
\ No newline at end of file
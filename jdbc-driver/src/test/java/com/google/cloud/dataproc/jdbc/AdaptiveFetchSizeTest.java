@@ -0,0 +1,152 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class AdaptiveFetchSizeTest {
+    private static final long MAX_BYTES = 16L << 20;
+    private static final int MAX_ROWS = 10000;
+    private static final long UNKNOWN_RTT = -1;
+
+    private static long millis(long millis) {
+        return TimeUnit.MILLISECONDS.toNanos(millis);
+    }
+
+    @Test
+    public void nextFetchSize_unknownRtt_grows() {
+        assertThat(
+                        AdaptiveFetchSize.nextFetchSize(
+                                1000, millis(50), UNKNOWN_RTT, 100, MAX_BYTES, MAX_ROWS))
+                .isEqualTo(4000);
+    }
+
+    @Test
+    public void nextFetchSize_targetsTransferOfSeveralRoundTrips() {
+        // 100 ms to transfer 1000 rows, 4 round trips of 50 ms transfer 2000 of them
+        assertThat(
+                        AdaptiveFetchSize.nextFetchSize(
+                                1000, millis(150), millis(50), 100, MAX_BYTES, MAX_ROWS))
+                .isEqualTo(2000);
+    }
+
+    @Test
+    public void nextFetchSize_shrinksAtMostByMaxGrowth() {
+        assertThat(
+                        AdaptiveFetchSize.nextFetchSize(
+                                4000, millis(1010), millis(10), 100, MAX_BYTES, MAX_ROWS))
+                .isEqualTo(1000);
+    }
+
+    @Test
+    public void nextFetchSize_cappedByBatchBytes() {
+        assertThat(
+                        AdaptiveFetchSize.nextFetchSize(
+                                1000, millis(50), UNKNOWN_RTT, 4096, 1 << 20, MAX_ROWS))
+                .isEqualTo(256);
+    }
+
+    @Test
+    public void nextFetchSize_cappedByMaxRows() {
+        assertThat(
+                        AdaptiveFetchSize.nextFetchSize(
+                                5000, millis(50), UNKNOWN_RTT, 100, MAX_BYTES, MAX_ROWS))
+                .isEqualTo(MAX_ROWS);
+    }
+
+    @Test
+    public void nextFetchSize_neverBelowMinRows() {
+        assertThat(
+                        AdaptiveFetchSize.nextFetchSize(
+                                100, millis(1001), millis(1), 100, MAX_BYTES, MAX_ROWS))
+                .isEqualTo(AdaptiveFetchSize.MIN_ROWS);
+    }
+
+    @Test
+    public void rowFetched_resizesAfterEachBatch() throws SQLException {
+        ResultSet resultSet = mock(ResultSet.class);
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        when(metaData.getColumnCount()).thenReturn(2);
+        when(metaData.getColumnType(1)).thenReturn(Types.INTEGER);
+        when(metaData.getColumnType(2)).thenReturn(Types.VARCHAR);
+        when(resultSet.getString(2)).thenReturn("abcdef");
+        // Rows of 4 bytes, plus 6 characters and their length
+        AdaptiveFetchSize sizer =
+                new AdaptiveFetchSize(resultSet, 200, 14 * 500, MAX_ROWS, () -> UNKNOWN_RTT);
+
+        for (int i = 0; i < 199; i++) {
+            assertThat(sizer.rowFetched(i == 0 ? millis(50) : 1000)).isEqualTo(0);
+        }
+        assertThat(sizer.rowFetched(1000)).isEqualTo(500);
+
+        verify(resultSet).setFetchSize(500);
+    }
+
+    @Test
+    public void rowFetched_shortBatch_endsOnNextFetch() throws SQLException {
+        ResultSet resultSet = intRows();
+        AdaptiveFetchSize sizer =
+                new AdaptiveFetchSize(resultSet, 200, MAX_BYTES, MAX_ROWS, () -> UNKNOWN_RTT);
+
+        // HiveServer2 returns 150 of the 200 rows asked for
+        for (int i = 0; i < 150; i++) {
+            assertThat(sizer.rowFetched(i == 0 ? millis(50) : 1000)).isEqualTo(0);
+        }
+        assertThat(sizer.rowFetched(millis(50))).isEqualTo(600);
+
+        verify(resultSet).setFetchSize(600);
+    }
+
+    @Test
+    public void rowFetched_unknownRtt_estimatedFromBatchesOfDifferentSizes() throws SQLException {
+        ResultSet resultSet = intRows();
+        AdaptiveFetchSize sizer =
+                new AdaptiveFetchSize(resultSet, 200, MAX_BYTES, MAX_ROWS, () -> UNKNOWN_RTT);
+
+        // Round trips of 50 ms and 0.1 ms per row
+        assertThat(fetchBatch(sizer, 200, millis(70))).isEqualTo(800);
+        assertThat(fetchBatch(sizer, 800, millis(130))).isEqualTo(2000);
+    }
+
+    private static ResultSet intRows() throws SQLException {
+        ResultSet resultSet = mock(ResultSet.class);
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(metaData.getColumnType(1)).thenReturn(Types.INTEGER);
+        return resultSet;
+    }
+
+    private static int fetchBatch(AdaptiveFetchSize sizer, int rows, long fetchNanos)
+            throws SQLException {
+        int resized = sizer.rowFetched(fetchNanos);
+        for (int i = 1; i < rows; i++) {
+            resized = sizer.rowFetched(1000);
+        }
+        return resized;
+    }
+}
\ No newline at end of file
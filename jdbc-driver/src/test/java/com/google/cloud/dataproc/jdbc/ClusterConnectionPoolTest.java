@@ -0,0 +1,275 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class ClusterConnectionPoolTest {
+    private static final String INITIAL_SCHEMA = "default";
+    private static final SessionDefaults DEFAULTS =
+            SessionDefaults.create(INITIAL_SCHEMA, ImmutableList.of("hive.exec.parallel=true"));
+    private static final long MAX_LIFETIME_MILLIS = TimeUnit.MINUTES.toMillis(30);
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final Ticker fakeTicker =
+            new Ticker() {
+                @Override
+                public long read() {
+                    return nanos.get();
+                }
+            };
+
+    private List<Connection> physicalConnections;
+    private List<Statement> physicalStatements;
+
+    @Before
+    public void setUp() {
+        physicalConnections = new ArrayList<>();
+        physicalStatements = new ArrayList<>();
+    }
+
+    private ClusterConnectionPool createPool(PoolSettings settings) {
+        return new ClusterConnectionPool(
+                "fakeclusterhost",
+                () -> {
+                    Connection connection = mock(Connection.class);
+                    when(connection.isValid(anyInt())).thenReturn(true);
+                    when(connection.createStatement())
+                            .thenAnswer(
+                                    invocation -> {
+                                        Statement statement = mock(Statement.class);
+                                        physicalStatements.add(statement);
+                                        return statement;
+                                    });
+                    physicalConnections.add(connection);
+                    return connection;
+                },
+                settings,
+                DEFAULTS,
+                fakeTicker);
+    }
+
+    private ClusterConnectionPool createPool() {
+        return createPool(
+                PoolSettings.builder()
+                        .setMaxPoolSize(2)
+                        .setMaxLifetimeMillis(MAX_LIFETIME_MILLIS)
+                        .setConnectionTimeoutMillis(0)
+                        .build());
+    }
+
+    @Test
+    public void borrow_afterReturn_reusesConnection() throws SQLException {
+        ClusterConnectionPool pool = createPool();
+
+        pool.borrow().close();
+        pool.borrow().close();
+
+        assertThat(physicalConnections).hasSize(1);
+        assertThat(pool.idleCount()).isEqualTo(1);
+        verify(physicalConnections.get(0), never()).close();
+    }
+
+    @Test
+    public void borrow_poolFull_timesOut() throws SQLException {
+        ClusterConnectionPool pool = createPool();
+        pool.borrow();
+        pool.borrow();
+
+        Assertions.assertThrows(SQLTransientConnectionException.class, pool::borrow);
+        assertThat(pool.borrowedCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void borrow_idleConnectionInvalid_opensNewConnection() throws SQLException {
+        ClusterConnectionPool pool = createPool();
+        pool.borrow().close();
+        when(physicalConnections.get(0).isValid(anyInt())).thenReturn(false);
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(1));
+
+        pool.borrow();
+
+        assertThat(physicalConnections).hasSize(2);
+        verify(physicalConnections.get(0), times(1)).close();
+    }
+
+    @Test
+    public void borrow_recentlyReturned_skipsValidation() throws SQLException {
+        ClusterConnectionPool pool = createPool();
+        pool.borrow().close();
+
+        pool.borrow();
+
+        verify(physicalConnections.get(0), never()).isValid(anyInt());
+    }
+
+    @Test
+    public void close_pastMaxLifetime_closesPhysicalConnection() throws SQLException {
+        ClusterConnectionPool pool = createPool();
+        Connection connection = pool.borrow();
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(MAX_LIFETIME_MILLIS));
+
+        connection.close();
+
+        assertThat(pool.idleCount()).isEqualTo(0);
+        verify(physicalConnections.get(0), times(1)).close();
+    }
+
+    @Test
+    public void close_resetsSessionState() throws SQLException {
+        ClusterConnectionPool pool = createPool();
+        Connection connection = pool.borrow();
+        connection.createStatement();
+        connection.setSchema("other_db");
+
+        connection.close();
+
+        Connection physical = physicalConnections.get(0);
+        verify(physicalStatements.get(0), times(1)).close();
+        verify(physical, times(1)).setSchema(INITIAL_SCHEMA);
+        verify(physical, never()).close();
+        assertThat(connection.isClosed()).isTrue();
+        Assertions.assertThrows(SQLException.class, connection::createStatement);
+    }
+
+    @Test
+    public void close_sessionChangedThroughStatements_resetBeforeNextBorrow() throws SQLException {
+        ClusterConnectionPool pool = createPool();
+        Connection connection = pool.borrow();
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("use other_db");
+            statement.execute("set tez.queue.name=adhoc");
+            statement.execute("set hivevar:region=eu");
+        }
+
+        connection.close();
+        Connection next = pool.borrow();
+
+        assertThat(physicalConnections).hasSize(1);
+        Connection physical = physicalConnections.get(0);
+        verify(physical).setSchema(INITIAL_SCHEMA);
+        Statement reset = physicalStatements.get(1);
+        verify(reset).execute("RESET");
+        verify(reset).execute("SET hive.exec.parallel=true");
+        verify(reset).close();
+        next.close();
+        verify(physicalStatements.get(2)).execute("RESET");
+    }
+
+    @Test
+    public void close_resetFails_closesPhysicalConnection() throws SQLException {
+        ClusterConnectionPool pool = createPool();
+        Connection connection = pool.borrow();
+        connection.createStatement();
+        doThrow(new SQLException("Statement close failed"))
+                .when(physicalStatements.get(0))
+                .close();
+
+        connection.close();
+
+        assertThat(pool.idleCount()).isEqualTo(0);
+        verify(physicalConnections.get(0), times(1)).close();
+    }
+
+    @Test
+    public void close_resetCommandFails_closesPhysicalConnection() throws SQLException {
+        ClusterConnectionPool pool = createPool();
+        Connection connection = pool.borrow();
+        Connection physical = physicalConnections.get(0);
+        Statement reset = mock(Statement.class);
+        when(reset.execute("RESET")).thenThrow(new SQLException("Error while processing"));
+        when(physical.createStatement()).thenReturn(reset);
+
+        connection.close();
+
+        assertThat(pool.idleCount()).isEqualTo(0);
+        verify(physical, times(1)).close();
+        pool.borrow();
+        assertThat(physicalConnections).hasSize(2);
+    }
+
+    @Test
+    public void borrow_physicalConnectionNotReachableFromHandle() throws SQLException {
+        ClusterConnectionPool pool = createPool();
+        Connection connection = pool.borrow();
+        Connection physical = physicalConnections.get(0);
+        DatabaseMetaData physicalMetaData = mock(DatabaseMetaData.class);
+        when(physical.getMetaData()).thenReturn(physicalMetaData);
+        when(physicalMetaData.getConnection()).thenReturn(physical);
+
+        assertThat(connection.getMetaData().getConnection()).isSameInstanceAs(connection);
+        assertThat(connection.isWrapperFor(Connection.class)).isTrue();
+        assertThat(connection.unwrap(Connection.class)).isSameInstanceAs(connection);
+        assertThat(connection.isWrapperFor(physical.getClass())).isFalse();
+        Assertions.assertThrows(SQLException.class, () -> connection.unwrap(physical.getClass()));
+    }
+
+    @Test
+    public void maintain_opensMinIdleConnections() {
+        ClusterConnectionPool pool =
+                createPool(PoolSettings.builder().setMinIdle(2).setMaxPoolSize(3).build());
+
+        pool.maintain();
+
+        assertThat(pool.idleCount()).isEqualTo(2);
+        assertThat(physicalConnections).hasSize(2);
+    }
+
+    @Test
+    public void maintain_closesExpiredIdleConnections() throws SQLException {
+        ClusterConnectionPool pool = createPool();
+        pool.borrow().close();
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(MAX_LIFETIME_MILLIS));
+
+        pool.maintain();
+
+        assertThat(pool.idleCount()).isEqualTo(0);
+        verify(physicalConnections.get(0), times(1)).close();
+    }
+
+    @Test
+    public void close_closesIdleConnectionsAndRejectsBorrow() throws SQLException {
+        ClusterConnectionPool pool = createPool();
+        pool.borrow().close();
+
+        pool.close();
+
+        verify(physicalConnections.get(0), times(1)).close();
+        Assertions.assertThrows(SQLException.class, pool::borrow);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.google.cloud.dataproc.v1beta2.ClusterControllerClient;
+import com.google.common.base.Ticker;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class ClusterControllerClientRegistryTest {
+    private static final long IDLE_TIMEOUT_MILLIS = 1000;
+    private static final String REGION_1 = "us-central1";
+    private static final String REGION_2 = "europe-west1";
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final Ticker fakeTicker =
+            new Ticker() {
+                @Override
+                public long read() {
+                    return nanos.get();
+                }
+            };
+
+    private List<String> createdEndpoints;
+    private List<ClusterControllerClient> createdClients;
+    private ClusterControllerClientRegistry registry;
+
+    @Before
+    public void setUp() {
+        createdEndpoints = new ArrayList<>();
+        createdClients = new ArrayList<>();
+        registry =
+                new ClusterControllerClientRegistry(
+                        endpoint -> {
+                            ClusterControllerClient client = mock(ClusterControllerClient.class);
+                            createdEndpoints.add(endpoint);
+                            createdClients.add(client);
+                            return client;
+                        },
+                        IDLE_TIMEOUT_MILLIS,
+                        fakeTicker);
+    }
+
+    @Test
+    public void acquire_sameRegion_reusesClient() throws IOException {
+        ClusterControllerClient first;
+        try (ClusterControllerClientRegistry.Lease lease = registry.acquire(REGION_1)) {
+            first = lease.client();
+        }
+        try (ClusterControllerClientRegistry.Lease lease = registry.acquire(REGION_1)) {
+            assertThat(lease.client()).isSameInstanceAs(first);
+        }
+        assertThat(createdEndpoints).containsExactly("us-central1-dataproc.googleapis.com:443");
+        verify(first, never()).close();
+    }
+
+    @Test
+    public void acquire_differentRegions_createsClientPerEndpoint() throws IOException {
+        try (ClusterControllerClientRegistry.Lease lease1 = registry.acquire(REGION_1);
+                ClusterControllerClientRegistry.Lease lease2 = registry.acquire(REGION_2)) {
+            assertThat(lease1.client()).isNotSameInstanceAs(lease2.client());
+        }
+        assertThat(createdEndpoints)
+                .containsExactly(
+                        "us-central1-dataproc.googleapis.com:443",
+                        "europe-west1-dataproc.googleapis.com:443");
+        assertThat(registry.size()).isEqualTo(2);
+    }
+
+    @Test
+    public void evictIdleClients_closesIdleClient() throws IOException {
+        registry.acquire(REGION_1).close();
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT_MILLIS));
+
+        registry.evictIdleClients();
+
+        assertThat(registry.size()).isEqualTo(0);
+        verify(createdClients.get(0), times(1)).close();
+
+        // The next connect to the region gets a fresh client
+        try (ClusterControllerClientRegistry.Lease lease = registry.acquire(REGION_1)) {
+            assertThat(lease.client()).isSameInstanceAs(createdClients.get(1));
+        }
+    }
+
+    @Test
+    public void evictIdleClients_keepsLeasedClient() throws IOException {
+        try (ClusterControllerClientRegistry.Lease lease = registry.acquire(REGION_1)) {
+            nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(2 * IDLE_TIMEOUT_MILLIS));
+            registry.evictIdleClients();
+            assertThat(registry.size()).isEqualTo(1);
+        }
+        verify(createdClients.get(0), never()).close();
+    }
+
+    @Test
+    public void evictIdleClients_keepsRecentlyUsedClient() throws IOException {
+        registry.acquire(REGION_1).close();
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT_MILLIS / 2));
+
+        registry.evictIdleClients();
+
+        assertThat(registry.size()).isEqualTo(1);
+        verify(createdClients.get(0), never()).close();
+    }
+
+    @Test
+    public void close_closesAllClients() throws IOException {
+        registry.acquire(REGION_1).close();
+        registry.acquire(REGION_2).close();
+
+        registry.close();
+
+        verify(createdClients.get(0), times(1)).close();
+        verify(createdClients.get(1), times(1)).close();
+        Assertions.assertThrows(
+                IOException.class,
+                () -> {
+                    registry.acquire(REGION_1);
+                });
+    }
+}
\ No newline at end of file
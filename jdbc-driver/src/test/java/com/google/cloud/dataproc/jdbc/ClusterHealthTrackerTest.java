@@ -0,0 +1,215 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import static com.google.cloud.dataproc.jdbc.TestClusters.host;
+import static com.google.cloud.dataproc.jdbc.TestClusters.pool;
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import java.io.IOException;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+public class ClusterHealthTrackerTest {
+    private static final SQLException CONNECT_FAILURE =
+            new SQLException("Could not open client transport", " 08S01");
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final Ticker fakeTicker =
+            new Ticker() {
+                @Override
+                public long read() {
+                    return nanos.get();
+                }
+            };
+    private final ClusterHealthTracker tracker = new ClusterHealthTracker(fakeTicker);
+    private final ClusterPool pool = pool(0, 0, 0);
+
+    private void fail(int index, int times) {
+        for (int i = 0; i < times; i++) {
+            tracker.connectFailed(host(index), CONNECT_FAILURE);
+        }
+    }
+
+    private void advanceSeconds(long seconds) {
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(seconds));
+    }
+
+    private static ImmutableList<String> names(ClusterPool pool) {
+        ImmutableList.Builder<String> names = ImmutableList.builder();
+        for (int i = 0; i < pool.size(); i++) {
+            names.add(pool.cluster(i).getClusterName());
+        }
+        return names.build();
+    }
+
+    @Test
+    public void consecutiveFailures_ejectCluster() {
+        fail(1, ClusterHealthTracker.CONSECUTIVE_FAILURES - 1);
+        assertThat(tracker.admitted(pool).size()).isEqualTo(3);
+
+        fail(1, 1);
+
+        assertThat(names(tracker.admitted(pool)))
+                .containsExactly("pool-cluster-0", "pool-cluster-2")
+                .inOrder();
+        ClusterHealthStats stats = tracker.stats();
+        assertThat(stats.ejectionCount()).isEqualTo(1);
+        assertThat(stats.ejectedClusterCount()).isEqualTo(1);
+        assertThat(stats.skipCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void failureRate_ejectsCluster() {
+        // Never 2 failures in a row, but half of the connects fail
+        for (int i = 0; i < 5; i++) {
+            tracker.connectSucceeded(host(0));
+            fail(0, 1);
+        }
+
+        assertThat(names(tracker.admitted(pool)))
+                .containsExactly("pool-cluster-1", "pool-cluster-2");
+    }
+
+    @Test
+    public void clientFailures_ignored() {
+        for (int i = 0; i < 10; i++) {
+            tracker.connectFailed(host(0), new SQLException("Invalid credentials", "28000"));
+        }
+
+        assertThat(tracker.admitted(pool)).isSameInstanceAs(pool);
+        assertThat(tracker.stats().ejectionCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void credentialsFailures_ignored() {
+        // As Hive reports them, a transport failure wrapping the HTTP status or the token failure
+        for (int i = 0; i < 10; i++) {
+            tracker.connectFailed(
+                    host(0),
+                    new SQLException(
+                            "Could not open client transport with JDBC Uri",
+                            " 08S01",
+                            new IOException("HTTP Response code: 401")));
+            tracker.connectFailed(
+                    host(0),
+                    new SQLException(
+                            "Could not open client transport with JDBC Uri",
+                            "08S01",
+                            new DataprocCGAuthInterceptor.TokenUnavailableException(
+                                    new IOException("Error getting access token"))));
+        }
+
+        assertThat(tracker.admitted(pool)).isSameInstanceAs(pool);
+        assertThat(tracker.stats().ejectionCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void isClusterFailure_connectionFailures() {
+        assertThat(ClusterHealthTracker.isClusterFailure(CONNECT_FAILURE)).isTrue();
+        assertThat(
+                        ClusterHealthTracker.isClusterFailure(
+                                new SQLTransientConnectionException("timed out")))
+                .isTrue();
+        assertThat(ClusterHealthTracker.isClusterFailure(new SQLException("syntax", "42000")))
+                .isFalse();
+        assertThat(ClusterHealthTracker.isClusterFailure(new SQLException("unknown"))).isFalse();
+    }
+
+    @Test
+    public void claimProbe_afterBackoff() {
+        fail(2, ClusterHealthTracker.CONSECUTIVE_FAILURES);
+        assertThat(tracker.claimProbe(pool)).isEqualTo(-1);
+
+        advanceSeconds(30);
+
+        assertThat(tracker.claimProbe(pool)).isEqualTo(2);
+        // A single connect probes the cluster, the others keep leaving it out
+        assertThat(tracker.claimProbe(pool)).isEqualTo(-1);
+        assertThat(tracker.admitted(pool).size()).isEqualTo(2);
+    }
+
+    @Test
+    public void probeSucceeded_readmitsCluster() {
+        fail(2, ClusterHealthTracker.CONSECUTIVE_FAILURES);
+        advanceSeconds(30);
+        tracker.claimProbe(pool);
+
+        tracker.connectSucceeded(host(2));
+
+        assertThat(tracker.admitted(pool)).isSameInstanceAs(pool);
+        ClusterHealthStats stats = tracker.stats();
+        assertThat(stats.readmissionCount()).isEqualTo(1);
+        assertThat(stats.ejectedClusterCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void probeFailed_doublesBackoff() {
+        fail(2, ClusterHealthTracker.CONSECUTIVE_FAILURES);
+        advanceSeconds(30);
+        tracker.claimProbe(pool);
+
+        fail(2, 1);
+
+        advanceSeconds(59);
+        assertThat(tracker.claimProbe(pool)).isEqualTo(-1);
+        advanceSeconds(1);
+        assertThat(tracker.claimProbe(pool)).isEqualTo(2);
+        assertThat(tracker.stats().ejectionCount()).isEqualTo(2);
+        assertThat(tracker.stats().ejectedClusterCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void abandonedProbe_givenToAnotherConnect() {
+        fail(0, ClusterHealthTracker.CONSECUTIVE_FAILURES);
+        advanceSeconds(30);
+        assertThat(tracker.claimProbe(pool)).isEqualTo(0);
+
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(ClusterHealthTracker.PROBE_TIMEOUT_MILLIS));
+
+        assertThat(tracker.claimProbe(pool)).isEqualTo(0);
+    }
+
+    @Test
+    public void healthyAfterReadmission_backoffStartsOver() {
+        fail(0, ClusterHealthTracker.CONSECUTIVE_FAILURES);
+        advanceSeconds(30);
+        tracker.claimProbe(pool);
+        tracker.connectSucceeded(host(0));
+        nanos.addAndGet(
+                TimeUnit.MILLISECONDS.toNanos(ClusterHealthTracker.MAX_EJECTION_MILLIS) + 1);
+
+        fail(0, ClusterHealthTracker.CONSECUTIVE_FAILURES);
+
+        advanceSeconds(30);
+        assertThat(tracker.claimProbe(pool)).isEqualTo(0);
+    }
+
+    @Test
+    public void everyClusterEjected_admitsAll() {
+        for (int i = 0; i < pool.size(); i++) {
+            fail(i, ClusterHealthTracker.CONSECUTIVE_FAILURES);
+        }
+
+        assertThat(tracker.admitted(pool)).isSameInstanceAs(pool);
+        assertThat(tracker.stats().skipCount()).isEqualTo(0);
+    }
+}
\ No newline at end of file
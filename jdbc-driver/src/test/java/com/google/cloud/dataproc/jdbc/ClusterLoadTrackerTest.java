@@ -0,0 +1,143 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class ClusterLoadTrackerTest {
+    private static final String HOST = "cluster1-dot-us-central1.dataproc.googleusercontent.com";
+
+    private ClusterLoadTracker tracker;
+    private Connection physical;
+
+    @Before
+    public void setUp() throws SQLException {
+        tracker = new ClusterLoadTracker();
+        physical = mock(Connection.class);
+        when(physical.createStatement()).thenAnswer(invocation -> mock(Statement.class));
+        when(physical.prepareStatement("SELECT 1"))
+                .thenAnswer(invocation -> mock(PreparedStatement.class));
+    }
+
+    @Test
+    public void track_countsConnectionUntilClosed() throws SQLException {
+        Connection connection = tracker.track(HOST, physical);
+        assertThat(tracker.inFlight(HOST)).isEqualTo(1);
+
+        connection.close();
+        connection.close();
+
+        assertThat(tracker.inFlight(HOST)).isEqualTo(0);
+        verify(physical, times(2)).close();
+    }
+
+    @Test
+    public void track_countsStatementsUntilClosed() throws SQLException {
+        Connection connection = tracker.track(HOST, physical);
+        Statement statement = connection.createStatement();
+        PreparedStatement prepared = connection.prepareStatement("SELECT 1");
+
+        assertThat(tracker.load(HOST).statements()).isEqualTo(2);
+        assertThat(tracker.inFlight(HOST)).isEqualTo(3);
+        assertThat(statement.getConnection()).isSameInstanceAs(connection);
+
+        statement.close();
+        statement.close();
+        assertThat(tracker.load(HOST).statements()).isEqualTo(1);
+
+        prepared.close();
+        assertThat(tracker.inFlight(HOST)).isEqualTo(1);
+    }
+
+    @Test
+    public void close_releasesOpenStatements() throws SQLException {
+        Connection connection = tracker.track(HOST, physical);
+        Statement statement = connection.createStatement();
+        connection.createStatement();
+        ClusterLoadTracker.Load load = tracker.load(HOST);
+
+        connection.close();
+        // Closing a statement of a closed connection doesn't count twice
+        statement.close();
+
+        assertThat(load.connections()).isEqualTo(0);
+        assertThat(load.statements()).isEqualTo(0);
+    }
+
+    @Test
+    public void close_lastConnection_dropsCounters() throws SQLException {
+        Connection first = tracker.track(HOST, physical);
+        Connection second = tracker.track(HOST, physical);
+
+        first.close();
+        assertThat(tracker.load(HOST).connections()).isEqualTo(1);
+        second.close();
+        assertThat(tracker.load(HOST)).isNull();
+
+        tracker.track(HOST, physical);
+        assertThat(tracker.inFlight(HOST)).isEqualTo(1);
+    }
+
+    @Test
+    public void unwrap_returnsPhysicalConnection() throws SQLException {
+        when(physical.unwrap(any())).thenThrow(new SQLException("Method not supported"));
+        Connection connection = tracker.track(HOST, physical);
+
+        assertThat(connection.unwrap(Connection.class)).isSameInstanceAs(connection);
+        assertThat(connection.unwrap(physical.getClass())).isSameInstanceAs(physical);
+        assertThat(connection.isWrapperFor(physical.getClass())).isTrue();
+    }
+
+    @Test
+    public void close_failure_stillReleased() throws SQLException {
+        doThrow(new SQLException("connection reset")).when(physical).close();
+        Connection connection = tracker.track(HOST, physical);
+
+        Assertions.assertThrows(SQLException.class, connection::close);
+
+        assertThat(tracker.inFlight(HOST)).isEqualTo(0);
+    }
+
+    @Test
+    public void track_unknownHost_notWrapped() {
+        assertThat(tracker.track(null, physical)).isSameInstanceAs(physical);
+        assertThat(tracker.inFlight(null)).isEqualTo(0);
+        assertThat(tracker.inFlight("other-host")).isEqualTo(0);
+    }
+
+    @Test
+    public void hostOf_hiveUrl() {
+        assertThat(
+                        ConnectionSpec.hostOf(
+                                "jdbc:hive2://" + HOST + ":443/;transportMode=http;httpPath=hive"))
+                .isEqualTo(HOST);
+        assertThat(ConnectionSpec.hostOf("jdbc:mysql://localhost:3306/")).isNull();
+    }
+}
\ No newline at end of file
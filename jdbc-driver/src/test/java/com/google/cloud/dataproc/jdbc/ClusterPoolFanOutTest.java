@@ -0,0 +1,178 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.cloud.dataproc.v1beta2.Cluster;
+import com.google.common.collect.ImmutableList;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class ClusterPoolFanOutTest {
+    private static final String FILTER = "status.state = ACTIVE AND labels.com = google";
+    private static final long TIMEOUT_MILLIS = 200;
+
+    private ExecutorService executor;
+    private ClusterPoolFanOut fanOut;
+    private final CountDownLatch released = new CountDownLatch(1);
+
+    @Before
+    public void setUp() {
+        executor = Executors.newCachedThreadPool();
+        fanOut = new ClusterPoolFanOut(executor);
+    }
+
+    @After
+    public void tearDown() {
+        released.countDown();
+        executor.shutdownNow();
+    }
+
+    private static ClusterResolutionCache.Key key(List<String> projectIds, List<String> regions) {
+        return ClusterResolutionCache.Key.forPool(
+                projectIds,
+                regions,
+                FILTER,
+                /* pageSize= */ 0,
+                /* maxCandidates= */ 0,
+                ClusterScoring.DEFAULT,
+                TIMEOUT_MILLIS);
+    }
+
+    private static ImmutableList<Cluster> clusters(String projectId, String region) {
+        return ImmutableList.of(
+                Cluster.newBuilder()
+                        .setProjectId(projectId)
+                        .setClusterName("cluster-" + region)
+                        .build());
+    }
+
+    private static List<String> names(List<Cluster> clusters) {
+        return clusters.stream()
+                .map(cluster -> cluster.getProjectId() + "/" + cluster.getClusterName())
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void list_singleLocation_listsOnCallingThread() throws SQLException {
+        Thread caller = Thread.currentThread();
+        ClusterPoolFanOut.Listing listing =
+                fanOut.list(
+                        key(ImmutableList.of("pid"), ImmutableList.of("us-central1")),
+                        (projectId, region) -> {
+                            assertThat(Thread.currentThread()).isSameInstanceAs(caller);
+                            return clusters(projectId, region);
+                        });
+
+        assertThat(names(listing.clusters())).containsExactly("pid/cluster-us-central1");
+        assertThat(listing.partial()).isFalse();
+    }
+
+    @Test
+    public void list_severalLocations_mergesAll() throws SQLException {
+        ClusterPoolFanOut.Listing listing =
+                fanOut.list(
+                        key(
+                                ImmutableList.of("pid-1", "pid-2"),
+                                ImmutableList.of("us-central1", "europe-west1")),
+                        ClusterPoolFanOutTest::clusters);
+
+        assertThat(names(listing.clusters()))
+                .containsExactly(
+                        "pid-1/cluster-us-central1",
+                        "pid-1/cluster-europe-west1",
+                        "pid-2/cluster-us-central1",
+                        "pid-2/cluster-europe-west1")
+                .inOrder();
+        assertThat(listing.partial()).isFalse();
+    }
+
+    @Test
+    public void list_slowRegion_returnsOtherRegions() throws SQLException {
+        ClusterPoolFanOut.Listing listing =
+                fanOut.list(
+                        key(ImmutableList.of("pid"), ImmutableList.of("us-central1", "asia-east1")),
+                        (projectId, region) -> {
+                            if (region.equals("asia-east1")) {
+                                try {
+                                    released.await();
+                                } catch (InterruptedException e) {
+                                    throw new SQLException(e);
+                                }
+                            }
+                            return clusters(projectId, region);
+                        });
+
+        assertThat(names(listing.clusters())).containsExactly("pid/cluster-us-central1");
+        assertThat(listing.partial()).isTrue();
+    }
+
+    @Test
+    public void list_failedRegion_returnsOtherRegions() throws SQLException {
+        ClusterPoolFanOut.Listing listing =
+                fanOut.list(
+                        key(ImmutableList.of("pid"), ImmutableList.of("us-central1", "asia-east1")),
+                        (projectId, region) -> {
+                            if (region.equals("asia-east1")) {
+                                throw new SQLException("UNAVAILABLE");
+                            }
+                            return clusters(projectId, region);
+                        });
+
+        assertThat(names(listing.clusters())).containsExactly("pid/cluster-us-central1");
+        assertThat(listing.partial()).isTrue();
+    }
+
+    @Test
+    public void list_allRegionsFailed_throwsFailure() {
+        SQLException failure =
+                Assertions.assertThrows(
+                        SQLException.class,
+                        () ->
+                                fanOut.list(
+                                        key(
+                                                ImmutableList.of("pid"),
+                                                ImmutableList.of("us-central1", "asia-east1")),
+                                        (projectId, region) -> {
+                                            throw new SQLException("UNAVAILABLE " + region);
+                                        }));
+
+        assertThat(failure).hasMessageThat().isEqualTo("UNAVAILABLE us-central1");
+    }
+
+    @Test
+    public void list_noClusterFound_throwsInvalidUrl() {
+        Assertions.assertThrows(
+                InvalidURLException.class,
+                () ->
+                        fanOut.list(
+                                key(
+                                        ImmutableList.of("pid"),
+                                        ImmutableList.of("us-central1", "asia-east1")),
+                                (projectId, region) -> {
+                                    throw new InvalidURLException("Unable to find clusters");
+                                }));
+    }
+}
\ No newline at end of file
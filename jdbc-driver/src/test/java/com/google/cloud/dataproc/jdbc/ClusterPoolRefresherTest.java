@@ -0,0 +1,228 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.google.cloud.dataproc.v1beta2.Cluster;
+import com.google.cloud.dataproc.v1beta2.ClusterMetrics;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import java.sql.SQLException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ClusterPoolRefresherTest {
+    private static final long REFRESH_SECONDS = 30;
+    private static final long IDLE_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(10);
+    private static final ClusterResolutionCache.Key POOL_KEY =
+            ClusterResolutionCache.Key.forPool("pid", "us-central1", "status.state = ACTIVE");
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final Ticker fakeTicker =
+            new Ticker() {
+                @Override
+                public long read() {
+                    return nanos.get();
+                }
+            };
+
+    private final ImmutableList<Cluster> initialClusters =
+            ImmutableList.of(cluster("cluster1", 1024));
+    private final ImmutableList<Cluster> refreshedClusters =
+            ImmutableList.of(cluster("cluster1", 0), cluster("cluster2", 2048));
+
+    private Deque<Object> listings;
+    private AtomicInteger initialLoads;
+    private ScheduledExecutorService mockScheduler;
+    private ClusterPoolRefresher refresher;
+
+    private static Cluster cluster(String name, long availableMemoryMb) {
+        return Cluster.newBuilder()
+                .setClusterName(name)
+                .setMetrics(
+                        ClusterMetrics.newBuilder()
+                                .putYarnMetrics("yarn-memory-mb-available", availableMemoryMb))
+                .build();
+    }
+
+    @Before
+    public void setUp() {
+        listings = new ArrayDeque<>();
+        initialLoads = new AtomicInteger();
+        mockScheduler = mock(ScheduledExecutorService.class);
+        refresher =
+                new ClusterPoolRefresher(
+                        key -> {
+                            Object listing = listings.pop();
+                            if (listing instanceof SQLException) {
+                                throw (SQLException) listing;
+                            } else if (listing instanceof ClusterPoolFanOut.Listing) {
+                                return (ClusterPoolFanOut.Listing) listing;
+                            }
+                            @SuppressWarnings("unchecked")
+                            ImmutableList<Cluster> clusters = (ImmutableList<Cluster>) listing;
+                            return ClusterPoolFanOut.Listing.create(clusters, false);
+                        },
+                        IDLE_TIMEOUT_MILLIS,
+                        fakeTicker,
+                        mockScheduler);
+    }
+
+    private ClusterPoolSnapshot snapshot() throws SQLException {
+        return snapshot(false);
+    }
+
+    private ClusterPoolSnapshot snapshot(boolean partial) throws SQLException {
+        return refresher.snapshot(
+                POOL_KEY,
+                REFRESH_SECONDS,
+                () -> {
+                    initialLoads.incrementAndGet();
+                    return ClusterPoolFanOut.Listing.create(initialClusters, partial);
+                });
+    }
+
+    @Test
+    public void snapshot_firstUse_loadsAndSchedulesRefresh() throws SQLException {
+        ClusterPoolSnapshot snapshot = snapshot();
+
+        assertThat(snapshot.clusters()).isEqualTo(initialClusters);
+        assertThat(snapshot.availableYarnMemoryMb(0)).isEqualTo(1024L);
+        verify(mockScheduler, times(1))
+                .scheduleWithFixedDelay(
+                        any(Runnable.class),
+                        eq(REFRESH_SECONDS),
+                        eq(REFRESH_SECONDS),
+                        eq(TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void snapshot_afterRefresh_servesRefreshedClustersWithoutLoading() throws SQLException {
+        snapshot();
+        listings.add(refreshedClusters);
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(REFRESH_SECONDS));
+
+        refresher.refresh(POOL_KEY);
+
+        assertThat(snapshot().clusters()).isEqualTo(refreshedClusters);
+        assertThat(initialLoads.get()).isEqualTo(1);
+        assertThat(refresher.stats().get(0).snapshotAgeMillis()).isEqualTo(0);
+    }
+
+    @Test
+    public void refresh_failure_keepsSnapshotAndReportsIt() throws SQLException {
+        snapshot();
+        listings.add(new SQLException("UNAVAILABLE"));
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(REFRESH_SECONDS));
+
+        refresher.refresh(POOL_KEY);
+
+        assertThat(snapshot().clusters()).isEqualTo(initialClusters);
+        ClusterPoolStats stats = refresher.stats().get(0);
+        assertThat(stats.filter()).isEqualTo("status.state = ACTIVE");
+        assertThat(stats.clusterCount()).isEqualTo(1);
+        assertThat(stats.snapshotAgeMillis()).isEqualTo(TimeUnit.SECONDS.toMillis(REFRESH_SECONDS));
+        assertThat(stats.refreshFailureCount()).isEqualTo(1);
+        assertThat(stats.lastRefreshFailure()).isEqualTo("UNAVAILABLE");
+    }
+
+    @Test
+    public void refresh_partialListing_keepsSnapshotAndReportsIt() throws SQLException {
+        snapshot();
+        listings.add(ClusterPoolFanOut.Listing.create(refreshedClusters, true));
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(REFRESH_SECONDS));
+
+        refresher.refresh(POOL_KEY);
+
+        assertThat(snapshot().clusters()).isEqualTo(initialClusters);
+        assertThat(refresher.stats().get(0).refreshFailureCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void snapshot_partialListing_notKept() throws SQLException {
+        snapshot(true);
+        snapshot(true);
+
+        assertThat(initialLoads.get()).isEqualTo(2);
+        assertThat(refresher.stats()).isEmpty();
+        verify(mockScheduler, never()).scheduleWithFixedDelay(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    public void refresh_idlePool_dropped() throws SQLException {
+        snapshot();
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(IDLE_TIMEOUT_MILLIS));
+
+        refresher.refresh(POOL_KEY);
+
+        assertThat(refresher.stats()).isEmpty();
+        snapshot();
+        assertThat(initialLoads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void snapshot_refreshDisabled_alwaysLoads() throws SQLException {
+        ClusterResolutionCache.PoolLoader loader =
+                () -> ClusterPoolFanOut.Listing.create(initialClusters, false);
+        refresher.snapshot(POOL_KEY, 0, loader);
+        refresher.snapshot(POOL_KEY, 0, loader);
+
+        assertThat(refresher.stats()).isEmpty();
+        verify(mockScheduler, never()).scheduleWithFixedDelay(any(), anyLong(), anyLong(), any());
+    }
+
+    @Test
+    public void snapshot_refreshesFailingPastMaxAge_listsAgain() throws SQLException {
+        snapshot();
+        for (int i = 0; i < ClusterPoolRefresher.MAX_STALE_REFRESHES; i++) {
+            listings.add(new SQLException("UNAVAILABLE"));
+            nanos.addAndGet(TimeUnit.SECONDS.toNanos(REFRESH_SECONDS));
+            refresher.refresh(POOL_KEY);
+        }
+
+        snapshot();
+
+        assertThat(initialLoads.get()).isEqualTo(2);
+        assertThat(refresher.stats().get(0).snapshotAgeMillis()).isEqualTo(0);
+    }
+
+    @Test
+    public void refresh_noClusterLeft_dropsSnapshot() throws SQLException {
+        snapshot();
+        listings.add(new InvalidURLException("Unable to find active clusters"));
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(REFRESH_SECONDS));
+
+        refresher.refresh(POOL_KEY);
+
+        assertThat(refresher.stats()).isEmpty();
+        snapshot();
+        assertThat(initialLoads.get()).isEqualTo(2);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.cloud.dataproc.v1beta2.Cluster;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.sql.SQLException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class ClusterResolutionCacheTest {
+    private static final String PROJECT_ID = "pid";
+    private static final String REGION = "us-central1";
+    private static final long TTL_SECONDS = 60;
+    private static final long NEGATIVE_TTL_SECONDS = 10;
+
+    private static final ClusterResolutionCache.Key CLUSTER_KEY =
+            ClusterResolutionCache.Key.forCluster(PROJECT_ID, REGION, "simple-cluster1");
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final Ticker fakeTicker =
+            new Ticker() {
+                @Override
+                public long read() {
+                    return nanos.get();
+                }
+            };
+
+    private final ImmutableList<Cluster> clusters =
+            ImmutableList.of(Cluster.newBuilder().setClusterName("simple-cluster1").build());
+
+    private AtomicInteger loads;
+    private ClusterResolutionCache cache;
+
+    @Before
+    public void setUp() {
+        loads = new AtomicInteger();
+        cache = new ClusterResolutionCache(ClusterResolutionCache.DEFAULT_MAXIMUM_SIZE, fakeTicker);
+    }
+
+    private ImmutableList<Cluster> load() {
+        loads.incrementAndGet();
+        return clusters;
+    }
+
+    private ImmutableList<Cluster> loadNotFound() throws InvalidURLException {
+        loads.incrementAndGet();
+        throw new InvalidURLException("Unable to retrieve cluster information.");
+    }
+
+    @Test
+    public void get_withinTtl_servedFromCache() throws SQLException {
+        assertThat(cache.get(CLUSTER_KEY, TTL_SECONDS, NEGATIVE_TTL_SECONDS, this::load))
+                .isEqualTo(clusters);
+        assertThat(cache.get(CLUSTER_KEY, TTL_SECONDS, NEGATIVE_TTL_SECONDS, this::load))
+                .isEqualTo(clusters);
+
+        assertThat(loads.get()).isEqualTo(1);
+        ClusterCacheStats stats = cache.stats();
+        assertThat(stats.hitCount()).isEqualTo(1);
+        assertThat(stats.missCount()).isEqualTo(1);
+        assertThat(stats.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void get_afterTtl_reloads() throws SQLException {
+        cache.get(CLUSTER_KEY, TTL_SECONDS, NEGATIVE_TTL_SECONDS, this::load);
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(TTL_SECONDS));
+        cache.get(CLUSTER_KEY, TTL_SECONDS, NEGATIVE_TTL_SECONDS, this::load);
+
+        assertThat(loads.get()).isEqualTo(2);
+        assertThat(cache.stats().missCount()).isEqualTo(2);
+    }
+
+    @Test
+    public void get_zeroTtl_notCached() throws SQLException {
+        cache.get(CLUSTER_KEY, 0, 0, this::load);
+        cache.get(CLUSTER_KEY, 0, 0, this::load);
+
+        assertThat(loads.get()).isEqualTo(2);
+        assertThat(cache.stats().size()).isEqualTo(0);
+    }
+
+    @Test
+    public void getPool_partialListing_cachedBriefly() throws SQLException {
+        ClusterResolutionCache.Key poolKey =
+                ClusterResolutionCache.Key.forPool(
+                        ImmutableList.of(PROJECT_ID),
+                        ImmutableList.of(REGION, "asia-east1"),
+                        "status.state = ACTIVE",
+                        0,
+                        0,
+                        ClusterScoring.DEFAULT,
+                        0);
+        ClusterResolutionCache.PoolLoader partial =
+                () -> ClusterPoolFanOut.Listing.create(load(), true);
+        cache.getPool(poolKey, TTL_SECONDS, NEGATIVE_TTL_SECONDS, partial);
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(ClusterResolutionCache.PARTIAL_TTL_SECONDS) - 1);
+        assertThat(cache.getPool(poolKey, TTL_SECONDS, NEGATIVE_TTL_SECONDS, partial).partial())
+                .isTrue();
+        nanos.addAndGet(1);
+        cache.getPool(poolKey, TTL_SECONDS, NEGATIVE_TTL_SECONDS, partial);
+
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void get_notFound_negativelyCached() {
+        Assertions.assertThrows(
+                InvalidURLException.class,
+                () -> cache.get(CLUSTER_KEY, TTL_SECONDS, NEGATIVE_TTL_SECONDS, this::loadNotFound));
+        Assertions.assertThrows(
+                InvalidURLException.class,
+                () -> cache.get(CLUSTER_KEY, TTL_SECONDS, NEGATIVE_TTL_SECONDS, this::loadNotFound));
+
+        assertThat(loads.get()).isEqualTo(1);
+        assertThat(cache.stats().negativeHitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void get_notFoundAfterNegativeTtl_reloads() throws SQLException {
+        Assertions.assertThrows(
+                InvalidURLException.class,
+                () -> cache.get(CLUSTER_KEY, TTL_SECONDS, NEGATIVE_TTL_SECONDS, this::loadNotFound));
+        nanos.addAndGet(TimeUnit.SECONDS.toNanos(NEGATIVE_TTL_SECONDS));
+
+        assertThat(cache.get(CLUSTER_KEY, TTL_SECONDS, NEGATIVE_TTL_SECONDS, this::load))
+                .isEqualTo(clusters);
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void get_otherFailure_notCached() {
+        ClusterResolutionCache.Loader failing =
+                () -> {
+                    loads.incrementAndGet();
+                    throw new SQLException("UNAVAILABLE");
+                };
+        Assertions.assertThrows(
+                SQLException.class,
+                () -> cache.get(CLUSTER_KEY, TTL_SECONDS, NEGATIVE_TTL_SECONDS, failing));
+        Assertions.assertThrows(
+                SQLException.class,
+                () -> cache.get(CLUSTER_KEY, TTL_SECONDS, NEGATIVE_TTL_SECONDS, failing));
+
+        assertThat(loads.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void key_poolFilter_isNormalized() {
+        assertThat(
+                        ClusterResolutionCache.Key.forPool(
+                                PROJECT_ID,
+                                REGION,
+                                "status.state = ACTIVE AND labels.com = google AND labels.env = staging"))
+                .isEqualTo(
+                        ClusterResolutionCache.Key.forPool(
+                                PROJECT_ID,
+                                REGION,
+                                "status.state = ACTIVE AND labels.env = staging AND labels.com = google"));
+    }
+
+    @Test
+    public void key_withoutCandidateLimit_ignoresScoring() {
+        ClusterScoring memoryOnly =
+                ClusterScoring.create(
+                        ImmutableMap.of(ClusterScoring.YARN_MEMORY, 1.0),
+                        ImmutableMap.of(),
+                        ImmutableMap.of());
+        ImmutableList<String> projects = ImmutableList.of(PROJECT_ID);
+        ImmutableList<String> regions = ImmutableList.of(REGION);
+
+        assertThat(
+                        ClusterResolutionCache.Key.forPool(
+                                projects, regions, "status.state = ACTIVE", 0, 0, memoryOnly, 0))
+                .isEqualTo(
+                        ClusterResolutionCache.Key.forPool(
+                                PROJECT_ID, REGION, "status.state = ACTIVE"));
+        assertThat(
+                        ClusterResolutionCache.Key.forPool(
+                                projects, regions, "status.state = ACTIVE", 0, 5, memoryOnly, 0))
+                .isNotEqualTo(
+                        ClusterResolutionCache.Key.forPool(
+                                projects,
+                                regions,
+                                "status.state = ACTIVE",
+                                0,
+                                5,
+                                ClusterScoring.DEFAULT,
+                                0));
+    }
+
+    @Test
+    public void disabled_alwaysLoads() throws SQLException {
+        ClusterResolutionCache disabled = ClusterResolutionCache.disabled();
+        disabled.get(CLUSTER_KEY, TTL_SECONDS, NEGATIVE_TTL_SECONDS, this::load);
+        disabled.get(CLUSTER_KEY, TTL_SECONDS, NEGATIVE_TTL_SECONDS, this::load);
+
+        assertThat(loads.get()).isEqualTo(2);
+    }
+}
\ No newline at end of file
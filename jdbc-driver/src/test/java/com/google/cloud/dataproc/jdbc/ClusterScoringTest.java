@@ -0,0 +1,207 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.cloud.dataproc.v1beta2.Cluster;
+import com.google.cloud.dataproc.v1beta2.ClusterMetrics;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class ClusterScoringTest {
+
+    private static Cluster cluster(
+            String name, ImmutableMap<String, Long> yarnMetrics, ImmutableMap<String, Long> hdfs) {
+        return Cluster.newBuilder()
+                .setClusterName(name)
+                .setMetrics(
+                        ClusterMetrics.newBuilder()
+                                .putAllYarnMetrics(yarnMetrics)
+                                .putAllHdfsMetrics(hdfs))
+                .build();
+    }
+
+    private static Cluster cluster(String name, ImmutableMap<String, Long> yarnMetrics) {
+        return cluster(name, yarnMetrics, ImmutableMap.of());
+    }
+
+    private static Cluster withMemory(String name, long availableMb) {
+        return cluster(name, ImmutableMap.of("yarn-memory-mb-available", availableMb));
+    }
+
+    private static ClusterPoolSnapshot snapshot(Cluster... clusters) {
+        return ClusterPoolSnapshot.create(ImmutableList.copyOf(clusters), 0);
+    }
+
+    private static List<String> names(ClusterPool pool) {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < pool.size(); i++) {
+            names.add(pool.cluster(i).getClusterName());
+        }
+        return names;
+    }
+
+    @Test
+    public void default_scoresOnMemory() {
+        ClusterPool pool =
+                snapshot(withMemory("small", 1024), withMemory("large", 4096))
+                        .scored(ClusterScoring.DEFAULT);
+
+        assertThat(pool.score(0)).isWithin(1e-9).of(0.25);
+        assertThat(pool.score(1)).isWithin(1e-9).of(1.0);
+    }
+
+    @Test
+    public void default_excludesClustersWithoutFreeVcores() {
+        ClusterPool pool =
+                snapshot(
+                                cluster(
+                                        "no-vcores",
+                                        ImmutableMap.of(
+                                                "yarn-memory-mb-available", 65536L,
+                                                "yarn-vcores-available", 0L)),
+                                cluster(
+                                        "vcores",
+                                        ImmutableMap.of(
+                                                "yarn-memory-mb-available", 1024L,
+                                                "yarn-vcores-available", 4L)),
+                                // Doesn't report vcores, so it isn't excluded on them
+                                withMemory("unreported", 2048))
+                        .scored(ClusterScoring.DEFAULT);
+
+        assertThat(names(pool)).containsExactly("vcores", "unreported").inOrder();
+        assertThat(pool.availableYarnMemoryMb(1)).isEqualTo(2048);
+        assertThat(pool.score(1)).isWithin(1e-9).of(1.0);
+    }
+
+    @Test
+    public void maximum_excludesPendingBacklog() throws InvalidURLException {
+        ClusterScoring scoring = ClusterScoring.parse(null, null, "yarn-containers-pending:10");
+        ClusterPool pool =
+                snapshot(
+                                cluster(
+                                        "backlog",
+                                        ImmutableMap.of(
+                                                "yarn-memory-mb-available", 8192L,
+                                                "yarn-containers-pending", 50L)),
+                                cluster(
+                                        "idle",
+                                        ImmutableMap.of(
+                                                "yarn-memory-mb-available", 1024L,
+                                                "yarn-containers-pending", 0L)))
+                        .scored(scoring);
+
+        assertThat(names(pool)).containsExactly("idle");
+    }
+
+    @Test
+    public void limits_excludingEveryCluster_keepsAll() throws InvalidURLException {
+        ClusterScoring scoring = ClusterScoring.parse(null, null, "yarn-containers-pending:10");
+        ClusterPool pool =
+                snapshot(
+                                cluster("busy-1", ImmutableMap.of("yarn-containers-pending", 50L)),
+                                cluster("busy-2", ImmutableMap.of("yarn-containers-pending", 20L)))
+                        .scored(scoring);
+
+        assertThat(names(pool)).containsExactly("busy-1", "busy-2").inOrder();
+    }
+
+    @Test
+    public void weights_combineYarnAndHdfsMetrics() throws InvalidURLException {
+        ClusterScoring scoring =
+                ClusterScoring.parse(
+                        "yarn-memory-mb-available:1,dfs-capacity-remaining:0.5,"
+                                + "yarn-containers-pending:-1",
+                        "",
+                        null);
+        ClusterPool pool =
+                snapshot(
+                                cluster(
+                                        "a",
+                                        ImmutableMap.of(
+                                                "yarn-memory-mb-available", 2000L,
+                                                "yarn-containers-pending", 10L),
+                                        ImmutableMap.of("dfs-capacity-remaining", 100L)),
+                                cluster(
+                                        "b",
+                                        ImmutableMap.of(
+                                                "yarn-memory-mb-available", 1000L,
+                                                "yarn-containers-pending", 0L),
+                                        ImmutableMap.of("dfs-capacity-remaining", 400L)))
+                        .scored(scoring);
+
+        // a: 2000/2000 + 0.5 * 100/400 - 10/10, b: 1000/2000 + 0.5 * 400/400 - 0
+        assertThat(pool.score(0)).isWithin(1e-9).of(0.125);
+        assertThat(pool.score(1)).isWithin(1e-9).of(1.0);
+    }
+
+    @Test
+    public void score_negativeSum_isZero() throws InvalidURLException {
+        ClusterScoring scoring = ClusterScoring.parse("yarn-containers-pending:-1", null, null);
+        ClusterPool pool =
+                snapshot(cluster("busy", ImmutableMap.of("yarn-containers-pending", 5L)))
+                        .scored(scoring);
+
+        assertThat(pool.score(0)).isEqualTo(0.0);
+    }
+
+    @Test
+    public void scored_cachedPerScoring() throws InvalidURLException {
+        ClusterPoolSnapshot snapshot =
+                snapshot(withMemory("a", 1024));
+
+        assertThat(snapshot.scored(ClusterScoring.parse(null, null, null)))
+                .isSameInstanceAs(snapshot.scored(ClusterScoring.DEFAULT));
+    }
+
+    @Test
+    public void parse_malformed() {
+        for (String list :
+                ImmutableList.of(
+                        "yarn-memory-mb-available",
+                        "yarn-memory-mb-available:lots",
+                        ":1",
+                        "yarn-memory-mb-available:1,yarn-memory-mb-available:2")) {
+            Assertions.assertThrows(
+                    InvalidURLException.class, () -> ClusterScoring.parse(list, null, null));
+        }
+        Assertions.assertThrows(
+                InvalidURLException.class,
+                () -> ClusterScoring.parse(null, "yarn-vcores-available:0.5", null));
+    }
+
+    @Test
+    public void parseHiveUrl_scoringProperties() throws InvalidURLException {
+        HiveJdbcConnectionOptions params =
+                HiveUrlUtils.parseHiveUrl(
+                        "jdbc:dataproc://hive/;projectId=pid;region=us-central1;"
+                                + "clusterPoolLabel=com=google;"
+                                + "clusterScoreWeights=yarn-vcores-available:1;"
+                                + "clusterMetricMaximums=yarn-containers-pending:100");
+
+        assertThat(params.clusterScoring().weights())
+                .containsExactly("yarn-vcores-available", 1.0);
+        assertThat(params.clusterScoring().minimums()).isEqualTo(ClusterScoring.DEFAULT.minimums());
+        assertThat(params.clusterScoring().maximums())
+                .containsExactly("yarn-containers-pending", 100L);
+        assertThat(params.otherSessionConfs()).isNull();
+    }
+}
\ No newline at end of file
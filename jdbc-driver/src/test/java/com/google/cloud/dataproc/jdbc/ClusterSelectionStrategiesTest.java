@@ -0,0 +1,216 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import static com.google.cloud.dataproc.jdbc.TestClusters.host;
+import static com.google.cloud.dataproc.jdbc.TestClusters.pool;
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Range;
+import java.sql.Connection;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import org.mockito.Mockito;
+
+public class ClusterSelectionStrategiesTest {
+    private static final int PICKS = 100000;
+    private static final SelectionContext CONTEXT =
+            SelectionContext.create(
+                    "pid",
+                    "us-central1",
+                    "status.state = ACTIVE AND labels.com = google",
+                    "",
+                    /* affinityKey= */ null);
+
+    private static int[] picks(ClusterSelectionStrategy strategy, ClusterPool pool) {
+        int[] picks = new int[pool.size()];
+        for (int i = 0; i < PICKS; i++) {
+            picks[strategy.select(pool, CONTEXT)]++;
+        }
+        return picks;
+    }
+
+    @Test
+    public void weightedRandom_picksProportionallyToMemory() {
+        Random random = new Random(42);
+        int[] picks = picks(new WeightedRandomSelection(() -> random), pool(1000, 3000, 0, 6000));
+
+        assertThat((double) picks[0] / PICKS).isWithin(0.01).of(0.1);
+        assertThat((double) picks[1] / PICKS).isWithin(0.01).of(0.3);
+        assertThat(picks[2]).isEqualTo(0);
+        assertThat((double) picks[3] / PICKS).isWithin(0.01).of(0.6);
+    }
+
+    @Test
+    public void weightedRandom_noMemoryReported_picksUniformly() {
+        Random random = new Random(42);
+        int[] picks = picks(new WeightedRandomSelection(() -> random), pool(0, 0, 0, 0));
+
+        for (int count : picks) {
+            assertThat((double) count / PICKS).isWithin(0.01).of(0.25);
+        }
+    }
+
+    @Test
+    public void weightedRandom_refreshedPool_picksOnNewMemory() {
+        Random random = new Random(42);
+        WeightedRandomSelection strategy = new WeightedRandomSelection(() -> random);
+        picks(strategy, pool(6000, 0));
+
+        int[] picks = picks(strategy, pool(0, 6000));
+
+        assertThat(picks).asList().containsExactly(0, PICKS).inOrder();
+    }
+
+    @Test
+    public void leastLoaded_picksMostAvailableMemory() {
+        Random random = new Random(42);
+        int[] picks = picks(new LeastLoadedSelection(() -> random), pool(1000, 6000, 3000));
+
+        assertThat(picks).asList().containsExactly(0, PICKS, 0).inOrder();
+    }
+
+    @Test
+    public void leastLoaded_spreadsTies() {
+        Random random = new Random(42);
+        int[] picks = picks(new LeastLoadedSelection(() -> random), pool(6000, 1000, 6000, 6000));
+
+        assertThat(picks[1]).isEqualTo(0);
+        assertThat((double) picks[0] / PICKS).isWithin(0.01).of(1.0 / 3);
+        assertThat((double) picks[2] / PICKS).isWithin(0.01).of(1.0 / 3);
+        assertThat((double) picks[3] / PICKS).isWithin(0.01).of(1.0 / 3);
+    }
+
+    @Test
+    public void roundRobin_picksEvenly() {
+        int[] picks = picks(new RoundRobinSelection(), pool(1000, 6000, 3000, 0));
+
+        assertThat(picks).asList().containsExactly(PICKS / 4, PICKS / 4, PICKS / 4, PICKS / 4);
+    }
+
+    @Test
+    public void roundRobin_poolsTakeTheirOwnTurns() {
+        RoundRobinSelection strategy = new RoundRobinSelection();
+        SelectionContext otherPool =
+                SelectionContext.create("pid", "us-central1", "labels.com = other", "", null);
+        ClusterPool pool = pool(1000, 1000);
+
+        int[] picks = new int[4];
+        for (int i = 0; i < picks.length; i++) {
+            picks[i] = strategy.select(pool, CONTEXT);
+            strategy.select(pool, otherPool);
+        }
+
+        assertThat(picks).asList().containsExactly(0, 1, 0, 1).inOrder();
+    }
+
+    @Test
+    public void powerOfTwo_favorsMoreMemory() {
+        Random random = new Random(42);
+        int[] picks = picks(new PowerOfTwoSelection(() -> random), pool(1000, 2000, 3000, 4000));
+
+        // The least loaded cluster wins any pair it is sampled in, the most loaded none
+        assertThat(picks[0]).isEqualTo(0);
+        assertThat((double) picks[1] / PICKS).isWithin(0.01).of(1.0 / 6);
+        assertThat((double) picks[2] / PICKS).isWithin(0.01).of(2.0 / 6);
+        assertThat((double) picks[3] / PICKS).isWithin(0.01).of(3.0 / 6);
+    }
+
+    @Test
+    public void powerOfTwoInFlight_spreadsOpenConnections() {
+        Random random = new Random(42);
+        ClusterLoadTracker tracker = new ClusterLoadTracker();
+        InFlightPowerOfTwoSelection strategy =
+                new InFlightPowerOfTwoSelection(tracker, () -> random);
+        // Stale metrics: every cluster still reports the same free memory
+        ClusterPool pool = pool(4000, 4000, 4000, 4000);
+
+        // A burst of connects that all stay open
+        for (int i = 0; i < 1000; i++) {
+            int index = strategy.select(pool, CONTEXT);
+            tracker.track(host(index), Mockito.mock(Connection.class));
+        }
+
+        for (int i = 0; i < pool.size(); i++) {
+            // Power of two choices keeps every cluster within a few connections of the mean
+            assertThat(tracker.inFlight(host(i))).isIn(Range.closed(245L, 255L));
+        }
+    }
+
+    @Test
+    public void powerOfTwoInFlight_weightsByMemory() {
+        Random random = new Random(42);
+        ClusterLoadTracker tracker = new ClusterLoadTracker();
+        InFlightPowerOfTwoSelection strategy =
+                new InFlightPowerOfTwoSelection(tracker, () -> random);
+        ClusterPool pool = pool(2000, 2000, 8000);
+
+        for (int i = 0; i < 1200; i++) {
+            int index = strategy.select(pool, CONTEXT);
+            tracker.track(host(index), Mockito.mock(Connection.class));
+        }
+
+        // The cluster with 4 times the memory ends up with about 4 times the connections
+        assertThat((double) tracker.inFlight(host(2)) / 1200).isWithin(0.05).of(4.0 / 6);
+        assertThat((double) tracker.inFlight(host(0)) / 1200).isWithin(0.05).of(1.0 / 6);
+    }
+
+    @Test
+    public void singleCluster_alwaysPicked() throws InvalidURLException {
+        ClusterPool pool = pool(0);
+        for (String name :
+                ImmutableList.of(
+                        WeightedRandomSelection.NAME,
+                        LeastLoadedSelection.NAME,
+                        RoundRobinSelection.NAME,
+                        PowerOfTwoSelection.NAME,
+                        InFlightPowerOfTwoSelection.NAME,
+                        ConsistentHashSelection.NAME,
+                        LatencyAwareSelection.NAME)) {
+            assertThat(ClusterSelectionStrategies.get(name).select(pool, CONTEXT)).isEqualTo(0);
+        }
+    }
+
+    @Test
+    public void get_builtInStrategies() throws InvalidURLException {
+        assertThat(ClusterSelectionStrategies.get(ClusterSelectionStrategies.DEFAULT))
+                .isInstanceOf(WeightedRandomSelection.class);
+        assertThat(ClusterSelectionStrategies.get("power-of-two"))
+                .isInstanceOf(PowerOfTwoSelection.class);
+        assertThat(ClusterSelectionStrategies.exists("least-loaded")).isTrue();
+        assertThat(ClusterSelectionStrategies.exists("round-robin")).isTrue();
+    }
+
+    @Test
+    public void readsLoad_onlyStrategiesReadingInFlightCounts() {
+        assertThat(ClusterSelectionStrategies.readsLoad(InFlightPowerOfTwoSelection.NAME)).isTrue();
+        assertThat(ClusterSelectionStrategies.readsLoad(ConsistentHashSelection.NAME)).isTrue();
+        assertThat(ClusterSelectionStrategies.readsLoad(RoundRobinSelection.NAME)).isFalse();
+        assertThat(ClusterSelectionStrategies.readsLoad("fastest")).isFalse();
+    }
+
+    @Test
+    public void get_unknownStrategy() {
+        assertThat(ClusterSelectionStrategies.exists("fastest")).isFalse();
+        Assertions.assertThrows(
+                InvalidURLException.class,
+                () -> {
+                    ClusterSelectionStrategies.get("fastest");
+                });
+    }
+}
\ No newline at end of file
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import static com.google.cloud.dataproc.jdbc.TestRowSets.rowSet;
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TColumn;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TRowSet;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TStringColumn;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class ColumnarResultSetTest {
+    private static final int FETCH_SIZE = 2;
+
+    private final Deque<TRowSet> rowSets = new ArrayDeque<>();
+    private final List<Integer> fetchSizes = new ArrayList<>();
+
+    /** A result set of (id BIGINT, qty INT, price DOUBLE, amount DECIMAL) rows. */
+    private ResultSet physical() throws SQLException {
+        ResultSet resultSet = mock(ResultSet.class);
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        when(metaData.getColumnCount()).thenReturn(4);
+        when(metaData.getColumnType(1)).thenReturn(Types.BIGINT);
+        when(metaData.getColumnType(2)).thenReturn(Types.INTEGER);
+        when(metaData.getColumnType(3)).thenReturn(Types.DOUBLE);
+        when(metaData.getColumnType(4)).thenReturn(Types.DECIMAL);
+        when(resultSet.getFetchSize()).thenReturn(FETCH_SIZE);
+        when(resultSet.findColumn("qty")).thenReturn(2);
+        return resultSet;
+    }
+
+    private ColumnarResultSet columnar(ResultSet physical, int maxRows) throws SQLException {
+        return new ColumnarResultSet(
+                physical,
+                rows -> {
+                    fetchSizes.add(rows);
+                    return rowSets.isEmpty() ? rowSet() : rowSets.poll();
+                },
+                maxRows);
+    }
+
+    @Test
+    public void next_readsTypedValuesFromColumns() throws SQLException {
+        // The second row has a null qty
+        rowSets.add(rowSet(1, 2, (byte) 0b10));
+        rowSets.add(rowSet(3, 1, (byte) 0));
+        ResultSet physical = physical();
+        ResultSet resultSet = columnar(physical, 0);
+
+        for (int i = 1; i <= 3; i++) {
+            assertThat(resultSet.next()).isTrue();
+            assertThat(resultSet.getRow()).isEqualTo(i);
+            assertThat(resultSet.getLong(1)).isEqualTo(i);
+            assertThat(resultSet.getInt("qty")).isEqualTo(i == 2 ? 0 : i * 10);
+            assertThat(resultSet.wasNull()).isEqualTo(i == 2);
+            assertThat(resultSet.getDouble(3)).isEqualTo(i + 0.5);
+            assertThat(resultSet.getObject(4)).isEqualTo(new BigDecimal(i + ".25"));
+        }
+        assertThat(resultSet.getObject(2)).isEqualTo(30);
+        assertThat(resultSet.getString(1)).isEqualTo("3");
+        assertThat(resultSet.next()).isFalse();
+        assertThat(resultSet.isAfterLast()).isTrue();
+        resultSet.close();
+
+        assertThat(fetchSizes).containsExactly(FETCH_SIZE, FETCH_SIZE, FETCH_SIZE).inOrder();
+        verify(physical).close();
+    }
+
+    @Test
+    public void next_maxRows_limitsLastFetch() throws SQLException {
+        rowSets.add(rowSet(1, 2, (byte) 0));
+        rowSets.add(rowSet(3, 1, (byte) 0));
+        ResultSet resultSet = columnar(physical(), 3);
+        resultSet.setFetchSize(5);
+
+        int rows = 0;
+        while (resultSet.next()) {
+            rows++;
+        }
+
+        assertThat(rows).isEqualTo(3);
+        assertThat(fetchSizes).containsExactly(3, 1).inOrder();
+    }
+
+    @Test
+    public void getInt_unparsableString_throws() throws SQLException {
+        TRowSet rowSet = rowSet(1, 1, (byte) 0);
+        ByteBuffer noNulls = ByteBuffer.wrap(new byte[0]);
+        rowSet.getColumns()
+                .set(3, TColumn.stringVal(new TStringColumn(Arrays.asList("1.25x"), noNulls)));
+        rowSets.add(rowSet);
+        ResultSet resultSet = columnar(physical(), 0);
+        assertThat(resultSet.next()).isTrue();
+
+        Assertions.assertThrows(SQLException.class, () -> resultSet.getInt(4));
+        Assertions.assertThrows(SQLException.class, () -> resultSet.getBigDecimal(4));
+        Assertions.assertThrows(SQLException.class, () -> resultSet.getInt(5));
+    }
+
+    @Test
+    public void next_rowBasedRowSet_throws() throws SQLException {
+        rowSets.add(new TRowSet(0, new ArrayList<>()));
+        ResultSet resultSet = columnar(physical(), 0);
+
+        Assertions.assertThrows(SQLException.class, resultSet::next);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,91 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.SocketTimeoutException;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import org.junit.Test;
+
+public class ConnectFailureReasonTest {
+    @Test
+    public void of_refusedConnection_unreachable() {
+        SQLException failure =
+                new SQLException(
+                        "Could not open client transport",
+                        "08S01",
+                        new ConnectException("Connection refused"));
+
+        assertThat(ConnectFailureReason.of(failure)).isEqualTo(ConnectFailureReason.UNREACHABLE);
+        assertThat(ConnectFailureReason.of(failure).failsOver()).isTrue();
+    }
+
+    @Test
+    public void of_readTimeout_timeout() {
+        SQLException failure =
+                new SQLTransientConnectionException(
+                        "Could not open client transport", new SocketTimeoutException("Read"));
+
+        assertThat(ConnectFailureReason.of(failure)).isEqualTo(ConnectFailureReason.TIMEOUT);
+    }
+
+    @Test
+    public void of_httpError_transport() {
+        SQLException failure =
+                new SQLException(
+                        "Could not establish connection",
+                        " 08S01",
+                        new IOException("HTTP Response code: 503"));
+
+        assertThat(ConnectFailureReason.of(failure)).isEqualTo(ConnectFailureReason.TRANSPORT);
+    }
+
+    @Test
+    public void of_rejectedCredentials_client() {
+        SQLException failure = new SQLException("Invalid credentials", "28000");
+
+        assertThat(ConnectFailureReason.of(failure)).isEqualTo(ConnectFailureReason.CLIENT);
+        assertThat(ConnectFailureReason.of(failure).failsOver()).isFalse();
+    }
+
+    @Test
+    public void of_gatewayRejectsToken_client() {
+        SQLException failure =
+                new SQLException(
+                        "Could not open client transport with JDBC Uri",
+                        " 08S01",
+                        new IOException("HTTP Response code: 401"));
+
+        assertThat(ConnectFailureReason.of(failure)).isEqualTo(ConnectFailureReason.CLIENT);
+        assertThat(ConnectFailureReason.of(failure).failsOver()).isFalse();
+    }
+
+    @Test
+    public void of_noAccessToken_client() {
+        SQLException failure =
+                new SQLException(
+                        "Could not open client transport with JDBC Uri",
+                        "08S01",
+                        new DataprocCGAuthInterceptor.TokenUnavailableException(
+                                new IOException("Error getting access token")));
+
+        assertThat(ConnectFailureReason.of(failure)).isEqualTo(ConnectFailureReason.CLIENT);
+    }
+}
\ No newline at end of file
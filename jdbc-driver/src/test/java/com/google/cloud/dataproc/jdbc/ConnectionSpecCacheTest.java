@@ -0,0 +1,126 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Properties;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class ConnectionSpecCacheTest {
+    private static final String HOST =
+            "uklx3owiy5bjlgps5cr72oppla-dot-us-central1.dataproc.googleusercontent.com";
+
+    private ConnectionSpecCache cache;
+
+    @Before
+    public void setUp() {
+        cache = new ConnectionSpecCache();
+    }
+
+    @Test
+    public void get_sameUrl_parsedOnce() throws InvalidURLException {
+        String url = "jdbc:dataproc://hive/;projectId=pid;region=us-central1;clusterName=simple-cluster";
+        ConnectionSpec spec = cache.get(url);
+
+        assertThat(cache.get(url)).isSameInstanceAs(spec);
+        assertThat(spec.options()).isEqualTo(HiveUrlUtils.parseHiveUrl(url));
+        assertThat(cache.size()).isEqualTo(1);
+    }
+
+    @Test
+    public void get_invalidUrl_notCached() {
+        String url = "jdbc:dataproc://hive/;";
+        Assertions.assertThrows(
+                InvalidURLException.class,
+                () -> {
+                    cache.get(url);
+                });
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    @Test
+    public void toHiveJdbcUrl_simple() throws InvalidURLException {
+        String url = "jdbc:dataproc://hive/;projectId=pid;region=us-central1;clusterName=simple-cluster";
+        assertThat(cache.get(url).toHiveJdbcUrl(HOST))
+                .isEqualTo(
+                        String.format(
+                                "jdbc:hive2://%s:443/;transportMode=http;httpPath=hive;ssl=true;http.interceptor=com.google.cloud.dataproc.jdbc.DataprocCGAuthInterceptor",
+                                HOST));
+    }
+
+    @Test
+    public void toHiveJdbcUrl_longComplete() throws InvalidURLException {
+        String url =
+                "jdbc:dataproc://hive/db-name;projectId=pid;region=us-central1;clusterName=simple-cluster;user=foo;password=bar?hive.support.concurrency=true#a=123";
+        assertThat(cache.get(url).toHiveJdbcUrl(HOST))
+                .isEqualTo(
+                        String.format(
+                                "jdbc:hive2://%s:443/db-name;transportMode=http;httpPath=hive;ssl=true;http.interceptor=com.google.cloud.dataproc.jdbc.DataprocCGAuthInterceptor;user=foo;password=bar?hive.support.concurrency=true#a=123",
+                                HOST));
+    }
+
+    @Test
+    public void affinityKey_user_propertiesBeforeUrl() throws InvalidURLException {
+        ConnectionSpec spec =
+                cache.get(
+                        "jdbc:dataproc://hive/;projectId=pid;region=us-central1;"
+                                + "clusterPoolLabel=com=google;user=foo");
+        Properties info = new Properties();
+
+        assertThat(spec.affinityKey(info)).isEqualTo("foo");
+        info.setProperty("user", "bar");
+        assertThat(spec.affinityKey(info)).isEqualTo("bar");
+    }
+
+    @Test
+    public void affinityKey_dbName() throws InvalidURLException {
+        String url =
+                "jdbc:dataproc://hive/%s;projectId=pid;region=us-central1;"
+                        + "clusterPoolLabel=com=google;clusterAffinityKey=dbName;user=foo";
+
+        assertThat(cache.get(String.format(url, "sales")).affinityKey(new Properties()))
+                .isEqualTo("sales");
+        assertThat(cache.get(String.format(url, "")).affinityKey(new Properties()))
+                .isEqualTo("default");
+    }
+
+    @Test
+    public void affinityKey_sessionVariable() throws InvalidURLException {
+        ConnectionSpec spec =
+                cache.get(
+                        "jdbc:dataproc://hive/;projectId=pid;region=us-central1;"
+                                + "clusterPoolLabel=com=google;"
+                                + "clusterAffinityKey=tenant;tenant=acme");
+        Properties info = new Properties();
+        info.setProperty("user", "bar");
+
+        assertThat(spec.affinityKey(info)).isEqualTo("acme");
+        assertThat(spec.toHiveJdbcUrl(HOST)).doesNotContain("clusterAffinityKey");
+    }
+
+    @Test
+    public void affinityKey_missing_isNull() throws InvalidURLException {
+        ConnectionSpec spec =
+                cache.get(
+                        "jdbc:dataproc://hive/;projectId=pid;region=us-central1;"
+                                + "clusterPoolLabel=com=google");
+
+        assertThat(spec.affinityKey(new Properties())).isNull();
+    }
+}
\ No newline at end of file
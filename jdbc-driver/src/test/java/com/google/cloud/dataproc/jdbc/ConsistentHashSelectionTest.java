@@ -0,0 +1,208 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.cloud.dataproc.v1beta2.Cluster;
+import com.google.cloud.dataproc.v1beta2.ClusterConfig;
+import com.google.cloud.dataproc.v1beta2.EndpointConfig;
+import com.google.cloud.dataproc.v1beta2.InstanceGroupConfig;
+import com.google.common.collect.ImmutableList;
+import java.sql.Connection;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+
+public class ConsistentHashSelectionTest {
+    private static final int KEYS = 2000;
+
+    private ClusterLoadTracker tracker;
+    private ConsistentHashSelection strategy;
+
+    @Before
+    public void setUp() {
+        tracker = new ClusterLoadTracker();
+        strategy = new ConsistentHashSelection(tracker, new RoundRobinSelection());
+    }
+
+    private static Cluster cluster(String name, int workers) {
+        return cluster(name, host(name), workers);
+    }
+
+    private static Cluster cluster(String name, String host, int workers) {
+        EndpointConfig endpoints =
+                EndpointConfig.newBuilder()
+                        .putHttpPorts("HiveServer2", "https://" + host + "/hive")
+                        .build();
+        return Cluster.newBuilder()
+                .setClusterName(name)
+                .setConfig(
+                        ClusterConfig.newBuilder()
+                                .setEndpointConfig(endpoints)
+                                .setWorkerConfig(
+                                        InstanceGroupConfig.newBuilder().setNumInstances(workers)))
+                .build();
+    }
+
+    private static String host(String clusterName) {
+        return clusterName + "-dot-us-central1.dataproc.googleusercontent.com";
+    }
+
+    private static ClusterPoolSnapshot pool(int size) {
+        ImmutableList.Builder<Cluster> clusters = ImmutableList.builder();
+        for (int i = 0; i < size; i++) {
+            clusters.add(cluster("pool-cluster-" + i, 2));
+        }
+        return ClusterPoolSnapshot.create(clusters.build(), 0);
+    }
+
+    private static SelectionContext context(String affinityKey) {
+        return SelectionContext.create(
+                "pid",
+                "us-central1",
+                "status.state = ACTIVE AND labels.com = google",
+                "",
+                affinityKey);
+    }
+
+    private String pick(ClusterPool pool, String affinityKey) {
+        return pool.cluster(strategy.select(pool, context(affinityKey))).getClusterName();
+    }
+
+    /** @return the cluster name picked for each key */
+    private Map<String, String> picks(ClusterPool pool) {
+        Map<String, String> picks = new HashMap<>();
+        for (int i = 0; i < KEYS; i++) {
+            picks.put("user-" + i, pick(pool, "user-" + i));
+        }
+        return picks;
+    }
+
+    @Test
+    public void select_sameKey_sameClusterAcrossSnapshots() {
+        Map<String, String> first = picks(pool(10));
+        Map<String, String> second = picks(pool(10));
+
+        assertThat(second).isEqualTo(first);
+        assertThat(first.values()).containsAtLeast("pool-cluster-0", "pool-cluster-9");
+    }
+
+    @Test
+    public void select_sameNameInTwoRegions_splitsKeys() {
+        ClusterPoolSnapshot pool =
+                ClusterPoolSnapshot.create(
+                        ImmutableList.of(
+                                cluster("etl", "etl-dot-us-central1.example.com", 2),
+                                cluster("etl", "etl-dot-europe-west1.example.com", 2)),
+                        0);
+
+        int[] counts = new int[2];
+        for (int i = 0; i < KEYS; i++) {
+            counts[strategy.select(pool, context("user-" + i))]++;
+        }
+
+        assertThat(counts[0]).isAtLeast(KEYS / 4);
+        assertThat(counts[1]).isAtLeast(KEYS / 4);
+    }
+
+    @Test
+    public void select_clusterLeaves_onlyItsKeysMove() {
+        Map<String, String> before = picks(pool(10));
+        ImmutableList.Builder<Cluster> remaining = ImmutableList.builder();
+        for (Cluster cluster : pool(10).clusters()) {
+            if (!cluster.getClusterName().equals("pool-cluster-3")) {
+                remaining.add(cluster);
+            }
+        }
+        Map<String, String> after = picks(ClusterPoolSnapshot.create(remaining.build(), 0));
+
+        for (String key : before.keySet()) {
+            if (!before.get(key).equals("pool-cluster-3")) {
+                assertThat(after.get(key)).isEqualTo(before.get(key));
+            }
+        }
+        assertThat(after.values()).doesNotContain("pool-cluster-3");
+    }
+
+    @Test
+    public void select_clusterJoins_movesItsShareToIt() {
+        Map<String, String> before = picks(pool(10));
+        Map<String, String> after = picks(pool(11));
+
+        int moved = 0;
+        for (String key : before.keySet()) {
+            if (!after.get(key).equals(before.get(key))) {
+                assertThat(after.get(key)).isEqualTo("pool-cluster-10");
+                moved++;
+            }
+        }
+        // About 1 in 11 keys
+        assertThat((double) moved / KEYS).isWithin(0.04).of(1.0 / 11);
+    }
+
+    @Test
+    public void select_weightedByWorkers() {
+        ClusterPool pool =
+                ClusterPoolSnapshot.create(
+                        ImmutableList.of(
+                                cluster("small-1", 2), cluster("small-2", 2), cluster("large", 6)),
+                        0);
+
+        Map<String, String> picks = picks(pool);
+
+        long large = picks.values().stream().filter("large"::equals).count();
+        assertThat((double) large / KEYS).isWithin(0.1).of(0.6);
+    }
+
+    @Test
+    public void select_overloadedCluster_spillsToNextOnRing() {
+        ClusterPool pool = pool(4);
+        String primary = pick(pool, "hot-user");
+        for (int i = 0; i < 10; i++) {
+            tracker.track(host(primary), Mockito.mock(Connection.class));
+        }
+
+        String spilled = pick(pool, "hot-user");
+
+        assertThat(spilled).isNotEqualTo(primary);
+        // The same key keeps spilling to the same cluster
+        assertThat(pick(pool, "hot-user")).isEqualTo(spilled);
+    }
+
+    @Test
+    public void select_withinBound_staysOnCluster() {
+        ClusterPool pool = pool(4);
+        String primary = pick(pool, "user-1");
+        // Two connections on every cluster, the bound of each is 3
+        for (int i = 0; i < 8; i++) {
+            tracker.track(
+                    host(pool.cluster(i % 4).getClusterName()), Mockito.mock(Connection.class));
+        }
+
+        assertThat(pick(pool, "user-1")).isEqualTo(primary);
+    }
+
+    @Test
+    public void select_noAffinityKey_usesFallback() {
+        ClusterPool pool = pool(4);
+
+        assertThat(strategy.select(pool, context(null))).isEqualTo(0);
+        assertThat(strategy.select(pool, context(""))).isEqualTo(1);
+    }
+}
\ No newline at end of file
@@ -25,6 +25,8 @@ import com.google.auth.oauth2.AccessToken;
 import com.google.auth.oauth2.GoogleCredentials;
 import java.io.IOException;
 import java.util.Date;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.hive.jdbc.shaded.org.apache.hive.org.apache.http.Header;
 import org.apache.hive.jdbc.shaded.org.apache.hive.org.apache.http.HttpException;
 import org.apache.hive.jdbc.shaded.org.apache.hive.org.apache.http.HttpRequest;
@@ -89,15 +91,33 @@ public class DataprocCGAuthInterceptorTest {
     }
 
     @Test
-    public void testProcess_newToken() throws IOException, HttpException {
+    public void testProcess_freshToken_reused() throws IOException, HttpException {
         interceptor = new DataprocCGAuthInterceptor(mockCredentials);
         interceptor.process(request, context);
+        interceptor.process(request, context);
+
+        Header[] headers = request.getHeaders("Proxy-Authorization");
+        assertThat(headers.length).isEqualTo(1); // Verify that only one header with CG_AUTH_HEADER
+        assertThat(headers[0].getValue()).isEqualTo("Bearer " + TOKEN_VALUE_1);
+        verify(mockCredentials, times(1)).refresh();
+    }
+
+    @Test
+    public void testProcess_newToken() throws IOException, HttpException {
+        AtomicLong now = new AtomicLong(System.currentTimeMillis());
+        interceptor =
+                new DataprocCGAuthInterceptor(
+                        new TokenRefresher(
+                                mockCredentials, mock(ScheduledExecutorService.class), now::get));
+        interceptor.process(request, context);
 
         Header[] headers = request.getHeaders("Proxy-Authorization");
         assertThat(headers.length).isEqualTo(1);
         assertThat(headers[0].getName()).isEqualTo("Proxy-Authorization");
         assertThat(headers[0].getValue()).isEqualTo("Bearer " + TOKEN_VALUE_1);
 
+        // Token expired without a background refresh, falls back to refreshing synchronously
+        now.addAndGet(HOUR);
         interceptor.process(request, context);
 
         headers = request.getHeaders("Proxy-Authorization");
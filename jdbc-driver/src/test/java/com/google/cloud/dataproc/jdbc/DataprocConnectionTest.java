@@ -0,0 +1,245 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.base.Ticker;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class DataprocConnectionTest {
+    private static final String HOST = "cluster1-dot-us-central1.dataproc.googleusercontent.com";
+    private static final String SQL = "SELECT * FROM events";
+
+    /** Collects what the connection reports. */
+    private static final class RecordingSink implements QueryMetricsSink {
+        final List<QueryMetrics> queries = new ArrayList<>();
+        final List<Long> batchNanos = new ArrayList<>();
+
+        @Override
+        public String name() {
+            return "recording";
+        }
+
+        @Override
+        public void batchFetched(String sql, String clusterHost, int rows, long fetchNanos) {
+            batchNanos.add(fetchNanos);
+        }
+
+        @Override
+        public void queryCompleted(QueryMetrics metrics) {
+            queries.add(metrics);
+        }
+    }
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final Ticker fakeTicker =
+            new Ticker() {
+                @Override
+                public long read() {
+                    return nanos.get();
+                }
+            };
+    private final RecordingSink sink = new RecordingSink();
+
+    private Statement physicalStatement;
+    private ResultSet physicalResultSet;
+    private Connection connection;
+
+    @Before
+    public void setUp() throws SQLException {
+        Connection physical = mock(Connection.class);
+        physicalStatement = mock(Statement.class);
+        physicalResultSet = mock(ResultSet.class);
+        when(physical.createStatement()).thenReturn(physicalStatement);
+        when(physicalStatement.getFetchSize()).thenReturn(2);
+        connection =
+                new DataprocConnection(physical, HOST, sink, 0, 0, 0, false, fakeTicker, () -> -1);
+    }
+
+    private void advanceMillis(long millis) {
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    /** The result set returns the rows, the first fetch of each batch of 2 takes 100 ms. */
+    private void returnRows(int rows) throws SQLException {
+        int[] fetched = {0};
+        when(physicalResultSet.next())
+                .thenAnswer(
+                        invocation -> {
+                            if (fetched[0] % 2 == 0) {
+                                advanceMillis(100);
+                            }
+                            advanceMillis(1);
+                            return ++fetched[0] <= rows;
+                        });
+    }
+
+    @Test
+    public void executeQuery_reportsTimingsOnceExhausted() throws SQLException {
+        when(physicalStatement.executeQuery(SQL))
+                .thenAnswer(
+                        invocation -> {
+                            advanceMillis(500);
+                            return physicalResultSet;
+                        });
+        returnRows(3);
+
+        Statement statement = connection.createStatement();
+        ResultSet resultSet = statement.executeQuery(SQL);
+        while (resultSet.next()) {
+            assertThat(sink.queries).isEmpty();
+        }
+        resultSet.close();
+
+        assertThat(sink.queries).hasSize(1);
+        QueryMetrics metrics = sink.queries.get(0);
+        assertThat(metrics.sql()).isEqualTo(SQL);
+        assertThat(metrics.clusterHost()).isEqualTo(HOST);
+        assertThat(metrics.executeNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(500));
+        assertThat(metrics.timeToFirstRowNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(601));
+        assertThat(metrics.rowCount()).isEqualTo(3);
+        assertThat(metrics.fetchBatchCount()).isEqualTo(2);
+        assertThat(metrics.fetchNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(204));
+        assertThat(metrics.maxFetchBatchNanos()).isEqualTo(TimeUnit.MILLISECONDS.toNanos(102));
+        assertThat(metrics.failed()).isFalse();
+        assertThat(sink.batchNanos)
+                .containsExactly(
+                        TimeUnit.MILLISECONDS.toNanos(102), TimeUnit.MILLISECONDS.toNanos(102))
+                .inOrder();
+        assertThat(resultSet.getStatement()).isSameInstanceAs(statement);
+        assertThat(statement.getConnection()).isSameInstanceAs(connection);
+    }
+
+    @Test
+    public void execute_withResultSet_reportsOnClose() throws SQLException {
+        when(physicalStatement.execute(SQL)).thenReturn(true);
+        when(physicalStatement.getResultSet()).thenReturn(physicalResultSet);
+        returnRows(10);
+
+        Statement statement = connection.createStatement();
+        assertThat(statement.execute(SQL)).isTrue();
+        ResultSet resultSet = statement.getResultSet();
+        assertThat(statement.getResultSet()).isSameInstanceAs(resultSet);
+        resultSet.next();
+        assertThat(sink.queries).isEmpty();
+        statement.close();
+
+        assertThat(sink.queries).hasSize(1);
+        assertThat(sink.queries.get(0).rowCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void executeUpdate_reportsRightAway() throws SQLException {
+        when(physicalStatement.executeUpdate("CREATE TABLE t (a INT)")).thenReturn(0);
+
+        connection.createStatement().executeUpdate("CREATE TABLE t (a INT)");
+
+        assertThat(sink.queries).hasSize(1);
+        assertThat(sink.queries.get(0).timeToFirstRowNanos()).isEqualTo(-1);
+        assertThat(sink.queries.get(0).fetchBatchCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void executeQuery_failure_reportedAsFailed() throws SQLException {
+        when(physicalStatement.executeQuery(SQL))
+                .thenThrow(new SQLException("Table not found", "42S02"));
+
+        Statement statement = connection.createStatement();
+        Assertions.assertThrows(SQLException.class, () -> statement.executeQuery(SQL));
+
+        assertThat(sink.queries).hasSize(1);
+        assertThat(sink.queries.get(0).failed()).isTrue();
+    }
+
+    @Test
+    public void preparedStatement_reportsItsSql() throws SQLException {
+        Connection physical = mock(Connection.class);
+        PreparedStatement prepared = mock(PreparedStatement.class);
+        when(physical.prepareStatement(SQL)).thenReturn(prepared);
+        when(prepared.executeQuery()).thenReturn(physicalResultSet);
+        returnRows(0);
+        Connection timed =
+                new DataprocConnection(physical, HOST, sink, 0, 0, 0, false, fakeTicker, () -> -1);
+
+        ResultSet resultSet = timed.prepareStatement(SQL).executeQuery();
+        assertThat(resultSet.next()).isFalse();
+
+        assertThat(sink.queries).hasSize(1);
+        assertThat(sink.queries.get(0).sql()).isEqualTo(SQL);
+        assertThat(sink.queries.get(0).rowCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void adaptiveFetchSize_resizesBatchesWithoutSink() throws SQLException {
+        Connection physical = mock(Connection.class);
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(physical.createStatement()).thenReturn(physicalStatement);
+        when(physicalStatement.executeQuery(SQL)).thenReturn(physicalResultSet);
+        when(physicalResultSet.getMetaData()).thenReturn(metaData);
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(metaData.getColumnType(1)).thenReturn(Types.INTEGER);
+        returnRows(3);
+        Connection adaptive =
+                new DataprocConnection(
+                        physical, HOST, null, 1 << 20, 10000, 0, false, fakeTicker, () -> -1);
+
+        ResultSet resultSet = adaptive.createStatement().executeQuery(SQL);
+        while (resultSet.next()) {}
+
+        // The first batch of 2 rows grows to the smallest adapted fetch size
+        verify(physicalResultSet).setFetchSize(AdaptiveFetchSize.MIN_ROWS);
+    }
+
+    @Test
+    public void sinkFailure_doesNotFailQuery() throws SQLException {
+        QueryMetricsSink failing =
+                new QueryMetricsSink() {
+                    @Override
+                    public String name() {
+                        return "failing";
+                    }
+
+                    @Override
+                    public void queryCompleted(QueryMetrics metrics) {
+                        throw new IllegalStateException("sink is down");
+                    }
+                };
+        Connection physical = mock(Connection.class);
+        when(physical.createStatement()).thenReturn(physicalStatement);
+        when(physicalStatement.executeUpdate("DROP TABLE t")).thenReturn(0);
+
+        new DataprocConnection(physical, HOST, failing, 0, 0, 0, false, fakeTicker, () -> -1)
+                .createStatement()
+                .executeUpdate("DROP TABLE t");
+    }
+}
\ No newline at end of file
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.base.Ticker;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class DataprocDataSourceTest {
+    private static final String DATAPROC_URL =
+            "jdbc:dataproc://hive/;projectId=pid;region=us-central1;clusterName=test";
+    private static final String HIVE_URL =
+            "jdbc:hive2://fakeclusterhost:443/;transportMode=http;httpPath=hive;ssl=true";
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final Ticker fakeTicker =
+            new Ticker() {
+                @Override
+                public long read() {
+                    return nanos.get();
+                }
+            };
+
+    private final List<Connection> physicalConnections = new CopyOnWriteArrayList<>();
+    private final List<String> openedFor = new CopyOnWriteArrayList<>();
+    private DataprocDriver driver;
+    private DataprocDataSource dataSource;
+
+    @Before
+    public void setUp() throws SQLException {
+        driver = spy(new DataprocDriver());
+        doReturn(HIVE_URL)
+                .when(driver)
+                .resolveHiveUrl(any(ConnectionSpec.class), any(Properties.class));
+        doAnswer(
+                        invocation -> {
+                            Properties info = invocation.getArgument(1);
+                            Connection connection = mock(Connection.class);
+                            when(connection.isValid(anyInt())).thenReturn(true);
+                            when(connection.createStatement())
+                                    .thenAnswer(unused -> mock(Statement.class));
+                            physicalConnections.add(connection);
+                            openedFor.add(info.getProperty("user"));
+                            return connection;
+                        })
+                .when(driver)
+                .openHiveConnection(eq(HIVE_URL), any(Properties.class));
+        dataSource = new DataprocDataSource(driver, fakeTicker);
+        dataSource.setUrl(DATAPROC_URL);
+        dataSource.setConnectionTimeoutMillis(0);
+    }
+
+    @After
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Test
+    public void getConnection_afterClose_reusesPhysicalConnection() throws SQLException {
+        dataSource.getConnection().close();
+        dataSource.getConnection().close();
+
+        assertThat(physicalConnections).hasSize(1);
+        verify(physicalConnections.get(0), never()).close();
+    }
+
+    @Test
+    public void getConnection_perUser_borrowsFromSeparatePools() throws SQLException {
+        dataSource.getConnection("alice", "secret").close();
+        dataSource.getConnection("bob", "secret").close();
+        dataSource.getConnection("alice", "secret").close();
+
+        assertThat(dataSource.poolCount()).isEqualTo(2);
+        assertThat(openedFor).containsExactly("alice", "bob");
+    }
+
+    @Test
+    public void statements_reportTheLogicalConnection() throws SQLException {
+        Connection connection = dataSource.getConnection();
+        Connection physical = physicalConnections.get(0);
+        Statement physicalStatement = mock(Statement.class);
+        ResultSet physicalRows = mock(ResultSet.class);
+        // The second statement resets the session on close
+        when(physical.createStatement()).thenReturn(physicalStatement, mock(Statement.class));
+        when(physicalStatement.getConnection()).thenReturn(physical);
+        when(physicalStatement.executeQuery(anyString())).thenReturn(physicalRows);
+        when(physicalRows.getStatement()).thenReturn(physicalStatement);
+        PreparedStatement physicalPrepared = mock(PreparedStatement.class);
+        when(physical.prepareStatement(anyString())).thenReturn(physicalPrepared);
+        when(physicalPrepared.getConnection()).thenReturn(physical);
+        when(physicalPrepared.executeQuery()).thenReturn(physicalRows);
+
+        Statement statement = connection.createStatement();
+        ResultSet rows = statement.executeQuery("SELECT 1");
+        PreparedStatement prepared = connection.prepareStatement("SELECT ?");
+
+        assertThat(statement.getConnection()).isSameInstanceAs(connection);
+        assertThat(rows.getStatement()).isSameInstanceAs(statement);
+        assertThat(rows.getStatement().getConnection()).isSameInstanceAs(connection);
+        assertThat(prepared.getConnection()).isSameInstanceAs(connection);
+        assertThat(prepared.executeQuery().getStatement().getConnection())
+                .isSameInstanceAs(connection);
+
+        connection.close();
+        verify(physicalStatement).close();
+        verify(physicalPrepared).close();
+    }
+
+    @Test
+    public void close_closesIdleConnectionsAndRejectsBorrows() throws SQLException {
+        Connection borrowed = dataSource.getConnection("alice", "secret");
+        dataSource.getConnection("bob", "secret").close();
+
+        dataSource.close();
+
+        verify(physicalConnections.get(1)).close();
+        verify(physicalConnections.get(0), never()).close();
+        borrowed.close();
+        verify(physicalConnections.get(0)).close();
+        assertThat(dataSource.poolCount()).isEqualTo(0);
+        Assertions.assertThrows(
+                SQLNonTransientConnectionException.class, () -> dataSource.getConnection());
+    }
+
+    @Test
+    public void close_racingBorrows_closesEveryPhysicalConnection() throws Exception {
+        dataSource.setMaxPoolSize(4);
+        dataSource.getConnection("user-0", "secret").close();
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch started = new CountDownLatch(threads);
+        List<Future<?>> borrowers = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            String user = "user-" + (i % 3);
+            borrowers.add(
+                    executor.submit(
+                            () -> {
+                                started.countDown();
+                                while (true) {
+                                    Connection connection;
+                                    try {
+                                        connection = dataSource.getConnection(user, "secret");
+                                    } catch (SQLNonTransientConnectionException e) {
+                                        return null; // The DataSource has been closed
+                                    } catch (SQLException e) {
+                                        continue; // The pool was full
+                                    }
+                                    connection.close();
+                                }
+                            }));
+        }
+        started.await();
+        dataSource.close();
+        for (Future<?> borrower : borrowers) {
+            borrower.get(10, TimeUnit.SECONDS);
+        }
+        executor.shutdown();
+
+        assertThat(physicalConnections).isNotEmpty();
+        for (Connection physical : physicalConnections) {
+            verify(physical).close();
+        }
+        assertThat(dataSource.poolCount()).isEqualTo(0);
+    }
+
+    @Test
+    public void maintainPools_unusedPool_isClosedAndForgotten() throws SQLException {
+        dataSource.getConnection().close();
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(5));
+        dataSource.maintainPools();
+        assertThat(dataSource.poolCount()).isEqualTo(1);
+
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(10));
+        dataSource.maintainPools();
+
+        assertThat(dataSource.poolCount()).isEqualTo(0);
+        verify(physicalConnections.get(0)).close();
+        dataSource.getConnection().close();
+        assertThat(physicalConnections).hasSize(2);
+    }
+
+    @Test
+    public void maintainPools_poolWithBorrowedConnection_isKept() throws SQLException {
+        Connection borrowed = dataSource.getConnection();
+        nanos.addAndGet(TimeUnit.MINUTES.toNanos(15));
+
+        dataSource.maintainPools();
+
+        assertThat(dataSource.poolCount()).isEqualTo(1);
+        borrowed.close();
+        verify(physicalConnections.get(0), never()).close();
+    }
+
+    @Test
+    public void maintainPools_failingPool_maintainsTheOthers() throws SQLException {
+        dataSource.setMinIdle(2);
+        dataSource.getConnection("alice", "secret").close();
+        dataSource.getConnection("bob", "secret").close();
+        doAnswer(
+                        invocation -> {
+                            Properties info = invocation.getArgument(1);
+                            if ("alice".equals(info.getProperty("user"))) {
+                                throw new IllegalStateException("broken factory");
+                            }
+                            Connection connection = mock(Connection.class);
+                            when(connection.isValid(anyInt())).thenReturn(true);
+                            openedFor.add(info.getProperty("user"));
+                            return connection;
+                        })
+                .when(driver)
+                .openHiveConnection(eq(HIVE_URL), any(Properties.class));
+
+        dataSource.maintainPools();
+        dataSource.maintainPools();
+
+        assertThat(openedFor).containsExactly("alice", "bob", "bob");
+    }
+}
\ No newline at end of file
@@ -16,11 +16,43 @@
 package com.google.cloud.dataproc.jdbc;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 
+import com.google.cloud.dataproc.v1beta2.Cluster;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableSet;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
 import org.junit.Before;
 import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
 
 public class DataprocDriverTest {
+    private static final String DATAPROC_URL =
+            "jdbc:dataproc://hive/;projectId=pid;region=us-central1;clusterName=test";
+    private static final String HIVE_URL =
+            "jdbc:hive2://fakeclusterhost:443/;transportMode=http;httpPath=hive;ssl=true";
+    private static final String POOL_URL =
+            "jdbc:dataproc://hive/;projectId=pid;region=us-central1;clusterPoolLabel=com=google";
+    private static final String OTHER_HIVE_URL =
+            "jdbc:hive2://otherclusterhost:443/;transportMode=http;httpPath=hive;ssl=true";
+    private static final SQLException TRANSPORT_FAILURE =
+            new SQLException(
+                    "Could not open client transport", "08S01", new ConnectException("refused"));
+
     private DataprocDriver driver;
 
     @Before
@@ -70,4 +102,223 @@ public class DataprocDriverTest {
         String url = "jdbc:data://hive/;clusterName=test";
         assertThat(driver.acceptsURL(url)).isFalse();
     }
+
+    @Test
+    public void connectAsync_otherProtocol_completesWithNull() throws Exception {
+        assertThat(driver.connectAsync("jdbc:hive2://host/", new Properties()).get()).isNull();
+    }
+
+    @Test
+    public void instrument_tracksLoadOnlyForStrategiesReadingIt() throws SQLException {
+        Connection physical = mock(Connection.class);
+        String host = ConnectionSpec.hostOf(HIVE_URL);
+
+        assertThat(driver.instrument(driver.connectionSpec(DATAPROC_URL), HIVE_URL, physical))
+                .isSameInstanceAs(physical);
+        assertThat(driver.instrument(driver.connectionSpec(POOL_URL), HIVE_URL, physical))
+                .isSameInstanceAs(physical);
+        assertThat(ClusterLoadTracker.shared().load(host)).isNull();
+
+        ConnectionSpec inFlightPool =
+                driver.connectionSpec(POOL_URL + ";clusterSelection=power-of-two-in-flight");
+        Connection tracked = driver.instrument(inFlightPool, HIVE_URL, physical);
+        assertThat(tracked).isInstanceOf(LoadTrackingConnection.class);
+        assertThat(ClusterLoadTracker.shared().inFlight(host)).isEqualTo(1);
+        tracked.close();
+        assertThat(ClusterLoadTracker.shared().load(host)).isNull();
+    }
+
+    @Test
+    public void connectAsync_opensConnectionToResolvedUrl() throws Exception {
+        DataprocDriver spyDriver = spy(driver);
+        Connection connection = mock(Connection.class);
+        doReturn(HIVE_URL)
+                .when(spyDriver)
+                .resolveHiveUrl(any(ConnectionSpec.class), any(Properties.class));
+        doReturn(true).when(spyDriver).prefetchToken();
+        doReturn(connection).when(spyDriver).openHiveConnection(eq(HIVE_URL), any(Properties.class));
+
+        CompletableFuture<Connection> future =
+                spyDriver.connectAsync(DATAPROC_URL, new Properties(), Runnable::run);
+
+        assertThat(future.get()).isSameInstanceAs(connection);
+        verify(spyDriver, times(1)).prefetchToken();
+    }
+
+    @Test
+    public void connect_opensConnectionOnCallingThread() throws Exception {
+        DataprocDriver spyDriver = spy(driver);
+        Connection connection = mock(Connection.class);
+        Thread caller = Thread.currentThread();
+        doReturn(HIVE_URL)
+                .when(spyDriver)
+                .resolveHiveUrl(any(ConnectionSpec.class), any(Properties.class));
+        doReturn(true).when(spyDriver).prefetchToken();
+        doAnswer(
+                        invocation -> {
+                            assertThat(Thread.currentThread()).isSameInstanceAs(caller);
+                            return connection;
+                        })
+                .when(spyDriver)
+                .openHiveConnection(eq(HIVE_URL), any(Properties.class));
+
+        assertThat(spyDriver.connect(DATAPROC_URL, new Properties())).isSameInstanceAs(connection);
+    }
+
+    @Test
+    public void connect_tokenPrefetchFailure_stillConnects() throws Exception {
+        DataprocDriver spyDriver = spy(driver);
+        Connection connection = mock(Connection.class);
+        doReturn(HIVE_URL)
+                .when(spyDriver)
+                .resolveHiveUrl(any(ConnectionSpec.class), any(Properties.class));
+        doThrow(new IOException("Application default credentials not found"))
+                .when(spyDriver)
+                .prefetchToken();
+        doReturn(connection).when(spyDriver).openHiveConnection(eq(HIVE_URL), any(Properties.class));
+
+        assertThat(spyDriver.connect(DATAPROC_URL, new Properties())).isSameInstanceAs(connection);
+
+        CompletableFuture<Connection> future =
+                spyDriver.connectAsync(DATAPROC_URL, new Properties(), Runnable::run);
+        assertThat(future.get()).isSameInstanceAs(connection);
+    }
+
+    @Test
+    public void openWithFailover_clusterDown_connectsToAnotherCluster() throws Exception {
+        DataprocDriver spyDriver = spy(driver);
+        Connection connection = mock(Connection.class);
+        doThrow(TRANSPORT_FAILURE)
+                .when(spyDriver)
+                .openHiveConnection(eq(HIVE_URL), any(Properties.class));
+        doReturn(OTHER_HIVE_URL)
+                .when(spyDriver)
+                .resolveHiveUrl(
+                        any(ConnectionSpec.class),
+                        any(Properties.class),
+                        eq(ImmutableSet.of("fakeclusterhost")));
+        doReturn(connection)
+                .when(spyDriver)
+                .openHiveConnection(eq(OTHER_HIVE_URL), any(Properties.class));
+
+        Connection opened =
+                spyDriver.openWithFailover(
+                        spyDriver.connectionSpec(POOL_URL), new Properties(), HIVE_URL);
+
+        assertThat(opened).isSameInstanceAs(connection);
+    }
+
+    @Test
+    public void openWithFailover_noOtherCluster_reportsEachAttempt() throws Exception {
+        DataprocDriver spyDriver = spy(driver);
+        doThrow(TRANSPORT_FAILURE)
+                .when(spyDriver)
+                .openHiveConnection(any(String.class), any(Properties.class));
+        doReturn(OTHER_HIVE_URL)
+                .when(spyDriver)
+                .resolveHiveUrl(
+                        any(ConnectionSpec.class),
+                        any(Properties.class),
+                        eq(ImmutableSet.of("fakeclusterhost")));
+        doThrow(new InvalidURLException("No other cluster of the pool to fail over to."))
+                .when(spyDriver)
+                .resolveHiveUrl(
+                        any(ConnectionSpec.class),
+                        any(Properties.class),
+                        eq(ImmutableSet.of("fakeclusterhost", "otherclusterhost")));
+
+        SQLException e =
+                Assertions.assertThrows(
+                        SQLException.class,
+                        () ->
+                                spyDriver.openWithFailover(
+                                        spyDriver.connectionSpec(POOL_URL),
+                                        new Properties(),
+                                        HIVE_URL));
+
+        assertThat(e.getSQLState()).isEqualTo("08S01");
+        assertThat(e).hasMessageThat().contains("after 2 attempts, no other cluster available");
+        assertThat(e.getSuppressed()).hasLength(2);
+        assertThat(e.getSuppressed()[0])
+                .hasMessageThat()
+                .isEqualTo("Attempt 1 on cluster fakeclusterhost failed: UNREACHABLE");
+        assertThat(e.getSuppressed()[1])
+                .hasMessageThat()
+                .isEqualTo("Attempt 2 on cluster otherclusterhost failed: UNREACHABLE");
+    }
+
+    @Test
+    public void openWithFailover_clientFailure_notRetried() throws Exception {
+        DataprocDriver spyDriver = spy(driver);
+        SQLException authFailure = new SQLException("Invalid credentials", "28000");
+        doThrow(authFailure)
+                .when(spyDriver)
+                .openHiveConnection(eq(HIVE_URL), any(Properties.class));
+
+        SQLException e =
+                Assertions.assertThrows(
+                        SQLException.class,
+                        () ->
+                                spyDriver.openWithFailover(
+                                        spyDriver.connectionSpec(POOL_URL),
+                                        new Properties(),
+                                        HIVE_URL));
+
+        assertThat(e).isSameInstanceAs(authFailure);
+        verify(spyDriver, never()).resolveHiveUrl(any(), any(), any());
+    }
+
+    @Test
+    public void openWithFailover_namedCluster_notRetried() throws Exception {
+        DataprocDriver spyDriver = spy(driver);
+        doThrow(TRANSPORT_FAILURE)
+                .when(spyDriver)
+                .openHiveConnection(eq(HIVE_URL), any(Properties.class));
+
+        SQLException e =
+                Assertions.assertThrows(
+                        SQLException.class,
+                        () ->
+                                spyDriver.openWithFailover(
+                                        spyDriver.connectionSpec(DATAPROC_URL),
+                                        new Properties(),
+                                        HIVE_URL));
+
+        assertThat(e).isSameInstanceAs(TRANSPORT_FAILURE);
+    }
+
+    @Test
+    public void openWithFailover_namedClusterDown_dropsCachedLookup() throws Exception {
+        ClusterResolutionCache cache = new ClusterResolutionCache();
+        cache.get(
+                ClusterResolutionCache.Key.forCluster("pid", "us-central1", "test"),
+                60,
+                10,
+                () -> ImmutableList.of(Cluster.getDefaultInstance()));
+        DataprocDriver spyDriver =
+                spy(new DataprocDriver(mock(ClusterControllerClientRegistry.class), cache));
+        doThrow(TRANSPORT_FAILURE)
+                .when(spyDriver)
+                .openHiveConnection(eq(HIVE_URL), any(Properties.class));
+
+        Assertions.assertThrows(
+                SQLException.class,
+                () ->
+                        spyDriver.openWithFailover(
+                                spyDriver.connectionSpec(DATAPROC_URL),
+                                new Properties(),
+                                HIVE_URL));
+
+        assertThat(cache.stats().size()).isEqualTo(0);
+    }
+
+    @Test
+    public void connect_invalidUrl_throwsInvalidURLException() throws Exception {
+        DataprocDriver spyDriver = spy(driver);
+        doReturn(true).when(spyDriver).prefetchToken();
+
+        Assertions.assertThrows(
+                InvalidURLException.class,
+                () -> spyDriver.connect("jdbc:dataproc://hive/;clusterName=test", new Properties()));
+    }
 }
\ No newline at end of file
@@ -17,6 +17,8 @@ package com.google.cloud.dataproc.jdbc;
 
 import static com.google.common.truth.Truth.assertThat;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.google.api.gax.rpc.ApiException;
@@ -27,10 +29,21 @@ import com.google.cloud.dataproc.v1beta2.ClusterControllerClient;
 import com.google.cloud.dataproc.v1beta2.ClusterMetrics;
 import com.google.cloud.dataproc.v1beta2.ClusterStatus;
 import com.google.cloud.dataproc.v1beta2.EndpointConfig;
+import com.google.cloud.dataproc.v1beta2.InstanceGroupConfig;
+import com.google.cloud.dataproc.v1beta2.ListClustersRequest;
+import com.google.common.base.Ticker;
+import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Iterables;
 import java.sql.SQLException;
 import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.jupiter.api.Assertions;
@@ -253,6 +266,73 @@ public class DataprocInfoTest {
                 });
     }
 
+    @Test
+    public void getHost_clusterName_cached() throws SQLException {
+        HiveJdbcConnectionOptions param = paramBuilder.setClusterName(CLUSTER_NAME_1).build();
+        ClusterResolutionCache cache = new ClusterResolutionCache();
+        assertThat(new DataprocInfo(param, mockClusterControllerClient, cache).getHost())
+                .isEqualTo(HOST_1);
+        assertThat(new DataprocInfo(param, mockClusterControllerClient, cache).getHost())
+                .isEqualTo(HOST_1);
+        verify(mockClusterControllerClient, times(1)).getCluster(PROJECT_ID, REGION, CLUSTER_NAME_1);
+        assertThat(cache.stats().hitCount()).isEqualTo(1);
+    }
+
+    @Test
+    public void getHost_noClusterFoundByName_negativelyCached() {
+        HiveJdbcConnectionOptions param = paramBuilder.setClusterName(NO_CLUSTER_NAME).build();
+        ClusterResolutionCache cache = new ClusterResolutionCache();
+        for (int i = 0; i < 2; i++) {
+            DataprocInfo infoTest = new DataprocInfo(param, mockClusterControllerClient, cache);
+            Assertions.assertThrows(
+                    InvalidURLException.class,
+                    () -> {
+                        infoTest.getHost();
+                    });
+        }
+        verify(mockClusterControllerClient, times(1)).getCluster(PROJECT_ID, REGION, NO_CLUSTER_NAME);
+    }
+
+    @Test
+    public void getHost_label_cachedCandidates() throws SQLException {
+        String clusterPoolLabel = "clusterName=simple-cluster1";
+        HiveJdbcConnectionOptions param = paramBuilder.setClusterPoolLabel(clusterPoolLabel).build();
+        ClusterResolutionCache cache = new ClusterResolutionCache();
+        assertThat(new DataprocInfo(param, mockClusterControllerClient, cache).getHost())
+                .isEqualTo(HOST_1);
+        // Served from the cache although the mock would list cluster2 on the next call
+        assertThat(new DataprocInfo(param, mockClusterControllerClient, cache).getHost())
+                .isEqualTo(HOST_1);
+        verify(mockClusterControllerClient, times(1))
+                .listClusters(PROJECT_ID, REGION, FILTER_DUPLICATE);
+    }
+
+    @Test
+    public void getHost_label_servedFromPoolSnapshot() throws SQLException {
+        String clusterPoolLabel = "clusterName=simple-cluster1";
+        HiveJdbcConnectionOptions param =
+                paramBuilder
+                        .setClusterPoolLabel(clusterPoolLabel)
+                        .setClusterPoolRefreshSeconds(30)
+                        .build();
+        ClusterPoolRefresher refresher =
+                new ClusterPoolRefresher(
+                        key -> {
+                            throw new SQLException("Not refreshed in this test");
+                        },
+                        ClusterPoolRefresher.DEFAULT_IDLE_TIMEOUT_MILLIS,
+                        Ticker.systemTicker(),
+                        mock(ScheduledExecutorService.class));
+        ClusterResolutionCache noCache = ClusterResolutionCache.disabled();
+        assertThat(new DataprocInfo(param, mockClusterControllerClient, noCache, refresher).getHost())
+                .isEqualTo(HOST_1);
+        // Served from the snapshot although the mock would list cluster2 on the next call
+        assertThat(new DataprocInfo(param, mockClusterControllerClient, noCache, refresher).getHost())
+                .isEqualTo(HOST_1);
+        verify(mockClusterControllerClient, times(1))
+                .listClusters(PROJECT_ID, REGION, FILTER_DUPLICATE);
+    }
+
     @Test
     public void getHost_defaultLabel() throws SQLException {
         String clusterPoolLabel = null;
@@ -340,4 +420,171 @@ public class DataprocInfoTest {
         DataprocInfo infoTest = new DataprocInfo(param, mockClusterControllerClient);
         assertThat(infoTest.toHiveJdbcUrl()).isEqualTo(hiveUrl);
     }
+
+    private static Cluster pooledCluster(
+            String name, long availableYarnMemoryMb, long availableYarnVcores) {
+        return Cluster.newBuilder()
+                .setClusterName(name)
+                .setStatus(ClusterStatus.newBuilder().setState(ClusterStatus.State.RUNNING))
+                .setMetrics(
+                        ClusterMetrics.newBuilder()
+                                .putYarnMetrics("yarn-memory-mb-available", availableYarnMemoryMb)
+                                .putYarnMetrics("yarn-vcores-available", availableYarnVcores))
+                .build();
+    }
+
+    private static Cluster pooledCluster(String name, long availableYarnMemoryMb) {
+        return pooledCluster(name, availableYarnMemoryMb, availableYarnMemoryMb > 0 ? 4 : 0);
+    }
+
+    // Lists the pool two clusters per page
+    private List<String> listClusterNames(
+            ImmutableList<Cluster> pool,
+            AtomicInteger listed,
+            int maxCandidates,
+            ClusterScoring scoring)
+            throws SQLException {
+        ClusterControllerClient.ListClustersPagedResponse listing =
+                mock(ClusterControllerClient.ListClustersPagedResponse.class);
+        when(listing.iteratePages())
+                .thenReturn(
+                        Iterables.transform(
+                                Iterables.partition(pool, 2),
+                                clusters -> {
+                                    ClusterControllerClient.ListClustersPage page =
+                                            mock(ClusterControllerClient.ListClustersPage.class);
+                                    when(page.getValues())
+                                            .thenReturn(
+                                                    Iterables.transform(
+                                                            clusters,
+                                                            cluster -> {
+                                                                listed.incrementAndGet();
+                                                                return cluster;
+                                                            }));
+                                    return page;
+                                }));
+        ListClustersRequest request =
+                ListClustersRequest.newBuilder()
+                        .setProjectId(PROJECT_ID)
+                        .setRegion(REGION)
+                        .setFilter(FILTER_DEFAULT)
+                        .setPageSize(2)
+                        .build();
+        when(mockClusterControllerClient.listClusters(request)).thenReturn(listing);
+
+        return DataprocInfo.listActiveClusters(
+                        mockClusterControllerClient,
+                        PROJECT_ID,
+                        REGION,
+                        FILTER_DEFAULT,
+                        /* pageSize= */ 2,
+                        maxCandidates,
+                        scoring)
+                .stream()
+                .map(Cluster::getClusterName)
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void listActiveClusters_maxCandidates_stopsListingAtEndOfPage() throws SQLException {
+        AtomicInteger listed = new AtomicInteger();
+        ImmutableList<Cluster> pool =
+                ImmutableList.of(
+                        pooledCluster("loaded", 0),
+                        pooledCluster("free-1", 1024),
+                        pooledCluster("free-2", 2048),
+                        pooledCluster("free-3", 4096),
+                        pooledCluster("free-4", 4096),
+                        pooledCluster("free-5", 4096));
+
+        List<String> names = listClusterNames(pool, listed, 2, ClusterScoring.DEFAULT);
+
+        assertThat(names).hasSize(2);
+        assertThat(names).containsNoDuplicates();
+        assertThat("free-1 free-2 free-3".split(" ")).asList().containsAtLeastElementsIn(names);
+        assertThat(listed.get()).isEqualTo(4);
+    }
+
+    @Test
+    public void listActiveClusters_notEnoughCandidates_keepsLoadedClusters() throws SQLException {
+        AtomicInteger listed = new AtomicInteger();
+        ImmutableList<Cluster> pool =
+                ImmutableList.of(pooledCluster("loaded", 0), pooledCluster("free-1", 1024));
+
+        assertThat(listClusterNames(pool, listed, 5, ClusterScoring.DEFAULT))
+                .containsExactly("free-1", "loaded");
+        assertThat(listed.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void listActiveClusters_maxCandidates_appliesScoringLimits() throws SQLException {
+        AtomicInteger listed = new AtomicInteger();
+        ImmutableList<Cluster> pool =
+                ImmutableList.of(
+                        pooledCluster("no-vcores", 8192, 0),
+                        pooledCluster("small", 1024, 4),
+                        pooledCluster("large-1", 8192, 4),
+                        pooledCluster("large-2", 8192, 4));
+
+        assertThat(listClusterNames(pool, listed, 1, ClusterScoring.DEFAULT))
+                .containsExactly("small");
+        assertThat(listed.get()).isEqualTo(2);
+
+        ClusterScoring largeOnly =
+                ClusterScoring.create(
+                        ImmutableMap.of(ClusterScoring.YARN_MEMORY, 1.0),
+                        ImmutableMap.of(
+                                ClusterScoring.YARN_MEMORY, 4096L, ClusterScoring.YARN_VCORES, 1L),
+                        ImmutableMap.of());
+        List<String> names = listClusterNames(pool, listed, 1, largeOnly);
+        assertThat(names).hasSize(1);
+        assertThat(names.get(0)).startsWith("large-");
+    }
+
+    @Test
+    public void listActiveClusters_maxCandidates_samplesCandidatesOfFetchedPages()
+            throws SQLException {
+        ImmutableList<Cluster> pool =
+                ImmutableList.of(
+                        pooledCluster("free-1", 1024),
+                        pooledCluster("free-2", 1024),
+                        pooledCluster("free-3", 1024));
+        AtomicInteger listed = new AtomicInteger();
+
+        Set<String> picked = new HashSet<>();
+        for (int i = 0; i < 50; i++) {
+            picked.addAll(listClusterNames(pool, listed, 1, ClusterScoring.DEFAULT));
+        }
+
+        // Not always the first cluster, and never one of a page that was not fetched
+        assertThat(picked).containsExactly("free-1", "free-2");
+        assertThat(listed.get()).isEqualTo(100);
+    }
+
+    @Test
+    public void trimmed_keepsOnlyPickFields() {
+        Cluster listed =
+                cluster1.toBuilder()
+                        .putLabels("env", "staging")
+                        .setConfig(
+                                cluster1.getConfig().toBuilder()
+                                        .setConfigBucket("bucket")
+                                        .setWorkerConfig(
+                                                InstanceGroupConfig.newBuilder()
+                                                        .setNumInstances(4)
+                                                        .addInstanceNames("w-0")))
+                        .build();
+
+        Cluster trimmed = DataprocInfo.trimmed(listed);
+
+        assertThat(trimmed.getClusterName()).isEqualTo(CLUSTER_NAME_1);
+        assertThat(trimmed.getStatus()).isEqualTo(cluster1.getStatus());
+        assertThat(trimmed.getMetrics()).isEqualTo(cluster1.getMetrics());
+        assertThat(trimmed.getConfig().getEndpointConfig())
+                .isEqualTo(cluster1.getConfig().getEndpointConfig());
+        assertThat(trimmed.getConfig().getWorkerConfig().getNumInstances()).isEqualTo(4);
+        assertThat(trimmed.getConfig().getWorkerConfig().getInstanceNamesList()).isEmpty();
+        assertThat(trimmed.getConfig().getConfigBucket()).isEmpty();
+        assertThat(trimmed.getLabelsMap()).isEmpty();
+    }
 }
\ No newline at end of file
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.collect.ImmutableList;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.Statement;
+import javax.sql.ConnectionEvent;
+import javax.sql.ConnectionEventListener;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+import org.mockito.ArgumentCaptor;
+
+public class DataprocPooledConnectionTest {
+    private static final String INITIAL_SCHEMA = "default";
+
+    private Connection physical;
+    private ConnectionEventListener listener;
+    private DataprocPooledConnection pooledConnection;
+
+    @Before
+    public void setUp() {
+        physical = mock(Connection.class);
+        listener = mock(ConnectionEventListener.class);
+        when(physical.createStatement()).thenAnswer(invocation -> mock(Statement.class));
+        pooledConnection =
+                new DataprocPooledConnection(
+                        physical, SessionDefaults.create(INITIAL_SCHEMA, ImmutableList.of()));
+        pooledConnection.addConnectionEventListener(listener);
+    }
+
+    @Test
+    public void logicalClose_firesConnectionClosed() throws SQLException {
+        pooledConnection.getConnection().close();
+
+        ArgumentCaptor<ConnectionEvent> event = ArgumentCaptor.forClass(ConnectionEvent.class);
+        verify(listener).connectionClosed(event.capture());
+        assertThat(event.getValue().getSource()).isSameInstanceAs(pooledConnection);
+        assertThat(event.getValue().getSQLException()).isNull();
+        verify(listener, never()).connectionErrorOccurred(any());
+        verify(physical, never()).close();
+    }
+
+    @Test
+    public void getConnection_replacesPreviousHandle_firesConnectionClosed() throws SQLException {
+        Connection first = pooledConnection.getConnection();
+
+        Connection second = pooledConnection.getConnection();
+
+        verify(listener).connectionClosed(any());
+        assertThat(first.isClosed()).isTrue();
+        assertThat(second.isClosed()).isFalse();
+        Assertions.assertThrows(SQLNonTransientConnectionException.class, first::createStatement);
+        second.close();
+        verify(listener, times(2)).connectionClosed(any());
+    }
+
+    @Test
+    public void logicalClose_resetFails_firesConnectionErrorOccurred() throws SQLException {
+        Statement statement = mock(Statement.class);
+        when(physical.createStatement()).thenReturn(statement);
+        SQLException failure = new SQLException("Error closing statement");
+        doThrow(failure).when(statement).close();
+        Connection connection = pooledConnection.getConnection();
+        connection.createStatement();
+
+        connection.close();
+
+        ArgumentCaptor<ConnectionEvent> event = ArgumentCaptor.forClass(ConnectionEvent.class);
+        verify(listener).connectionErrorOccurred(event.capture());
+        assertThat(event.getValue().getSQLException()).isSameInstanceAs(failure);
+        verify(listener, never()).connectionClosed(any());
+    }
+
+    @Test
+    public void close_closesPhysicalConnection() throws SQLException {
+        pooledConnection.close();
+
+        verify(physical).close();
+        verify(listener, never()).connectionClosed(any());
+        Assertions.assertThrows(
+                SQLNonTransientConnectionException.class, pooledConnection::getConnection);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import static com.google.cloud.dataproc.jdbc.TestRowSets.rowSet;
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.base.Ticker;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import org.apache.arrow.vector.BigIntVector;
+import org.apache.arrow.vector.DecimalVector;
+import org.apache.arrow.vector.Float8Vector;
+import org.apache.arrow.vector.IntVector;
+import org.apache.arrow.vector.VarCharVector;
+import org.apache.arrow.vector.VectorSchemaRoot;
+import org.apache.arrow.vector.types.pojo.ArrowType;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TRowSet;
+import org.junit.Test;
+
+public class DataprocResultSetsTest {
+    private static final Object[][] ROWS = {{1, 1.5, "a"}, {2, null, "b"}, {3, 3.5, null}};
+
+    /** A result set of (id INT, amount DOUBLE, name STRING) rows. */
+    private static ResultSet resultSet() throws SQLException {
+        int[] row = {-1};
+        boolean[] wasNull = {false};
+        ResultSet resultSet =
+                mock(
+                        ResultSet.class,
+                        invocation -> {
+                            String method = invocation.getMethod().getName();
+                            if (method.equals("next")) {
+                                return ++row[0] < ROWS.length;
+                            } else if (method.equals("wasNull")) {
+                                return wasNull[0];
+                            } else if (!method.startsWith("get")
+                                    || invocation.getArguments().length == 0) {
+                                return null;
+                            }
+                            Object value = ROWS[row[0]][(int) invocation.getArgument(0) - 1];
+                            wasNull[0] = value == null;
+                            if (method.equals("getInt")) {
+                                return value == null ? 0 : value;
+                            } else if (method.equals("getDouble")) {
+                                return value == null ? 0.0 : value;
+                            }
+                            return value;
+                        });
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(metaData.getColumnCount()).thenReturn(3);
+        when(metaData.getColumnLabel(1)).thenReturn("id");
+        when(metaData.getColumnType(1)).thenReturn(Types.INTEGER);
+        when(metaData.getColumnLabel(2)).thenReturn("amount");
+        when(metaData.getColumnType(2)).thenReturn(Types.DOUBLE);
+        when(metaData.getColumnLabel(3)).thenReturn("name");
+        when(metaData.getColumnType(3)).thenReturn(Types.VARCHAR);
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        return resultSet;
+    }
+
+    @Test
+    public void toArrow_readsBatchesIntoTypedVectors() throws IOException, SQLException {
+        ResultSet resultSet = resultSet();
+        try (ResultSetArrowReader reader = DataprocResultSets.toArrow(resultSet, 2)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            assertThat(root.getSchema().findField("id").getType())
+                    .isEqualTo(new ArrowType.Int(32, true));
+            assertThat(root.getSchema().findField("name").getType())
+                    .isEqualTo(ArrowType.Utf8.INSTANCE);
+
+            assertThat(reader.loadNextBatch()).isTrue();
+            assertThat(root.getRowCount()).isEqualTo(2);
+            IntVector ids = (IntVector) root.getVector("id");
+            Float8Vector amounts = (Float8Vector) root.getVector("amount");
+            VarCharVector names = (VarCharVector) root.getVector("name");
+            assertThat(ids.get(0)).isEqualTo(1);
+            assertThat(ids.get(1)).isEqualTo(2);
+            assertThat(amounts.get(0)).isEqualTo(1.5);
+            assertThat(amounts.isNull(1)).isTrue();
+            assertThat(names.getObject(1).toString()).isEqualTo("b");
+
+            assertThat(reader.loadNextBatch()).isTrue();
+            assertThat(root.getRowCount()).isEqualTo(1);
+            assertThat(ids.get(0)).isEqualTo(3);
+            assertThat(names.isNull(0)).isTrue();
+
+            assertThat(reader.loadNextBatch()).isFalse();
+        }
+
+        verify(resultSet).close();
+    }
+
+    @Test
+    public void toArrow_columnarResultSet_copiesColumnBatches() throws IOException, SQLException {
+        ResultSet physical = mock(ResultSet.class);
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(physical.getMetaData()).thenReturn(metaData);
+        when(metaData.getColumnCount()).thenReturn(4);
+        when(metaData.getColumnLabel(1)).thenReturn("id");
+        when(metaData.getColumnType(1)).thenReturn(Types.BIGINT);
+        when(metaData.getColumnLabel(2)).thenReturn("qty");
+        when(metaData.getColumnType(2)).thenReturn(Types.INTEGER);
+        when(metaData.getColumnLabel(3)).thenReturn("price");
+        when(metaData.getColumnType(3)).thenReturn(Types.DOUBLE);
+        when(metaData.getColumnLabel(4)).thenReturn("amount");
+        when(metaData.getColumnType(4)).thenReturn(Types.DECIMAL);
+        when(metaData.getPrecision(4)).thenReturn(10);
+        when(metaData.getScale(4)).thenReturn(2);
+        // The second row has a null qty
+        Deque<TRowSet> rowSets =
+                new ArrayDeque<>(Arrays.asList(rowSet(1, 2, (byte) 0b10), rowSet(3, 2, (byte) 0)));
+        ColumnarResultSet columnar =
+                new ColumnarResultSet(
+                        physical,
+                        rows -> rowSets.isEmpty() ? rowSet() : rowSets.poll(),
+                        0);
+        Statement statement = mock(Statement.class);
+        DataprocResultSet resultSet =
+                spy(new DataprocResultSet(columnar, statement, null, null, Ticker.systemTicker()));
+
+        try (ResultSetArrowReader reader = DataprocResultSets.toArrow(resultSet, 3)) {
+            VectorSchemaRoot root = reader.getVectorSchemaRoot();
+            BigIntVector ids = (BigIntVector) root.getVector("id");
+            IntVector quantities = (IntVector) root.getVector("qty");
+            Float8Vector prices = (Float8Vector) root.getVector("price");
+            DecimalVector amounts = (DecimalVector) root.getVector("amount");
+
+            // A batch spanning two row sets
+            assertThat(reader.loadNextBatch()).isTrue();
+            assertThat(root.getRowCount()).isEqualTo(3);
+            assertThat(ids.get(2)).isEqualTo(3);
+            assertThat(quantities.get(0)).isEqualTo(10);
+            assertThat(quantities.isNull(1)).isTrue();
+            assertThat(quantities.get(2)).isEqualTo(30);
+            assertThat(prices.get(1)).isEqualTo(2.5);
+            assertThat(amounts.getObject(0)).isEqualTo(new BigDecimal("1.25"));
+
+            assertThat(reader.loadNextBatch()).isTrue();
+            assertThat(root.getRowCount()).isEqualTo(1);
+            assertThat(ids.get(0)).isEqualTo(4);
+
+            assertThat(reader.loadNextBatch()).isFalse();
+        }
+
+        // The vectors were filled from the column arrays, not through the getters
+        verify(resultSet, never()).next();
+        verify(resultSet, never()).getLong(anyInt());
+        verify(physical).close();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.base.Ticker;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Test;
+
+public class GatewayLatencyEstimatorTest {
+    private static final long PROBE_INTERVAL_MILLIS = 1000;
+
+    private final AtomicLong nanos = new AtomicLong();
+    private final Ticker fakeTicker =
+            new Ticker() {
+                @Override
+                public long read() {
+                    return nanos.get();
+                }
+            };
+
+    private final List<HttpServer> servers = new ArrayList<>();
+    private final List<Runnable> queuedProbes = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        servers.forEach(server -> server.stop(0));
+    }
+
+    /** A stand-in Component Gateway answering every request after the delay. */
+    private String server(long delayMillis) throws IOException {
+        HttpServer server =
+                HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(
+                "/",
+                exchange -> {
+                    try {
+                        Thread.sleep(delayMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    exchange.sendResponseHeaders(302, -1);
+                    exchange.close();
+                });
+        server.start();
+        servers.add(server);
+        return server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+    }
+
+    @Test
+    public void probeNow_delayedGateway_estimatesRtt() throws IOException {
+        String host = server(100);
+        GatewayLatencyEstimator estimator =
+                new GatewayLatencyEstimator(
+                        GatewayLatencyEstimator.httpHead(h -> "http://" + h + "/"),
+                        queuedProbes::add,
+                        Ticker.systemTicker(),
+                        PROBE_INTERVAL_MILLIS);
+
+        estimator.probeNow(host);
+        estimator.probeNow(host);
+
+        assertThat(estimator.rttNanos(host)).isAtLeast(TimeUnit.MILLISECONDS.toNanos(100));
+        assertThat(estimator.rttNanos(host)).isLessThan(TimeUnit.SECONDS.toNanos(2));
+        assertThat(estimator.isHealthy(host)).isTrue();
+    }
+
+    @Test
+    public void probeNow_smoothsSamples() {
+        AtomicLong sampleMillis = new AtomicLong(10);
+        GatewayLatencyEstimator estimator =
+                new GatewayLatencyEstimator(
+                        host -> nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(sampleMillis.get())),
+                        queuedProbes::add,
+                        fakeTicker,
+                        PROBE_INTERVAL_MILLIS);
+
+        estimator.probeNow("gateway");
+        assertThat(estimator.rttNanos("gateway")).isEqualTo(TimeUnit.MILLISECONDS.toNanos(10));
+
+        sampleMillis.set(20);
+        estimator.probeNow("gateway");
+        assertThat(estimator.rttNanos("gateway")).isEqualTo(TimeUnit.MILLISECONDS.toNanos(13));
+    }
+
+    @Test
+    public void probeNow_unreachableGateway_unhealthyUntilReachable() throws IOException {
+        String stopped = server(0);
+        servers.get(0).stop(0);
+        AtomicReference<String> gateway = new AtomicReference<>(stopped);
+        GatewayLatencyEstimator estimator =
+                new GatewayLatencyEstimator(
+                        GatewayLatencyEstimator.httpHead(h -> "http://" + gateway.get() + "/"),
+                        queuedProbes::add,
+                        Ticker.systemTicker(),
+                        PROBE_INTERVAL_MILLIS);
+
+        estimator.probeNow("gateway");
+        assertThat(estimator.isHealthy("gateway")).isFalse();
+        assertThat(estimator.rttNanos("gateway")).isEqualTo(-1);
+
+        gateway.set(server(0));
+        estimator.probeNow("gateway");
+        assertThat(estimator.isHealthy("gateway")).isTrue();
+        assertThat(estimator.rttNanos("gateway")).isAtLeast(0);
+    }
+
+    @Test
+    public void rttNanos_staleEstimate_probesInBackground() {
+        GatewayLatencyEstimator estimator =
+                new GatewayLatencyEstimator(
+                        host -> nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(5)),
+                        queuedProbes::add,
+                        fakeTicker,
+                        PROBE_INTERVAL_MILLIS);
+
+        // Not probed yet, a single probe is queued however often the host is read
+        assertThat(estimator.rttNanos("gateway")).isEqualTo(-1);
+        assertThat(estimator.rttNanos("gateway")).isEqualTo(-1);
+        assertThat(queuedProbes).hasSize(1);
+        queuedProbes.remove(0).run();
+        assertThat(estimator.rttNanos("gateway")).isEqualTo(TimeUnit.MILLISECONDS.toNanos(5));
+        assertThat(queuedProbes).isEmpty();
+
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(PROBE_INTERVAL_MILLIS));
+        estimator.rttNanos("gateway");
+        assertThat(queuedProbes).hasSize(1);
+    }
+
+    @Test
+    public void rttNanos_hostsNotRead_evicted() {
+        GatewayLatencyEstimator estimator =
+                new GatewayLatencyEstimator(
+                        host -> nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(5)),
+                        queuedProbes::add,
+                        fakeTicker,
+                        PROBE_INTERVAL_MILLIS);
+        estimator.probeNow("deleted");
+        estimator.probeNow("gateway");
+
+        for (int i = 0; i < GatewayLatencyEstimator.EVICT_AFTER_PROBE_INTERVALS; i++) {
+            nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(PROBE_INTERVAL_MILLIS));
+            estimator.rttNanos("gateway");
+        }
+
+        assertThat(estimator.knownRttNanos("deleted")).isEqualTo(-1);
+        assertThat(estimator.knownRttNanos("gateway")).isAtLeast(0);
+    }
+
+    @Test
+    public void knownRttNanos_neverProbes() {
+        GatewayLatencyEstimator estimator =
+                new GatewayLatencyEstimator(
+                        host -> nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(5)),
+                        queuedProbes::add,
+                        fakeTicker,
+                        PROBE_INTERVAL_MILLIS);
+
+        assertThat(estimator.knownRttNanos("gateway")).isEqualTo(-1);
+        assertThat(queuedProbes).isEmpty();
+
+        estimator.probeNow("gateway");
+        nanos.addAndGet(TimeUnit.MILLISECONDS.toNanos(PROBE_INTERVAL_MILLIS));
+        assertThat(estimator.knownRttNanos("gateway")).isEqualTo(TimeUnit.MILLISECONDS.toNanos(5));
+        assertThat(queuedProbes).isEmpty();
+    }
+}
\ No newline at end of file
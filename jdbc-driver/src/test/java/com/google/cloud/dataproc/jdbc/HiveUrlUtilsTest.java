@@ -249,4 +249,203 @@ public class HiveUrlUtilsTest {
                     HiveUrlUtils.parseHiveUrl(urlNoClusterInfo);
                 });
     }
+
+    @Test
+    public void parseHiveUrl_multiLocationPool() throws InvalidURLException {
+        HiveJdbcConnectionOptions params =
+                HiveUrlUtils.parseHiveUrl(
+                        "jdbc:dataproc://hive/;projectId=pid-1,pid-2;"
+                                + "region=us-central1,europe-west1;clusterPoolLabel=com=google;"
+                                + "clusterPoolRegionTimeoutMillis=2000");
+
+        assertThat(params.projectId()).isEqualTo("pid-1");
+        assertThat(params.region()).isEqualTo("us-central1");
+        assertThat(params.projectIds()).containsExactly("pid-1", "pid-2").inOrder();
+        assertThat(params.regions()).containsExactly("us-central1", "europe-west1").inOrder();
+        assertThat(params.clusterPoolRegionTimeoutMillis()).isEqualTo(2000);
+        assertThat(params.otherSessionConfs()).isNull();
+    }
+
+    @Test
+    public void parseHiveUrl_zeroRegionTimeout() {
+        String url =
+                "jdbc:dataproc://hive/;projectId=pid;region=us-central1,europe-west1;"
+                        + "clusterPoolLabel=com=google;clusterPoolRegionTimeoutMillis=0";
+        InvalidURLException e =
+                Assertions.assertThrows(
+                        InvalidURLException.class,
+                        () -> {
+                            HiveUrlUtils.parseHiveUrl(url);
+                        });
+        assertThat(e).hasMessageThat().contains("clusterPoolRegionTimeoutMillis=0");
+    }
+
+    @Test
+    public void parseHiveUrl_multiLocationClusterName() {
+        String url =
+                "jdbc:dataproc://hive/;projectId=pid;region=us-central1,europe-west1;"
+                        + "clusterName=simple-cluster1";
+        Assertions.assertThrows(
+                InvalidURLException.class,
+                () -> {
+                    HiveUrlUtils.parseHiveUrl(url);
+                });
+    }
+
+    @Test
+    public void parseHiveUrl_clusterPoolListing() throws InvalidURLException {
+        HiveJdbcConnectionOptions params =
+                HiveUrlUtils.parseHiveUrl(
+                        "jdbc:dataproc://hive/;projectId=pid;region=us-central1;"
+                                + "clusterPoolLabel=com=google;clusterPoolPageSize=50;"
+                                + "clusterPoolMaxCandidates=20");
+
+        assertThat(params.clusterPoolPageSize()).isEqualTo(50);
+        assertThat(params.clusterPoolMaxCandidates()).isEqualTo(20);
+        assertThat(params.otherSessionConfs()).isNull();
+    }
+
+    @Test
+    public void parseHiveUrl_clusterPoolFailover() throws InvalidURLException {
+        HiveJdbcConnectionOptions defaults =
+                HiveUrlUtils.parseHiveUrl(
+                        "jdbc:dataproc://hive/;projectId=pid;region=us-central1;"
+                                + "clusterPoolLabel=com=google");
+        HiveJdbcConnectionOptions params =
+                HiveUrlUtils.parseHiveUrl(
+                        "jdbc:dataproc://hive/;projectId=pid;region=us-central1;"
+                                + "clusterPoolLabel=com=google;clusterPoolFailoverAttempts=0;"
+                                + "clusterPoolFailoverBudgetMillis=1000");
+
+        assertThat(defaults.clusterPoolFailoverAttempts()).isEqualTo(2);
+        assertThat(defaults.clusterPoolFailoverBudgetMillis()).isEqualTo(30000);
+        assertThat(params.clusterPoolFailoverAttempts()).isEqualTo(0);
+        assertThat(params.clusterPoolFailoverBudgetMillis()).isEqualTo(1000);
+        assertThat(params.otherSessionConfs()).isNull();
+    }
+
+    @Test
+    public void parseHiveUrl_queryMetricsSink() throws InvalidURLException {
+        HiveJdbcConnectionOptions params =
+                HiveUrlUtils.parseHiveUrl(
+                        "jdbc:dataproc://hive/;projectId=pid;region=us-central1;"
+                                + "clusterName=simple-cluster;queryMetricsSink=log");
+
+        assertThat(params.queryMetricsSink()).isEqualTo(LoggingQueryMetricsSink.NAME);
+        assertThat(params.otherSessionConfs()).isNull();
+    }
+
+    @Test
+    public void parseHiveUrl_unknownQueryMetricsSink() {
+        String url =
+                "jdbc:dataproc://hive/;projectId=pid;region=us-central1;"
+                        + "clusterName=simple-cluster;queryMetricsSink=statsd";
+        Assertions.assertThrows(
+                InvalidURLException.class,
+                () -> {
+                    HiveUrlUtils.parseHiveUrl(url);
+                });
+    }
+
+    @Test
+    public void parseHiveUrl_adaptiveFetchSize() throws InvalidURLException {
+        HiveJdbcConnectionOptions defaults =
+                HiveUrlUtils.parseHiveUrl(
+                        "jdbc:dataproc://hive/;projectId=pid;region=us-central1;"
+                                + "clusterName=simple-cluster");
+        HiveJdbcConnectionOptions params =
+                HiveUrlUtils.parseHiveUrl(
+                        "jdbc:dataproc://hive/;projectId=pid;region=us-central1;"
+                                + "clusterName=simple-cluster;adaptiveFetchSize=true;"
+                                + "adaptiveFetchMaxBytes=1048576;adaptiveFetchMaxRows=5000");
+
+        assertThat(defaults.adaptiveFetchSize()).isFalse();
+        assertThat(defaults.adaptiveFetchMaxRows()).isEqualTo(10000);
+        assertThat(params.adaptiveFetchSize()).isTrue();
+        assertThat(params.adaptiveFetchMaxBytes()).isEqualTo(1048576);
+        assertThat(params.adaptiveFetchMaxRows()).isEqualTo(5000);
+        assertThat(params.otherSessionConfs()).isNull();
+    }
+
+    @Test
+    public void parseHiveUrl_invalidAdaptiveFetchSize() {
+        for (String option :
+                new String[] {
+                    "adaptiveFetchSize=yes", "adaptiveFetchMaxBytes=-1", "adaptiveFetchMaxRows=10"
+                }) {
+            String url =
+                    "jdbc:dataproc://hive/;projectId=pid;region=us-central1;"
+                            + "clusterName=simple-cluster;"
+                            + option;
+            Assertions.assertThrows(
+                    InvalidURLException.class,
+                    () -> {
+                        HiveUrlUtils.parseHiveUrl(url);
+                    });
+        }
+    }
+
+    @Test
+    public void parseHiveUrl_prefetchBatches() throws InvalidURLException {
+        HiveJdbcConnectionOptions params =
+                HiveUrlUtils.parseHiveUrl(
+                        "jdbc:dataproc://hive/;projectId=pid;region=us-central1;"
+                                + "clusterName=simple-cluster;prefetchBatches=2");
+
+        assertThat(params.prefetchBatches()).isEqualTo(2);
+        assertThat(params.otherSessionConfs()).isNull();
+    }
+
+    @Test
+    public void parseHiveUrl_columnarFetch() throws InvalidURLException {
+        String url =
+                "jdbc:dataproc://hive/;projectId=pid;region=us-central1;"
+                        + "clusterName=simple-cluster";
+        HiveJdbcConnectionOptions defaults = HiveUrlUtils.parseHiveUrl(url);
+        HiveJdbcConnectionOptions params = HiveUrlUtils.parseHiveUrl(url + ";columnarFetch=true");
+
+        assertThat(defaults.columnarFetch()).isFalse();
+        assertThat(params.columnarFetch()).isTrue();
+        assertThat(params.otherSessionConfs()).isNull();
+        Assertions.assertThrows(
+                InvalidURLException.class,
+                () -> {
+                    HiveUrlUtils.parseHiveUrl(url + ";columnarFetch=1");
+                });
+    }
+
+    @Test
+    public void parseHiveUrl_clusterPoolPageSizeTooLarge() {
+        String url =
+                "jdbc:dataproc://hive/;projectId=pid;region=us-central1;"
+                        + "clusterPoolLabel=com=google;clusterPoolPageSize=3000000000";
+        Assertions.assertThrows(
+                InvalidURLException.class,
+                () -> {
+                    HiveUrlUtils.parseHiveUrl(url);
+                });
+    }
+
+    @Test
+    public void parseHiveUrl_clusterSelection() throws InvalidURLException {
+        HiveJdbcConnectionOptions params =
+                HiveUrlUtils.parseHiveUrl(
+                        "jdbc:dataproc://hive/;projectId=pid;region=us-central1;"
+                                + "clusterPoolLabel=com=google;clusterSelection=least-loaded");
+
+        assertThat(params.clusterSelection()).isEqualTo("least-loaded");
+        assertThat(params.otherSessionConfs()).isNull();
+    }
+
+    @Test
+    public void parseHiveUrl_unknownClusterSelection() {
+        String url =
+                "jdbc:dataproc://hive/;projectId=pid;region=us-central1;"
+                        + "clusterPoolLabel=com=google;clusterSelection=fastest";
+        Assertions.assertThrows(
+                InvalidURLException.class,
+                () -> {
+                    HiveUrlUtils.parseHiveUrl(url);
+                });
+    }
 }
\ No newline at end of file
@@ -0,0 +1,157 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import static com.google.cloud.dataproc.jdbc.TestClusters.host;
+import static com.google.cloud.dataproc.jdbc.TestClusters.pool;
+import static com.google.common.truth.Truth.assertThat;
+
+import com.google.common.base.Ticker;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class LatencyAwareSelectionTest {
+    private static final int PICKS = 10000;
+    private static final SelectionContext CONTEXT =
+            SelectionContext.create(
+                    "pid",
+                    "us-central1",
+                    "status.state = ACTIVE AND labels.com = google",
+                    "",
+                    /* affinityKey= */ null);
+
+    private final List<HttpServer> servers = new ArrayList<>();
+    // Stand-in gateway address of each cluster host
+    private final Map<String, String> gateways = new HashMap<>();
+    private final Random random = new Random(42);
+
+    private GatewayLatencyEstimator estimator;
+    private LatencyAwareSelection strategy;
+
+    @Before
+    public void setUp() {
+        estimator =
+                new GatewayLatencyEstimator(
+                        GatewayLatencyEstimator.httpHead(
+                                host -> "http://" + gateways.get(host) + "/"),
+                        probe -> {},
+                        Ticker.systemTicker(),
+                        GatewayLatencyEstimator.DEFAULT_PROBE_INTERVAL_MILLIS);
+        strategy = new LatencyAwareSelection(estimator, () -> random);
+    }
+
+    @After
+    public void tearDown() {
+        servers.forEach(server -> server.stop(0));
+    }
+
+    /** Starts the stand-in gateway of the cluster, answering after the delay. */
+    private void gateway(int index, long delayMillis) throws IOException {
+        HttpServer server =
+                HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext(
+                "/",
+                exchange -> {
+                    try {
+                        Thread.sleep(delayMillis);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    exchange.sendResponseHeaders(302, -1);
+                    exchange.close();
+                });
+        server.start();
+        servers.add(server);
+        gateways.put(
+                host(index),
+                server.getAddress().getHostString() + ":" + server.getAddress().getPort());
+    }
+
+    private void probeAll(int size) throws IOException {
+        // Keeps class loading of the first probe out of the estimates
+        gateway(size, 0);
+        estimator.probeNow(host(size));
+        for (int probe = 0; probe < 3; probe++) {
+            for (int i = 0; i < size; i++) {
+                estimator.probeNow(host(i));
+            }
+        }
+    }
+
+    private int[] picks(ClusterPool pool) {
+        int[] picks = new int[pool.size()];
+        for (int i = 0; i < PICKS; i++) {
+            picks[strategy.select(pool, CONTEXT)]++;
+        }
+        return picks;
+    }
+
+    @Test
+    public void select_prefersNearestGateway() throws IOException {
+        gateway(0, 200);
+        gateway(1, 0);
+        gateway(2, 200);
+        probeAll(3);
+
+        int[] picks = picks(pool(6000, 1000, 6000));
+
+        assertThat(picks).asList().containsExactly(0, PICKS, 0).inOrder();
+    }
+
+    @Test
+    public void select_nearGateways_weightedByMemory() throws IOException {
+        gateway(0, 0);
+        gateway(1, 0);
+        gateway(2, 200);
+        probeAll(3);
+
+        int[] picks = picks(pool(1000, 3000, 6000));
+
+        assertThat((double) picks[0] / PICKS).isWithin(0.02).of(0.25);
+        assertThat((double) picks[1] / PICKS).isWithin(0.02).of(0.75);
+        assertThat(picks[2]).isEqualTo(0);
+    }
+
+    @Test
+    public void select_unreachableGateway_skipped() throws IOException {
+        gateway(0, 0);
+        gateway(1, 0);
+        servers.get(0).stop(0);
+        probeAll(2);
+
+        int[] picks = picks(pool(6000, 1000));
+
+        assertThat(picks).asList().containsExactly(0, PICKS).inOrder();
+    }
+
+    @Test
+    public void select_notProbedYet_weightedByMemory() {
+        int[] picks = picks(pool(1000, 3000));
+
+        assertThat((double) picks[0] / PICKS).isWithin(0.02).of(0.25);
+        assertThat((double) picks[1] / PICKS).isWithin(0.02).of(0.75);
+    }
+}
\ No newline at end of file
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.common.base.Ticker;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class PrefetchingResultSetTest {
+    private static final int FETCH_SIZE = 2;
+
+    private final AtomicInteger fetched = new AtomicInteger();
+    private final CountDownLatch twoBatchesFetched = new CountDownLatch(2 * FETCH_SIZE);
+
+    /** A result set of (id, name) rows whose next() fails past failAfter rows. */
+    private ResultSet physical(int rows, int failAfter) throws SQLException {
+        ResultSet resultSet = mock(ResultSet.class);
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(resultSet.getMetaData()).thenReturn(metaData);
+        when(metaData.getColumnCount()).thenReturn(2);
+        when(resultSet.getFetchSize()).thenReturn(FETCH_SIZE);
+        when(resultSet.findColumn("name")).thenReturn(2);
+        when(resultSet.next())
+                .thenAnswer(
+                        invocation -> {
+                            int row = fetched.incrementAndGet();
+                            twoBatchesFetched.countDown();
+                            if (row > failAfter) {
+                                throw new SQLException("Error retrieving next row", "08S01");
+                            }
+                            return row <= rows;
+                        });
+        when(resultSet.getObject(1)).thenAnswer(invocation -> String.valueOf(fetched.get()));
+        when(resultSet.getObject(2)).thenAnswer(invocation -> "row-" + fetched.get());
+        return resultSet;
+    }
+
+    @Test(timeout = 10000)
+    public void next_readsRowsInOrder() throws SQLException {
+        ResultSet physical = physical(5, Integer.MAX_VALUE);
+        ResultSet resultSet = PrefetchingResultSet.start(physical, 1);
+
+        for (int i = 1; i <= 5; i++) {
+            assertThat(resultSet.next()).isTrue();
+            assertThat(resultSet.getRow()).isEqualTo(i);
+            assertThat(resultSet.getInt(1)).isEqualTo(i);
+            assertThat(resultSet.getString("name")).isEqualTo("row-" + i);
+        }
+        assertThat(resultSet.next()).isFalse();
+        assertThat(resultSet.isAfterLast()).isTrue();
+        resultSet.close();
+
+        verify(physical).close();
+    }
+
+    @Test(timeout = 10000)
+    public void next_fetchFailure_thrownAfterRowsFetchedBefore() throws SQLException {
+        ResultSet resultSet = PrefetchingResultSet.start(physical(10, 3), 1);
+
+        assertThat(resultSet.next()).isTrue();
+        assertThat(resultSet.next()).isTrue();
+        assertThat(resultSet.next()).isTrue();
+        SQLException failure = Assertions.assertThrows(SQLException.class, resultSet::next);
+
+        assertThat(failure.getSQLState()).isEqualTo("08S01");
+        resultSet.close();
+    }
+
+    @Test(timeout = 10000)
+    public void close_stopsFetcherWaitingForTheClient() throws Exception {
+        ResultSet physical = physical(Integer.MAX_VALUE, Integer.MAX_VALUE);
+        ResultSet resultSet = PrefetchingResultSet.start(physical, 1);
+        // One batch queued, the fetcher waits for room for the next one
+        twoBatchesFetched.await();
+
+        resultSet.close();
+
+        verify(physical).close();
+        assertThat(fetched.get()).isEqualTo(2 * FETCH_SIZE);
+        assertThat(resultSet.isClosed()).isTrue();
+        Assertions.assertThrows(SQLException.class, resultSet::next);
+    }
+
+    @Test(timeout = 10000)
+    public void close_fetchInFlight_cancelsStatement() throws Exception {
+        CountDownLatch fetching = new CountDownLatch(1);
+        CountDownLatch cancelled = new CountDownLatch(1);
+        ResultSet physical = mock(ResultSet.class);
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        Statement statement = mock(Statement.class);
+        when(physical.getMetaData()).thenReturn(metaData);
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(physical.getFetchSize()).thenReturn(FETCH_SIZE);
+        when(physical.getStatement()).thenReturn(statement);
+        when(physical.next())
+                .thenAnswer(
+                        invocation -> {
+                            if (fetched.incrementAndGet() > FETCH_SIZE) {
+                                // The FetchResults of the second batch hangs until cancelled
+                                fetching.countDown();
+                                cancelled.await();
+                                throw new SQLException("Query was cancelled", "01000");
+                            }
+                            return true;
+                        });
+        doAnswer(
+                        invocation -> {
+                            cancelled.countDown();
+                            return null;
+                        })
+                .when(statement)
+                .cancel();
+        ResultSet resultSet = PrefetchingResultSet.start(physical, 1);
+        fetching.await();
+
+        resultSet.close();
+
+        verify(statement).cancel();
+        verify(physical).close();
+        Assertions.assertThrows(SQLException.class, resultSet::next);
+    }
+
+    @Test(timeout = 10000)
+    public void fetch_withSizer_sizesBatchesFromFetchTimes() throws SQLException {
+        AtomicLong nanos = new AtomicLong();
+        Ticker ticker =
+                new Ticker() {
+                    @Override
+                    public long read() {
+                        return nanos.get();
+                    }
+                };
+        long rttNanos = TimeUnit.MILLISECONDS.toNanos(1);
+        ResultSet physical = mock(ResultSet.class);
+        ResultSetMetaData metaData = mock(ResultSetMetaData.class);
+        when(physical.getMetaData()).thenReturn(metaData);
+        when(metaData.getColumnCount()).thenReturn(1);
+        when(metaData.getColumnType(1)).thenReturn(Types.BIGINT);
+        when(physical.getFetchSize()).thenReturn(400);
+        when(physical.next())
+                .thenAnswer(
+                        invocation -> {
+                            int row = fetched.incrementAndGet();
+                            if (row == 1) {
+                                // The FetchResults of the first batch transfers 40 us per row
+                                nanos.addAndGet(rttNanos + 400 * TimeUnit.MICROSECONDS.toNanos(40));
+                            }
+                            return row <= 1000;
+                        });
+        when(physical.getObject(1)).thenAnswer(invocation -> (long) fetched.get());
+        AdaptiveFetchSize sizer =
+                new AdaptiveFetchSize(physical, 400, Long.MAX_VALUE, 10000, () -> rttNanos);
+        ResultSet resultSet = PrefetchingResultSet.start(physical, 1, sizer, ticker);
+
+        for (long i = 1; i <= 1000; i++) {
+            assertThat(resultSet.next()).isTrue();
+            assertThat(resultSet.getLong(1)).isEqualTo(i);
+        }
+        assertThat(resultSet.next()).isFalse();
+        resultSet.close();
+
+        // Transferring 100 rows takes as long as 4 round trips
+        verify(physical).setFetchSize(100);
+    }
+}
\ No newline at end of file
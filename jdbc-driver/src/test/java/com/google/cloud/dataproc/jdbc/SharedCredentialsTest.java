@@ -0,0 +1,67 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+
+import com.google.auth.oauth2.GoogleCredentials;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.Assertions;
+
+public class SharedCredentialsTest {
+    private AtomicInteger loads;
+
+    @Before
+    public void setUp() {
+        loads = new AtomicInteger();
+    }
+
+    @Test
+    public void get_loadsOnce() throws IOException {
+        GoogleCredentials mockCredentials = mock(GoogleCredentials.class);
+        SharedCredentials shared =
+                new SharedCredentials(
+                        () -> {
+                            loads.incrementAndGet();
+                            return mockCredentials;
+                        });
+
+        assertThat(shared.get().credentials()).isSameInstanceAs(mockCredentials);
+        assertThat(shared.get().credentials()).isSameInstanceAs(mockCredentials);
+        assertThat(loads.get()).isEqualTo(1);
+    }
+
+    @Test
+    public void get_failedLoad_retried() throws IOException {
+        GoogleCredentials mockCredentials = mock(GoogleCredentials.class);
+        SharedCredentials shared =
+                new SharedCredentials(
+                        () -> {
+                            if (loads.incrementAndGet() == 1) {
+                                throw new IOException("Application default credentials not found");
+                            }
+                            return mockCredentials;
+                        });
+
+        Assertions.assertThrows(IOException.class, shared::get);
+        assertThat(shared.get().credentials()).isSameInstanceAs(mockCredentials);
+        assertThat(loads.get()).isEqualTo(2);
+    }
+}
\ No newline at end of file
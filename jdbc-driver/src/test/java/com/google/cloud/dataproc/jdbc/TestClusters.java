@@ -0,0 +1,54 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import com.google.cloud.dataproc.v1beta2.Cluster;
+import com.google.cloud.dataproc.v1beta2.ClusterConfig;
+import com.google.cloud.dataproc.v1beta2.ClusterMetrics;
+import com.google.cloud.dataproc.v1beta2.EndpointConfig;
+import com.google.common.collect.ImmutableList;
+
+/** Cluster pools shared by the tests of cluster selection and health. */
+final class TestClusters {
+    private TestClusters() {}
+
+    /** Returns a pool of clusters named pool-cluster-i, with the available YARN memory given. */
+    static ClusterPoolSnapshot pool(long... availableYarnMemoryMb) {
+        ImmutableList.Builder<Cluster> clusters = ImmutableList.builder();
+        for (int i = 0; i < availableYarnMemoryMb.length; i++) {
+            EndpointConfig endpoints =
+                    EndpointConfig.newBuilder()
+                            .putHttpPorts("HiveServer2", "https://" + host(i) + "/hive")
+                            .build();
+            clusters.add(
+                    Cluster.newBuilder()
+                            .setClusterName("pool-cluster-" + i)
+                            .setConfig(ClusterConfig.newBuilder().setEndpointConfig(endpoints))
+                            .setMetrics(
+                                    ClusterMetrics.newBuilder()
+                                            .putYarnMetrics(
+                                                    "yarn-memory-mb-available",
+                                                    availableYarnMemoryMb[i]))
+                            .build());
+        }
+        return ClusterPoolSnapshot.create(clusters.build(), 0);
+    }
+
+    /** Returns the gateway host of the index-th cluster of a {@link #pool}. */
+    static String host(int index) {
+        return "pool-cluster-" + index + "-dot-us-central1.dataproc.googleusercontent.com";
+    }
+}
\ No newline at end of file
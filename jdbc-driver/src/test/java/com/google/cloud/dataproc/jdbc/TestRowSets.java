@@ -0,0 +1,66 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TColumn;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TDoubleColumn;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TI32Column;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TI64Column;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TRowSet;
+import org.apache.hive.jdbc.shaded.org.apache.hive.service.rpc.thrift.TStringColumn;
+
+/** Column-based row sets shared by the tests reading HiveServer2 fetch results. */
+final class TestRowSets {
+    private TestRowSets() {}
+
+    /**
+     * Returns (id BIGINT, qty INT, price DOUBLE, amount DECIMAL) rows with the ids from first on,
+     * nulls is the bitmap of the qty column.
+     */
+    static TRowSet rowSet(long first, int rows, byte nulls) {
+        List<Long> ids = new ArrayList<>();
+        List<Integer> quantities = new ArrayList<>();
+        List<Double> prices = new ArrayList<>();
+        List<String> amounts = new ArrayList<>();
+        for (long id = first; id < first + rows; id++) {
+            ids.add(id);
+            quantities.add((int) id * 10);
+            prices.add(id + 0.5);
+            amounts.add(id + ".25");
+        }
+        TRowSet rowSet = rowSet();
+        rowSet.setColumns(
+                Arrays.asList(
+                        TColumn.i64Val(new TI64Column(ids, ByteBuffer.wrap(new byte[0]))),
+                        TColumn.i32Val(
+                                new TI32Column(quantities, ByteBuffer.wrap(new byte[] {nulls}))),
+                        TColumn.doubleVal(new TDoubleColumn(prices, ByteBuffer.wrap(new byte[0]))),
+                        TColumn.stringVal(
+                                new TStringColumn(amounts, ByteBuffer.wrap(new byte[0])))));
+        return rowSet;
+    }
+
+    /** Returns the empty row set of an operation that returned all its rows. */
+    static TRowSet rowSet() {
+        TRowSet rowSet = new TRowSet(0, new ArrayList<>());
+        rowSet.setColumns(new ArrayList<>());
+        return rowSet;
+    }
+}
\ No newline at end of file
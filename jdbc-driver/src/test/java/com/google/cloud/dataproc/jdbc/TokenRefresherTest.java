@@ -0,0 +1,139 @@
+/*
+ * Copyright 2020 Google LLC
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.cloud.dataproc.jdbc;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.auth.oauth2.AccessToken;
+import com.google.auth.oauth2.GoogleCredentials;
+import java.io.IOException;
+import java.util.Date;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+public class TokenRefresherTest {
+    private static final String TOKEN_VALUE_1 = "application-default-access-token1";
+    private static final String TOKEN_VALUE_2 = "application-default-access-token2";
+    private static final long HOUR = TimeUnit.HOURS.toMillis(1);
+
+    private final AtomicLong now = new AtomicLong(1_600_000_000_000L);
+
+    private GoogleCredentials mockCredentials;
+    private ScheduledExecutorService mockScheduler;
+    private TokenRefresher refresher;
+
+    @Before
+    public void setUp() {
+        mockCredentials = mock(GoogleCredentials.class);
+        when(mockCredentials.getAccessToken())
+                .thenReturn(new AccessToken(TOKEN_VALUE_1, new Date(now.get() + HOUR)))
+                .thenReturn(new AccessToken(TOKEN_VALUE_2, new Date(now.get() + 2 * HOUR)));
+        mockScheduler = mock(ScheduledExecutorService.class);
+        refresher = new TokenRefresher(mockCredentials, mockScheduler, now::get);
+    }
+
+    /** @return the refresh scheduled by the n-th call to schedule, and checks its delay */
+    private Runnable scheduledRefresh(int times, long minDelayMillis, long maxDelayMillis) {
+        ArgumentCaptor<Runnable> task = ArgumentCaptor.forClass(Runnable.class);
+        ArgumentCaptor<Long> delay = ArgumentCaptor.forClass(Long.class);
+        verify(mockScheduler, times(times))
+                .schedule(task.capture(), delay.capture(), eq(TimeUnit.MILLISECONDS));
+        assertThat(delay.getValue()).isAtLeast(minDelayMillis);
+        assertThat(delay.getValue()).isAtMost(maxDelayMillis);
+        return task.getValue();
+    }
+
+    @Test
+    public void token_firstCall_refreshesAndSchedulesAheadOfExpiry() throws IOException {
+        assertThat(refresher.token().getTokenValue()).isEqualTo(TOKEN_VALUE_1);
+        assertThat(refresher.token().getTokenValue()).isEqualTo(TOKEN_VALUE_1);
+
+        verify(mockCredentials, times(1)).refresh();
+        long latest = HOUR - TokenRefresher.REFRESH_MARGIN_MILLIS;
+        scheduledRefresh(1, latest - TokenRefresher.MAX_JITTER_MILLIS, latest);
+    }
+
+    @Test
+    public void backgroundRefresh_publishesNewToken() throws IOException {
+        refresher.token();
+        Runnable refresh = scheduledRefresh(1, 0, HOUR);
+
+        now.addAndGet(HOUR - TokenRefresher.REFRESH_MARGIN_MILLIS);
+        refresh.run();
+
+        assertThat(refresher.token().getTokenValue()).isEqualTo(TOKEN_VALUE_2);
+        verify(mockCredentials, times(2)).refresh();
+    }
+
+    @Test
+    public void backgroundRefresh_failure_retried() throws IOException {
+        refresher.token();
+        Runnable refresh = scheduledRefresh(1, 0, HOUR);
+        doThrow(new IOException("token endpoint unavailable")).when(mockCredentials).refresh();
+
+        now.addAndGet(HOUR - TokenRefresher.REFRESH_MARGIN_MILLIS);
+        refresh.run();
+
+        // Still serves the current token while retrying
+        assertThat(refresher.token().getTokenValue()).isEqualTo(TOKEN_VALUE_1);
+        scheduledRefresh(
+                2, TokenRefresher.RETRY_DELAY_MILLIS, TokenRefresher.RETRY_DELAY_MILLIS);
+    }
+
+    @Test
+    public void backgroundRefresh_tokenNotRead_stops() throws IOException {
+        refresher.token();
+        Runnable refresh = scheduledRefresh(1, 0, HOUR);
+
+        refresh.run(); // token was read, refreshes and schedules the next refresh
+        refresh = scheduledRefresh(2, 0, 2 * HOUR);
+        refresh.run(); // token not read since, nothing to do
+
+        verify(mockCredentials, times(2)).refresh();
+        verify(mockScheduler, times(2)).schedule(any(Runnable.class), anyLong(), any());
+    }
+
+    @Test
+    public void backgroundRefresh_stopped_resumesOnNextRead() throws IOException {
+        refresher.token();
+        Runnable refresh = scheduledRefresh(1, 0, HOUR);
+        refresh.run();
+        refresh = scheduledRefresh(2, 0, 2 * HOUR);
+        refresh.run(); // token not read since, stops
+
+        // The token is still fresh, the read schedules a refresh instead of refreshing itself
+        assertThat(refresher.token().getTokenValue()).isEqualTo(TOKEN_VALUE_2);
+        assertThat(refresher.token().getTokenValue()).isEqualTo(TOKEN_VALUE_2);
+
+        verify(mockCredentials, times(2)).refresh();
+        long latest = 2 * HOUR - TokenRefresher.REFRESH_MARGIN_MILLIS;
+        refresh = scheduledRefresh(3, latest - TokenRefresher.MAX_JITTER_MILLIS, latest);
+        refresh.run();
+        verify(mockCredentials, times(3)).refresh();
+    }
+}
\ No newline at end of file